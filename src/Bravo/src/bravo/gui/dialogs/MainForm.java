@@ -12,7 +12,9 @@ import bravo.file.FileEntry;
 import bravo.environment.Config;
 import bravo.environment.RootFolder;
 import bravo.environment.CacheCleaner;
+import bravo.environment.WipeDaemon;
 import bravo.file.Argon2Params;
+import bravo.file.SessionKeyCache;
 import dialogs.ErrorDialog;
 import dialogs.JOptionPaneEx;
 import java.awt.Component;
@@ -92,6 +94,16 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
         jlMessage1.setText("");
         jlMessage2.setVisible(false);
         
+        SessionKeyCache.setIdleTimeout(Config.getLong("session_key_cache_timeout",
+        SessionKeyCache.DEFAULT_IDLE_TIMEOUT));
+        SessionKeyCache.setEnabled(Config.getBoolean("session_key_cache", false));
+        
+        WipeDaemon.setMaxRate(Config.getInt("wipe_daemon_rate", WipeDaemon.DEFAULT_MAX_RATE));
+        WipeDaemon.setUnwipedFilesHandler(this::showUnwipedFiles);
+        if (Config.getBoolean("wipe_daemon", true)) {
+            WipeDaemon.start();
+        }
+        
         closeFile();
         
     }
@@ -407,7 +419,7 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
 
                 Runnable runnable = () -> {
                     try {
-                        //bravoFile.changePassword(password);
+                        bravoFile.changePassword(password);
                     } catch (Exception ex) {
                         ErrorDialog.showException(
                             (Frame) _this,
@@ -1398,12 +1410,111 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
     }
     
     
+    /**
+     * Definir o número de arquivos sobrescritos ao mesmo tempo no volume de
+     * uma pasta escolhida pelo usuário. O limite é gravado na configuração e
+     * vale para todas as destruições de arquivos seguintes.
+     */
+    private void configureWipeVolume() {
+        
+        FileChooserDialog fileChooserDialog = new FileChooserDialog(
+            "SELECIONAR PASTA DO VOLUME",
+            null
+        );
+        
+        fileChooserDialog.setFileSelectionMode(FileChooserDialog.DIRECTORIES_ONLY);
+        fileChooserDialog.setAcceptAllFileFilterUsed(false);
+        fileChooserDialog.setMultiSelectionEnabled(false);
+        
+        int opc = fileChooserDialog.showOpenDialog(this);
+        
+        if (opc != FileChooserDialog.APPROVE_OPTION) return;
+        
+        File folder = fileChooserDialog.getSelectedFile();
+        
+        try {
+            
+            int threads = new CacheCleaner().getVolumeThreads(folder);
+            
+            String value = JOptionPaneEx.showInputDialog(
+                this,
+                "Número de arquivos sobrescritos ao mesmo tempo no volume de\n" +
+                folder.getAbsolutePath() + "\n\n" +
+                "Use 1 para discos rígidos, e mais para SSDs. Padrão: " +
+                CacheCleaner.DEFAULT_VOLUME_THREADS + ".",
+                String.valueOf(threads)
+            );
+            
+            if (value == null) return;
+            
+            try {
+                threads = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+                throw new Exception("Número inválido: " + value);
+            }
+            
+            CacheCleaner.setConfiguredVolumeThreads(folder, threads);
+            
+        } catch (Exception ex) {
+            ErrorDialog.showException(
+                (Frame) this,
+                "Erro ao definir a sobrescrita do volume.",
+                ex
+            );
+        }
+        
+    }
+    
+    
+    /**
+     * Informar os arquivos cuja destruição em segundo plano foi interrompida
+     * e não pôde ser retomada. Chamado pela thread do serviço.
+     * @param files arquivos não apagados.
+     */
+    private void showUnwipedFiles(List<File> files) {
+        
+        StringBuilder message = new StringBuilder(
+            "A destruição dos arquivos abaixo foi interrompida, e eles foram\n" +
+            "alterados desde então. Os arquivos podem estar parcialmente\n" +
+            "sobrescritos, e devem ser verificados e apagados manualmente:\n\n"
+        );
+        
+        for (File file : files) {
+            message.append(file.getAbsolutePath()).append('\n');
+        }
+        
+        java.awt.EventQueue.invokeLater(() -> {
+            JOptionPaneEx.showMessageDialog(
+                this,
+                message.toString(),
+                "ARQUIVOS NÃO DESTRUÍDOS",
+                JOptionPaneEx.WARNING_MESSAGE
+            );
+        });
+        
+    }
+    
+    
     private void clearPreviousSessionsCache() {
         
         CacheCleaner cacheCleaner = new CacheCleaner();
         
         if (cacheCleaner.previousSessionCacheIsNotEmpty()) {
             
+            //Destruição em segundo plano, sem bloquear a interface.
+            if (WipeDaemon.isRunning()) {
+                try {
+                    cacheCleaner.queuePreviousSessionCache();
+                } catch (Exception ex) {
+                    ErrorDialog.showException(
+                        null,
+                        "ERRO AO LIMPAR DADOS DE SESSÕES ANTERIORES",
+                        ex
+                    );
+                }
+                return;
+            }
+            
             //Destruição de arquivos de sessões anteriores.
             Runnable runnable = () -> {
                 try {
@@ -1556,6 +1667,8 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
         jSeparator6 = new javax.swing.JPopupMenu.Separator();
         jmiCloseFile = new javax.swing.JMenuItem();
         jSeparator11 = new javax.swing.JPopupMenu.Separator();
+        jmiWipeVolume = new javax.swing.JMenuItem();
+        jSeparator26 = new javax.swing.JPopupMenu.Separator();
         jmiExit = new javax.swing.JMenuItem();
         jmiCommand = new javax.swing.JMenu();
         jMenuItem2 = new javax.swing.JMenuItem();
@@ -1948,6 +2061,15 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
         jmFolder.add(jmiCloseFile);
         jmFolder.add(jSeparator11);
 
+        jmiWipeVolume.setText("Sobrescrita por Volume");
+        jmiWipeVolume.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jmiWipeVolumeActionPerformed(evt);
+            }
+        });
+        jmFolder.add(jmiWipeVolume);
+        jmFolder.add(jSeparator26);
+
         jmiExit.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F4, java.awt.event.InputEvent.ALT_DOWN_MASK));
         jmiExit.setText("Sair");
         jmiExit.addActionListener(new java.awt.event.ActionListener() {
@@ -2108,6 +2230,8 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
         if (isFileOpened()) {
             closeFile();
         }
+        SessionKeyCache.purge();
+        WipeDaemon.stop();
         clearCurrentSessionCache();
     }//GEN-LAST:event_formWindowClosing
 
@@ -2128,6 +2252,8 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
     }//GEN-LAST:event_jmiCloseFileActionPerformed
 
     private void jmiExitActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jmiExitActionPerformed
+        SessionKeyCache.purge();
+        WipeDaemon.stop();
         clearCurrentSessionCache();
         System.exit(0);
     }//GEN-LAST:event_jmiExitActionPerformed
@@ -2290,6 +2416,10 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
         moveFilesAndFoldersTo();
     }//GEN-LAST:event_jbMoveFileToActionPerformed
 
+    private void jmiWipeVolumeActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jmiWipeVolumeActionPerformed
+        configureWipeVolume();
+    }//GEN-LAST:event_jmiWipeVolumeActionPerformed
+
     private void jmiFileDetailsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jmiFileDetailsActionPerformed
         new DetailsDialog(this, bravoFile).setVisible(true);
     }//GEN-LAST:event_jmiFileDetailsActionPerformed
@@ -2375,6 +2505,7 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
     private javax.swing.JPopupMenu.Separator jSeparator23;
     private javax.swing.JPopupMenu.Separator jSeparator24;
     private javax.swing.JPopupMenu.Separator jSeparator25;
+    private javax.swing.JPopupMenu.Separator jSeparator26;
     private javax.swing.JPopupMenu.Separator jSeparator3;
     private javax.swing.JPopupMenu.Separator jSeparator4;
     private javax.swing.JToolBar.Separator jSeparator5;
@@ -2407,6 +2538,7 @@ public class MainForm extends javax.swing.JFrame implements DropTargetListener {
     private javax.swing.JMenuItem jmiManual;
     private javax.swing.JMenuItem jmiNewFile;
     private javax.swing.JMenuItem jmiOpenFile;
+    private javax.swing.JMenuItem jmiWipeVolume;
     private javax.swing.JPanel jpStatusBar;
     private javax.swing.JPopupMenu jpmManageFiles;
     private javax.swing.JTable jtbFiles;
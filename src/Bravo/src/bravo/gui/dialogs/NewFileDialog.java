@@ -1,8 +1,13 @@
 package bravo.gui.dialogs;
 
 import bravo.environment.Config;
+import bravo.file.Argon2Calibrator;
 import bravo.file.Argon2Params;
+import dialogs.ErrorDialog;
+import java.awt.Component;
 import java.awt.Cursor;
+import java.awt.EventQueue;
+import java.awt.Frame;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import javax.swing.JOptionPane;
@@ -65,6 +70,83 @@ public class NewFileDialog extends javax.swing.JDialog {
     }
     
 
+    /**
+     * Calibrar os parâmetros do Argon2 para o tempo alvo de desbloqueio e
+     * oferecer o resultado ao usuário. A calibração leva alguns segundos e é
+     * feita fora da thread da interface.
+     */
+    private void calibrate() {
+        
+        setCursor(new Cursor(Cursor.WAIT_CURSOR));
+        jbCalibrate.setEnabled(false);
+        
+        Component _this = this;
+        
+        new Thread() {
+            
+            @Override
+            public void run() {
+                
+                try {
+                    
+                    Argon2Calibrator calibrator = new Argon2Calibrator(
+                        Argon2Calibrator.DEFAULT_TARGET_TIME,
+                        Argon2Calibrator.getDefaultMaxMemory()
+                    );
+
+                    Argon2Params params = calibrator.calibrate();
+                    long time = calibrator.getMeasuredTime();
+
+                    EventQueue.invokeLater(() -> {
+
+                        int opc = JOptionPane.showConfirmDialog(
+                            _this,
+                            "Parâmetros calculados para este computador:\n\n" +
+                            "Iterações: " + params.getIterations() + "\n" +
+                            "Memória: " + params.getMemory() + " KB\n" +
+                            "Paralelismo: " + params.getParallelism() + "\n\n" +
+                            "Tempo estimado para abrir o arquivo: " + time + " ms.\n\n" +
+                            "Deseja utilizar estes parâmetros?",
+                            "Calibrar",
+                            JOptionPane.YES_NO_OPTION,
+                            JOptionPane.QUESTION_MESSAGE
+                        );
+
+                        if (opc == JOptionPane.YES_OPTION) {
+                            jspIterations.setValue(params.getIterations());
+                            jspMemory.setValue(params.getMemory());
+                            jspParallelism.setValue(params.getParallelism());
+                        }
+
+                    });
+                    
+                } catch (Exception | OutOfMemoryError ex) {
+                    
+                    // Por exemplo, falta de memória para a derivação.
+                    EventQueue.invokeLater(() -> {
+                        ErrorDialog.showException(
+                            (Frame) getOwner(),
+                            "Erro ao calibrar os parâmetros.",
+                            ex
+                        );
+                    });
+                    
+                } finally {
+                    
+                    EventQueue.invokeLater(() -> {
+                        setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+                        jbCalibrate.setEnabled(true);
+                    });
+                    
+                }
+                
+            }
+            
+        }.start();
+        
+    }
+    
+
     private void confirm() {
         
         setCursor(new Cursor(Cursor.WAIT_CURSOR));
@@ -181,6 +263,7 @@ public class NewFileDialog extends javax.swing.JDialog {
         jspIterations = new javax.swing.JSpinner();
         jspMemory = new javax.swing.JSpinner();
         jspParallelism = new javax.swing.JSpinner();
+        jbCalibrate = new javax.swing.JButton();
         jcbShowPassword = new javax.swing.JCheckBox();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
@@ -277,6 +360,14 @@ public class NewFileDialog extends javax.swing.JDialog {
 
         jspParallelism.setModel(new javax.swing.SpinnerNumberModel(1, 1, null, 1));
 
+        jbCalibrate.setText("Calibrar");
+        jbCalibrate.setToolTipText("Calcular os parâmetros para este computador");
+        jbCalibrate.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jbCalibrateActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout jPanel2Layout = new javax.swing.GroupLayout(jPanel2);
         jPanel2.setLayout(jPanel2Layout);
         jPanel2Layout.setHorizontalGroup(
@@ -296,6 +387,8 @@ public class NewFileDialog extends javax.swing.JDialog {
                         .addGroup(jPanel2Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(jspMemory, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.PREFERRED_SIZE, 130, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addComponent(jspParallelism, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.PREFERRED_SIZE, 130, javax.swing.GroupLayout.PREFERRED_SIZE))))
+                .addGap(18, 18, 18)
+                .addComponent(jbCalibrate, javax.swing.GroupLayout.PREFERRED_SIZE, 110, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         jPanel2Layout.setVerticalGroup(
@@ -304,7 +397,8 @@ public class NewFileDialog extends javax.swing.JDialog {
                 .addContainerGap()
                 .addGroup(jPanel2Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jspIterations, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                    .addComponent(jLabel4))
+                    .addComponent(jLabel4)
+                    .addComponent(jbCalibrate))
                 .addGap(16, 16, 16)
                 .addGroup(jPanel2Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jspMemory, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -386,6 +480,10 @@ public class NewFileDialog extends javax.swing.JDialog {
         showPasswords();
     }//GEN-LAST:event_jcbShowPasswordActionPerformed
 
+    private void jbCalibrateActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jbCalibrateActionPerformed
+        calibrate();
+    }//GEN-LAST:event_jbCalibrateActionPerformed
+
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel jLabel1;
@@ -396,6 +494,7 @@ public class NewFileDialog extends javax.swing.JDialog {
     private javax.swing.JLabel jLabel6;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JPanel jPanel2;
+    private javax.swing.JButton jbCalibrate;
     private javax.swing.JButton jbCancel;
     private javax.swing.JButton jbConfirm;
     private javax.swing.JCheckBox jcbShowPassword;
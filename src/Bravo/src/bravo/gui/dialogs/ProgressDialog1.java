@@ -55,6 +55,8 @@ public class ProgressDialog1 extends javax.swing.JDialog implements ProcessListe
             case EXTRACT -> mode = "Extraindo";
             case ENCRYPT -> mode = "Encriptando";
             case WIPE -> mode = "Apagando";
+            case VACUUM -> mode = "Compactando";
+            case REKEY -> mode = "Reencriptando";
         }
         
         jtfFile.setText(mode + " " + file);        
@@ -0,0 +1,132 @@
+package bravo.environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark da sobrescrita de arquivos. Mede a velocidade dos geradores dos
+ * passos aleatórios ({@link SecureRandom} em blocos de 4 KB e
+ * {@link KeystreamGenerator} em arrays de 4 KB e em buffers diretos de 4 MB)
+ * e o tempo da sobrescrita de um arquivo com {@link CacheCleaner} nos
+ * métodos de bytes aleatórios, DoD 5220.22-M ECE e byte fixo.
+ *
+ * <br><br>
+ *
+ * Argumentos: tamanho do arquivo em MB e, opcionalmente, a pasta do arquivo
+ * sobrescrito (por padrão, a pasta temporária do sistema). A propriedade
+ * {@code verify} habilita a verificação de cada passo.
+ *
+ * <pre>
+ * ant bench -Dbench.class=bravo.environment.WipeBench -Dbench.args="256"
+ * </pre>
+ *
+ * @since 2.0
+ */
+public class WipeBench {
+
+
+    /**Número de bytes de cada medição dos geradores.*/
+    private static final long GENERATED_BYTES = 512L * 1024 * 1024;
+
+    /**Tamanho dos blocos de {@link SecureRandom} e dos arrays do gerador.*/
+    private static final int BLOCK_SIZE = 4096;
+
+    /**Tamanho dos buffers diretos do gerador.*/
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+
+    public static void main(String[] args) throws Exception {
+
+        int megabytes = Integer.parseInt(args[0]);
+
+        Path folder = Path.of(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+
+        benchGenerators();
+
+        wipe(folder, megabytes, WipeMethod.RANDOM_BYTES, (byte) 0, 3);
+        wipe(folder, megabytes, WipeMethod.DOD522022M_ALGORITHM, true);
+        wipe(folder, megabytes, WipeMethod.FIXED_BYTE, (byte) 0);
+
+    }
+
+
+    private static void benchGenerators() {
+
+        byte[] block = new byte[BLOCK_SIZE];
+
+        // SecureRandom é lento: mede-se um oitavo do total.
+        SecureRandom secureRandom = new SecureRandom();
+        long start = System.nanoTime();
+        for (long n = 0; n < GENERATED_BYTES / 8; n += BLOCK_SIZE) {
+            secureRandom.nextBytes(block);
+        }
+        print("SecureRandom, 4 KB", GENERATED_BYTES / 8, System.nanoTime() - start);
+
+        KeystreamGenerator generator = new KeystreamGenerator();
+        start = System.nanoTime();
+        for (long n = 0; n < GENERATED_BYTES; n += BLOCK_SIZE) {
+            generator.nextBytes(block);
+        }
+        print("AES-CTR, arrays de 4 KB", GENERATED_BYTES, System.nanoTime() - start);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        start = System.nanoTime();
+        for (long n = 0; n < GENERATED_BYTES; n += BUFFER_SIZE) {
+            buffer.clear();
+            generator.nextBytes(buffer);
+        }
+        print("AES-CTR, buffers diretos de 4 MB", GENERATED_BYTES, System.nanoTime() - start);
+
+    }
+
+
+    private static void print(String name, long bytes, long time) {
+        System.out.printf("%s: %.0f MB/s%n", name, bytes / (time / 1e9) / (1024 * 1024));
+    }
+
+
+    /**
+     * Criar um arquivo com bytes aleatórios e sobrescrevê-lo com o método
+     * informado.
+     */
+    private static void wipe(Path folder, int megabytes, WipeMethod method, Object... params)
+    throws Exception {
+
+        File file = folder.resolve("wipebench.bin").toFile();
+        createFile(file, megabytes);
+
+        CacheCleaner cacheCleaner = new CacheCleaner(method, params);
+        cacheCleaner.setVerifyPasses(Boolean.getBoolean("verify"));
+
+        long start = System.nanoTime();
+        cacheCleaner.cleanExternalFiles(new ArrayList<>(List.of(file)));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int passes = cacheCleaner.getPassesByMethod();
+
+        System.out.printf("%s, %d MB x %d passos: %.2f s (%.0f MB/s gravados), removido: %b%n",
+        method, megabytes, passes, seconds, megabytes * passes / seconds, !file.exists());
+
+    }
+
+
+    private static void createFile(File file, int megabytes) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        try (OutputStream ostream = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < megabytes; i++) {
+                ostream.write(block);
+            }
+        }
+    }
+
+
+}
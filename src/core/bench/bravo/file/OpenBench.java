@@ -0,0 +1,118 @@
+package bravo.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+/**
+ * Benchmark da abertura de arquivos com muitas entradas. Um arquivo sintético
+ * é criado com entradas de 32 bytes, sem passar pela encriptação dos arquivos
+ * de origem, e então aberto duas vezes.
+ *
+ * <br><br>
+ *
+ * Argumentos: número de entradas e, opcionalmente, "create" ou "open" para
+ * executar apenas uma das etapas. O formato é definido pela propriedade
+ * {@code fmt} (ZIP ou SEGMENTS), e o arquivo é gravado na pasta temporária
+ * do sistema. Os arquivos são sempre criados na versão atual; arquivos de
+ * versões anteriores só podem ser gerados pelas versões anteriores do
+ * programa, e abertos com o argumento "open".
+ *
+ * <pre>
+ * ant bench -Dbench.class=bravo.file.OpenBench -Dbench.args="100000"
+ * </pre>
+ *
+ * @since 2.0
+ */
+public class OpenBench {
+
+
+    /**Senha dos arquivos. O constructor de BravoFile zera a senha recebida.*/
+    private static final String PASSWORD = "bench";
+
+
+    public static void main(String[] args) throws Exception {
+
+        int files = Integer.parseInt(args[0]);
+        String mode = args.length > 1 ? args[1] : "both";
+        StorageFormat format = StorageFormat.valueOf(System.getProperty("fmt", "ZIP"));
+
+        File file = new File(System.getProperty("java.io.tmpdir"),
+        "openbench_" + files + "_" + format + ".bar");
+
+        if (!mode.equals("open")) {
+            create(file, files, format);
+            System.out.printf("criado %s, %.1f MB%n", file, file.length() / 1e6);
+        }
+
+        if (!mode.equals("create")) {
+            for (int i = 0; i < 2; i++) {
+                long start = System.nanoTime();
+                BravoFile bravoFile = new BravoFile(file, PASSWORD.toCharArray());
+                long time = System.nanoTime() - start;
+                System.out.printf("%d entradas: abertura em %.0f ms (%d arquivos)%n",
+                files, time / 1e6, bravoFile.getNumberOfFiles());
+                bravoFile.close();
+            }
+        }
+
+    }
+
+
+    /**
+     * Criar o arquivo sintético. A tabela de arquivos é acessada por reflexão,
+     * pois não faz parte da interface pública.
+     */
+    private static void create(File file, int files, StorageFormat format)
+    throws Exception {
+
+        file.delete();
+
+        BravoFile bravoFile = new BravoFile(file, PASSWORD.toCharArray(),
+        new Argon2Params(1, 1024, 1), new byte[]{1}, format);
+
+        Field tableField = BravoFile.class.getDeclaredField("fileTable");
+        tableField.setAccessible(true);
+        FileTable table = (FileTable) tableField.get(bravoFile);
+
+        Method updateFileTable = BravoFile.class.getDeclaredMethod("updateFileTable");
+        updateFileTable.setAccessible(true);
+
+        Random random = new Random(1);
+        byte[] data = new byte[32];
+
+        bravoFile.beginBatch();
+
+        for (int i = 0; i < files; i++) {
+
+            String internalName = String.format("File%07d", i + 1);
+            random.nextBytes(data);
+            bravoFile.addStream(new ByteArrayInputStream(data), internalName);
+
+            EncryptedFileMetadata metadata = new EncryptedFileMetadata();
+            metadata.setFileName("/d" + (i % 1000) + "/file" + i + ".txt");
+            metadata.setInternalFileName(internalName);
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+            metadata.setIVBytes(iv);
+            byte[] salt = new byte[16];
+            random.nextBytes(salt);
+            metadata.setSaltBytes(salt);
+            metadata.setLastModifiedTime(1_700_000_000_000L + i);
+            metadata.setCreatedTime(1_700_000_000_000L);
+            metadata.setOriginalSize(i);
+            table.add(metadata);
+
+        }
+
+        updateFileTable.invoke(bravoFile);
+
+        bravoFile.commitBatch();
+        bravoFile.close();
+
+    }
+
+
+}
@@ -0,0 +1,152 @@
+package bravo.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark comparativo dos formatos de armazenamento ({@link StorageFormat}).
+ * Para cada formato, uma mesma árvore de arquivos é incluída em um arquivo
+ * novo, e são medidos o tamanho do contêiner, o tempo de cada renomeação,
+ * que grava o índice das entradas, e o tempo da extração de todos os
+ * arquivos.
+ *
+ * <br><br>
+ *
+ * Argumentos: número de arquivos pequenos, número de renomeações e número de
+ * arquivos grandes, de 8 MB cada. Os arquivos são gravados em uma pasta
+ * temporária, removida ao final.
+ *
+ * <pre>
+ * ant bench -Dbench.class=bravo.file.StorageBench -Dbench.args="20000 200 8"
+ * </pre>
+ *
+ * @since 2.0
+ */
+public class StorageBench {
+
+
+    /**Senha dos arquivos. O constructor de BravoFile zera a senha recebida.*/
+    private static final String PASSWORD = "bench";
+
+    /**Tamanho dos arquivos grandes.*/
+    private static final int LARGE_FILE_SIZE = 8 * 1024 * 1024;
+
+    /**Tamanho máximo dos arquivos pequenos.*/
+    private static final int SMALL_FILE_SIZE = 8 * 1024;
+
+    /**Número de pastas dos arquivos pequenos.*/
+    private static final int FOLDERS = 100;
+
+
+    public static void main(String[] args) throws Exception {
+
+        int smallFiles = Integer.parseInt(args[0]);
+        int renames = Integer.parseInt(args[1]);
+        int largeFiles = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        Path folder = Files.createTempDirectory("storagebench");
+
+        try {
+
+            Path source = folder.resolve("src");
+            createSource(source, smallFiles, largeFiles);
+
+            for (StorageFormat format : StorageFormat.values()) {
+                run(folder, format, smallFiles, renames);
+            }
+
+        } finally {
+            delete(folder);
+        }
+
+    }
+
+
+    private static void run(Path folder, StorageFormat format, int smallFiles, int renames)
+    throws Exception {
+
+        File file = folder.resolve(format + ".bar").toFile();
+
+        BravoFile bravoFile = new BravoFile(file, PASSWORD.toCharArray(),
+        new Argon2Params(1, 1024, 1), new byte[]{1}, format);
+        bravoFile.addFilesAndFolders(List.of(folder.resolve("src").toFile()), false);
+        bravoFile.close();
+
+        long size = file.length();
+
+        long start = System.nanoTime();
+        bravoFile = new BravoFile(file, PASSWORD.toCharArray());
+        long openTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < renames; i++) {
+            int k = i * 7 % smallFiles;
+            bravoFile.renameFile("/src/d" + (k % FOLDERS) + "/f" + k + ".txt", "r" + k + ".txt");
+        }
+        long renameTime = System.nanoTime() - start;
+
+        Path output = folder.resolve("out");
+        Files.createDirectories(output);
+
+        start = System.nanoTime();
+        bravoFile.extractFilesAndFolders(List.of("/src"), output.toString());
+        long extractTime = System.nanoTime() - start;
+
+        bravoFile.close();
+        delete(output);
+
+        System.out.printf("%s: contêiner %.1f MB, abertura %.0f ms, renomeação %.1f ms, " +
+        "extração %.2f s%n", format, size / 1e6, openTime / 1e6,
+        renameTime / 1e6 / Math.max(1, renames), extractTime / 1e9);
+
+    }
+
+
+    /**
+     * Criar a árvore de origem: arquivos pequenos, de tamanho aleatório,
+     * distribuídos em pastas, e arquivos grandes na raiz.
+     */
+    private static void createSource(Path source, int smallFiles, int largeFiles)
+    throws IOException {
+
+        Random random = new Random(1);
+
+        for (int i = 0; i < smallFiles; i++) {
+            Path path = source.resolve("d" + (i % FOLDERS)).resolve("f" + i + ".txt");
+            Files.createDirectories(path.getParent());
+            byte[] bytes = new byte[random.nextInt(SMALL_FILE_SIZE)];
+            random.nextBytes(bytes);
+            Files.write(path, bytes);
+        }
+
+        byte[] block = new byte[1024 * 1024];
+
+        for (int i = 0; i < largeFiles; i++) {
+            Files.createDirectories(source);
+            try (OutputStream ostream = Files.newOutputStream(source.resolve("large" + i + ".bin"))) {
+                for (int n = 0; n < LARGE_FILE_SIZE; n += block.length) {
+                    random.nextBytes(block);
+                    ostream.write(block);
+                }
+            }
+        }
+
+    }
+
+
+    private static void delete(Path folder) throws IOException {
+        if (!Files.exists(folder)) return;
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+
+}
@@ -0,0 +1,225 @@
+package bravo.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * Benchmark da gravação e da leitura da tabela de arquivos, em memória, com
+ * as mesmas etapas de writeFileTable e getFileTable, exceto o contêiner: a
+ * lista serializada e encriptada com AES-CFB das versões 1 e 2, e o formato
+ * binário de {@link FileTableCodec} encriptado com {@link SegmentedCipher},
+ * a partir da versão 3. As tabelas lidas nos dois formatos são comparadas
+ * campo a campo.
+ *
+ * <br><br>
+ *
+ * Argumento: número de entradas da tabela.
+ *
+ * <pre>
+ * ant bench -Dbench.class=bravo.file.TableBench -Dbench.args="100000"
+ * </pre>
+ *
+ * @since 2.0
+ */
+public class TableBench {
+
+
+    /**Capacidade dos buffers entre as etapas, a mesma de BravoFile.*/
+    private static final int PIPE_CAPACITY = 4 * 1024 * 1024;
+
+    /**Número de rodadas; a primeira inclui o aquecimento do JIT.*/
+    private static final int ROUNDS = 3;
+
+    /**Executor das etapas encadeadas, uma thread por etapa.*/
+    private static final Executor EXECUTOR = runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+
+    public static void main(String[] args) throws Exception {
+
+        int entries = Integer.parseInt(args[0]);
+
+        Random random = new Random(1);
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+
+        FileTable table = createTable(entries, random);
+
+        for (int round = 0; round < ROUNDS; round++) {
+
+            long t0 = System.nanoTime();
+            byte[] serialized = writeSerialized(table, key);
+            long t1 = System.nanoTime();
+            List<EncryptedFileMetadata> serializedList = readSerialized(serialized, key);
+            long t2 = System.nanoTime();
+
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+
+            long t3 = System.nanoTime();
+            byte[] binary = writeBinary(table, iv, key);
+            long t4 = System.nanoTime();
+            List<EncryptedFileMetadata> binaryList = readBinary(binary, key);
+            long t5 = System.nanoTime();
+
+            System.out.printf("%d entradas | serializada: gravação %.0f ms, leitura %.0f ms, " +
+            "%.1f MB | binária: gravação %.0f ms, leitura %.0f ms, %.1f MB | iguais: %b%n",
+            entries, (t1 - t0) / 1e6, (t2 - t1) / 1e6, serialized.length / 1e6,
+            (t4 - t3) / 1e6, (t5 - t4) / 1e6, binary.length / 1e6,
+            equals(serializedList, binaryList, entries));
+
+        }
+
+    }
+
+
+    /**
+     * Criar uma tabela com caminhos longos e prefixos comuns, como em uma
+     * árvore de documentos real.
+     */
+    private static FileTable createTable(int entries, Random random) {
+
+        FileTable table = new FileTable(metadata -> false);
+        long now = 1_700_000_000_000L;
+
+        for (int i = 0; i < entries; i++) {
+            EncryptedFileMetadata metadata = new EncryptedFileMetadata();
+            metadata.setFileName("/Documentos/Projetos/Cliente " + (i / 5000) +
+            "/Relatório " + (i / 200) + "/arquivo_" + i + ".pdf");
+            metadata.setInternalFileName(String.format("File%07d", i + 1));
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+            metadata.setIVBytes(iv);
+            metadata.setLastModifiedTime(now - random.nextInt(1_000_000_000));
+            metadata.setCreatedTime(metadata.getLastModifiedTime() - random.nextInt(100_000));
+            metadata.setOriginalSize(random.nextInt(50_000_000));
+            table.add(metadata);
+        }
+
+        return table;
+
+    }
+
+
+    /**
+     * Gravar a tabela no formato das versões 1 e 2: lista serializada,
+     * encriptada com AES-CFB, precedida do vetor de inicialização.
+     */
+    private static byte[] writeSerialized(FileTable table, byte[] key) throws Exception {
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream ostream = new ObjectOutputStream(serialized)) {
+            ostream.writeObject(table.toList());
+        }
+
+        EncryptedFileMetadata metadata = new EncryptedFileMetadata();
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        new AESCipher().encrypt(new ByteArrayInputStream(serialized.toByteArray()), encrypted,
+        metadata, key);
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(16 + encrypted.size());
+        entry.writeBytes(metadata.getIVBytes());
+        entry.writeBytes(encrypted.toByteArray());
+
+        return entry.toByteArray();
+
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static List<EncryptedFileMetadata> readSerialized(byte[] entry, byte[] key)
+    throws Exception {
+
+        ByteArrayInputStream istream = new ByteArrayInputStream(entry);
+        EncryptedFileMetadata metadata = new EncryptedFileMetadata();
+        metadata.setIVBytes(istream.readNBytes(16));
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        new AESCipher().decrypt(istream, decrypted, metadata, key);
+
+        try (ObjectInputStream ois = new ObjectInputStream(
+        new ByteArrayInputStream(decrypted.toByteArray()))) {
+            return (ArrayList<EncryptedFileMetadata>) ois.readObject();
+        }
+
+    }
+
+
+    /**
+     * Gravar a tabela no formato binário: codificação, encriptação e saída
+     * encadeadas, como em writeFileTable.
+     */
+    private static byte[] writeBinary(FileTable table, byte[] iv, byte[] key) throws Exception {
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+
+        try (PipedCipherInputStream encoded = new PipedCipherInputStream(
+                ostream -> FileTableCodec.write(table, table.size(), ostream),
+                EXECUTOR, PIPE_CAPACITY);
+             PipedCipherInputStream encrypted = new PipedCipherInputStream(
+                ostream -> {
+                    ostream.write(iv);
+                    new SegmentedCipher().encrypt(encoded, ostream, iv, key);
+                },
+                EXECUTOR, PIPE_CAPACITY)) {
+            encrypted.transferTo(entry);
+        }
+
+        return entry.toByteArray();
+
+    }
+
+
+    private static List<EncryptedFileMetadata> readBinary(byte[] entry, byte[] key)
+    throws Exception {
+
+        ByteArrayInputStream istream = new ByteArrayInputStream(entry);
+        EncryptedFileMetadata metadata = new EncryptedFileMetadata();
+        metadata.setIVBytes(istream.readNBytes(16));
+
+        try (PipedCipherInputStream decrypted = new PipedCipherInputStream(
+                ostream -> new SegmentedCipher().decrypt(istream, ostream, metadata, key),
+                EXECUTOR, PIPE_CAPACITY)) {
+            return FileTableCodec.read(decrypted);
+        }
+
+    }
+
+
+    /**
+     * Comparar as tabelas lidas nos dois formatos, campo a campo.
+     */
+    private static boolean equals(List<EncryptedFileMetadata> a, List<EncryptedFileMetadata> b,
+    int entries) {
+
+        if (a.size() != entries || b.size() != entries) return false;
+
+        for (int i = 0; i < entries; i++) {
+            EncryptedFileMetadata x = a.get(i);
+            EncryptedFileMetadata y = b.get(i);
+            if (!x.getFileName().equals(y.getFileName()) ||
+            !x.getInternalFileName().equals(y.getInternalFileName()) ||
+            x.getLastModifiedTime() != y.getLastModifiedTime() ||
+            x.getCreatedTime() != y.getCreatedTime() ||
+            x.getOriginalSize() != y.getOriginalSize() ||
+            !Arrays.equals(x.getIVBytes(), y.getIVBytes())) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+
+}
@@ -10,12 +10,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
 
 /**
  * Classe para destruição de arquivos em cache, impedindo a recuperação dos
@@ -58,8 +63,8 @@ public final class CacheCleaner {
     /**Número padrão de passos para sobrescrita com bytes aleatórios.*/
     private final int RANDOM_PASSES = 10;
     
-    /**Tamanho do buffer de escrita.*/
-    private final int BUFFER_SIZE = 4096;
+    /**Intervalo entre as atualizações do progresso, em milissegundos.*/
+    private final long PROGRESS_INTERVAL = 100;
     
     /**Nome do diretório de cache.*/
     private final String INSTANCE_FOLDER_NAME = "instance";
@@ -93,6 +98,33 @@ public final class CacheCleaner {
     
     /**Total de bytes processados.*/
     private long processedTotalBytes;
+    
+    /**Limite padrão de sobrescritas simultâneas de um volume sem limite definido.*/
+    public static final int DEFAULT_VOLUME_THREADS = 1;
+    
+    /**Chave da configuração com os limites de sobrescritas simultâneas por volume.*/
+    private static final String VOLUME_THREADS_KEY = "wipe_volume_threads";
+    
+    /**Número de threads para a sobrescrita concorrente de arquivos.*/
+    private int wipeThreads = Runtime.getRuntime().availableProcessors();
+    
+    /**Limite de sobrescritas simultâneas por volume.*/
+    private final Map<FileStore, Integer> volumeThreads;
+    
+    /**Verificar cada passo de sobrescrita após a gravação.*/
+    private boolean verifyPasses;
+    
+    /**Velocidade máxima de gravação, em bytes por segundo; 0 para ilimitada.*/
+    private long maxBytesPerSecond;
+    
+    /**Momento, em nanossegundos, em que a gravação autorizada termina na velocidade máxima.*/
+    private long throttleTime;
+    
+    /**Trava do controle da velocidade de gravação.*/
+    private final Object throttleLock = new Object();
+    
+    /**Trava da renomeação dos arquivos apagados.*/
+    private final Object unNameLock = new Object();
 
     
     /**
@@ -105,8 +137,10 @@ public final class CacheCleaner {
     public CacheCleaner(WipeMethod method, Object... params) {
         processlisteners = new ArrayList<>();
         cipherListeners = new ArrayList<>();
+        volumeThreads = new HashMap<>();
         this.method = method;
         this.params = params;
+        loadVolumeThreads();
     }
     
     
@@ -136,6 +170,17 @@ public final class CacheCleaner {
         }
         return passes;
     }
+    
+    
+    /**
+     * Obter o número de leituras ou gravações completas de cada arquivo, para
+     * o cálculo do progresso: os passos do método e, na verificação, a
+     * leitura de cada passo.
+     * @return número de passos, dobrado na verificação.
+     */
+    private int getProgressPasses() {
+        return getPassesByMethod() * (verifyPasses ? 2 : 1);
+    }
 
     
     /**
@@ -147,7 +192,7 @@ public final class CacheCleaner {
             File cacheFolder = RootFolder.getSessionFolder();
             List<File> list = new ArrayList<>();
             list.add(cacheFolder);
-            reset(calculateSize(list, getPassesByMethod()));
+            reset(calculateSize(list, getProgressPasses()));
             wipeFilesAndFolders(list);
         } finally {
             for (ProcessListener listener : processlisteners) {
@@ -165,6 +210,44 @@ public final class CacheCleaner {
      */
     public void cleanPreviousSessionCache() throws Exception {
         
+        List<File> foldersToDelete = listPreviousSessionFolders();
+        
+        if (!foldersToDelete.isEmpty()) {
+            cleanExternalFiles(foldersToDelete);
+        } else {
+            processlisteners.forEach(
+                listener -> {listener.done();}
+            );
+        }
+        
+    }
+    
+    
+    /**
+     * Incluir o cache das sessões anteriores na fila do serviço de apagamento
+     * em segundo plano ({@link WipeDaemon}), em vez de apagá-lo imediatamente.
+     * @throws IOException
+     * @since 2.0
+     */
+    public void queuePreviousSessionCache() throws IOException {
+        
+        List<File> foldersToDelete = listPreviousSessionFolders();
+        
+        if (!foldersToDelete.isEmpty()) {
+            WipeDaemon.enqueue(foldersToDelete);
+        }
+        
+    }
+    
+    
+    /**
+     * Registrar a sessão corrente como ativa e listar os diretórios de cache
+     * das sessões anteriores, que não pertencem a instâncias ativas.
+     * @return diretórios das sessões anteriores.
+     * @throws IOException 
+     */
+    private List<File> listPreviousSessionFolders() throws IOException {
+        
         List<String> activeInstances = new ArrayList<>();
         activeInstances.add(RootFolder.getSessionFolder().getName());
         
@@ -212,18 +295,12 @@ public final class CacheCleaner {
         File[] folders = RootFolder.getCacheFolder().listFiles(new DirectoryFilter());
         
         for (File folder : folders) {
-            if (!activeInstances.contains(folder.getName())) {
+            if (!activeInstances.contains(folder.getName()) && !WipeDaemon.isQueueFolder(folder)) {
                 foldersToDelete.add(folder);
             }
         }
         
-        if (!foldersToDelete.isEmpty()) {
-            cleanExternalFiles(foldersToDelete);
-        } else {
-            processlisteners.forEach(
-                listener -> {listener.done();}
-            );
-        }
+        return foldersToDelete;
         
     }
     
@@ -252,7 +329,8 @@ public final class CacheCleaner {
             File[] folders = rootCacheFolder.listFiles(new DirectoryFilter());
             if (folders.length > 0) {
                 for (File folder : folders) {
-                    if (!folder.equals(RootFolder.getSessionFolder())) {
+                    if (!folder.equals(RootFolder.getSessionFolder()) &&
+                    !WipeDaemon.isQueueFolder(folder)) {
                         return true;
                     }
                 }                
@@ -271,7 +349,7 @@ public final class CacheCleaner {
      */
     public void cleanExternalFiles(List<File> filesAndFolders) throws Exception {
         try {
-            reset(calculateSize(filesAndFolders, getPassesByMethod()));
+            reset(calculateSize(filesAndFolders, getProgressPasses()));
             wipeFilesAndFolders(filesAndFolders);
         } finally {
             for (ProcessListener listener : processlisteners) {
@@ -315,9 +393,7 @@ public final class CacheCleaner {
             
         }
         
-        for (File file : filesList) {     
-            wipeFile(file);
-        }
+        wipeFiles(filesList);
         
         foldersList.sort(new FileComparator());
         
@@ -328,97 +404,147 @@ public final class CacheCleaner {
     }
     
     
+    /**
+     * Apagar os arquivos da lista.
+     * 
+     * <br><br>
+     * 
+     * Com mais de uma thread de sobrescrita (ver {@link #setWipeThreads(int)}),
+     * os arquivos são sobrescritos concorrentemente, à frente do arquivo atual,
+     * respeitando o limite de cada volume (ver
+     * {@link #setVolumeThreads(File, int)}). A thread atual acompanha os
+     * arquivos na ordem da lista, de modo que os ouvintes são notificados da
+     * mesma forma que na sobrescrita sequencial, com o percentual total
+     * incluindo os bytes já gravados dos arquivos seguintes.
+     * 
+     * @param filesList lista dos arquivos a serem apagados.
+     * @throws Exception 
+     */
+    private void wipeFiles(List<File> filesList) throws Exception {
+        
+        int passes = getProgressPasses();
+        
+        if (wipeThreads == 1) {
+            for (File file : filesList) {
+                updateFileInProcess(file.getAbsolutePath(), file.length(), passes);
+                wipeFile(file, this::notify);
+            }
+            return;
+        }
+        
+        long previousBytes = processedTotalBytes;
+        
+        try (WipeScheduler scheduler = new WipeScheduler(wipeThreads, this::getVolumeThreads)) {
+            
+            int nextIndex = 0;
+            
+            for (int i = 0; i < filesList.size(); i++) {
+                
+                nextIndex = submitWipes(scheduler, filesList, Math.max(i, nextIndex));
+                
+                WipeScheduler.Wipe wipe = scheduler.take();
+                
+                updateFileInProcess(filesList.get(i).getAbsolutePath(), wipe.getLength(), passes);
+                
+                while (!wipe.await(PROGRESS_INTERVAL)) {
+                    updateProgress(wipe.getBytes(), previousBytes + scheduler.getProcessedBytes());
+                }
+                
+                updateProgress(wipe.getBytes(), previousBytes + scheduler.getProcessedBytes());
+                
+            }
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Submeter as sobrescritas dos arquivos seguintes, a partir do índice
+     * informado, enquanto houver espaço no escalonador.
+     * @param scheduler escalonador das sobrescritas.
+     * @param filesList lista dos arquivos a serem apagados.
+     * @param index índice do próximo arquivo a ser submetido.
+     * @return índice do próximo arquivo ainda não submetido.
+     */
+    private int submitWipes(WipeScheduler scheduler, List<File> filesList, int index) {
+        
+        while (index < filesList.size() && scheduler.hasRoom()) {
+            File file = filesList.get(index);
+            scheduler.submit(progress -> wipeFile(file, progress), getFileStore(file),
+            file.length());
+            index++;
+        }
+        
+        return index;
+        
+    }
+    
+    
     /**
      * Apagar o arquivo passado usando o método de sobrescrita de arquivos
      * definido. O método padrão é DoD 5220.22-M.
      * @param file arquivo a ser apagado.
+     * @param progress destino do número de bytes gravados.
      * @throws Exception 
      */
-    private void wipeFile(File file) throws Exception {
+    private void wipeFile(File file, LongConsumer progress) throws Exception {
         
         Files.setAttribute(file.toPath(), "dos:readonly", false);
         
-        int passes = getPassesByMethod();
-        
-        updateFileInProcess(file.getAbsolutePath(), file.length(), passes);
+        List<byte[]> passes = new ArrayList<>();
         
         switch (method) {
             
             case FIXED_BYTE -> {
-                wipeFileWithFixedByteAlgorithm(file, (byte) params[0]);                
+                addOneBytePass(passes, (byte) params[0]);
             }
             
             case RANDOM_BYTES -> {
                 switch (params.length) {
-                    case 0 -> wipeFileWithRandomBytesAlgorithm(file);
-                    case 2 -> wipeFileWithRandomBytesAlgorithm(file, (int)params[1]);
+                    case 0 -> addRandomBytesPasses(passes, RANDOM_PASSES);
+                    case 2 -> addRandomBytesPasses(passes, (int)params[1]);
                 }
             }
             
             case BRUCE_SCHNEIER_ALGORITHM -> {
-                wipeFileWithBruceSchneierAlgorithm(file);
+                addBruceSchneierPasses(passes);
             }
             
             case DOD522022M_ALGORITHM -> {
-                wipeFileWithDoD522022MAlgorithm(file, (boolean) params[0]);
+                addDoD522022MPasses(passes, (boolean) params[0]);
             }
             
             case GUTMANN_ALGORITHM -> {
-                wipeFileWithGutmannAlgorithm(file, (boolean) params[0]);
+                addGutmannPasses(passes, (boolean) params[0]);
             }
             
             case VSITR_ALGORITHM -> {
-                wipeFileWithVSITRAlgorithm(file);
+                addVSITRPasses(passes);
             }
             
         }
         
-    }
-
-
-    /**
-     * Apagar o arquivo usando o método de Byte Fixo.
-     * @param file arquivo a ser apagado.
-     * @param data byte para sobrescrita.
-     * @throws IOException 
-     */
-    private void wipeFileWithFixedByteAlgorithm(File file, byte data) throws IOException {
-        writeFileWithOneByte(file, data);
-        unNameAndDeleteFile(file);
-    }
-
-    
-    /**
-     * Apagar o arquivo usando o método de Bytes Aleatórios, em 10 passos.
-     * @param file arquivo a ser apagado.
-     * @throws IOException 
-     */
-    private void wipeFileWithRandomBytesAlgorithm(File file) throws IOException {
-        writeFileWithRandomBytes(file, RANDOM_PASSES);
-        unNameAndDeleteFile(file);
-    }
-    
-    
-    /**
-     * Apagar o arquivo usando o método de Bytes Aleatórios.
-     * @param file arquivo a ser apagado.
-     * @param passes número de passos.
-     * @throws IOException 
-     */
-    private void wipeFileWithRandomBytesAlgorithm(File file, int passes) throws IOException {
-        writeFileWithRandomBytes(file, passes);
+        new FileWiper(
+            length -> {
+                throttle(length);
+                progress.accept(length);
+            },
+            verifyPasses
+        ).overwrite(file, passes);
+        
         unNameAndDeleteFile(file);
+        
     }
 
     
     /**
-     * Apagar o arquivo usando o método de Gutmann.
-     * @param file arquivo a ser apagado.
+     * Incluir os passos do método de Gutmann.
+     * @param passes lista dos passos.
      * @param floppyMode Se true, processa em 18 passos. Se false, 
      * processa em 35 passos.
-     * @throws IOException 
      */
-    private void wipeFileWithGutmannAlgorithm(File file, boolean floppyMode) throws IOException {
+    private void addGutmannPasses(List<byte[]> passes, boolean floppyMode) {
         
         Integer[] sequence;
         
@@ -435,193 +561,128 @@ public final class CacheCleaner {
         Collections.shuffle(list);
         sequence = list.toArray(Integer[]::new);
         
-        writeFileWithRandomBytes(file, 4);
+        addRandomBytesPasses(passes, 4);
         
         for(int i = 0; i < sequence.length; i++) {
             if (sequence[i] == 5) {
-                writeFileWithOneByte(file, BYTE_55);
+                addOneBytePass(passes, BYTE_55);
             } else if (sequence[i] == 6) {
-                writeFileWithOneByte(file, BYTE_AA);
+                addOneBytePass(passes, BYTE_AA);
             } else if (sequence[i] < 10) {
-                writeFileWithThreeBytes(file, PATTERN_3_BYTES[sequence[i]-7]);
+                passes.add(PATTERN_3_BYTES[sequence[i]-7]);
             } else if (sequence[i] < 26) {
-                writeFileWithOneByte(file, PATTERN_1_BYTE[sequence[i]-10]);
+                addOneBytePass(passes, PATTERN_1_BYTE[sequence[i]-10]);
             } else {
-                writeFileWithThreeBytes(file, PATTERN_3_BYTES[sequence[i]-26]);
+                passes.add(PATTERN_3_BYTES[sequence[i]-26]);
             }
         }
         
-        writeFileWithRandomBytes(file, 4);
-        
-        unNameAndDeleteFile(file);
+        addRandomBytesPasses(passes, 4);
         
     }
 
     
     /**
-     * Apagar o arquivo usando o método VSITR.
-     * @param file arquivo a ser apagado.
-     * @throws IOException 
+     * Incluir os passos do método VSITR.
+     * @param passes lista dos passos.
      */
-    private void wipeFileWithVSITRAlgorithm(File file) throws IOException {
-        writeFileWithOneByte(file, BYTE_00);
-        writeFileWithOneByte(file, BYTE_FF);
-        writeFileWithOneByte(file, BYTE_00);
-        writeFileWithOneByte(file, BYTE_FF);
-        writeFileWithOneByte(file, BYTE_00);
-        writeFileWithOneByte(file, BYTE_FF);
-        writeFileWithOneByte(file, BYTE_AA);
-        writeFileWithRandomBytes(file, 1);
-        unNameAndDeleteFile(file);
+    private void addVSITRPasses(List<byte[]> passes) {
+        addOneBytePass(passes, BYTE_00);
+        addOneBytePass(passes, BYTE_FF);
+        addOneBytePass(passes, BYTE_00);
+        addOneBytePass(passes, BYTE_FF);
+        addOneBytePass(passes, BYTE_00);
+        addOneBytePass(passes, BYTE_FF);
+        addOneBytePass(passes, BYTE_AA);
+        addRandomBytesPasses(passes, 1);
     }
 
     
     /**
-     * Apagar o arquivo usando o método de Bruce Schneier.
-     * @param file arquivo a ser apagado.
-     * @throws IOException 
+     * Incluir os passos do método de Bruce Schneier.
+     * @param passes lista dos passos.
      */
-    private void wipeFileWithBruceSchneierAlgorithm(File file) throws IOException {
-        writeFileWithOneByte(file, BYTE_00);
-        writeFileWithOneByte(file, BYTE_FF);
-        writeFileWithRandomBytes(file, 5);
-        unNameAndDeleteFile(file);
+    private void addBruceSchneierPasses(List<byte[]> passes) {
+        addOneBytePass(passes, BYTE_00);
+        addOneBytePass(passes, BYTE_FF);
+        addRandomBytesPasses(passes, 5);
     }
 
     
     /**
-     * Apagar o arquivo usando o método DoD 5220.22-M.
-     * @param file arquivo a ser apagado.
+     * Incluir os passos do método DoD 5220.22-M.
+     * @param passes lista dos passos.
      * @param extended Se true, usa o método DoD 5220.22-M ECE (7 passos). Se 
      * false, usa o método DoD 5220.22-M (3 passos).
-     * @throws IOException 
      */
-    private void wipeFileWithDoD522022MAlgorithm(File file, boolean extended) throws IOException {
+    private void addDoD522022MPasses(List<byte[]> passes, boolean extended) {
         if (extended) {
-            writeFileWithRandomBytes(file, 1);
-            writeFileWithOneByte(file, BYTE_55);
-            writeFileWithOneByte(file, BYTE_AA);
-            writeFileWithRandomBytes(file, 1);
-            writeFileWithOneByte(file, BYTE_00);
-            writeFileWithOneByte(file, BYTE_FF);
-            writeFileWithRandomBytes(file, 1);
-            unNameAndDeleteFile(file);
+            addRandomBytesPasses(passes, 1);
+            addOneBytePass(passes, BYTE_55);
+            addOneBytePass(passes, BYTE_AA);
+            addRandomBytesPasses(passes, 1);
+            addOneBytePass(passes, BYTE_00);
+            addOneBytePass(passes, BYTE_FF);
+            addRandomBytesPasses(passes, 1);
         } else {
-            writeFileWithOneByte(file, BYTE_00);
-            writeFileWithOneByte(file, BYTE_FF);
-            writeFileWithRandomBytes(file, 1);
-            unNameAndDeleteFile(file);
+            addOneBytePass(passes, BYTE_00);
+            addOneBytePass(passes, BYTE_FF);
+            addRandomBytesPasses(passes, 1);
         }
     }
 
 
     /**
-     * Sobrescrever o arquivo com um byte específico.
-     * @param file arquivo a ser sobrescrito.
-     * @param data byte a sobrescrever o arquivo.
-     * @throws IOException 
+     * Limitar a velocidade de gravação, aguardando o tempo necessário para que
+     * os bytes processados não excedam a velocidade máxima. O tempo sem
+     * gravação não acumula crédito para as gravações seguintes. Em caso de
+     * interrupção, a espera termina, e a interrupção é mantida para a próxima
+     * gravação no canal do arquivo.
+     * @param length número de bytes processados.
      */
-    private void writeFileWithOneByte(File file, byte data) throws IOException {
-        
-        byte[] pattern = new byte[BUFFER_SIZE];
+    private void throttle(long length) {
         
-        long loops = file.length() / BUFFER_SIZE;
+        if (maxBytesPerSecond <= 0) return;
         
-        int rest = (int)(file.length() % BUFFER_SIZE);
+        long delay;
         
-        Arrays.fill(pattern, data);
+        synchronized (throttleLock) {
+            long now = System.nanoTime();
+            throttleTime = Math.max(throttleTime, now) + (length * 1_000_000_000L / maxBytesPerSecond);
+            delay = throttleTime - now;
+        }
         
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-            
-            for (long i = 1; i <= loops; i++) {
-                raf.write(pattern);                
-                notify(pattern.length);
-            }
-            
-            if (rest != 0) {
-                raf.write(pattern, 0, rest);
-                notify(rest);                       
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
-            
         }
         
     }
-    
-    
-    /**
-     * Sobrescrever o arquivo com bytes pseudo-aleatórios.
-     * @param file arquivo a ser sobrescrito.
-     * @param passes número de passos.
-     * @throws IOException 
-     */
-    private void writeFileWithRandomBytes(File file, int passes) throws IOException {
-        
-        byte[] pattern = new byte[BUFFER_SIZE];
 
-        long loops = file.length() / BUFFER_SIZE;
 
-        int rest = (int) (file.length() % BUFFER_SIZE);
-
-        SecureRandom secureRandom = new SecureRandom();
-        
-        for (int i = 0; i < passes; i++) {
-
-            try (RandomAccessFile os = new RandomAccessFile(file, "rw")) {
-
-                for (long j = 1; j <= loops; j++) {
-                    secureRandom.nextBytes(pattern);
-                    os.write(pattern);
-                    notify(pattern.length);
-                }
-
-                if (rest != 0) {
-                    secureRandom.nextBytes(pattern);
-                    os.write(pattern, 0, rest);
-                    notify(rest);
-                }
-
-            }
-        }
-        
+    /**
+     * Incluir um passo de sobrescrita com um byte específico.
+     * @param passes lista dos passos.
+     * @param data byte a sobrescrever o arquivo.
+     */
+    private void addOneBytePass(List<byte[]> passes, byte data) {
+        passes.add(new byte[] {data});
     }
-
+    
     
     /**
-     * Sobrescrever o arquivo com um padrão de 3 bytes.
-     * @param file arquivo a ser sobrescrito.
-     * @param data padrão de 3 bytes.
-     * @throws IOException 
+     * Incluir passos de sobrescrita com bytes pseudo-aleatórios, gerados por
+     * {@link KeystreamGenerator}.
+     * @param passes lista dos passos.
+     * @param count número de passos.
      */
-    private void writeFileWithThreeBytes(File file, byte[] data) throws IOException {
-        
-        int arrayLength = 4095;
-        
-        byte[] pattern = new byte[arrayLength];
-        
-        long loops = file.length() / arrayLength;
-        
-        int rest = (int) (file.length() % arrayLength);
-        
-        for (int i = 0; i < arrayLength; i = i + 3) {
-            pattern[i] = data[0];
-            pattern[i+1] = data[1];
-            pattern[i+2] = data[2];
-        }
-        
-        try (RandomAccessFile os = new RandomAccessFile(file, "rw")) {
-            
-            for (long i = 1; i <= loops; i++) {
-                os.write(pattern);
-                notify(pattern.length);
-            }
-            
-            if (rest != 0) {
-                os.write(pattern, 0, rest);
-                notify(rest);
-            }
-            
+    private void addRandomBytesPasses(List<byte[]> passes, int count) {
+        for (int i = 0; i < count; i++) {
+            passes.add(null);
         }
-        
     }
 
 
@@ -631,13 +692,18 @@ public final class CacheCleaner {
      * @throws IOException 
      */
     private void unNameAndDeleteFile(File file) throws IOException {
-        int fileNameLength = file.getName().length();
-        file = generateShorterFilename(file, 0);
-        while (fileNameLength > 1) {
-            file = generateShorterFilename(file, 1);
-            fileNameLength--;
+        // Os novos nomes são verificados e aplicados em etapas separadas; com
+        // sobrescritas concorrentes, duas threads poderiam escolher o mesmo
+        // nome no mesmo diretório.
+        synchronized (unNameLock) {
+            int fileNameLength = file.getName().length();
+            file = generateShorterFilename(file, 0);
+            while (fileNameLength > 1) {
+                file = generateShorterFilename(file, 1);
+                fileNameLength--;
+            }
+            file.delete();
         }
-        file.delete();
     }
 
     
@@ -699,9 +765,23 @@ public final class CacheCleaner {
      * @param length número de bytes processados.
      */
     private void notify(long length) {
+        updateProgress(processedFileBytes + length, processedTotalBytes + length);
+    }
+    
+    
+    /**
+     * Atualizar o número de bytes processados e notificar os ouvintes.
+     * @param fileBytes número de bytes processados do arquivo corrente.
+     * @param totalBytes número total de bytes processados.
+     */
+    private void updateProgress(long fileBytes, long totalBytes) {
+        
+        long length = totalBytes - processedTotalBytes;
+        
+        processedFileBytes = fileBytes;
+        processedTotalBytes = totalBytes;
         
         if (fileBytesCounter > 0) {
-            processedFileBytes += length;
             int percentage = (int)((processedFileBytes * 100) / fileBytesCounter);
             if (percentage > filePercentage) {
                 filePercentage = percentage;
@@ -713,7 +793,6 @@ public final class CacheCleaner {
         }
         
         if (totalBytesCounter > 0) {
-            processedTotalBytes += length;
             int percentage = (int)((processedTotalBytes * 100) / totalBytesCounter);
             if (percentage > totalPercentage) {
                 totalPercentage = percentage;
@@ -819,6 +898,218 @@ public final class CacheCleaner {
     }
     
     
+    /**
+     * Definir a verificação dos passos de sobrescrita. Com a verificação, cada
+     * passo é lido após a gravação e comparado com o padrão gravado, como
+     * exigido pelo método DoD 5220.22-M, e uma divergência interrompe o
+     * apagamento com uma exceção, sem a exclusão do arquivo.
+     * @param verifyPasses se true, verifica cada passo.
+     * @since 2.0
+     */
+    public void setVerifyPasses(boolean verifyPasses) {
+        this.verifyPasses = verifyPasses;
+    }
+
+
+    /**
+     * Verificar se os passos de sobrescrita são verificados após a gravação.
+     * @return true, se cada passo é verificado.
+     * @since 2.0
+     */
+    public boolean isVerifyPasses() {
+        return verifyPasses;
+    }
+
+
+    /**
+     * Definir a velocidade máxima de gravação da sobrescrita, para que o
+     * apagamento em segundo plano não prejudique as demais operações em disco.
+     * @param maxBytesPerSecond velocidade em bytes por segundo; 0 para
+     * ilimitada.
+     * @since 2.0
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = Math.max(0, maxBytesPerSecond);
+    }
+
+
+    /**
+     * Obter a velocidade máxima de gravação da sobrescrita.
+     * @return velocidade em bytes por segundo; 0 para ilimitada.
+     * @since 2.0
+     */
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+
+    /**
+     * Definir o número de threads para a sobrescrita concorrente de arquivos.
+     * Com uma única thread, os arquivos são sobrescritos um a um.
+     * @param wipeThreads número de threads.
+     * @since 2.0
+     */
+    public void setWipeThreads(int wipeThreads) {
+        this.wipeThreads = Math.max(1, wipeThreads);
+    }
+
+
+    /**
+     * Obter o número de threads para a sobrescrita concorrente de arquivos.
+     * @return número de threads.
+     * @since 2.0
+     */
+    public int getWipeThreads() {
+        return wipeThreads;
+    }
+    
+    
+    /**
+     * Definir o limite de sobrescritas simultâneas no volume (sistema de
+     * arquivos) que contém o arquivo ou diretório informado. Um disco rígido,
+     * por exemplo, deve ser limitado a uma sobrescrita de cada vez, enquanto
+     * um SSD aceita várias. Os volumes sem limite definido são sobrescritos
+     * um arquivo de cada vez ({@value #DEFAULT_VOLUME_THREADS}), pois o tipo
+     * do disco não pode ser identificado de forma portável, e sobrescritas
+     * concorrentes em um disco rígido são mais lentas que as sequenciais. O
+     * limite vale apenas para esta instância; ver também
+     * {@link #setConfiguredVolumeThreads(File, int)}.
+     * @param volume arquivo ou diretório do volume.
+     * @param threads limite de sobrescritas simultâneas.
+     * @throws IOException
+     * @since 2.0
+     */
+    public void setVolumeThreads(File volume, int threads) throws IOException {
+        volumeThreads.put(Files.getFileStore(volume.toPath()), Math.max(1, threads));
+    }
+    
+    
+    /**
+     * Obter o limite de sobrescritas simultâneas no volume que contém o
+     * arquivo ou diretório informado. Na sobrescrita, o limite também não
+     * ultrapassa o número de threads de sobrescrita.
+     * @param volume arquivo ou diretório do volume.
+     * @return limite de sobrescritas simultâneas.
+     * @throws IOException
+     * @since 2.0
+     */
+    public int getVolumeThreads(File volume) throws IOException {
+        return volumeThreads.getOrDefault(Files.getFileStore(volume.toPath()),
+        DEFAULT_VOLUME_THREADS);
+    }
+    
+    
+    /**
+     * Obter o limite de sobrescritas simultâneas no volume, limitado ao
+     * número de threads de sobrescrita.
+     * @param store volume, ou null se desconhecido.
+     * @return limite de sobrescritas simultâneas.
+     */
+    private int getVolumeThreads(FileStore store) {
+        return Math.min(wipeThreads, volumeThreads.getOrDefault(store, DEFAULT_VOLUME_THREADS));
+    }
+    
+    
+    /**
+     * Aplicar os limites por volume gravados na configuração. Os volumes não
+     * disponíveis no momento são ignorados.
+     */
+    private void loadVolumeThreads() {
+        for (Map.Entry<File, Integer> entry : getConfiguredVolumeThreads().entrySet()) {
+            try {
+                setVolumeThreads(entry.getKey(), entry.getValue());
+            } catch (IOException ex) {
+                // Volume não montado.
+            }
+        }
+    }
+    
+    
+    /**
+     * Obter os limites de sobrescritas simultâneas por volume gravados na
+     * configuração do programa, aplicados a cada nova instância da classe.
+     * @return limites, indexados por uma pasta de cada volume.
+     * @since 2.0
+     */
+    public static Map<File, Integer> getConfiguredVolumeThreads() {
+        
+        Map<File, Integer> map = new LinkedHashMap<>();
+        
+        // Uma linha por volume: limite, tabulação e pasta do volume.
+        for (String line : Config.getString(VOLUME_THREADS_KEY, "").split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                try {
+                    map.put(new File(line.substring(tab + 1)),
+                    Integer.parseInt(line.substring(0, tab)));
+                } catch (NumberFormatException ex) {
+                    // Linha inválida, ignorada.
+                }
+            }
+        }
+        
+        return map;
+        
+    }
+    
+    
+    /**
+     * Gravar na configuração do programa o limite de sobrescritas simultâneas
+     * no volume que contém a pasta informada. O limite substitui o gravado
+     * anteriormente para o mesmo volume, e vale para as próximas instâncias
+     * da classe, incluindo as usadas na destruição dos arquivos de origem e
+     * na sobrescrita em segundo plano ({@link WipeDaemon}).
+     * @param volume pasta do volume.
+     * @param threads limite de sobrescritas simultâneas; zero ou menos
+     * remove o limite, e o volume volta ao padrão.
+     * @throws IOException se o volume não puder ser identificado.
+     * @since 2.0
+     */
+    public static synchronized void setConfiguredVolumeThreads(File volume, int threads)
+    throws IOException {
+        
+        FileStore store = Files.getFileStore(volume.toPath());
+        
+        Map<File, Integer> map = getConfiguredVolumeThreads();
+        
+        map.keySet().removeIf(folder -> {
+            try {
+                return store.equals(Files.getFileStore(folder.toPath()));
+            } catch (IOException ex) {
+                return false;
+            }
+        });
+        
+        if (threads > 0) {
+            map.put(volume.getAbsoluteFile(), threads);
+        }
+        
+        StringBuilder value = new StringBuilder();
+        
+        for (Map.Entry<File, Integer> entry : map.entrySet()) {
+            value.append(entry.getValue()).append('\t')
+            .append(entry.getKey().getPath()).append('\n');
+        }
+        
+        Config.putString(VOLUME_THREADS_KEY, value.toString());
+        
+    }
+    
+    
+    /**
+     * Obter o volume do arquivo.
+     * @param file arquivo.
+     * @return volume, ou null se não puder ser identificado.
+     */
+    private FileStore getFileStore(File file) {
+        try {
+            return Files.getFileStore(file.toPath());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+    
+    
     /**
      * Adicionar um ouvinte de processo.
      * @param listener ouvinte de processo.
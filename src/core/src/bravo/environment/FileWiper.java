@@ -0,0 +1,290 @@
+package bravo.environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Sobrescrita de um arquivo em múltiplos passos.
+ *
+ * <br><br>
+ *
+ * O arquivo é aberto uma única vez, em um {@link FileChannel}, e cada passo
+ * grava o arquivo inteiro a partir de um buffer direto de
+ * {@value #BUFFER_SIZE} bytes, preenchido com o padrão do passo. Ao final de
+ * cada passo, os bytes são forçados para o dispositivo com
+ * {@link FileChannel#force(boolean)}; caso contrário, o cache de páginas do
+ * sistema operacional poderia combinar os passos, e apenas o último chegaria
+ * ao disco.
+ *
+ * <br><br>
+ *
+ * Opcionalmente, cada passo é verificado após a gravação: o arquivo é lido
+ * novamente pelo mesmo canal, em blocos do tamanho do buffer, e comparado com
+ * o padrão do passo ou com o fluxo de chave gerado novamente
+ * ({@link KeystreamGenerator#replay()}). A primeira divergência interrompe a
+ * sobrescrita com uma exceção. A leitura é feita após
+ * {@link FileChannel#force(boolean)}, mas pode ser atendida pelo cache do
+ * sistema operacional; a verificação confirma o conteúdo do arquivo, não a
+ * gravação na mídia. O arquivo não é mapeado em memória, pois o mapeamento só
+ * é desfeito pelo coletor de lixo e, no Windows, impede a exclusão do
+ * arquivo.
+ *
+ * <br><br>
+ *
+ * Os buffers são reaproveitados entre os arquivos, em um reservatório com até
+ * {@value #POOL_SIZE} buffers.
+ *
+ * @since 2.0
+ */
+final class FileWiper {
+
+
+    /**Tamanho do buffer de escrita (4 MB).*/
+    public static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**Número máximo de buffers no reservatório.*/
+    private static final int POOL_SIZE = 4;
+
+    /**Tamanho do bloco usado no preenchimento do buffer com um padrão fixo.*/
+    private static final int TEMPLATE_SIZE = 4095;
+
+    /**Reservatório de buffers.*/
+    private static final Deque<ByteBuffer> pool = new ArrayDeque<>();
+
+    /**Destino do número de bytes gravados e verificados.*/
+    private final LongConsumer progress;
+
+    /**Verificar cada passo após a gravação.*/
+    private final boolean verify;
+
+
+    /**
+     * Constructor da classe.
+     * @param progress destino do número de bytes gravados, notificado a cada
+     * gravação, e, na verificação, do número de bytes lidos.
+     * @param verify se true, cada passo é lido e verificado após a gravação.
+     */
+    public FileWiper(LongConsumer progress, boolean verify) {
+        this.progress = progress;
+        this.verify = verify;
+    }
+
+
+    /**
+     * Sobrescrever o arquivo com os passos informados. Cada passo é um padrão
+     * de bytes repetido ao longo do arquivo (por exemplo, um único byte ou
+     * três bytes), ou null para bytes pseudo-aleatórios.
+     * @param file arquivo a ser sobrescrito.
+     * @param passes padrões dos passos, na ordem de gravação.
+     * @throws IOException erro de gravação ou, na verificação, divergência
+     * entre o arquivo e o padrão do passo.
+     */
+    public void overwrite(File file, List<byte[]> passes) throws IOException {
+
+        ByteBuffer buffer = acquire();
+
+        ByteBuffer readBuffer = (verify ? acquire() : null);
+
+        try (FileChannel channel = (verify ?
+            FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ) :
+            FileChannel.open(file.toPath(), StandardOpenOption.WRITE))) {
+
+            long length = channel.size();
+
+            for (int i = 0; i < passes.size(); i++) {
+
+                byte[] pattern = passes.get(i);
+
+                KeystreamGenerator random = (pattern == null ? new KeystreamGenerator() : null);
+
+                writePass(channel, length, buffer, pattern, random);
+
+                channel.force(false);
+
+                if (verify) {
+                    verifyPass(file, i + 1, channel, length, buffer, readBuffer, pattern,
+                    (random != null ? random.replay() : null));
+                }
+
+            }
+
+        } finally {
+            release(buffer);
+            if (readBuffer != null) {
+                release(readBuffer);
+            }
+        }
+
+    }
+
+
+    /**
+     * Gravar um passo no arquivo inteiro.
+     * @param channel canal do arquivo.
+     * @param length tamanho do arquivo.
+     * @param buffer buffer de escrita.
+     * @param pattern padrão do passo, ou null para bytes pseudo-aleatórios.
+     * @param random gerador dos bytes pseudo-aleatórios.
+     * @throws IOException
+     */
+    private void writePass(FileChannel channel, long length, ByteBuffer buffer,
+    byte[] pattern, KeystreamGenerator random) throws IOException {
+
+        // Com um padrão fixo, o buffer é preenchido uma única vez, com um
+        // tamanho múltiplo do padrão, para que o padrão continue sem
+        // interrupção de um bloco para o outro.
+        int capacity = buffer.capacity();
+
+        if (pattern != null) {
+            capacity -= capacity % pattern.length;
+            fill(buffer, pattern, capacity);
+        }
+
+        long position = 0;
+
+        while (position < length) {
+
+            int count = (int) Math.min(capacity, length - position);
+
+            buffer.clear();
+            buffer.limit(count);
+
+            if (pattern == null) {
+                random.nextBytes(buffer);
+                buffer.flip();
+            }
+
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            progress.accept(count);
+
+        }
+
+    }
+
+
+    /**
+     * Ler o arquivo inteiro e compará-lo com o passo gravado.
+     * @param file arquivo.
+     * @param pass número do passo, a partir de 1.
+     * @param channel canal do arquivo.
+     * @param length tamanho do arquivo.
+     * @param expected buffer de escrita; com um padrão fixo, ainda preenchido
+     * com o padrão do passo.
+     * @param buffer buffer de leitura.
+     * @param pattern padrão do passo, ou null para bytes pseudo-aleatórios.
+     * @param random gerador dos mesmos bytes pseudo-aleatórios gravados.
+     * @throws IOException
+     */
+    private void verifyPass(File file, int pass, FileChannel channel, long length,
+    ByteBuffer expected, ByteBuffer buffer, byte[] pattern, KeystreamGenerator random)
+    throws IOException {
+
+        int capacity = expected.capacity();
+
+        if (pattern != null) {
+            capacity -= capacity % pattern.length;
+        }
+
+        long position = 0;
+
+        while (position < length) {
+
+            int count = (int) Math.min(capacity, length - position);
+
+            buffer.clear();
+            buffer.limit(count);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Falha na verificação do passo " + pass +
+                    " do arquivo " + file.getAbsolutePath() + ": arquivo truncado.");
+                }
+            }
+
+            buffer.flip();
+
+            expected.clear();
+            expected.limit(count);
+
+            if (pattern == null) {
+                random.nextBytes(expected);
+                expected.flip();
+            }
+
+            int mismatch = buffer.mismatch(expected);
+
+            if (mismatch >= 0) {
+                throw new IOException("Falha na verificação do passo " + pass +
+                " do arquivo " + file.getAbsolutePath() + ": divergência na posição " +
+                (position + mismatch) + ".");
+            }
+
+            position += count;
+
+            progress.accept(count);
+
+        }
+
+    }
+
+
+    /**
+     * Preencher o buffer com um padrão repetido.
+     * @param buffer buffer.
+     * @param pattern padrão de bytes.
+     * @param length número de bytes a preencher.
+     */
+    private static void fill(ByteBuffer buffer, byte[] pattern, int length) {
+
+        byte[] template = new byte[TEMPLATE_SIZE - (TEMPLATE_SIZE % pattern.length)];
+
+        for (int i = 0; i < template.length; i++) {
+            template[i] = pattern[i % pattern.length];
+        }
+
+        buffer.clear();
+
+        while (buffer.position() < length) {
+            buffer.put(template, 0, Math.min(template.length, length - buffer.position()));
+        }
+
+    }
+
+
+    /**
+     * Obter um buffer do reservatório, ou alocar um novo.
+     * @return buffer direto de {@value #BUFFER_SIZE} bytes.
+     */
+    private static ByteBuffer acquire() {
+        synchronized (pool) {
+            ByteBuffer buffer = pool.pollFirst();
+            if (buffer != null) return buffer;
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+
+    /**
+     * Devolver o buffer ao reservatório.
+     * @param buffer buffer.
+     */
+    private static void release(ByteBuffer buffer) {
+        synchronized (pool) {
+            if (pool.size() < POOL_SIZE) {
+                pool.addFirst(buffer);
+            }
+        }
+    }
+
+
+}
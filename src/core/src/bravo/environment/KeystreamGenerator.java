@@ -0,0 +1,191 @@
+package bravo.environment;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Gerador de bytes pseudo-aleatórios para a sobrescrita de arquivos, baseado no
+ * algoritmo AES no modo CTR.
+ *
+ * <br><br>
+ *
+ * A chave e o contador inicial são derivados de uma semente de
+ * {@value #SEED_LENGTH} bytes, obtida de {@link SecureRandom} apenas na
+ * criação do gerador, e renovados a cada {@value #RESEED_INTERVAL} bytes
+ * gerados (SHA-512 da semente e do número da renovação). Os bytes são o
+ * fluxo de chave do AES/CTR, gerado em blocos grandes pela implementação do
+ * AES da JVM, que usa as instruções de AES do processador quando
+ * disponíveis. Desse modo, a geração é muito mais rápida que a chamada
+ * de {@link SecureRandom#nextBytes(byte[])} para cada bloco de bytes, e não
+ * limita a velocidade da sobrescrita com bytes aleatórios.
+ *
+ * <br><br>
+ *
+ * Como a sequência é determinada pela semente, ela pode ser gerada novamente
+ * desde o início com {@link #replay()}, por exemplo, para a verificação dos
+ * bytes gravados.
+ *
+ * <br><br>
+ *
+ * O gerador não é seguro para uso por várias threads ao mesmo tempo.
+ *
+ * @since 2.0
+ */
+final class KeystreamGenerator {
+
+
+    /**Número de bytes gerados entre as renovações da chave (1 GB).*/
+    public static final long RESEED_INTERVAL = 1L << 30;
+
+    /**Tamanho da semente do gerador.*/
+    public static final int SEED_LENGTH = 32;
+
+    /**Algoritmo para a geração do fluxo de chave.*/
+    private static final String ALGORITHM = "AES/CTR/NoPadding";
+
+    /**Tamanho da chave do AES.*/
+    private static final int KEY_LENGTH = 32;
+
+    /**Tamanho do contador do modo CTR.*/
+    private static final int IV_LENGTH = 16;
+
+    /**Tamanho do bloco de bytes zerados cifrados em cada etapa (64 KB).*/
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**Bytes zerados, entrada do AES/CTR, cuja saída é o fluxo de chave.*/
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(CHUNK_SIZE).asReadOnlyBuffer();
+
+    /**Semente da chave e do contador inicial.*/
+    private final byte[] seed;
+
+    /**Cifra do fluxo de chave.*/
+    private final Cipher cipher;
+
+    /**Número de bytes gerados desde a última renovação da chave.*/
+    private long generated;
+
+    /**Número de renovações da chave.*/
+    private long reseeds;
+
+
+    /**
+     * Constructor padrão. A semente é obtida de {@link SecureRandom}.
+     */
+    public KeystreamGenerator() {
+        this(newSeed());
+    }
+
+
+    /**
+     * Constructor da classe, com uma semente conhecida.
+     * @param seed semente de {@value #SEED_LENGTH} bytes.
+     */
+    private KeystreamGenerator(byte[] seed) {
+        this.seed = seed;
+        try {
+            cipher = Cipher.getInstance(ALGORITHM);
+            reseed();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Algoritmo " + ALGORITHM + " indisponível.", ex);
+        }
+    }
+
+
+    /**
+     * Obter uma nova semente de {@link SecureRandom}.
+     * @return semente.
+     */
+    private static byte[] newSeed() {
+        byte[] seed = new byte[SEED_LENGTH];
+        new SecureRandom().nextBytes(seed);
+        return seed;
+    }
+
+
+    /**
+     * Obter um novo gerador com a mesma semente, que gera a mesma sequência
+     * de bytes deste gerador desde o início.
+     * @return gerador.
+     */
+    public KeystreamGenerator replay() {
+        return new KeystreamGenerator(seed);
+    }
+
+
+    /**
+     * Renovar a chave e o contador inicial, derivados da semente e do número
+     * da renovação.
+     * @throws GeneralSecurityException
+     */
+    private void reseed() throws GeneralSecurityException {
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-512");
+        digest.update(seed);
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, reseeds++));
+
+        byte[] material = digest.digest();
+
+        cipher.init(
+            Cipher.ENCRYPT_MODE,
+            new SecretKeySpec(material, 0, KEY_LENGTH, "AES"),
+            new IvParameterSpec(material, KEY_LENGTH, IV_LENGTH)
+        );
+
+        for (int i = 0; i < material.length; i++) {
+            material[i] = 0x00;
+        }
+
+        generated = 0;
+
+    }
+
+
+    /**
+     * Preencher o array com bytes pseudo-aleatórios.
+     * @param bytes array a ser preenchido.
+     */
+    public void nextBytes(byte[] bytes) {
+        nextBytes(ByteBuffer.wrap(bytes));
+    }
+
+
+    /**
+     * Preencher os bytes restantes do buffer, da posição até o limite, com
+     * bytes pseudo-aleatórios. Ao final, a posição do buffer é o limite.
+     * @param buffer buffer a ser preenchido.
+     */
+    public void nextBytes(ByteBuffer buffer) {
+
+        try {
+
+            while (buffer.hasRemaining()) {
+
+                if (generated >= RESEED_INTERVAL) {
+                    reseed();
+                }
+
+                int length = (int) Math.min(buffer.remaining(), Math.min(CHUNK_SIZE,
+                RESEED_INTERVAL - generated));
+
+                ByteBuffer input = ZEROS.duplicate();
+                input.limit(length);
+
+                cipher.update(input, buffer);
+
+                generated += length;
+
+            }
+
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Falha na geração de bytes aleatórios.", ex);
+        }
+
+    }
+
+
+}
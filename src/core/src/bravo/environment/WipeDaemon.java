@@ -0,0 +1,748 @@
+package bravo.environment;
+
+import bravo.utils.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Serviço de apagamento de arquivos em segundo plano. Os arquivos e diretórios
+ * a serem apagados são gravados em uma fila de tarefas em disco, no diretório
+ * {@value #QUEUE_FOLDER_NAME} do diretório de cache, e apagados por uma thread
+ * de baixa prioridade, com a velocidade de gravação limitada
+ * ({@link #setMaxRate(int)}), sem bloquear a interface ou a próxima operação.
+ *
+ * <br><br>
+ *
+ * O serviço só apaga arquivos que pertencem à tarefa. Na inclusão, cada
+ * arquivo ou diretório é transferido, por uma renomeação atômica, para um
+ * diretório da própria tarefa na fila, de modo que um arquivo criado depois
+ * com o mesmo nome não é afetado. Os que não podem ser transferidos, por
+ * estarem em outro volume ou em uso, permanecem no lugar, e a tarefa grava o
+ * seu caminho e a sua identidade (chave do sistema de arquivos, datas e
+ * tamanho); no apagamento, um caminho cuja identidade não confere é ignorado.
+ * Antes da sobrescrita, um arquivo mantido no lugar é renomeado, na sua
+ * própria pasta, para um nome derivado do nome da tarefa, de modo que a
+ * tarefa o encontra na retomada mesmo após uma sobrescrita interrompida.
+ *
+ * <br><br>
+ *
+ * Cada tarefa é um arquivo com os caminhos mantidos no lugar, um por linha,
+ * gravado em um arquivo temporário, forçado para o disco e renomeado
+ * atomicamente, de modo que a fila nunca contém uma tarefa incompleta. A
+ * tarefa só é removida da fila após o apagamento de todos os arquivos: se o
+ * programa for encerrado ou interrompido durante o apagamento, a tarefa é
+ * retomada no próximo início do serviço, e os arquivos restantes são apagados.
+ * Um arquivo cuja sobrescrita já terminou, mas que ainda estava sendo
+ * renomeado, pode permanecer com um nome aleatório, mas sem o seu conteúdo.
+ * Um arquivo que não pode ser renomeado é sobrescrito no lugar; se a
+ * sobrescrita for interrompida, a identidade deixa de conferir, e o arquivo
+ * não é apagado na retomada: a tarefa permanece na fila, e o arquivo é
+ * informado em {@link #getUnwipedFiles()}.
+ *
+ * <br><br>
+ *
+ * Várias instâncias do programa podem compartilhar o diretório de cache: a
+ * fila é processada apenas pela instância que detém a trava do arquivo
+ * {@value #LOCK_FILE_NAME}, e as demais apenas incluem tarefas, processadas
+ * por essa instância, ou por elas mesmas quando a trava for liberada. Uma
+ * tarefa que falha permanece na fila e é tentada novamente no próximo início.
+ *
+ * @since 2.0
+ */
+public final class WipeDaemon {
+
+
+    /**Nome do diretório da fila de tarefas, no diretório de cache.*/
+    public static final String QUEUE_FOLDER_NAME = "wipe-queue";
+
+    /**Velocidade máxima padrão de gravação, em MB/s.*/
+    public static final int DEFAULT_MAX_RATE = 32;
+
+    /**Nome do arquivo de trava da fila.*/
+    private static final String LOCK_FILE_NAME = "queue.lock";
+
+    /**Extensão dos arquivos de tarefa.*/
+    private static final String JOB_EXTENSION = ".job";
+
+    /**Extensão dos arquivos de tarefa em gravação.*/
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**Extensão dos diretórios com os arquivos transferidos para as tarefas.*/
+    private static final String FILES_EXTENSION = ".files";
+
+    /**Extensão dos arquivos mantidos no lugar e renomeados para a tarefa.*/
+    private static final String CLAIM_EXTENSION = ".wipe";
+
+    /**Marca das linhas de arquivos cuja sobrescrita no lugar foi iniciada.*/
+    private static final char STARTED_MARK = '!';
+
+    /**Intervalo entre as verificações da fila, em milissegundos.*/
+    private static final long POLL_INTERVAL = 5000;
+
+    /**Idade mínima de uma tarefa em gravação para ser considerada interrompida, em milissegundos.*/
+    private static final long STALE_TEMP_AGE = 60 * 1000;
+
+    /**Tempo máximo de espera pelo término da thread, em milissegundos.*/
+    private static final long STOP_TIMEOUT = 10000;
+
+    /**Sinal de inclusão de tarefas, e trava da fila nesta instância.*/
+    private static final Object signal = new Object();
+
+    /**Tarefas que falharam nesta execução, não tentadas novamente.*/
+    private static final Set<String> failedJobs = new HashSet<>();
+
+    /**Arquivos que não puderam ser apagados nesta execução.*/
+    private static final Set<File> unwipedFiles = new LinkedHashSet<>();
+
+    /**Notificação dos arquivos que não puderam ser apagados.*/
+    private static volatile Consumer<List<File>> unwipedFilesHandler;
+
+    /**Gerador dos sufixos dos nomes das tarefas.*/
+    private static final SecureRandom random = new SecureRandom();
+
+    /**Velocidade máxima de gravação, em MB/s; 0 para ilimitada.*/
+    private static volatile int maxRate = DEFAULT_MAX_RATE;
+
+    /**Thread do serviço, ativa enquanto o serviço estiver em execução.*/
+    private static Thread thread;
+
+
+    private WipeDaemon() {}
+
+
+    /**
+     * Iniciar o serviço. As tarefas pendentes de execuções anteriores são
+     * retomadas.
+     */
+    public static synchronized void start() {
+
+        if (thread != null) return;
+
+        thread = new Thread(WipeDaemon::run, "bravo-wipe-daemon");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+
+    }
+
+
+    /**
+     * Encerrar o serviço. O apagamento em andamento é interrompido, e a sua
+     * tarefa permanece na fila para o próximo início.
+     */
+    public static void stop() {
+
+        Thread stopped;
+
+        synchronized (WipeDaemon.class) {
+            stopped = thread;
+            thread = null;
+        }
+
+        if (stopped == null) return;
+
+        stopped.interrupt();
+
+        try {
+            stopped.join(STOP_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+
+    /**
+     * Obter os arquivos mantidos no lugar cuja sobrescrita foi iniciada sem
+     * que o arquivo pudesse ser renomeado para a tarefa, e que, após uma
+     * interrupção, não puderam mais ser identificados. Os arquivos podem
+     * estar parcialmente sobrescritos, e devem ser apagados pelo usuário; as
+     * suas tarefas permanecem na fila.
+     * @return arquivos não apagados nesta execução.
+     */
+    public static List<File> getUnwipedFiles() {
+        synchronized (signal) {
+            return new ArrayList<>(unwipedFiles);
+        }
+    }
+
+
+    /**
+     * Definir a notificação dos arquivos que não puderam ser apagados (ver
+     * {@link #getUnwipedFiles()}). A notificação é feita pela thread do
+     * serviço, ao final de cada tarefa com esses arquivos.
+     * @param handler notificação, ou null para nenhuma.
+     */
+    public static void setUnwipedFilesHandler(Consumer<List<File>> handler) {
+        unwipedFilesHandler = handler;
+    }
+
+
+    /**
+     * Verificar se o serviço está em execução.
+     * @return true, se em execução.
+     */
+    public static synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+
+    /**
+     * Definir a velocidade máxima de gravação do serviço.
+     * @param maxRate velocidade em MB/s; 0 para ilimitada.
+     */
+    public static void setMaxRate(int maxRate) {
+
+        if (maxRate < 0) {
+            throw new IllegalArgumentException("A velocidade máxima não pode ser negativa.");
+        }
+
+        WipeDaemon.maxRate = maxRate;
+
+    }
+
+
+    /**
+     * Obter a velocidade máxima de gravação do serviço.
+     * @return velocidade em MB/s; 0 para ilimitada.
+     */
+    public static int getMaxRate() {
+        return maxRate;
+    }
+
+
+    /**
+     * Incluir arquivos e diretórios na fila de apagamento. Os arquivos e
+     * diretórios no volume do diretório de cache são transferidos para a
+     * fila, e deixam de existir nos caminhos informados; os demais são
+     * apagados apenas se não forem substituídos até o apagamento. Ao
+     * retornar, a tarefa está gravada em disco, e será executada mesmo que o
+     * programa seja encerrado antes do seu término. Os caminhos já presentes
+     * em tarefas pendentes, com a mesma identidade, não são incluídos
+     * novamente.
+     * @param filesAndFolders arquivos e diretórios a serem apagados.
+     * @throws IOException
+     */
+    public static void enqueue(List<File> filesAndFolders) throws IOException {
+
+        File queueFolder = getQueueFolder();
+
+        synchronized (signal) {
+
+            Set<String> pending = new HashSet<>();
+
+            for (File job : listJobs(queueFolder)) {
+                try {
+                    pending.addAll(readJob(job));
+                } catch (IOException ex) {
+                    // Tarefa concluída e removida durante a listagem.
+                }
+            }
+
+            String name = String.format("%016x-%08x", System.currentTimeMillis(), random.nextInt());
+
+            File filesFolder = new File(queueFolder, name + FILES_EXTENSION);
+
+            List<String> lines = new ArrayList<>();
+
+            int moved = 0;
+
+            for (File file : filesAndFolders) {
+
+                if (moveToQueue(file, new File(filesFolder, String.valueOf(moved)))) {
+                    moved++;
+                    continue;
+                }
+
+                String identity = getIdentity(file);
+
+                if (identity != null) {
+                    String line = identity + "\t" + file.getAbsolutePath();
+                    if (!pending.contains(line) && !lines.contains(line)) {
+                        lines.add(line);
+                    }
+                }
+
+            }
+
+            if (moved == 0) {
+                filesFolder.delete();
+                if (lines.isEmpty()) return;
+            } else {
+                FileUtils.syncDirectory(filesFolder);
+            }
+
+            writeJob(queueFolder, name, lines);
+
+            signal.notifyAll();
+
+        }
+
+    }
+
+
+    /**
+     * Transferir um arquivo ou diretório para o diretório de uma tarefa, por
+     * uma renomeação atômica. O arquivo é forçado para o disco na nova pasta.
+     * @param file arquivo ou diretório.
+     * @param target caminho no diretório da tarefa.
+     * @return true, se transferido; false, se estiver em outro volume, em uso
+     * ou não existir.
+     */
+    private static boolean moveToQueue(File file, File target) {
+        try {
+            Files.createDirectories(target.getParentFile().toPath());
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            FileUtils.syncDirectory(file);
+            FileUtils.syncDirectory(target);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Obter a identidade de um arquivo ou diretório: tipo, chave do sistema
+     * de arquivos (o inode, por exemplo) e data de criação, e, para arquivos,
+     * tamanho e data de modificação. A data de modificação de um diretório
+     * não faz parte da identidade, pois muda com o apagamento do seu conteúdo.
+     * @param file arquivo ou diretório.
+     * @return identidade, ou null se o arquivo não existir.
+     */
+    private static String getIdentity(File file) {
+
+        BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+            return null;
+        }
+
+        String identity = (attributes.isDirectory() ? "D" : "F") + " " +
+        attributes.fileKey() + " " + attributes.creationTime().toMillis();
+
+        if (!attributes.isDirectory()) {
+            identity += " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis();
+        }
+
+        return identity.replace('\t', ' ').replace('\n', ' ');
+
+    }
+
+
+    /**
+     * Gravar uma tarefa na fila: a tarefa é gravada em um arquivo temporário,
+     * forçado para o disco, e renomeada atomicamente.
+     * @param queueFolder diretório da fila.
+     * @param name nome da tarefa.
+     * @param lines caminhos mantidos no lugar, com a sua identidade.
+     * @throws IOException
+     */
+    private static void writeJob(File queueFolder, String name, List<String> lines)
+    throws IOException {
+
+        File temp = new File(queueFolder, name + TEMP_EXTENSION);
+        File job = new File(queueFolder, name + JOB_EXTENSION);
+
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(String.join("\n", lines));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        Files.move(temp.toPath(), job.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        FileUtils.syncDirectory(job);
+
+    }
+
+
+    /**
+     * Verificar se um diretório do cache é o diretório da fila de tarefas.
+     * @param folder diretório.
+     * @return true, se for o diretório da fila.
+     */
+    public static boolean isQueueFolder(File folder) {
+        return folder.getName().equals(QUEUE_FOLDER_NAME) &&
+        folder.getParentFile() != null &&
+        folder.getParentFile().equals(RootFolder.getCacheFolder());
+    }
+
+
+    /**
+     * Laço da thread do serviço: obter a trava da fila e executar as tarefas
+     * em ordem de inclusão, aguardando novas tarefas quando a fila estiver
+     * vazia.
+     */
+    private static void run() {
+
+        FileChannel lockChannel = null;
+        FileLock lock = null;
+
+        try {
+
+            while (!Thread.currentThread().isInterrupted()) {
+
+                if (lock == null) {
+                    try {
+                        File queueFolder = getQueueFolder();
+                        lockChannel = FileChannel.open(
+                            new File(queueFolder, LOCK_FILE_NAME).toPath(),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE
+                        );
+                        lock = lockChannel.tryLock();
+                        if (lock == null) {
+                            lockChannel.close();
+                            lockChannel = null;
+                        } else {
+                            deleteTempFiles(queueFolder);
+                            recoverFilesFolders(queueFolder);
+                        }
+                    } catch (IOException ex) {
+                        lock = null;
+                    }
+                }
+
+                File job = (lock != null ? nextJob() : null);
+
+                if (job != null) {
+                    runJob(job);
+                } else {
+                    synchronized (signal) {
+                        signal.wait(POLL_INTERVAL);
+                    }
+                }
+
+            }
+
+        } catch (InterruptedException ex) {
+        } finally {
+            try {
+                if (lock != null) lock.release();
+                if (lockChannel != null) lockChannel.close();
+            } catch (IOException ex) {
+            }
+        }
+
+    }
+
+
+    /**
+     * Executar uma tarefa: apagar o diretório com os arquivos transferidos
+     * para a tarefa e os caminhos mantidos no lugar cuja identidade confere.
+     * Antes da sobrescrita, cada caminho mantido no lugar é renomeado para o
+     * seu nome na tarefa ({@link #getClaimFile(File, File, int)}); os que não
+     * podem ser renomeados são marcados na tarefa como iniciados, antes da
+     * sobrescrita no lugar. Os caminhos que não existem mais, ou que foram
+     * substituídos antes do início da sobrescrita, são ignorados.
+     *
+     * <br><br>
+     *
+     * Ao final, a tarefa é removida da fila, exceto se um caminho iniciado
+     * não puder mais ser identificado: nesse caso, a tarefa permanece na fila
+     * apenas com esses caminhos, e eles são informados em
+     * {@link #getUnwipedFiles()}. Caso o apagamento falhe, a tarefa permanece
+     * na fila, mas não é tentada novamente nesta execução.
+     * @param job arquivo da tarefa.
+     */
+    private static void runJob(File job) {
+
+        try {
+
+            List<File> filesAndFolders = new ArrayList<>();
+
+            File filesFolder = getFilesFolder(job);
+
+            if (filesFolder.exists()) {
+                filesAndFolders.add(filesFolder);
+            }
+
+            List<String> lines = readJob(job);
+            List<String> unwiped = new ArrayList<>();
+            boolean started = false;
+
+            for (int i = 0; i < lines.size(); i++) {
+
+                String line = lines.get(i);
+                int tab = line.indexOf('\t');
+                if (tab < 0) continue;
+
+                boolean marked = line.charAt(0) == STARTED_MARK;
+                String identity = line.substring(marked ? 1 : 0, tab);
+                File file = new File(line.substring(tab + 1));
+                File claim = getClaimFile(job, file, i);
+
+                if (claim.exists()) {
+                    // Renomeado em uma execução anterior.
+                    filesAndFolders.add(claim);
+                } else if (identity.equals(getIdentity(file))) {
+                    if (claim(file, claim)) {
+                        filesAndFolders.add(claim);
+                    } else {
+                        // Os nomes na tarefa dependem da posição das linhas,
+                        // que é mantida.
+                        filesAndFolders.add(file);
+                        lines.set(i, STARTED_MARK + identity + "\t" + file.getPath());
+                        started |= !marked;
+                    }
+                } else if (marked && file.exists()) {
+                    unwiped.add(line);
+                }
+
+            }
+
+            if (started) {
+                writeJob(job.getParentFile(), getJobName(job), lines);
+            }
+
+            if (!filesAndFolders.isEmpty()) {
+                CacheCleaner cacheCleaner = new CacheCleaner();
+                cacheCleaner.setWipeThreads(1);
+                cacheCleaner.setMaxBytesPerSecond(maxRate * 1024L * 1024L);
+                cacheCleaner.cleanExternalFiles(filesAndFolders);
+            }
+
+            if (unwiped.isEmpty()) {
+                Files.deleteIfExists(job.toPath());
+            } else {
+                writeJob(job.getParentFile(), getJobName(job), unwiped);
+                List<File> files = new ArrayList<>();
+                for (String line : unwiped) {
+                    files.add(new File(line.substring(line.indexOf('\t') + 1)));
+                }
+                synchronized (signal) {
+                    failedJobs.add(job.getName());
+                    unwipedFiles.addAll(files);
+                }
+                Consumer<List<File>> handler = unwipedFilesHandler;
+                if (handler != null) {
+                    handler.accept(files);
+                }
+            }
+
+        } catch (Exception ex) {
+
+            if (!Thread.currentThread().isInterrupted()) {
+                synchronized (signal) {
+                    failedJobs.add(job.getName());
+                }
+            }
+
+        }
+
+    }
+
+
+    /**
+     * Obter o nome, na tarefa, de um caminho mantido no lugar: o nome da
+     * tarefa e a posição do caminho na tarefa, na mesma pasta do caminho.
+     * @param job arquivo da tarefa.
+     * @param file caminho mantido no lugar.
+     * @param index posição do caminho na tarefa.
+     * @return caminho renomeado.
+     */
+    private static File getClaimFile(File job, File file, int index) {
+        return new File(file.getAbsoluteFile().getParentFile(),
+        getJobName(job) + "-" + index + CLAIM_EXTENSION);
+    }
+
+
+    /**
+     * Renomear um caminho mantido no lugar para o seu nome na tarefa. A pasta
+     * é forçada para o disco, para que a renomeação não se perca caso a
+     * sobrescrita seja interrompida.
+     * @param file caminho mantido no lugar.
+     * @param claim nome na tarefa.
+     * @return true, se renomeado; false, se o arquivo estiver em uso.
+     */
+    private static boolean claim(File file, File claim) {
+        try {
+            Files.move(file.toPath(), claim.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            FileUtils.syncDirectory(claim);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Obter a próxima tarefa da fila, em ordem de inclusão.
+     * @return arquivo da tarefa, ou null se a fila estiver vazia.
+     */
+    private static File nextJob() {
+        synchronized (signal) {
+            for (File job : listJobs(getQueueFolderOrNull())) {
+                if (!failedJobs.contains(job.getName())) {
+                    return job;
+                }
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Listar as tarefas da fila, em ordem de inclusão.
+     * @param queueFolder diretório da fila.
+     * @return arquivos das tarefas.
+     */
+    private static List<File> listJobs(File queueFolder) {
+
+        if (queueFolder == null) return new ArrayList<>();
+
+        File[] jobs = queueFolder.listFiles(
+            file -> file.isFile() && file.getName().endsWith(JOB_EXTENSION)
+        );
+
+        if (jobs == null) return new ArrayList<>();
+
+        Arrays.sort(jobs);
+
+        return new ArrayList<>(Arrays.asList(jobs));
+
+    }
+
+
+    /**
+     * Ler as linhas de uma tarefa: a identidade, uma tabulação e o caminho de
+     * cada arquivo ou diretório mantido no lugar.
+     * @param job arquivo da tarefa.
+     * @return linhas da tarefa.
+     * @throws IOException
+     */
+    private static List<String> readJob(File job) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(job.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+
+    /**
+     * Obter o diretório com os arquivos transferidos para uma tarefa.
+     * @param job arquivo da tarefa.
+     * @return diretório da tarefa, que pode não existir.
+     */
+    private static File getFilesFolder(File job) {
+        return new File(job.getParentFile(), getJobName(job) + FILES_EXTENSION);
+    }
+
+
+    /**
+     * Obter o nome de uma tarefa, sem a extensão.
+     * @param job arquivo da tarefa.
+     * @return nome da tarefa.
+     */
+    private static String getJobName(File job) {
+        String name = job.getName();
+        return name.substring(0, name.length() - JOB_EXTENSION.length());
+    }
+
+
+    /**
+     * Remover as tarefas cuja gravação foi interrompida, que nunca foram
+     * incluídas na fila. As tarefas em gravação recente são mantidas, pois
+     * podem estar sendo incluídas por outra instância.
+     * @param queueFolder diretório da fila.
+     */
+    private static void deleteTempFiles(File queueFolder) {
+        long limit = System.currentTimeMillis() - STALE_TEMP_AGE;
+        File[] files = queueFolder.listFiles(
+            file -> file.isFile() && file.getName().endsWith(TEMP_EXTENSION) &&
+            file.lastModified() < limit
+        );
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Incluir na fila os diretórios de tarefas cuja gravação foi interrompida
+     * após a transferência dos arquivos. Os arquivos já pertencem à fila, e
+     * são apagados por uma nova tarefa. Os diretórios recentes são mantidos,
+     * pois podem estar sendo preenchidos por outra instância.
+     * @param queueFolder diretório da fila.
+     */
+    private static void recoverFilesFolders(File queueFolder) {
+
+        long limit = System.currentTimeMillis() - STALE_TEMP_AGE;
+
+        File[] folders = queueFolder.listFiles(
+            file -> file.isDirectory() && file.getName().endsWith(FILES_EXTENSION) &&
+            file.lastModified() < limit
+        );
+
+        if (folders == null) return;
+
+        for (File folder : folders) {
+
+            String name = folder.getName();
+            name = name.substring(0, name.length() - FILES_EXTENSION.length());
+
+            if (!new File(queueFolder, name + JOB_EXTENSION).exists() &&
+            !new File(queueFolder, name + TEMP_EXTENSION).exists()) {
+                try {
+                    writeJob(queueFolder, name, new ArrayList<>());
+                } catch (IOException ex) {
+                    // Tentado novamente no próximo início.
+                }
+            }
+
+        }
+
+    }
+
+
+    /**
+     * Obter o diretório da fila de tarefas, criando-o se necessário.
+     * @return diretório da fila.
+     * @throws IOException
+     */
+    private static File getQueueFolder() throws IOException {
+        File queueFolder = new File(RootFolder.getCacheFolder(), QUEUE_FOLDER_NAME);
+        Files.createDirectories(queueFolder.toPath());
+        return queueFolder;
+    }
+
+
+    private static File getQueueFolderOrNull() {
+        try {
+            return getQueueFolder();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+
+}
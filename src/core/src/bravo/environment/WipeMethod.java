@@ -52,7 +52,8 @@ public enum WipeMethod {
      * O padrão define a implementação de três passagens de substituição seguras
      * com verificação ao final de cada passagem. A passagem 1 envolve a substituição
      * com zeros binários, a passagem 2 com uns binários e a passagem 3 com um 
-     * padrão de bits aleatório.
+     * padrão de bits aleatório. A verificação é habilitada com
+     * {@link CacheCleaner#setVerifyPasses(boolean)}.
      * 
      * <br><br>
      * 
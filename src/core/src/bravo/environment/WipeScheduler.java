@@ -0,0 +1,311 @@
+package bravo.environment;
+
+import java.nio.file.FileStore;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Escalonador da sobrescrita concorrente de arquivos. As sobrescritas são
+ * executadas por um número limitado de threads de trabalho, e, além deste
+ * limite geral, cada volume (sistema de arquivos) tem o seu limite de
+ * sobrescritas simultâneas, de modo que um disco rígido, por exemplo, possa
+ * ser sobrescrito um arquivo de cada vez, enquanto um SSD recebe várias
+ * sobrescritas ao mesmo tempo.
+ *
+ * <br><br>
+ *
+ * Como no pipeline de extração, as threads de trabalho não notificam os
+ * ouvintes: cada arquivo apenas acumula o número de bytes gravados, que a
+ * thread consumidora lê periodicamente, acompanhando os arquivos na ordem em
+ * que foram submetidos.
+ *
+ * @since 2.0
+ */
+final class WipeScheduler implements AutoCloseable {
+
+
+    /**Número máximo de arquivos em trânsito por thread de trabalho.*/
+    private static final int FILES_PER_THREAD = 4;
+
+    /**Threads de trabalho para a sobrescrita.*/
+    private final ExecutorService executor;
+
+    /**Número máximo de arquivos em trânsito.*/
+    private final int maxFiles;
+
+    /**Limite de sobrescritas simultâneas de cada volume.*/
+    private final ToIntFunction<FileStore> volumeLimit;
+
+    /**Volumes dos arquivos submetidos.*/
+    private final Map<FileStore, Volume> volumes;
+
+    /**Arquivos submetidos e ainda não consumidos, na ordem de submissão.*/
+    private final Deque<Wipe> queue;
+
+    /**Número total de bytes gravados por todos os arquivos.*/
+    private final AtomicLong processedBytes;
+
+    /**Sinaliza o abortamento das sobrescritas.*/
+    private volatile boolean aborted;
+
+
+    /**
+     * Tarefa de sobrescrita de um arquivo.
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        /**
+         * Sobrescrever o arquivo.
+         * @param progress destino do número de bytes gravados.
+         * @throws Exception
+         */
+        void run(LongConsumer progress) throws Exception;
+
+    }
+
+
+    /**
+     * Constructor da classe.
+     * @param threads número de threads de trabalho.
+     * @param volumeLimit limite de sobrescritas simultâneas de um volume.
+     */
+    public WipeScheduler(int threads, ToIntFunction<FileStore> volumeLimit) {
+        this.executor = Executors.newFixedThreadPool(
+            Math.max(1, threads),
+            runnable -> {
+                Thread thread = new Thread(runnable, "bravo-wipe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.maxFiles = Math.max(1, threads) * FILES_PER_THREAD;
+        this.volumeLimit = volumeLimit;
+        this.volumes = new HashMap<>();
+        this.queue = new ArrayDeque<>();
+        this.processedBytes = new AtomicLong();
+    }
+
+
+    /**
+     * Verificar se um novo arquivo pode ser submetido.
+     * @return true, se o número de arquivos em trânsito está abaixo do limite.
+     */
+    public boolean hasRoom() {
+        return queue.size() < maxFiles;
+    }
+
+
+    /**
+     * Submeter a sobrescrita de um arquivo. A sobrescrita é iniciada assim que
+     * houver uma thread de trabalho livre e o volume estiver abaixo do seu
+     * limite.
+     * @param task tarefa de sobrescrita.
+     * @param store volume do arquivo, ou null se desconhecido.
+     * @param length número de bytes a serem gravados.
+     */
+    public void submit(Task task, FileStore store, long length) {
+        Wipe wipe = new Wipe(task, length);
+        queue.addLast(wipe);
+        synchronized (volumes) {
+            Volume volume = volumes.computeIfAbsent(store,
+                key -> new Volume(Math.max(1, volumeLimit.applyAsInt(key))));
+            wipe.volume = volume;
+            volume.pending.addLast(wipe);
+            dispatch(volume);
+        }
+    }
+
+
+    /**
+     * Iniciar as sobrescritas pendentes do volume, até o seu limite.
+     * @param volume volume.
+     */
+    private void dispatch(Volume volume) {
+        synchronized (volumes) {
+            while (!aborted && volume.running < volume.limit && !volume.pending.isEmpty()) {
+                volume.running++;
+                executor.execute(volume.pending.pollFirst().future);
+            }
+        }
+    }
+
+
+    /**
+     * Retirar o próximo arquivo do escalonador, na ordem de submissão.
+     * @return sobrescrita do arquivo, ou null se não houver arquivos em
+     * trânsito.
+     */
+    public Wipe take() {
+        return queue.pollFirst();
+    }
+
+
+    /**
+     * Obter o número total de bytes gravados pelas sobrescritas.
+     * @return número de bytes.
+     */
+    public long getProcessedBytes() {
+        return processedBytes.get();
+    }
+
+
+    /**
+     * Sinalizar o abortamento das sobrescritas. As sobrescritas ainda não
+     * iniciadas não são executadas; as em andamento terminam normalmente.
+     */
+    public void abort() {
+        synchronized (volumes) {
+            aborted = true;
+        }
+    }
+
+
+    /**
+     * Encerrar o escalonador, abortando as sobrescritas ainda não iniciadas e
+     * aguardando o término das em andamento, de modo que nenhum arquivo
+     * continue a ser gravado após o retorno.
+     */
+    @Override
+    public void close() {
+        abort();
+        queue.clear();
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Sobrescritas de um volume.
+     */
+    private static final class Volume {
+
+
+        /**Limite de sobrescritas simultâneas.*/
+        private final int limit;
+
+        /**Sobrescritas submetidas e ainda não iniciadas.*/
+        private final Deque<Wipe> pending;
+
+        /**Número de sobrescritas em andamento.*/
+        private int running;
+
+
+        Volume(int limit) {
+            this.limit = limit;
+            this.pending = new ArrayDeque<>();
+        }
+
+
+    }
+
+
+    /**
+     * Sobrescrita de um arquivo submetida ao escalonador.
+     */
+    public final class Wipe implements LongConsumer {
+
+
+        private final FutureTask<Void> future;
+
+        /**Número de bytes a serem gravados.*/
+        private final long length;
+
+        /**Número de bytes gravados do arquivo.*/
+        private final AtomicLong bytes;
+
+        /**Volume do arquivo.*/
+        private Volume volume;
+
+
+        private Wipe(Task task, long length) {
+            this.length = length;
+            this.bytes = new AtomicLong();
+            this.future = new FutureTask<>(() -> {
+                if (!aborted) {
+                    task.run(this);
+                }
+                return null;
+            }) {
+                @Override
+                protected void done() {
+                    synchronized (volumes) {
+                        volume.running--;
+                        dispatch(volume);
+                    }
+                }
+            };
+        }
+
+
+        /**
+         * Aguardar o término da sobrescrita.
+         * @param timeout tempo máximo de espera em milissegundos.
+         * @return true, se a sobrescrita terminou; false, se o tempo esgotou.
+         * @throws Exception erro ocorrido na sobrescrita.
+         */
+        public boolean await(long timeout) throws Exception {
+            try {
+                future.get(timeout, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException ex) {
+                return false;
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof Exception exception) throw exception;
+                if (cause instanceof Error error) throw error;
+                throw ex;
+            }
+        }
+
+
+        /**
+         * Obter o número de bytes a serem gravados no arquivo.
+         * @return número de bytes.
+         */
+        public long getLength() {
+            return length;
+        }
+
+
+        /**
+         * Obter o número de bytes gravados do arquivo.
+         * @return número de bytes.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+
+        @Override
+        public void accept(long numberOfBytes) {
+            bytes.addAndGet(numberOfBytes);
+            processedBytes.addAndGet(numberOfBytes);
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,270 @@
+package bravo.file;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.security.SecureRandom;
+
+/**
+ * Calibração dos parâmetros do algoritmo Argon2 para a máquina atual. Os
+ * parâmetros são escolhidos de modo que a derivação da chave leve próximo de um
+ * tempo alvo, sem ultrapassá-lo, e sem exceder um limite de memória.
+ *
+ * <br><br>
+ *
+ * Seguindo a recomendação da RFC 9106, a memória é priorizada sobre as
+ * iterações: o paralelismo é fixado no número de processadores, a memória é
+ * aumentada até o tempo alvo ou até o limite, e só então, se ainda houver
+ * tempo, o número de iterações é aumentado. O tempo é medido com
+ * {@link Argon2Hash}, e cresce de forma aproximadamente linear com a memória e
+ * com as iterações, o que permite extrapolar a partir de poucas medições.
+ *
+ * @since 2.0
+ */
+public final class Argon2Calibrator {
+
+
+    /**Tempo alvo padrão em milissegundos.*/
+    public static final long DEFAULT_TARGET_TIME = 750;
+
+    /**Memória mínima em KB.*/
+    private static final int MIN_MEMORY = 1024;
+
+    /**Limite de memória padrão máximo em KB (1 GB).*/
+    private static final int MAX_DEFAULT_MEMORY = 1024 * 1024;
+
+    /**Memória da primeira medição em KB.*/
+    private static final int INITIAL_MEMORY = 8 * 1024;
+
+    /**Granularidade da memória em KB.*/
+    private static final int MEMORY_STEP = 1024;
+
+    /**Número máximo de faixas.*/
+    private static final int MAX_PARALLELISM = 16;
+
+    /**Número máximo de medições de ajuste.*/
+    private static final int MAX_ADJUSTMENTS = 4;
+
+    /**Tamanho do hash nas medições, o mesmo da chave do arquivo.*/
+    private static final int OUTPUT_LENGTH = 32;
+
+    /**Tempo alvo em milissegundos.*/
+    private final long targetTime;
+
+    /**Limite de memória em KB.*/
+    private final int maxMemory;
+
+    /**Número de faixas.*/
+    private final int parallelism;
+
+    /**Tempo medido com os parâmetros da última calibração.*/
+    private long measuredTime;
+
+
+    /**
+     * Constructor da classe. O paralelismo é o número de processadores
+     * disponíveis.
+     * @param targetTime tempo alvo da derivação da chave em milissegundos.
+     * @param maxMemory limite de memória em KB.
+     */
+    public Argon2Calibrator(long targetTime, int maxMemory) {
+        this(targetTime, maxMemory, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Constructor da classe.
+     * @param targetTime tempo alvo da derivação da chave em milissegundos.
+     * @param maxMemory limite de memória em KB.
+     * @param parallelism número de faixas.
+     */
+    public Argon2Calibrator(long targetTime, int maxMemory, int parallelism) {
+
+        if (targetTime <= 0) {
+            throw new IllegalArgumentException("O tempo alvo deve ser maior que zero.");
+        }
+
+        if (maxMemory < MIN_MEMORY) {
+            throw new IllegalArgumentException("O limite de memória deve ser de ao menos " +
+            MIN_MEMORY + " KB.");
+        }
+
+        this.targetTime = targetTime;
+        this.maxMemory = maxMemory;
+        this.parallelism = Math.max(1, Math.min(parallelism, MAX_PARALLELISM));
+
+    }
+
+
+    /**
+     * Obter o limite de memória padrão, em KB: um quarto da memória física do
+     * computador, limitado a {@value #MAX_DEFAULT_MEMORY} KB. A memória do
+     * Argon2 não fica no heap, mas em buffers diretos de até 256 MB (ver
+     * {@link Argon2Memory}), alocados separadamente e devolvidos ao sistema
+     * ao final da derivação; o limite também não ultrapassa a metade do limite
+     * de memória direta da JVM ({@code -XX:MaxDirectMemorySize}, por padrão
+     * igual à memória máxima do heap), para que a calibração não esgote a
+     * memória direta usada pelo restante do programa.
+     * @return limite de memória em KB.
+     */
+    public static int getDefaultMaxMemory() {
+        long memory = MAX_DEFAULT_MEMORY;
+        long physical = getPhysicalMemory();
+        if (physical > 0) {
+            memory = Math.min(memory, physical / 4 / 1024);
+        }
+        memory = Math.min(memory, getMaxDirectMemory() / 2 / 1024);
+        return (int) Math.max(MIN_MEMORY, memory);
+    }
+
+
+    /**
+     * Obter a memória física do computador.
+     * @return memória em bytes, ou 0 se não disponível.
+     */
+    private static long getPhysicalMemory() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof
+        com.sun.management.OperatingSystemMXBean bean) {
+            return bean.getTotalMemorySize();
+        }
+        return 0;
+    }
+
+
+    /**
+     * Obter o limite de memória direta da JVM.
+     * @return memória em bytes.
+     */
+    private static long getMaxDirectMemory() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(
+                HotSpotDiagnosticMXBean.class
+            );
+            long value = Long.parseLong(bean.getVMOption("MaxDirectMemorySize").getValue());
+            if (value > 0) return value;
+        } catch (RuntimeException ex) {
+            // Opção não disponível nesta JVM: vale o padrão.
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+
+    /**
+     * Calibrar os parâmetros. A chamada leva algumas vezes o tempo alvo, pois
+     * cada ajuste é medido. Durante a calibração, a memória do Argon2 é
+     * reaproveitada entre as medições (ver {@link Argon2Memory#setPoolLimit(int)}).
+     * @return parâmetros para o algoritmo Argon2.
+     */
+    public Argon2Params calibrate() {
+
+        int poolLimit = Argon2Memory.getPoolLimit();
+
+        Argon2Memory.setPoolLimit(Math.max(poolLimit, maxMemory));
+
+        try {
+            return calibrateParams();
+        } finally {
+            Argon2Memory.setPoolLimit(poolLimit);
+        }
+
+    }
+
+
+    /**
+     * Calibrar os parâmetros, medindo a derivação com memórias crescentes.
+     * @return parâmetros para o algoritmo Argon2.
+     */
+    private Argon2Params calibrateParams() {
+
+        // Aquecimento do JIT, para que a primeira medição não seja
+        // superestimada.
+        measure(1, MIN_MEMORY);
+
+        int memory = Math.min(INITIAL_MEMORY, maxMemory);
+        long time = measure(1, memory);
+
+        // Memória: extrapolação linear, corrigida a cada medição.
+        for (int i = 0; i < MAX_ADJUSTMENTS && (time > targetTime || memory < maxMemory); i++) {
+
+            int next = getMemory((double) memory * targetTime / Math.max(1, time));
+
+            if (next == memory) break;
+
+            memory = next;
+            time = measure(1, memory);
+
+        }
+
+        while (time > targetTime && memory > MIN_MEMORY) {
+            memory = getMemory(memory * 3 / 4);
+            time = measure(1, memory);
+        }
+
+        // Iterações: apenas se a memória atingiu o limite.
+        int iterations = 1;
+
+        if (memory == maxMemory && time < targetTime) {
+
+            iterations = (int) Math.max(1, targetTime / Math.max(1, time));
+
+            if (iterations > 1) {
+                long iterationsTime = measure(iterations, memory);
+                while (iterations > 1 && iterationsTime > targetTime) {
+                    iterations--;
+                    iterationsTime = time * iterations;
+                }
+                time = iterationsTime;
+            }
+
+        }
+
+        measuredTime = time;
+
+        return new Argon2Params(iterations, memory, parallelism);
+
+    }
+
+
+    /**
+     * Obter o tempo da derivação da chave com os parâmetros da última
+     * calibração.
+     * @return tempo em milissegundos.
+     */
+    public long getMeasuredTime() {
+        return measuredTime;
+    }
+
+
+    /**
+     * Arredondar a memória para baixo na granularidade, dentro dos limites.
+     */
+    private int getMemory(double memory) {
+        long rounded = (long) (memory / MEMORY_STEP) * MEMORY_STEP;
+        return (int) Math.max(MIN_MEMORY, Math.min(rounded, maxMemory));
+    }
+
+
+    /**
+     * Medir o tempo da derivação de uma chave.
+     * @param iterations número de iterações.
+     * @param memory memória em KB.
+     * @return tempo em milissegundos.
+     */
+    private long measure(int iterations, int memory) {
+
+        SecureRandom random = new SecureRandom();
+        byte[] password = new byte[16];
+        byte[] salt = new byte[16];
+        random.nextBytes(password);
+        random.nextBytes(salt);
+
+        long start = System.nanoTime();
+
+        new Argon2Hash().getBytes(password, salt, iterations, memory, parallelism,
+        OUTPUT_LENGTH);
+
+        return (System.nanoTime() - start) / 1_000_000;
+
+    }
+
+
+}
@@ -0,0 +1,683 @@
+package bravo.file;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+
+/**
+ * Implementação do algoritmo Argon2id (versão 1.3, RFC 9106) em que as faixas
+ * (lanes) da memória são preenchidas concorrentemente.
+ *
+ * <br><br>
+ *
+ * A memória é dividida em tantas faixas quanto o parâmetro de paralelismo, e
+ * cada faixa em quatro segmentos (slices). Um bloco só referencia blocos da
+ * própria faixa ou de segmentos já concluídos das demais faixas, de modo que os
+ * segmentos de um mesmo slice podem ser preenchidos ao mesmo tempo, com uma
+ * sincronização ao final de cada slice. O gerador do BouncyCastle preenche as
+ * faixas uma após a outra, e o custo cresce com o paralelismo mesmo com
+ * processadores livres; aqui, os segmentos são distribuídos entre até
+ * {@code min(paralelismo, processadores)} threads.
+ *
+ * <br><br>
+ *
+ * O resultado é idêntico, bit a bit, ao do {@code Argon2BytesGenerator} do
+ * BouncyCastle com os mesmos parâmetros (sem chave secreta e sem dados
+ * associados), inclusive no ajuste da memória para um múltiplo de
+ * {@code 4 * paralelismo} blocos. As funções Blake2b são as do BouncyCastle.
+ *
+ * @since 2.0
+ */
+final class Argon2Engine {
+
+
+    /**Tamanho de um bloco em bytes.*/
+    private static final int BLOCK_SIZE = Argon2Memory.BLOCK_SIZE;
+
+    /**Tamanho de um bloco em palavras de 64 bits.*/
+    private static final int QWORDS_IN_BLOCK = BLOCK_SIZE / Long.BYTES;
+
+    /**Número de endereços gerados por bloco de endereços.*/
+    private static final int ADDRESSES_IN_BLOCK = 128;
+
+    /**Número de segmentos por faixa.*/
+    private static final int SYNC_POINTS = 4;
+
+    /**Tamanho do hash inicial (H0) em bytes.*/
+    private static final int PREHASH_DIGEST_LENGTH = 64;
+
+    /**Tamanho do hash inicial acrescido do número do bloco e da faixa.*/
+    private static final int PREHASH_SEED_LENGTH = PREHASH_DIGEST_LENGTH + 8;
+
+    /**Versão do algoritmo (0x13).*/
+    private static final int VERSION = 0x13;
+
+    /**Tipo Argon2id.*/
+    private static final int TYPE_ID = 2;
+
+    private static final long M32L = 0xFFFFFFFFL;
+
+    /**Número de iterações.*/
+    private final int iterations;
+
+    /**Memória solicitada em blocos de 1 KB.*/
+    private final int memory;
+
+    /**Número de faixas.*/
+    private final int lanes;
+
+    /**Número de threads de trabalho.*/
+    private final int threads;
+
+    /**Número de blocos por segmento.*/
+    private final int segmentLength;
+
+    /**Número de blocos por faixa.*/
+    private final int laneLength;
+
+    /**Memória de blocos, fora do heap, durante a derivação.*/
+    private Argon2Memory blocks;
+
+
+    /**
+     * Constructor da classe.
+     * @param iterations número de iterações.
+     * @param memory memória em KB, ajustada para ao menos {@code 8 * paralelismo}.
+     * @param parallelism número de faixas.
+     * @param threads número máximo de threads de trabalho.
+     */
+    public Argon2Engine(int iterations, int memory, int parallelism, int threads) {
+
+        if (iterations < 1) {
+            throw new IllegalArgumentException("O número de iterações deve ser maior que zero.");
+        }
+
+        if (parallelism < 1 || parallelism > 0xFFFFFF) {
+            throw new IllegalArgumentException("Paralelismo inválido: " + parallelism);
+        }
+
+        this.iterations = iterations;
+        this.memory = memory;
+        this.lanes = parallelism;
+        this.threads = Math.max(1, Math.min(threads, parallelism));
+
+        int memoryBlocks = Math.max(memory, 2 * SYNC_POINTS * parallelism);
+
+        this.segmentLength = memoryBlocks / (parallelism * SYNC_POINTS);
+        this.laneLength = segmentLength * SYNC_POINTS;
+
+        if ((long) laneLength * lanes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Memória excede o limite suportado: " +
+            memory + " KB.");
+        }
+
+    }
+
+
+    /**
+     * Obter o hash a partir dos bytes de entrada.
+     * @param password bytes de entrada.
+     * @param salt bytes do salt.
+     * @param outputLength tamanho do hash de saída, de ao menos 4 bytes.
+     * @return hash dos bytes de entrada.
+     */
+    public byte[] hash(byte[] password, byte[] salt, int outputLength) {
+
+        if (outputLength < 4) {
+            throw new IllegalArgumentException("O hash de saída deve ter ao menos 4 bytes.");
+        }
+
+        // A memória é zerada e liberada ao final, mesmo em caso de erro.
+        try (Argon2Memory arena = Argon2Memory.allocate(laneLength * lanes)) {
+
+            blocks = arena;
+
+            initialize(password, salt, outputLength);
+            fillMemory();
+            return digest(outputLength);
+
+        } finally {
+
+            blocks = null;
+
+        }
+
+    }
+
+
+    /**
+     * Calcular o hash inicial (H0) e os dois primeiros blocos de cada faixa.
+     */
+    private void initialize(byte[] password, byte[] salt, int outputLength) {
+
+        Blake2bDigest digest = new Blake2bDigest(PREHASH_DIGEST_LENGTH * 8);
+
+        int[] values = {lanes, outputLength, memory, iterations, VERSION, TYPE_ID};
+
+        for (int value : values) {
+            updateInt(digest, value);
+        }
+
+        updateInt(digest, password.length);
+        digest.update(password, 0, password.length);
+
+        updateInt(digest, salt.length);
+        digest.update(salt, 0, salt.length);
+
+        // Chave secreta e dados associados, não utilizados.
+        updateInt(digest, 0);
+        updateInt(digest, 0);
+
+        byte[] seed = new byte[PREHASH_SEED_LENGTH];
+        digest.doFinal(seed, 0);
+
+        byte[] initialBytes = new byte[BLOCK_SIZE];
+        long[] block = new long[QWORDS_IN_BLOCK];
+
+        for (int lane = 0; lane < lanes; lane++) {
+
+            intToLittleEndian(lane, seed, PREHASH_DIGEST_LENGTH + 4);
+
+            intToLittleEndian(0, seed, PREHASH_DIGEST_LENGTH);
+            hash(seed, initialBytes);
+            fromBytes(initialBytes, block);
+            blocks.store(lane * laneLength, block);
+
+            intToLittleEndian(1, seed, PREHASH_DIGEST_LENGTH);
+            hash(seed, initialBytes);
+            fromBytes(initialBytes, block);
+            blocks.store(lane * laneLength + 1, block);
+
+        }
+
+        Arrays.fill(seed, (byte) 0);
+        Arrays.fill(initialBytes, (byte) 0);
+        Arrays.fill(block, 0);
+
+    }
+
+
+    /**
+     * Preencher a memória, slice a slice. Os segmentos de um slice são
+     * preenchidos concorrentemente quando há mais de uma thread, e o slice
+     * seguinte só começa após o término de todos.
+     */
+    private void fillMemory() {
+
+        Segment[] segments = new Segment[lanes];
+
+        for (int lane = 0; lane < lanes; lane++) {
+            segments[lane] = new Segment(lane);
+        }
+
+        if (threads == 1) {
+
+            for (int pass = 0; pass < iterations; pass++) {
+                for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                    for (Segment segment : segments) {
+                        segment.fill(pass, slice);
+                    }
+                }
+            }
+
+            return;
+
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+                Thread thread = new Thread(runnable, "bravo-argon2");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+
+        try {
+
+            List<Future<?>> futures = new ArrayList<>(lanes);
+
+            for (int pass = 0; pass < iterations; pass++) {
+
+                for (int slice = 0; slice < SYNC_POINTS; slice++) {
+
+                    final int currentPass = pass;
+                    final int currentSlice = slice;
+
+                    futures.clear();
+
+                    for (Segment segment : segments) {
+                        futures.add(executor.submit(() -> segment.fill(currentPass, currentSlice)));
+                    }
+
+                    // O término das tarefas garante a visibilidade dos blocos
+                    // preenchidos para o slice seguinte.
+                    for (Future<?> future : futures) {
+                        await(future);
+                    }
+
+                }
+
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+    }
+
+
+    private static void await(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException exception) throw exception;
+                    if (cause instanceof Error error) throw error;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Calcular o hash final a partir do XOR dos últimos blocos das faixas.
+     */
+    private byte[] digest(int outputLength) {
+
+        long[] last = new long[QWORDS_IN_BLOCK];
+        long[] block = new long[QWORDS_IN_BLOCK];
+
+        for (int lane = 0; lane < lanes; lane++) {
+            blocks.load(lane * laneLength + laneLength - 1, block);
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                last[i] ^= block[i];
+            }
+        }
+
+        byte[] lastBytes = new byte[BLOCK_SIZE];
+
+        for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+            longToLittleEndian(last[i], lastBytes, i * Long.BYTES);
+        }
+
+        byte[] result = new byte[outputLength];
+        hash(lastBytes, result);
+
+        Arrays.fill(lastBytes, (byte) 0);
+        Arrays.fill(last, 0);
+        Arrays.fill(block, 0);
+
+        return result;
+
+    }
+
+
+    /**
+     * Converter os bytes de um bloco em palavras.
+     */
+    private static void fromBytes(byte[] bytes, long[] block) {
+        for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+            block[i] = littleEndianToLong(bytes, i * Long.BYTES);
+        }
+    }
+
+
+    /**
+     * Preenchimento dos segmentos de uma faixa. Cada instância tem os seus
+     * próprios blocos de trabalho e é usada por uma thread de cada vez. Os
+     * blocos de entrada são copiados da memória para os blocos de trabalho, e
+     * o bloco calculado é copiado de volta.
+     */
+    private final class Segment {
+
+
+        private final int lane;
+
+        /**Bloco de trabalho: XOR dos blocos de entrada, permutado.*/
+        private final long[] r;
+
+        /**Bloco de trabalho: XOR dos blocos de entrada, preservado.*/
+        private final long[] z;
+
+        /**Bloco de entrada da geração de endereços.*/
+        private final long[] input;
+
+        /**Bloco de endereços.*/
+        private final long[] addresses;
+
+        /**Bloco zerado.*/
+        private final long[] zero;
+
+        /**Bloco anterior ao bloco atual.*/
+        private long[] previous;
+
+        /**Bloco de referência.*/
+        private final long[] reference;
+
+        /**Bloco atual.*/
+        private long[] current;
+
+
+        Segment(int lane) {
+            this.lane = lane;
+            this.r = new long[QWORDS_IN_BLOCK];
+            this.z = new long[QWORDS_IN_BLOCK];
+            this.input = new long[QWORDS_IN_BLOCK];
+            this.addresses = new long[QWORDS_IN_BLOCK];
+            this.zero = new long[QWORDS_IN_BLOCK];
+            this.previous = new long[QWORDS_IN_BLOCK];
+            this.reference = new long[QWORDS_IN_BLOCK];
+            this.current = new long[QWORDS_IN_BLOCK];
+        }
+
+
+        /**
+         * Preencher o segmento da faixa no slice informado.
+         * @param pass iteração.
+         * @param slice número do slice.
+         */
+        void fill(int pass, int slice) {
+
+            // Argon2id: endereçamento independente dos dados na primeira
+            // metade da primeira iteração.
+            boolean dataIndependent = (pass == 0 && slice < SYNC_POINTS / 2);
+
+            int startingIndex = (pass == 0 && slice == 0 ? 2 : 0);
+
+            if (dataIndependent) {
+                Arrays.fill(input, 0);
+                input[0] = pass;
+                input[1] = lane;
+                input[2] = slice;
+                input[3] = (long) laneLength * lanes;
+                input[4] = iterations;
+                input[5] = TYPE_ID;
+                if (startingIndex != 0) {
+                    nextAddresses();
+                }
+            }
+
+            int currentOffset = lane * laneLength + slice * segmentLength + startingIndex;
+
+            int previousOffset = (currentOffset % laneLength == 0 ?
+            currentOffset + laneLength - 1 : currentOffset - 1);
+
+            boolean withXor = (pass != 0);
+
+            blocks.load(previousOffset, previous);
+
+            for (int index = startingIndex; index < segmentLength; index++) {
+
+                long pseudoRandom;
+
+                if (dataIndependent) {
+                    if (index % ADDRESSES_IN_BLOCK == 0) {
+                        nextAddresses();
+                    }
+                    pseudoRandom = addresses[index % ADDRESSES_IN_BLOCK];
+                } else {
+                    pseudoRandom = previous[0];
+                }
+
+                int referenceLane = (int) ((pseudoRandom >>> 32) % lanes);
+
+                if (pass == 0 && slice == 0) {
+                    referenceLane = lane;
+                }
+
+                int referenceIndex = getReferenceIndex(pass, slice, index, pseudoRandom,
+                referenceLane == lane);
+
+                int referenceOffset = referenceLane * laneLength + referenceIndex;
+
+                blocks.load(referenceOffset, reference);
+
+                if (withXor) {
+                    blocks.load(currentOffset, current);
+                }
+
+                compress(previous, reference, current, withXor);
+                blocks.store(currentOffset, current);
+
+                // O bloco atual é o anterior do próximo bloco.
+                long[] block = previous;
+                previous = current;
+                current = block;
+
+                currentOffset++;
+
+            }
+
+        }
+
+
+        /**
+         * Gerar o próximo bloco de endereços.
+         */
+        private void nextAddresses() {
+            input[6]++;
+            compress(zero, input, addresses, false);
+            compress(zero, addresses, addresses, false);
+        }
+
+
+        /**
+         * Obter a posição do bloco de referência na faixa de referência.
+         */
+        private int getReferenceIndex(int pass, int slice, int index, long pseudoRandom,
+        boolean sameLane) {
+
+            long referenceAreaSize;
+
+            if (pass == 0) {
+                if (slice == 0) {
+                    referenceAreaSize = index - 1;
+                } else if (sameLane) {
+                    referenceAreaSize = slice * segmentLength + index - 1;
+                } else {
+                    referenceAreaSize = slice * segmentLength + (index == 0 ? -1 : 0);
+                }
+            } else {
+                if (sameLane) {
+                    referenceAreaSize = laneLength - segmentLength + index - 1;
+                } else {
+                    referenceAreaSize = laneLength - segmentLength + (index == 0 ? -1 : 0);
+                }
+            }
+
+            long relativePosition = pseudoRandom & M32L;
+            relativePosition = (relativePosition * relativePosition) >>> 32;
+            relativePosition = referenceAreaSize - 1 - ((referenceAreaSize * relativePosition) >>> 32);
+
+            int startPosition = 0;
+
+            if (pass != 0 && slice != SYNC_POINTS - 1) {
+                startPosition = (slice + 1) * segmentLength;
+            }
+
+            return (int) ((startPosition + relativePosition) % laneLength);
+
+        }
+
+
+        /**
+         * Função de compressão G: {@code out = P(x ^ y) ^ x ^ y}, ou, com XOR,
+         * {@code out ^= P(x ^ y) ^ x ^ y}. O bloco de saída pode ser um dos
+         * blocos de entrada.
+         */
+        private void compress(long[] x, long[] y, long[] out, boolean withXor) {
+
+            long[] r = this.r;
+            long[] z = this.z;
+
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                long value = x[i] ^ y[i];
+                r[i] = value;
+                z[i] = (withXor ? value ^ out[i] : value);
+            }
+
+            // Permutação das linhas (16 palavras consecutivas).
+            for (int i = 0; i < 8; i++) {
+                int b = 16 * i;
+                round(r, b, b + 1, b + 2, b + 3, b + 4, b + 5, b + 6, b + 7,
+                b + 8, b + 9, b + 10, b + 11, b + 12, b + 13, b + 14, b + 15);
+            }
+
+            // Permutação das colunas (pares de palavras com passo 16).
+            for (int i = 0; i < 8; i++) {
+                int b = 2 * i;
+                round(r, b, b + 1, b + 16, b + 17, b + 32, b + 33, b + 48, b + 49,
+                b + 64, b + 65, b + 80, b + 81, b + 96, b + 97, b + 112, b + 113);
+            }
+
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                out[i] = z[i] ^ r[i];
+            }
+
+        }
+
+
+    }
+
+
+    /**
+     * Rodada da permutação P sobre 16 palavras do bloco.
+     */
+    private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5,
+    int v6, int v7, int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        mix(v, v0, v4, v8, v12);
+        mix(v, v1, v5, v9, v13);
+        mix(v, v2, v6, v10, v14);
+        mix(v, v3, v7, v11, v15);
+        mix(v, v0, v5, v10, v15);
+        mix(v, v1, v6, v11, v12);
+        mix(v, v2, v7, v8, v13);
+        mix(v, v3, v4, v9, v14);
+    }
+
+
+    /**
+     * Função GB do Argon2: a função G do Blake2b com multiplicações.
+     */
+    private static void mix(long[] v, int a, int b, int c, int d) {
+        long va = v[a], vb = v[b], vc = v[c], vd = v[d];
+        va = va + vb + 2 * (va & M32L) * (vb & M32L);
+        vd = Long.rotateRight(vd ^ va, 32);
+        vc = vc + vd + 2 * (vc & M32L) * (vd & M32L);
+        vb = Long.rotateRight(vb ^ vc, 24);
+        va = va + vb + 2 * (va & M32L) * (vb & M32L);
+        vd = Long.rotateRight(vd ^ va, 16);
+        vc = vc + vd + 2 * (vc & M32L) * (vd & M32L);
+        vb = Long.rotateRight(vb ^ vc, 63);
+        v[a] = va;
+        v[b] = vb;
+        v[c] = vc;
+        v[d] = vd;
+    }
+
+
+    /**
+     * Função de hash de tamanho variável H' do Argon2.
+     * @param input bytes de entrada.
+     * @param out saída, com o tamanho desejado.
+     */
+    private static void hash(byte[] input, byte[] out) {
+
+        byte[] lengthBytes = new byte[4];
+        intToLittleEndian(out.length, lengthBytes, 0);
+
+        int blake2bLength = 64;
+
+        if (out.length <= blake2bLength) {
+
+            Blake2bDigest digest = new Blake2bDigest(out.length * 8);
+            digest.update(lengthBytes, 0, lengthBytes.length);
+            digest.update(input, 0, input.length);
+            digest.doFinal(out, 0);
+
+        } else {
+
+            Blake2bDigest digest = new Blake2bDigest(blake2bLength * 8);
+            byte[] outBuffer = new byte[blake2bLength];
+
+            // V1
+            digest.update(lengthBytes, 0, lengthBytes.length);
+            digest.update(input, 0, input.length);
+            digest.doFinal(outBuffer, 0);
+
+            int halfLength = blake2bLength / 2, outPos = halfLength;
+            System.arraycopy(outBuffer, 0, out, 0, halfLength);
+
+            int r = ((out.length + 31) / 32) - 2;
+
+            for (int i = 2; i <= r; i++, outPos += halfLength) {
+                // V2 a Vr
+                digest.update(outBuffer, 0, outBuffer.length);
+                digest.doFinal(outBuffer, 0);
+                System.arraycopy(outBuffer, 0, out, outPos, halfLength);
+            }
+
+            int lastLength = out.length - 32 * r;
+
+            // Vr+1
+            digest = new Blake2bDigest(lastLength * 8);
+            digest.update(outBuffer, 0, outBuffer.length);
+            digest.doFinal(out, outPos);
+
+            Arrays.fill(outBuffer, (byte) 0);
+
+        }
+
+    }
+
+
+    private static void updateInt(Blake2bDigest digest, int value) {
+        byte[] bytes = new byte[4];
+        intToLittleEndian(value, bytes, 0);
+        digest.update(bytes, 0, bytes.length);
+    }
+
+
+    private static void intToLittleEndian(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+
+    private static void longToLittleEndian(long value, byte[] bytes, int offset) {
+        intToLittleEndian((int) value, bytes, offset);
+        intToLittleEndian((int) (value >>> 32), bytes, offset + 4);
+    }
+
+
+    private static long littleEndianToLong(byte[] bytes, int offset) {
+        long low = (bytes[offset] & 0xFFL) | (bytes[offset + 1] & 0xFFL) << 8 |
+        (bytes[offset + 2] & 0xFFL) << 16 | (bytes[offset + 3] & 0xFFL) << 24;
+        long high = (bytes[offset + 4] & 0xFFL) | (bytes[offset + 5] & 0xFFL) << 8 |
+        (bytes[offset + 6] & 0xFFL) << 16 | (bytes[offset + 7] & 0xFFL) << 24;
+        return low | high << 32;
+    }
+
+
+}
@@ -1,8 +1,5 @@
 package bravo.file;
 
-import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
-import org.bouncycastle.crypto.params.Argon2Parameters;
-
 /**
  * Gerador de Hash baseado no algoritmo Argon2. Este algoritmo foi criado por
  * Alex Biryukov e Dmitry Khovratovich, ambos membros da Universidade de Luxemburgo
@@ -25,7 +22,9 @@ import org.bouncycastle.crypto.params.Argon2Parameters;
  * 
  * <br><br>
  * 
- * A implementação é feita pela biblioteca BouncyCastle, disponível em
+ * O preenchimento da memória é feito por {@link Argon2Engine}, que distribui
+ * as faixas entre os processadores disponíveis e produz o mesmo resultado do
+ * gerador da biblioteca BouncyCastle, disponível em
  * <a href="https://www.bouncycastle.org">https://www.bouncycastle.org</a>.
  * 
  * @since 2.0
@@ -39,33 +38,21 @@ final class Argon2Hash {
      * @param salt bytes do salt.
      * @param iterations número de iterações.
      * @param memory memória alocada.
-     * @param parallelism número de threads.
+     * @param parallelism número de faixas processadas em paralelo.
      * @param outputLength tamanho do hash de saída.
      * @return hash dos bytes de entrada.
      */
     public byte[] getBytes(byte[] input, byte[] salt, int iterations,
     int memory, int parallelism, int outputLength) {
         
-        Argon2Parameters.Builder builder = new Argon2Parameters
-        .Builder(Argon2Parameters.ARGON2_id)
-        .withVersion(Argon2Parameters.ARGON2_VERSION_13)
-        .withIterations(iterations)
-        .withMemoryAsKB(memory)
-        .withParallelism(parallelism)
-        .withSalt(salt);
-        
-        Argon2BytesGenerator generator = new Argon2BytesGenerator();
-        generator.init(builder.build());
-        
-        byte[] result = new byte[outputLength];
-        
-        generator.generateBytes(input,
-            result,
-            0,
-            result.length
+        Argon2Engine engine = new Argon2Engine(
+            iterations,
+            memory,
+            parallelism,
+            Runtime.getRuntime().availableProcessors()
         );
         
-        return result;
+        return engine.hash(input, salt, outputLength);
         
     }
     
@@ -76,7 +63,7 @@ final class Argon2Hash {
      * @param salt bytes do salt.
      * @param iterations número de iterações.
      * @param memory memória alocada.
-     * @param parallelism número de threads.
+     * @param parallelism número de faixas processadas em paralelo.
      * @param outputLength tamanho do hash de saída.
      * @return hash da senha.
      */
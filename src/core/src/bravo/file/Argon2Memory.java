@@ -0,0 +1,363 @@
+package bravo.file;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memória de blocos do Argon2 fora do heap da JVM. Os blocos ficam em buffers
+ * diretos, de modo que uma derivação com muita memória (por exemplo, 2 GB) não
+ * aloca uma matriz equivalente no heap, nem provoca coletas completas de lixo a
+ * cada arquivo aberto.
+ *
+ * <br><br>
+ *
+ * Ao ser liberada com {@link #close()}, a memória tem os blocos usados
+ * zerados, e os buffers são devolvidos ao sistema. Como a API de memória
+ * externa ({@code MemorySegment}) ainda é experimental no Java 19, os buffers
+ * são desalocados pelo seu {@code Cleaner}, por meio de
+ * {@code sun.misc.Unsafe.invokeCleaner}; caso não esteja disponível, a
+ * desalocação fica a cargo do coletor de lixo. O zeramento na liberação
+ * garante que nenhum bloco derivado da senha permaneça na memória após a
+ * derivação.
+ *
+ * <br><br>
+ *
+ * Opcionalmente ({@link #setPoolLimit(int)}), a área liberada é guardada em um
+ * reservatório e reaproveitada pela próxima derivação que caiba nela, como
+ * nas medições sucessivas da calibração. O reservatório guarda uma única área,
+ * de até o limite de blocos definido, e a devolve ao sistema após
+ * {@value #POOL_IDLE_TIME} ms sem uso.
+ *
+ * <br><br>
+ *
+ * Cada bloco tem {@value #BLOCK_SIZE} bytes, e fica inteiro dentro de um dos
+ * buffers. A leitura e a gravação são feitas por cópias de blocos inteiros,
+ * por posição absoluta, e podem ser feitas concorrentemente por threads
+ * diferentes em blocos diferentes.
+ *
+ * @since 2.0
+ */
+final class Argon2Memory implements AutoCloseable {
+
+
+    /**Tamanho de um bloco em bytes.*/
+    public static final int BLOCK_SIZE = 1024;
+
+    /**Tamanho de um bloco em palavras de 64 bits.*/
+    private static final int QWORDS_IN_BLOCK = BLOCK_SIZE / Long.BYTES;
+
+    /**Número de bits do índice do bloco dentro de um buffer.*/
+    private static final int CHUNK_SHIFT = 18;
+
+    /**Número de blocos por buffer (256 MB).*/
+    private static final int BLOCKS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    /**Máscara do índice do bloco dentro de um buffer.*/
+    private static final int CHUNK_MASK = BLOCKS_PER_CHUNK - 1;
+
+    /**Bloco zerado, para o zeramento da memória.*/
+    private static final long[] ZERO_BLOCK = new long[QWORDS_IN_BLOCK];
+
+    /**Tempo sem uso após o qual a área do reservatório é liberada (ms).*/
+    public static final long POOL_IDLE_TIME = 10 * 1000;
+
+    /**Método {@code invokeCleaner} de {@code sun.misc.Unsafe}, ou null se indisponível.*/
+    private static final Method INVOKE_CLEANER;
+
+    /**Instância de {@code sun.misc.Unsafe}, ou null se indisponível.*/
+    private static final Object UNSAFE;
+
+    /**Reservatório: maior área liberada e ainda não reutilizada.*/
+    private static Argon2Memory pool;
+
+    /**Número máximo de blocos da área do reservatório; zero desativa o reservatório.*/
+    private static int poolLimit = 0;
+
+    /**Liberação agendada da área do reservatório, ou null.*/
+    private static ScheduledFuture<?> poolRelease;
+
+    /**Thread de liberação do reservatório, encerrada quando ociosa.*/
+    private static ScheduledThreadPoolExecutor poolReleaser;
+
+    /**Buffers alocados, liberados explicitamente.*/
+    private final ByteBuffer[] buffers;
+
+    /**Buffers de blocos, cada um com {@value #BLOCKS_PER_CHUNK} blocos, exceto o último.*/
+    private final LongBuffer[] chunks;
+
+    /**Número de blocos alocados.*/
+    private final int capacity;
+
+    /**Número de blocos em uso na derivação atual.*/
+    private int blocks;
+
+    /**Sinaliza que a memória foi liberada.*/
+    private boolean closed;
+
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Os buffers serão liberados pelo coletor de lixo.
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+
+    private Argon2Memory(int capacity) {
+
+        this.capacity = capacity;
+        this.buffers = new ByteBuffer[(capacity + BLOCKS_PER_CHUNK - 1) >>> CHUNK_SHIFT];
+        this.chunks = new LongBuffer[buffers.length];
+
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                int chunkBlocks = Math.min(BLOCKS_PER_CHUNK, capacity - (i << CHUNK_SHIFT));
+                buffers[i] = ByteBuffer.allocateDirect(chunkBlocks * BLOCK_SIZE);
+                chunks[i] = buffers[i].order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+        } catch (OutOfMemoryError ex) {
+            free();
+            throw ex;
+        }
+
+    }
+
+
+    /**
+     * Obter uma área de memória com ao menos o número de blocos informado,
+     * reaproveitando a área do reservatório quando possível. O conteúdo da
+     * área é zerado.
+     * @param blocks número de blocos.
+     * @return memória de blocos, a ser liberada com {@link #close()}.
+     */
+    public static Argon2Memory allocate(int blocks) {
+
+        if (blocks < 1) {
+            throw new IllegalArgumentException("Número de blocos inválido: " + blocks);
+        }
+
+        Argon2Memory memory;
+
+        synchronized (Argon2Memory.class) {
+            if (pool != null && pool.capacity >= blocks) {
+                memory = pool;
+                pool = null;
+                cancelPoolRelease();
+            } else {
+                memory = null;
+            }
+        }
+
+        if (memory == null) {
+            memory = new Argon2Memory(blocks);
+        }
+
+        memory.blocks = blocks;
+        memory.closed = false;
+
+        return memory;
+
+    }
+
+
+    /**
+     * Obter o número de blocos em uso.
+     * @return número de blocos.
+     */
+    public int getBlocks() {
+        return blocks;
+    }
+
+
+    /**
+     * Copiar um bloco da memória.
+     * @param block índice do bloco.
+     * @param destination destino, com {@code 128} palavras.
+     */
+    public void load(int block, long[] destination) {
+        chunks[block >>> CHUNK_SHIFT].get(
+            (block & CHUNK_MASK) * QWORDS_IN_BLOCK,
+            destination,
+            0,
+            QWORDS_IN_BLOCK
+        );
+    }
+
+
+    /**
+     * Gravar um bloco na memória.
+     * @param block índice do bloco.
+     * @param source origem, com {@code 128} palavras.
+     */
+    public void store(int block, long[] source) {
+        chunks[block >>> CHUNK_SHIFT].put(
+            (block & CHUNK_MASK) * QWORDS_IN_BLOCK,
+            source,
+            0,
+            QWORDS_IN_BLOCK
+        );
+    }
+
+
+    /**
+     * Liberar a memória: os blocos usados são zerados e a área volta para o
+     * reservatório, caso o reservatório esteja ativo, a área caiba no limite e
+     * seja maior que a área já reservada. Caso contrário, os buffers são
+     * devolvidos ao sistema.
+     */
+    @Override
+    public void close() {
+
+        if (closed) return;
+
+        closed = true;
+
+        for (int block = 0; block < blocks; block++) {
+            store(block, ZERO_BLOCK);
+        }
+
+        blocks = 0;
+
+        Argon2Memory released = this;
+
+        synchronized (Argon2Memory.class) {
+            if (capacity <= poolLimit && (pool == null || pool.capacity < capacity)) {
+                released = pool;
+                pool = this;
+                schedulePoolRelease();
+            }
+        }
+
+        if (released != null) {
+            released.free();
+        }
+
+    }
+
+
+    /**
+     * Definir o número máximo de blocos da área guardada no reservatório.
+     * Com zero (padrão), o reservatório fica desativado, e a memória de cada
+     * derivação é devolvida ao sistema ao final. Uma área já guardada acima do
+     * novo limite é liberada.
+     * @param blocks número de blocos (1 KB cada).
+     */
+    public static void setPoolLimit(int blocks) {
+
+        Argon2Memory released = null;
+
+        synchronized (Argon2Memory.class) {
+            poolLimit = Math.max(0, blocks);
+            if (pool != null && pool.capacity > poolLimit) {
+                released = pool;
+                pool = null;
+                cancelPoolRelease();
+            }
+        }
+
+        if (released != null) {
+            released.free();
+        }
+
+    }
+
+
+    /**
+     * Obter o número máximo de blocos da área guardada no reservatório.
+     * @return número de blocos, ou zero se o reservatório estiver desativado.
+     */
+    public static synchronized int getPoolLimit() {
+        return poolLimit;
+    }
+
+
+    /**
+     * Agendar a liberação da área do reservatório após
+     * {@value #POOL_IDLE_TIME} ms sem uso.
+     */
+    private static void schedulePoolRelease() {
+
+        cancelPoolRelease();
+
+        if (poolReleaser == null) {
+            poolReleaser = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "bravo-argon2-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poolReleaser.setKeepAliveTime(POOL_IDLE_TIME, TimeUnit.MILLISECONDS);
+            poolReleaser.allowCoreThreadTimeOut(true);
+            poolReleaser.setRemoveOnCancelPolicy(true);
+        }
+
+        poolRelease = poolReleaser.schedule(Argon2Memory::releasePool, POOL_IDLE_TIME,
+        TimeUnit.MILLISECONDS);
+
+    }
+
+
+    private static void cancelPoolRelease() {
+        if (poolRelease != null) {
+            poolRelease.cancel(false);
+            poolRelease = null;
+        }
+    }
+
+
+    /**
+     * Devolver ao sistema a área guardada no reservatório.
+     */
+    private static void releasePool() {
+
+        Argon2Memory released;
+
+        synchronized (Argon2Memory.class) {
+            released = pool;
+            pool = null;
+            poolRelease = null;
+        }
+
+        if (released != null) {
+            released.free();
+        }
+
+    }
+
+
+    /**
+     * Devolver os buffers ao sistema. Os blocos já devem estar zerados.
+     */
+    private void free() {
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer buffer = buffers[i];
+            buffers[i] = null;
+            chunks[i] = null;
+            if (buffer != null && INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    // Liberado pelo coletor de lixo.
+                }
+            }
+        }
+    }
+
+
+}
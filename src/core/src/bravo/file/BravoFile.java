@@ -5,6 +5,7 @@ import bravo.environment.RootFolder;
 import bravo.filter.FileFilter;
 import bravo.filter.DirectoryFilter;
 import bravo.environment.CacheCleaner;
+import bravo.environment.WipeDaemon;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -12,12 +13,15 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Collections;
+import java.util.HashSet;
 import java.nio.file.attribute.FileTime;
-import net.lingala.zip4j.io.inputstream.ZipInputStream;
 import java.io.ObjectInputStream;
 import java.nio.file.Files;
 import java.util.Arrays;
@@ -26,13 +30,14 @@ import java.nio.file.attribute.BasicFileAttributes;
 import org.bouncycastle.util.encoders.Base64;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import net.lingala.zip4j.model.FileHeader;
 import static bravo.file.AESCipher.IV_LENGTH;
 import static bravo.file.AESCipher.BUFFER_SIZE;
 import static bravo.file.FileOperation.ADD;
 import static bravo.file.FileOperation.REMOVE;
 import static bravo.file.FileOperation.EXTRACT;
 import static bravo.file.FileOperation.ENCRYPT;
+import static bravo.file.FileOperation.VACUUM;
+import static bravo.file.FileOperation.REKEY;
 import bravo.utils.ArrayUtils;
 import static bravo.utils.ArrayUtils.byteArrayToInt;
 import static bravo.utils.ArrayUtils.intToByteArray;
@@ -40,6 +45,16 @@ import java.io.FileNotFoundException;
 import java.io.RandomAccessFile;
 import static bravo.file.AESCipher.KEY_LENGTH;
 import java.security.SecureRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.Objects;
+import java.nio.charset.StandardCharsets;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
 
 /**
  * Classe para gerenciamento do arquivo criptografado. Um arquivo criptografado
@@ -64,10 +79,16 @@ import java.security.SecureRandom;
  * 
  * <br>
  * 
- * <li><b>METADATA/Test:</b> Contém os dados para a validação da senha do arquivo.
- * A senha é validada com base no hash gerado da mesma, com o uso de SALT para
- * assegurar que sempre serão gerados hash's diferentes, mesmo que se utilize a
- * mesma senha para diversos arquivos.</li>
+ * <li><b>METADATA/Test:</b> Contém os dados para a validação da senha do arquivo
+ * (até a versão 3). A senha é validada com base no hash gerado da mesma, com o
+ * uso de SALT para assegurar que sempre serão gerados hash's diferentes, mesmo
+ * que se utilize a mesma senha para diversos arquivos.</li>
+ * 
+ * <br>
+ * 
+ * <li><b>METADATA/KeySlotXX:</b> Compartimentos de chave (versão 4). Cada senha
+ * do arquivo tem um compartimento, com a chave aleatória dos dados protegida
+ * pela chave derivada da senha (ver {@link KeySlot}).</li>
 
  * <br>
  * 
@@ -79,7 +100,18 @@ import java.security.SecureRandom;
  * <br> 
  * 
  * <li><b>METADATA/Version: </b> Contém o número da versão do arquivo bravo que
- * foi realizada a encriptação.</li>
+ * foi realizada a encriptação. A partir da versão 2, os arquivos são encriptados
+ * em segmentos autenticados por {@link SegmentedCipher}. A partir da versão 3,
+ * a tabela de arquivos é gravada no formato binário de {@link FileTableCodec}.
+ * A partir da versão 4, os dados são encriptados com uma chave aleatória, e não
+ * com o hash da senha, de modo que a troca de senha não reencripta os arquivos.</li>
+ * 
+ * <br> 
+ * 
+ * <li><b>METADATA/JournalXXXXXXXXXX:</b> Entradas do diário da tabela de
+ * arquivos (versão 3), com as alterações posteriores à última gravação de
+ * METADATA/FileTable, reaplicadas em ordem na abertura do arquivo (ver
+ * {@link FileTableJournal}).</li>
  * 
  * </ul>
  * 
@@ -123,6 +155,15 @@ public final class BravoFile extends ZipFile implements CipherListener {
     /**Versão 1.0*/
     public static final int VERSION_1 = 1;
     
+    /**Versão 2.0. Os arquivos são encriptados em segmentos autenticados.*/
+    public static final int VERSION_2 = 2;
+    
+    /**Versão 3.0. A tabela de arquivos é gravada em formato binário compacto.*/
+    public static final int VERSION_3 = 3;
+    
+    /**Versão 4.0. A chave dos dados é aleatória, protegida por compartimentos de chave.*/
+    public static final int VERSION_4 = 4;
+    
     /**Tamanho do SALT usado para gerar o hash da senha (512 bits).*/
     private final int SALT_LENGTH = KEY_LENGTH * 2;
     
@@ -138,9 +179,24 @@ public final class BravoFile extends ZipFile implements CipherListener {
     /**Arquivo contendo os metadados dos arquivos criptografados.*/
     private final String FILE_TABLE_NAME = METADATA_FOLDER + "FileTable";
     
-    /**Arquivo contendo os bytes para validação da senha do arquivo.*/
+    /**Prefixo das entradas do diário da tabela de arquivos (versão 3).*/
+    private final String JOURNAL_FILE_NAME = METADATA_FOLDER + "Journal";
+    
+    /**Arquivo contendo os bytes para validação da senha do arquivo (até a versão 3).*/
     private final String TEST_FILE_NAME = METADATA_FOLDER + "Test";
     
+    /**Prefixo dos compartimentos da chave dos dados (versão 4).*/
+    private final String KEY_SLOT_FILE_NAME = METADATA_FOLDER + "KeySlot";
+    
+    /**Número máximo de compartimentos de chave, ou seja, de senhas do arquivo.*/
+    public static final int MAX_KEY_SLOTS = 8;
+    
+    /**Arquivo que identifica uma reencriptação em andamento, no arquivo de destino.*/
+    private final String REKEY_FILE_NAME = METADATA_FOLDER + "Rekey";
+    
+    /**Número de bytes reencriptados entre as gravações do progresso da reencriptação (256 MB).*/
+    private final long REKEY_CHECKPOINT_BYTES = 256L * 1024 * 1024;
+    
     /**Arquivo contendo os bytes do contador de arquivos criptografados.*/
     private final String INDEX_FILE_NAME = METADATA_FOLDER + "Index";
     
@@ -151,16 +207,20 @@ public final class BravoFile extends ZipFile implements CipherListener {
     private final String EMPTY_FOLDER_TAG = "[EMPTY_FOLDER_TAG]";
     
     /**Cabeçalhos de arquivos criptografados.*/
-    private final ArrayList<EncryptedFileMetadata> fileMetadataList;
+    private final FileTable fileTable;
     
     /**Ouvintes do processamento de arquivos (inserção/remoção/extração).*/
     private final List<ProcessListener> listeners;
     
-    /**Lista de pastas de arquivos.*/
-    private final List<String> folders;
+    /**Árvore de diretórios, mantida pela tabela de arquivos.*/
+    private final FolderTree folderTree;
     
-    /**Hash da senha para encriptação/decriptação de arquivos.*/
-    private final byte[] passwordHash;
+    /**Chave dos dados para encriptação/decriptação de arquivos. Até a versão
+    3, é o hash da senha; a partir da versão 4, é uma chave aleatória.*/
+    private final byte[] dataKey;
+    
+    /**Compartimento de chave da senha usada na abertura do arquivo.*/
+    private int keySlot = -1;
     
     /**Versão do arquivo.*/
     private int version;
@@ -200,6 +260,73 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     /**Instância de FileLock para bloqueio do arquivo.*/
     private FileLock fileLock;
+    
+    /**Capacidade do buffer em memória entre a encriptação e a gravação no ZIP.*/
+    private final int PIPE_CAPACITY = PipedCipherInputStream.DEFAULT_CAPACITY;
+    
+    /**Executor da encriptação/decriptação da tabela de arquivos (versão 3).*/
+    private static final Executor FILE_TABLE_EXECUTOR = runnable -> {
+        Thread thread = new Thread(runnable, "bravo-file-table");
+        thread.setDaemon(true);
+        thread.start();
+    };
+    
+    /**Número de threads para a encriptação concorrente de arquivos.*/
+    private int encryptionThreads = Runtime.getRuntime().availableProcessors();
+    
+    /**Número de threads para a extração concorrente de arquivos.*/
+    private int extractionThreads = Runtime.getRuntime().availableProcessors();
+    
+    /**Intervalo das notificações de progresso na extração concorrente (ms).*/
+    private final long PROGRESS_INTERVAL = 100;
+    
+    /**Proporção padrão de bytes sem referência para a compactação automática.*/
+    public static final double DEFAULT_VACUUM_THRESHOLD = 0.5;
+    
+    /**Número mínimo de bytes sem referência para a compactação automática (1 MB).*/
+    private final long VACUUM_MINIMUM_BYTES = 1024 * 1024;
+    
+    /**Proporção de bytes sem referência para a compactação automática.*/
+    private double vacuumThreshold = DEFAULT_VACUUM_THRESHOLD;
+    
+    /**Estimativa do número de bytes sem referência, ou -1 se ainda não calculada.*/
+    private long unreferencedBytes = -1;
+    
+    /**Proporção padrão do diário, em relação à tabela de arquivos, para a consolidação.*/
+    public static final double DEFAULT_JOURNAL_THRESHOLD = 0.25;
+    
+    /**Tamanho mínimo do diário para a consolidação (256 KB).*/
+    private final long JOURNAL_MINIMUM_BYTES = 256 * 1024;
+    
+    /**Tamanho estimado dos cabeçalhos do ZIP de cada entrada do diário.*/
+    private final long JOURNAL_ENTRY_OVERHEAD = 256;
+    
+    /**Proporção do diário, em relação à tabela de arquivos, para a consolidação.*/
+    private double journalThreshold = DEFAULT_JOURNAL_THRESHOLD;
+    
+    /**Diário das alterações da tabela de arquivos (versão 3).*/
+    private FileTableJournal journal;
+    
+    /**Número sequencial da primeira entrada do diário no ZIP.*/
+    private int firstJournalSequence = 1;
+    
+    /**Número sequencial da última entrada do diário no ZIP.*/
+    private int lastJournalSequence;
+    
+    /**Tamanho em bytes das entradas do diário no ZIP.*/
+    private long journalBytes;
+    
+    /**Tamanho em bytes da tabela de arquivos no ZIP.*/
+    private long fileTableBytes;
+    
+    /**Consolidação da tabela de arquivos em andamento (tabela encriptada).*/
+    private FutureTask<byte[]> checkpoint;
+    
+    /**Última entrada do diário contida na consolidação em andamento.*/
+    private int checkpointSequence;
+    
+    /**Sinaliza que a próxima gravação deve conter a tabela de arquivos inteira.*/
+    private boolean fullWriteRequired;
 
    
     /**
@@ -218,69 +345,63 @@ public final class BravoFile extends ZipFile implements CipherListener {
      * @throws Exception 
      */
     public BravoFile(File file, char[] password, Argon2Params params, byte[] seed) throws Exception {
+        this(file, password, params, seed, StorageFormat.ZIP);
+    }
+    
+   
+    /**
+     * Constructor para a geração de um novo arquivo no formato de
+     * armazenamento especificado. Na abertura posterior do arquivo, o formato
+     * é identificado automaticamente.
+     * 
+     * <br><br>
+     * 
+     * <b>Obs.:</b> Se o arquivo já existir,ele será sobrescrito, fazendo com
+     * que o anterior seja perdido.
+     * 
+     * @param file arquivo a ser criado.
+     * @param password senha do arquivo.
+     * @param params parâmetros para o algoritmo Argon2.
+     * @param seed semente para o gerador de números pseudo-aleatórios.
+     * @param storageFormat formato de armazenamento do contêiner.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public BravoFile(File file, char[] password, Argon2Params params, byte[] seed,
+    StorageFormat storageFormat) throws Exception {
         
-        super(file);
+        super(file, storageFormat);
         
         listeners = new ArrayList<>();
-        folders = new ArrayList<>();
-        fileMetadataList = new ArrayList<>();
+        fileTable = new FileTable(this::isEmptyFolder);
+        folderTree = fileTable.getFolderTree();
         
-        this.version = VERSION_1;
+        this.version = VERSION_4;
         
-        folders.add(FILE_SEPARATOR);
+        journal = new FileTableJournal();
+        fileTable.setJournal(journal);
 
-        byte[] salt = new byte[SALT_LENGTH];
         SecureRandom secureRandom = new SecureRandom(seed);
-        secureRandom.nextBytes(salt);
-        
-        int iterations = params.getIterations();
-        int memory = params.getMemory();
-        int parallelism = params.getParallelism();
-
-        // Hash lento e mais seguro da senha com Argon2.
-        byte[] hash = new Argon2Hash().getBytes(
-            password,
-            salt,
-            iterations,
-            memory,
-            parallelism,
-            KEY_LENGTH
-        );
-
-        passwordHash = hash;
         
-        // Hash rápido do hash da senha com SHA-256.
-        byte[] hash2 = new SHA256Hash().getBytes(hash);
+        // Chave dos dados aleatória, protegida pela senha no primeiro
+        // compartimento de chave.
+        dataKey = new byte[KEY_LENGTH];
+        secureRandom.nextBytes(dataKey);
         
-        // Bytes de teste da senha.
-        byte[] testBytes = getPasswordTestBytes(hash2);
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
-            salt.length + 
-            (3 * Integer.BYTES) +
-            testBytes.length
-        );
-        
-        outputStream.write(salt, 0, salt.length);
-        outputStream.write(ArrayUtils.intToByteArray(iterations));
-        outputStream.write(ArrayUtils.intToByteArray(memory));
-        outputStream.write(ArrayUtils.intToByteArray(parallelism));
-        outputStream.write(testBytes);
+        try {
+            writeKeySlot(0, password, params, secureRandom);
+            keySlot = 0;
+        } finally {
+            Arrays.fill(password, (char) 0x00);
+        }
         
-        ByteArrayInputStream inputStream1 = new ByteArrayInputStream(outputStream.toByteArray());
-        addStream(inputStream1, TEST_FILE_NAME);
+        password = null;
         
         // Grava a versão do arquivo em METADATA/Version.
         byte[] versionBytes = intToByteArray(version);
         ByteArrayInputStream inputStream2 = new ByteArrayInputStream(versionBytes);
         addStream(inputStream2, VERSION_FILE_NAME);
         
-        for (int i = 0; i < password.length; i++) {
-            password[i] = 0x00;
-        }
-        
-        password = null;
-        
         updateInternalFileNameIndex();
         
         setComment("Pasta de arquivos.");
@@ -303,57 +424,39 @@ public final class BravoFile extends ZipFile implements CipherListener {
 
         if (file.exists()) {
             
+ 
             listeners = new ArrayList<>();
-            folders = new ArrayList<>();
-          
-            boolean isSamePassword;
             
-            try (InputStream inputStream = getInputStream(getFileHeader(TEST_FILE_NAME))) {
-                
-                byte[] salt = inputStream.readNBytes(SALT_LENGTH);
-                
-                int iterations = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
-                
-                int memory = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
-                
-                int parallelism = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
-                
-                byte[] testBytes1 = inputStream.readNBytes(8);
-                
-                byte[] hash = new Argon2Hash().getBytes(
-                    password,
-                    salt,
-                    iterations,
-                    memory,
-                    parallelism,
-                    KEY_LENGTH
-                );
-                
-                passwordHash = hash;
-                
-                byte[] hash2 = new SHA256Hash().getBytes(hash);
-                
-                byte[] testBytes2 = getPasswordTestBytes(hash2);
-                
-                isSamePassword = Arrays.equals(testBytes1, testBytes2);
-                
-                for (int i = 0; i < password.length; i++) {
-                    password[i] = 0x00;
-                }
-
-                password = null;
-                
+            version = getVersion();
+            
+            byte[] key;
+            
+            try {
+                key = (version >= VERSION_4 ? unlockKeySlots(password) :
+                getPasswordHash(password));
+            } finally {
+                Arrays.fill(password, (char) 0x00);
             }
             
-            if (isSamePassword) {
-                
-                version = getVersion();
+            password = null;
+            
+            dataKey = key;
+            
+            if (dataKey != null) {
                 
                 internalFileNameIndex = getInternalFileNameIndex();
                 
-                fileMetadataList = getFileTable();
+                fileTable = new FileTable(getFileTable(), this::isEmptyFolder);
+                
+                folderTree = fileTable.getFolderTree();
                 
-                folders.addAll(getFolders());
+                if (version >= VERSION_3) {
+                    openJournal();
+                }
+                
+                // Os cabeçalhos do ZIP são associados aos metadados em uma
+                // única passagem, após a reaplicação do diário.
+                updateZipHeaders();
 
                 setRootFolder(FILE_SEPARATOR);
                 
@@ -372,6 +475,194 @@ public final class BravoFile extends ZipFile implements CipherListener {
     }
     
     
+    /**
+     * Derivar a chave de uma senha com o algoritmo Argon2. Caso habilitado, o
+     * {@link SessionKeyCache} é consultado antes da derivação.
+     * @param password senha.
+     * @param salt salt da derivação.
+     * @param params parâmetros do Argon2.
+     * @return chave derivada da senha.
+     */
+    private byte[] derivePasswordKey(char[] password, byte[] salt, Argon2Params params) {
+        
+        // Reabertura na mesma sessão: a chave é obtida do cache, sem executar
+        // novamente o Argon2.
+        byte[] key = SessionKeyCache.get(getFile(), salt, params, password);
+        
+        if (key == null) {
+            key = new Argon2Hash().getBytes(
+                password,
+                salt,
+                params.getIterations(),
+                params.getMemory(),
+                params.getParallelism(),
+                KEY_LENGTH
+            );
+        }
+        
+        return key;
+        
+    }
+    
+    
+    /**
+     * Validar a senha com os bytes de teste de <i>METADATA/Test</i> (até a
+     * versão 3), em que a chave dos dados é o hash da senha.
+     * @param password senha do arquivo.
+     * @return hash da senha, ou null se a senha estiver incorreta.
+     * @throws Exception 
+     */
+    private byte[] getPasswordHash(char[] password) throws Exception {
+        
+        try (InputStream inputStream = getInputStream(getFileHeader(TEST_FILE_NAME))) {
+
+            byte[] salt = inputStream.readNBytes(SALT_LENGTH);
+
+            int iterations = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+
+            int memory = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+
+            int parallelism = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+
+            byte[] testBytes1 = inputStream.readNBytes(8);
+            
+            Argon2Params params = new Argon2Params(iterations, memory, parallelism);
+
+            byte[] hash = derivePasswordKey(password, salt, params);
+
+            byte[] hash2 = new SHA256Hash().getBytes(hash);
+
+            byte[] testBytes2 = getPasswordTestBytes(hash2);
+
+            if (!Arrays.equals(testBytes1, testBytes2)) {
+                Arrays.fill(hash, (byte) 0x00);
+                return null;
+            }
+            
+            SessionKeyCache.put(getFile(), salt, params, password, hash);
+            
+            return hash;
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Obter a chave dos dados com a senha, testando os compartimentos de chave
+     * em ordem (versão 4).
+     * @param password senha do arquivo.
+     * @return chave dos dados, ou null se a senha não abrir nenhum compartimento.
+     * @throws Exception 
+     */
+    private byte[] unlockKeySlots(char[] password) throws Exception {
+        
+        for (Map.Entry<Integer, StorageEntry> entry : getKeySlotHeaders().entrySet()) {
+            
+            KeySlot slot = readKeySlot(entry.getValue());
+            
+            byte[] passwordKey = derivePasswordKey(password, slot.getSalt(), slot.getParams());
+            
+            try {
+                
+                byte[] key = slot.unwrap(passwordKey);
+                
+                if (key != null) {
+                    SessionKeyCache.put(getFile(), slot.getSalt(), slot.getParams(),
+                    password, passwordKey);
+                    keySlot = entry.getKey();
+                    return key;
+                }
+                
+            } finally {
+                Arrays.fill(passwordKey, (byte) 0x00);
+            }
+            
+        }
+        
+        return null;
+        
+    }
+    
+    
+    /**
+     * Obter os cabeçalhos dos compartimentos de chave, indexados pelo número
+     * do compartimento.
+     * @return cabeçalhos dos compartimentos.
+     * @throws Exception 
+     */
+    private TreeMap<Integer, StorageEntry> getKeySlotHeaders() throws Exception {
+        
+        TreeMap<Integer, StorageEntry> keySlotHeaders = new TreeMap<>();
+        
+        for (StorageEntry zipHeader : getFileHeaders()) {
+            String name = zipHeader.getName();
+            if (name.startsWith(KEY_SLOT_FILE_NAME)) {
+                try {
+                    int slot = Integer.parseInt(name.substring(KEY_SLOT_FILE_NAME.length()));
+                    keySlotHeaders.put(slot, zipHeader);
+                } catch (NumberFormatException ex) {
+                    // Entrada desconhecida, ignorada.
+                }
+            }
+        }
+        
+        return keySlotHeaders;
+        
+    }
+    
+    
+    private String getKeySlotFileName(int slot) {
+        return KEY_SLOT_FILE_NAME + String.format("%02d", slot);
+    }
+    
+    
+    private KeySlot readKeySlot(StorageEntry zipHeader) throws Exception {
+        try (InputStream inputStream = getInputStream(zipHeader)) {
+            return KeySlot.fromByteArray(inputStream.readAllBytes(), SALT_LENGTH);
+        }
+    }
+    
+    
+    /**
+     * Gravar um compartimento com a chave dos dados protegida pela senha.
+     * @param slot número do compartimento.
+     * @param password senha.
+     * @param params parâmetros do Argon2.
+     * @param secureRandom gerador do salt.
+     * @throws Exception 
+     */
+    private void writeKeySlot(int slot, char[] password, Argon2Params params,
+    SecureRandom secureRandom) throws Exception {
+        
+        byte[] salt = new byte[SALT_LENGTH];
+        secureRandom.nextBytes(salt);
+        
+        // Hash lento e mais seguro da senha com Argon2.
+        byte[] passwordKey = new Argon2Hash().getBytes(
+            password,
+            salt,
+            params.getIterations(),
+            params.getMemory(),
+            params.getParallelism(),
+            KEY_LENGTH
+        );
+        
+        try {
+            
+            KeySlot newSlot = KeySlot.wrap(salt, params, passwordKey, dataKey);
+            
+            addStream(new ByteArrayInputStream(newSlot.toByteArray()), getKeySlotFileName(slot));
+            
+            SessionKeyCache.put(getFile(), salt, params, password, passwordKey);
+            
+        } finally {
+            Arrays.fill(passwordKey, (byte) 0x00);
+        }
+        
+    }
+    
+    
     /**
      * Obter os bytes de teste da senha.
      * @param hash hash da senha.
@@ -391,12 +682,124 @@ public final class BravoFile extends ZipFile implements CipherListener {
     }
     
     
+    /**
+     * Encriptar o conteúdo de um arquivo conforme a versão do arquivo bravo. Na
+     * versão 1 é usado um único stream AES/CFB. A partir da versão 2, o arquivo
+     * é encriptado em segmentos autenticados processados em paralelo.
+     * @param inputStream stream do arquivo original.
+     * @param outputStream stream do arquivo encriptado.
+     * @param fileMetadata metadados do arquivo.
+     * @param listeners ouvintes do processo de encriptação.
+     * @throws Exception 
+     */
+    private void encryptFile(InputStream inputStream, OutputStream outputStream,
+    EncryptedFileMetadata fileMetadata, CipherListener... listeners) throws Exception {
+        
+        switch (version) {
+            
+            case VERSION_1 -> new AESCipher().encrypt(
+                inputStream,
+                outputStream,
+                fileMetadata,
+                dataKey,
+                listeners
+            );
+            
+            default -> new SegmentedCipher().encrypt(
+                inputStream,
+                outputStream,
+                fileMetadata,
+                dataKey,
+                listeners
+            );
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Decriptar o conteúdo de um arquivo conforme a versão do arquivo bravo.
+     * @param inputStream stream do arquivo encriptado.
+     * @param outputStream stream do arquivo decriptado.
+     * @param fileMetadata metadados do arquivo.
+     * @param listeners ouvintes do processo de decriptação.
+     * @throws Exception 
+     */
+    private void decryptFile(InputStream inputStream, OutputStream outputStream,
+    EncryptedFileMetadata fileMetadata, CipherListener... listeners) throws Exception {
+        
+        switch (version) {
+            
+            case VERSION_1 -> new AESCipher().decrypt(
+                inputStream,
+                outputStream,
+                fileMetadata,
+                dataKey,
+                listeners
+            );
+            
+            default -> new SegmentedCipher().decrypt(
+                inputStream,
+                outputStream,
+                fileMetadata,
+                dataKey,
+                listeners
+            );
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Obter o tamanho do arquivo após a encriptação conforme a versão do arquivo
+     * bravo.
+     * @param length tamanho do arquivo original.
+     * @return tamanho do arquivo encriptado.
+     */
+    private long getEncryptedLength(long length) {
+        return switch (version) {
+            case VERSION_1 -> length + (length % AESCipher.BLOCK_SIZE);
+            default -> SegmentedCipher.getEncryptedLength(length);
+        };
+    }
+    
+    
     /**
      * Atualizar os metadados dos arquivos criptografados em <i>METADATA/FileTable</i>.
+     * Fora de uma gravação em lote, a tabela é gravada em uma sessão própria, de
+     * modo que a tabela anterior apenas deixa de ser referenciada, sem a cópia
+     * do arquivo. Ao final, verifica-se a necessidade de compactação.
      * @throws Exception
      */
     private void updateFileTable() throws Exception {
         
+        if (isBatchActive()) {
+            writeFileTable();
+            return;
+        }
+        
+        beginBatch();
+        
+        try {
+            writeFileTable();
+        } finally {
+            commitBatch();
+            updateZipHeaders();
+        }
+        
+        vacuumIfNeeded();
+        
+    }
+    
+    
+    /**
+     * Gravar os metadados dos arquivos criptografados em <i>METADATA/FileTable</i>.
+     * @throws Exception
+     */
+    private void writeFileTable() throws Exception {
+        
         switch (version) {
             
             // Versão 1: Serializa o arranjo ArrayList<EncryptedFileMetadata>
@@ -418,14 +821,29 @@ public final class BravoFile extends ZipFile implements CipherListener {
             // tem uma implementação específica para esta linguagem. Demais operações
             // com streams são universais, e estão em qualquer linguagem de
             // programação de propósito geral.
+            //
+            // Versão 2: A tabela de arquivos mantém o formato da versão 1. O 
+            // que muda é a encriptação dos arquivos, feita em segmentos
+            // autenticados (ver SegmentedCipher).
+            //
+            // Versão 3: A tabela de arquivos é codificada em formato binário
+            // (ver FileTableCodec), independente da implementação em Java, e
+            // encriptada em segmentos autenticados. O IV é gravado no início
+            // de METADATA/FileTable, seguido dos segmentos. A codificação e a
+            // encriptação são feitas em outra thread, e os bytes encriptados
+            // passam direto para a entrada do ZIP.
+            //
+            // Nesta versão, a tabela inteira só é gravada na consolidação do
+            // diário. As demais atualizações gravam apenas as alterações, em
+            // uma nova entrada METADATA/JournalXXXXXXXXXX (ver writeJournal()).
             
-            case VERSION_1 -> {
+            case VERSION_1, VERSION_2 -> {
                 
                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
                 ObjectOutputStream objectOutputStream = new ObjectOutputStream(
                     outputStream
                 );
-                objectOutputStream.writeObject(fileMetadataList);
+                objectOutputStream.writeObject(fileTable.toList());
 
                 ByteArrayInputStream inputStream = new ByteArrayInputStream(
                     outputStream.toByteArray()
@@ -438,7 +856,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
                     inputStream,
                     dataOutputStream,
                     fileMetadata,
-                    passwordHash
+                    dataKey
                 );
 
                 ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream(
@@ -453,16 +871,322 @@ public final class BravoFile extends ZipFile implements CipherListener {
 
                 addStream(zipInputStream, FILE_TABLE_NAME);
 
-                folders.clear();
-                folders.addAll(getFolders());
-
             }
             
-        }
+            default -> {
+                
+                // Alterações grandes em relação à tabela (por exemplo, a
+                // inclusão de muitos arquivos) são gravadas com a tabela
+                // inteira, sem passar pelo diário.
+                if (journalThreshold <= 0 || fullWriteRequired || 
+                (journal.size() >= JOURNAL_MINIMUM_BYTES && 
+                journal.size() >= fileTableBytes * journalThreshold)) {
+                    writeFullFileTable();
+                } else {
+                    writeJournal();
+                }
+                
+            }
+            
+        }
 
     }
     
     
+    /**
+     * Gravar a tabela de arquivos inteira em <i>METADATA/FileTable</i> (versão
+     * 3), descartando as entradas do diário, cujas alterações já estão
+     * contidas na tabela.
+     * @throws Exception
+     */
+    private void writeFullFileTable() throws Exception {
+        
+        if (checkpoint != null) {
+            checkpoint.cancel(true);
+            checkpoint = null;
+        }
+        
+        // Codificação -> encriptação -> ZIP, cada etapa ligada à seguinte
+        // por um buffer de capacidade limitada.
+        try (PipedCipherInputStream inputStream = new PipedCipherInputStream(
+            ostream -> encryptFileTable(fileTable, fileTable.size(), ostream),
+            FILE_TABLE_EXECUTOR,
+            PIPE_CAPACITY
+        )) {
+            addStream(inputStream, FILE_TABLE_NAME);
+        }
+        
+        for (int i = firstJournalSequence; i <= lastJournalSequence; i++) {
+            StorageEntry zipHeader = getFileHeader(getJournalFileName(i));
+            if (zipHeader != null) {
+                deleteFile(zipHeader);
+            }
+        }
+        
+        firstJournalSequence = lastJournalSequence + 1;
+        journalBytes = 0;
+        fileTableBytes = getFileHeader(FILE_TABLE_NAME).getSize();
+        fullWriteRequired = false;
+        journal.clear();
+        unreferencedBytes = -1;
+        
+    }
+    
+    
+    /**
+     * Gravar as alterações pendentes da tabela de arquivos em uma nova entrada
+     * do diário (versão 3). O custo da gravação é proporcional às alterações,
+     * e não ao tamanho da tabela.
+     * 
+     * <br><br>
+     * 
+     * Quando o diário atinge o limite definido em {@link #setJournalThreshold(double)},
+     * uma cópia da tabela é codificada e encriptada em segundo plano, e gravada
+     * como a nova tabela em uma das próximas atualizações, junto da remoção
+     * das entradas do diário que ela contém.
+     * @throws Exception
+     */
+    private void writeJournal() throws Exception {
+        
+        installCheckpoint();
+        
+        if (!journal.isEmpty()) {
+            
+            String journalFileName = getJournalFileName(lastJournalSequence + 1);
+            
+            try {
+                addStream(
+                    new ByteArrayInputStream(encryptMetadata(journal.toByteArray())),
+                    journalFileName
+                );
+            } catch (Exception ex) {
+                // As alterações continuam pendentes, e serão gravadas com a
+                // tabela inteira na próxima atualização.
+                fullWriteRequired = true;
+                throw ex;
+            }
+            
+            lastJournalSequence++;
+            journalBytes += getFileHeader(journalFileName).getSize() + JOURNAL_ENTRY_OVERHEAD;
+            journal.clear();
+            
+        }
+        
+        checkpointIfNeeded();
+        
+    }
+    
+    
+    /**
+     * Iniciar a consolidação da tabela de arquivos em segundo plano, caso o
+     * diário tenha atingido o limite de tamanho.
+     */
+    private void checkpointIfNeeded() {
+        
+        if (checkpoint != null || journalThreshold <= 0 || !journal.isEmpty()) return;
+        
+        if (journalBytes >= JOURNAL_MINIMUM_BYTES && 
+        journalBytes >= fileTableBytes * journalThreshold) {
+            
+            // A cópia corresponde exatamente à tabela após a última entrada
+            // gravada do diário.
+            List<EncryptedFileMetadata> snapshot = fileTable.copyEntries();
+            
+            checkpointSequence = lastJournalSequence;
+            
+            checkpoint = new FutureTask<>(() -> {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                encryptFileTable(snapshot, snapshot.size(), outputStream);
+                return outputStream.toByteArray();
+            });
+            
+            FILE_TABLE_EXECUTOR.execute(checkpoint);
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Gravar a tabela consolidada em segundo plano, caso esteja pronta, e
+     * remover as entradas do diário contidas nela.
+     * @throws Exception
+     */
+    private void installCheckpoint() throws Exception {
+        
+        if (checkpoint == null || !checkpoint.isDone()) return;
+        
+        FutureTask<byte[]> task = checkpoint;
+        checkpoint = null;
+        
+        byte[] fileTableBytes2;
+        
+        try {
+            fileTableBytes2 = task.get();
+        } catch (ExecutionException | CancellationException ex) {
+            // O diário continua válido; uma nova consolidação será iniciada.
+            return;
+        }
+        
+        addStream(new ByteArrayInputStream(fileTableBytes2), FILE_TABLE_NAME);
+        
+        for (int i = firstJournalSequence; i <= checkpointSequence; i++) {
+            String journalFileName = getJournalFileName(i);
+            StorageEntry zipHeader = getFileHeader(journalFileName);
+            if (zipHeader != null) {
+                journalBytes -= zipHeader.getSize() + JOURNAL_ENTRY_OVERHEAD;
+                deleteFile(zipHeader);
+            }
+        }
+        
+        firstJournalSequence = checkpointSequence + 1;
+        fileTableBytes = fileTableBytes2.length;
+        unreferencedBytes = -1;
+        
+    }
+    
+    
+    /**
+     * Reaplicar as entradas do diário sobre a tabela de arquivos, na abertura
+     * do arquivo (versão 3), e passar a registrar as alterações da tabela.
+     * @throws Exception
+     */
+    private void openJournal() throws Exception {
+        
+        TreeMap<Integer, StorageEntry> journalHeaders = new TreeMap<>();
+        
+        for (StorageEntry zipHeader : getFileHeaders()) {
+            String name = zipHeader.getName();
+            if (name.startsWith(JOURNAL_FILE_NAME)) {
+                try {
+                    int sequence = Integer.parseInt(name.substring(JOURNAL_FILE_NAME.length()));
+                    journalHeaders.put(sequence, zipHeader);
+                } catch (NumberFormatException ex) {
+                    // Entrada desconhecida, ignorada.
+                }
+            }
+        }
+        
+        for (StorageEntry zipHeader : journalHeaders.values()) {
+            
+            int capacity = (int) Math.min(PIPE_CAPACITY,
+            Math.max(BUFFER_SIZE, zipHeader.getSize()));
+            
+            try (InputStream zipInputStream = getInputStream(zipHeader);
+                InputStream inputStream = getDecryptedInputStream(zipInputStream, capacity)) {
+                FileTableJournal.replay(inputStream, fileTable);
+            }
+            
+            journalBytes += zipHeader.getSize() + JOURNAL_ENTRY_OVERHEAD;
+            
+        }
+        
+        if (!journalHeaders.isEmpty()) {
+            firstJournalSequence = journalHeaders.firstKey();
+            lastJournalSequence = journalHeaders.lastKey();
+        }
+        
+        StorageEntry fileTableHeader = getFileHeader(FILE_TABLE_NAME);
+        fileTableBytes = (fileTableHeader != null ? fileTableHeader.getSize() : 0);
+        
+        journal = new FileTableJournal();
+        fileTable.setJournal(journal);
+        
+        checkpointIfNeeded();
+        
+    }
+    
+    
+    private String getJournalFileName(int sequence) {
+        return JOURNAL_FILE_NAME + String.format("%010d", sequence);
+    }
+    
+    
+    /**
+     * Codificar e encriptar a tabela de arquivos (versão 3): IV seguido dos
+     * segmentos encriptados.
+     * @param fileMetadataList metadados dos arquivos.
+     * @param size número de arquivos.
+     * @param ostream stream de saída.
+     * @throws Exception
+     */
+    private void encryptFileTable(Iterable<EncryptedFileMetadata> fileMetadataList,
+    int size, OutputStream ostream) throws Exception {
+        
+        byte[] ivBytes = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(ivBytes);
+        
+        try (PipedCipherInputStream encodedStream = new PipedCipherInputStream(
+            ostream2 -> FileTableCodec.write(fileMetadataList, size, ostream2),
+            FILE_TABLE_EXECUTOR,
+            PIPE_CAPACITY
+        )) {
+            ostream.write(ivBytes);
+            new SegmentedCipher().encrypt(encodedStream, ostream, ivBytes, dataKey);
+        }
+        
+    }
+    
+    
+    /**
+     * Encriptar metadados pequenos em memória (versão 3): IV seguido dos
+     * segmentos encriptados.
+     * @param data bytes dos metadados.
+     * @return bytes encriptados.
+     * @throws Exception
+     */
+    private byte[] encryptMetadata(byte[] data) throws Exception {
+        
+        byte[] ivBytes = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(ivBytes);
+        
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+            IV_LENGTH + (int) SegmentedCipher.getEncryptedLength(data.length)
+        );
+        
+        outputStream.write(ivBytes);
+        
+        new SegmentedCipher().encrypt(
+            new ByteArrayInputStream(data),
+            outputStream,
+            ivBytes,
+            dataKey
+        );
+        
+        return outputStream.toByteArray();
+        
+    }
+    
+    
+    /**
+     * Obter o stream decriptado de metadados gravados como IV seguido dos
+     * segmentos encriptados (versão 3). A decriptação é feita em outra thread,
+     * à medida que o stream é lido.
+     * @param zipInputStream stream da entrada do ZIP.
+     * @param capacity capacidade do buffer entre a decriptação e a leitura.
+     * @return stream decriptado.
+     * @throws IOException
+     */
+    private InputStream getDecryptedInputStream(InputStream zipInputStream, int capacity)
+    throws IOException {
+        
+        EncryptedFileMetadata fileMetadata = new EncryptedFileMetadata();
+        fileMetadata.setIVBytes(zipInputStream.readNBytes(IV_LENGTH));
+        
+        return new PipedCipherInputStream(
+            ostream -> new SegmentedCipher().decrypt(
+                zipInputStream,
+                ostream,
+                fileMetadata,
+                dataKey
+            ),
+            FILE_TABLE_EXECUTOR,
+            capacity
+        );
+        
+    }
+    
+    
     /**
      * Obter os metadados dos arquivos criptografados em <i>METADATA/FileTable</i>.
      * @return metadados dos arquivos criptografados. Caso <i>METADATA/FileTable</i>
@@ -471,8 +1195,6 @@ public final class BravoFile extends ZipFile implements CipherListener {
      */
     private ArrayList<EncryptedFileMetadata> getFileTable() throws Exception {
         
-        boolean exists = false;
-        
         ArrayList<EncryptedFileMetadata> object;
         
         switch (version) {
@@ -485,18 +1207,13 @@ public final class BravoFile extends ZipFile implements CipherListener {
             // dependente da linguagem em que ele foi realizado e da versão
             // correta das classes serializadas.
 
-            case VERSION_1 -> {
+            case VERSION_1, VERSION_2 -> {
                 
-                for (FileHeader zipHeader : getFileHeaders()) {
-                    if (zipHeader.getFileName().equals(FILE_TABLE_NAME)) {
-                        exists = true;
-                        break;
-                    }
-                }
+                StorageEntry fileTableHeader = getFileHeader(FILE_TABLE_NAME);
 
-                if (!exists) return new ArrayList<>();
+                if (fileTableHeader == null) return new ArrayList<>();
 
-                try (InputStream zipInputStream = getInputStream(getFileHeader(FILE_TABLE_NAME))) {
+                try (InputStream zipInputStream = getInputStream(fileTableHeader)) {
 
                     byte[] ivBytes = zipInputStream.readNBytes(IV_LENGTH);
 
@@ -523,7 +1240,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
                         dataInputStream,
                         dataOutputStream,
                         fileMetadata,
-                        passwordHash
+                        dataKey
                     );
 
                     ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(
@@ -531,15 +1248,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
                     );
 
                     try (ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream)) {
-
                         object = (ArrayList<EncryptedFileMetadata>) objectInputStream.readObject();
-
-                        for (EncryptedFileMetadata fileMetadata2 : object) {
-                            fileMetadata2.setZipHeader(
-                                getFileHeader(fileMetadata2.getInternalFileName())
-                            );
-                        }
-
                     }
 
                 }
@@ -548,9 +1257,23 @@ public final class BravoFile extends ZipFile implements CipherListener {
                 
             }
             
+            // Versão 3: Lê o IV do início de METADATA/FileTable, e decodifica
+            // a tabela (ver FileTableCodec) à medida que os segmentos são
+            // decriptados em outra thread, sem carregar a tabela encriptada
+            // ou decriptada inteira em memória.
+            
             default -> {
                 
-                return null;
+                StorageEntry fileTableHeader = getFileHeader(FILE_TABLE_NAME);
+                
+                if (fileTableHeader == null) return new ArrayList<>();
+                
+                try (InputStream zipInputStream = getInputStream(fileTableHeader);
+                    InputStream inputStream = getDecryptedInputStream(zipInputStream, PIPE_CAPACITY)) {
+                    object = FileTableCodec.read(inputStream);
+                }
+                
+                return object;
             
             }
             
@@ -626,7 +1349,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
             inputStream,
             dataOutputStream,
             fileMetadata,
-            passwordHash
+            dataKey
         );
 
         ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream(16 +
@@ -670,7 +1393,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
             dataInputStream,
             dataOutputStream,
             fileMetadata,
-            passwordHash
+            dataKey
         );
 
         return new String(dataOutputStream.toByteArray(), "UTF-8");
@@ -686,27 +1409,82 @@ public final class BravoFile extends ZipFile implements CipherListener {
      * ou null, caso não tenha um objeto associado ao nome de arquivo.
      */
     private EncryptedFileMetadata getEncryptedFileMetadata(String fileName) {
-        EncryptedFileMetadata ref = null;
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
-            if (equals(fileMetadata.getFileName(), fileName)) {
-                ref = fileMetadata;
-                break;
+        return fileTable.get(fileName);
+    }
+    
+    
+    /**
+     * Submeter ao pipeline a encriptação dos próximos arquivos da lista,
+     * enquanto houver orçamento disponível.
+     * @param pipeline pipeline de encriptação.
+     * @param fileEncryptionInfoList lista de arquivos a serem adicionados.
+     * @param index índice do próximo arquivo a ser submetido.
+     * @return índice do próximo arquivo a ser submetido na chamada seguinte.
+     */
+    private int submitFiles(EncryptionPipeline pipeline,
+    List<FileEncryptionInfo> fileEncryptionInfoList, int index) {
+        
+        while (index < fileEncryptionInfoList.size()) {
+            
+            FileEncryptionInfo fileEncryptionInfo = fileEncryptionInfoList.get(index);
+            EncryptedFileMetadata fileMetadata = fileEncryptionInfo.getFileMetadata();
+            File inputFile = fileEncryptionInfo.getInputFile();
+            
+            if (!isEmptyFolder(fileMetadata)) {
+                
+                long encryptedLength = getEncryptedLength(inputFile.length());
+                
+                if (!pipeline.hasRoom(encryptedLength)) break;
+                
+                pipeline.submit(
+                    ostream -> {
+                        try (FileInputStream fileInputStream = new FileInputStream(inputFile)) {
+                            encryptFile(fileInputStream, ostream, fileMetadata);
+                        }
+                    },
+                    encryptedLength,
+                    this
+                );
+                
             }
+            
+            index++;
+            
         }
-        return ref;
+        
+        return index;
+        
     }
     
     
     /**
      * Adicionar arquivos. Neste método é feita a criptografia do arquivo,
      * logo após ele é inserido.
+     * 
+     * <br><br>
+     * 
+     * Os arquivos são encriptados concorrentemente por {@link #getEncryptionThreads()}
+     * threads, à frente da gravação, que é feita pela thread atual na ordem da
+     * lista. O número de bytes encriptados mantidos em memória é limitado por
+     * {@link EncryptionPipeline#DEFAULT_BUDGET}.
+     * 
      * @param fileEncryptionInfoList lista de objetos {@link FileEncryptionInfo}
      * com informações sobre os arquivos a serem adicionados.
      * @throws Exception
      */
     private void addFiles(List<FileEncryptionInfo> fileEncryptionInfoList) throws Exception {
         
-        try {
+        EncryptionPipeline pipeline = new EncryptionPipeline(
+            encryptionThreads,
+            EncryptionPipeline.DEFAULT_BUDGET,
+            PIPE_CAPACITY
+        );
+        
+        // As entradas, o índice e a tabela de arquivos são gravados em uma
+        // única sessão, e o diretório central do ZIP é gravado apenas uma vez.
+        beginBatch();
+        
+        try (pipeline) {
 
             // Não recicla o índice em caso de erro nas próximas etapas.
             updateInternalFileNameIndex();
@@ -716,7 +1494,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
             for (FileEncryptionInfo fileEncryptionInfo : fileEncryptionInfoList) {
                 if (fileEncryptionInfo.getInputFile() != null) {
                     long length = fileEncryptionInfo.getInputFile().length();
-                    totalBytes += (2 * length) + (length % AESCipher.BLOCK_SIZE);
+                    totalBytes += getEncryptedLength(length);
                 }
             }
 
@@ -726,64 +1504,64 @@ public final class BravoFile extends ZipFile implements CipherListener {
                 listener.abortBlocked(blockAbort);
             }
 
-            for (FileEncryptionInfo fileEncryptionInfo : fileEncryptionInfoList) {
+            int nextIndex = 0;
+
+            for (int i = 0; i < fileEncryptionInfoList.size(); i++) {
 
                 if (abort()) break;
                 
+                nextIndex = submitFiles(pipeline, fileEncryptionInfoList,
+                Math.max(i, nextIndex));
+                
+                FileEncryptionInfo fileEncryptionInfo = fileEncryptionInfoList.get(i);
                 EncryptedFileMetadata fileMetadata = fileEncryptionInfo.getFileMetadata();
                 File inputFile = fileEncryptionInfo.getInputFile();
-                File outputFile = fileEncryptionInfo.getOutputFile();
 
                 if (!isEmptyFolder(fileMetadata)) {
                     
                     if (abort()) break;
 
-                    InputStream inputStream;
+                    long encryptedLength = getEncryptedLength(inputFile.length());
 
                     updateFileInProcess(
                         inputFile.getAbsolutePath(),
                         ENCRYPT,
-                        inputFile.length()
+                        encryptedLength
                     );
 
-                    try (FileInputStream fileInputStream = new FileInputStream(inputFile);
-                    FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
-
-                        new AESCipher().encrypt(
-                            fileInputStream,
-                            fileOutputStream,
-                            fileMetadata,
-                            passwordHash,
-                            this
-                        );
-
-                        inputStream = new EncryptedFileInputStream(
-                            outputFile,
-                            this
-                        );
-
-                    }
-
-                    if (abort()) break;
-
-                    updateFileInProcess(
-                        inputFile.getAbsolutePath(),
-                        ADD,
-                        inputFile.length()
-                    );
+                    // A encriptação é feita pelas threads do pipeline, e os
+                    // bytes encriptados são lidos pelo Zip4j diretamente da
+                    // memória, sem passar por um arquivo temporário em disco.
+                    PipedCipherInputStream inputStream = pipeline.take();
 
                     String internalFileName = fileMetadata.getInternalFileName();
 
-                    addStream(inputStream, internalFileName);
+                    try (inputStream) {
+                        addStream(inputStream, internalFileName);
+                    } catch (Exception ex) {
+                        if (abort) break;
+                        throw ex;
+                    }
 
-                    FileHeader fileHeader = getFileHeader(internalFileName);
+                    StorageEntry fileHeader = getFileHeader(internalFileName);
                     fileMetadata.setZipHeader(fileHeader);
 
                 }
 
-                if (!fileMetadataList.contains(fileMetadata)) {
+                if (fileTable.contains(fileMetadata.getFileName())) {
+
+                    // Arquivo substituído: os metadados foram atualizados.
+                    EncryptedFileMetadata previous = getEncryptedFileMetadata(
+                        fileMetadata.getFileName()
+                    );
+                    if (!previous.getInternalFileName().equals(fileMetadata.getInternalFileName())) {
+                        unreference(previous);
+                    }
+                    fileTable.update(fileMetadata);
+
+                } else {
 
-                    fileMetadataList.add(fileMetadata);
+                    fileTable.add(fileMetadata);
 
                     //Caso o caminho do novo arquivo inserido pertença a um
                     //diretório vazio que está salvo, remove a entrada para
@@ -791,19 +1569,10 @@ public final class BravoFile extends ZipFile implements CipherListener {
                     //listagem com a leitura deste arquivo.
                     String parent = getParentPath(fileMetadata);
 
-                    List<EncryptedFileMetadata> emptyFolders = getEmptyFolders();
+                    EncryptedFileMetadata folderToDelete = getEncryptedFileMetadata(parent);
 
-                    EncryptedFileMetadata folderToDelete = null;
-
-                    for (EncryptedFileMetadata emptyFolder : emptyFolders) {
-                        if (equals(parent, emptyFolder.getFileName())) {
-                            folderToDelete = emptyFolder;
-                            break;
-                        }
-                    }
-
-                    if (folderToDelete != null) {
-                        fileMetadataList.remove(folderToDelete);
+                    if (folderToDelete != null && isEmptyFolder(folderToDelete)) {
+                        fileTable.remove(folderToDelete);
                     }
 
                 }
@@ -811,14 +1580,37 @@ public final class BravoFile extends ZipFile implements CipherListener {
             }
         
         } finally {
-
-            updateFileTable();
+            
+            try {
+                updateFileTable();
+            } finally {
+                commitBatch();
+                updateZipHeaders();
+            }
         
         }
 
     }
     
     
+    /**
+     * Atualizar as referências aos cabeçalhos do ZIP nos metadados dos arquivos,
+     * após a abertura do arquivo ou o encerramento de uma gravação em lote.
+     * @throws Exception 
+     */
+    private void updateZipHeaders() throws Exception {
+        
+        Map<String, StorageEntry> zipHeaders = getFileHeaderMap();
+        
+        for (EncryptedFileMetadata fileMetadata : fileTable) {
+            if (!isEmptyFolder(fileMetadata)) {
+                fileMetadata.setZipHeader(zipHeaders.get(fileMetadata.getInternalFileName()));
+            }
+        }
+        
+    }
+    
+    
     /**
      * Adicionar um arquivo.
      * @param fileEncryptionInfo objeto {@link FileEncryptionInfo} com as
@@ -861,17 +1653,8 @@ public final class BravoFile extends ZipFile implements CipherListener {
         fileMetadata.setLastModifiedTime(fileAttributes.lastModifiedTime().toMillis());
         fileMetadata.setCreatedTime(fileAttributes.creationTime().toMillis());
         fileMetadata.setOriginalSize(fileAttributes.size());
-
-        String encryptionFolderPath = RootFolder.getEncryptionFolder().getAbsolutePath();
-
-        File outputFile = new File(
-            encryptionFolderPath +
-            File.separator + 
-            fileMetadata.getInternalFileName() +
-            ".tmp"
-        );
         
-        return (!abort ? new FileEncryptionInfo(inputFile, outputFile, fileMetadata) : null);
+        return (!abort ? new FileEncryptionInfo(inputFile, fileMetadata) : null);
         
     }
     
@@ -946,7 +1729,9 @@ public final class BravoFile extends ZipFile implements CipherListener {
      * Adicionar arquivos e diretórios. Na primeira etapa é realizada a encriptação
      * e posteriormente é feita a inserção.
      * @param filesAndFolders arquivos e diretórios a serem inseridos.
-     * @param destroySourceFiles se true, destrói os arquivos na origem.
+     * @param destroySourceFiles se true, destrói os arquivos na origem. Com o
+     * serviço {@link WipeDaemon} em execução, a destruição é incluída na fila
+     * do serviço e feita em segundo plano.
      * @throws Exception
      */
     public void addFilesAndFolders(List<File> filesAndFolders, boolean destroySourceFiles) throws Exception {
@@ -998,7 +1783,10 @@ public final class BravoFile extends ZipFile implements CipherListener {
                 
                 if (abort()) return;
                 
-                if (destroySourceFiles) {
+                if (destroySourceFiles && WipeDaemon.isRunning()) {
+                    //Destrói os arquivos na origem em segundo plano.
+                    WipeDaemon.enqueue(filesAndFolders);
+                } else if (destroySourceFiles) {
                     //Destrói os arquivos na origem.
                     CacheCleaner cacheCleaner = new CacheCleaner();
                     listeners.forEach(l -> {cacheCleaner.addListener(l);});
@@ -1138,13 +1926,15 @@ public final class BravoFile extends ZipFile implements CipherListener {
                 fileMetadata.getOriginalSize()
             );
             
-            deleteFile(fileMetadata.getZipHeader());
+            // Exclusão lógica: a entrada permanece no ZIP, sem referência na
+            // tabela de arquivos, até a próxima compactação (ver vacuum()).
+            unreference(fileMetadata);
             
             notify(fileMetadata.getOriginalSize());
             
         }
         
-        fileMetadataList.remove(fileMetadata);
+        fileTable.remove(fileMetadata);
         
     }
     
@@ -1234,41 +2024,285 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     
     /**
-     * Verificar se há no nome do arquivo ou diretório algum caractere inválido,
-     * que não faz parte do conjunto aceito para as diversas plataformas. Caso um
-     * caractere inválido seja detectado, retorna true para a chamada do método.
-     * @param fileName nome do arquivo ou diretório.
-     * @return true, há caracteres inválidos no nome do arquivo ou diretório,
-     * false, não há caracteres inválidos.
+     * Obter os nomes das entradas do ZIP referenciadas pelo arquivo: os
+     * metadados e os arquivos da tabela de arquivos.
+     * @return nomes das entradas referenciadas.
      */
-    private boolean containsInvalidCharacters(String fileName) {
-        boolean contains = false;
-        for (int i = 0; i < fileName.length(); i++) {
-            if (contains) break;
-            for (int j = 0; j < INVALID_FILE_NAME_CHARACTERS.length; j++) {
-                if (fileName.charAt(i) == INVALID_FILE_NAME_CHARACTERS[j]) {
-                    contains = true;
-                    break;
-                }
+    private Set<String> getReferencedEntries() {
+        Set<String> entries = new HashSet<>();
+        for (EncryptedFileMetadata fileMetadata : fileTable) {
+            if (!isEmptyFolder(fileMetadata)) {
+                entries.add(fileMetadata.getInternalFileName());
             }
         }
-        return contains;
+        return entries;
     }
-
+    
     
     /**
-     * Renomear um arquivo. O nome que será alterado é o que identifica o arquivo,
-     * e não o que ele usa internamente, que sempre será FileXXXXXXX.
-     * @param fileMetadata metadados do arquivo a ser renomeado.
-     * @param newFileName novo nome do arquivo.
-     * @throws Exception
+     * Verificar se a entrada do ZIP é referenciada pelo arquivo.
+     * @param entries nomes das entradas referenciadas na tabela de arquivos.
+     * @param zipHeader cabeçalho da entrada.
+     * @return true, se a entrada é referenciada.
      */
-    private void renameFile(EncryptedFileMetadata fileMetadata, String newFileName) throws Exception {
-        
-        if (!containsInvalidCharacters(newFileName)) {
-            
-            String parent = getParentPath(fileMetadata);
-            String newFilePath = (parent.equals(FILE_SEPARATOR) ? parent + 
+    private boolean isReferenced(Set<String> entries, StorageEntry zipHeader) {
+        String fileName = zipHeader.getName();
+        return fileName.startsWith(METADATA_FOLDER) || entries.contains(fileName);
+    }
+    
+    
+    /**
+     * Obter o número de bytes no arquivo ocupados por arquivos excluídos ou
+     * por metadados substituídos, e que serão recuperados na próxima
+     * compactação.
+     * @return número estimado de bytes sem referência.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public long getUnreferencedBytes() throws Exception {
+        Set<String> entries = getReferencedEntries();
+        unreferencedBytes = getUnreferencedBytes(zipHeader -> isReferenced(entries, zipHeader));
+        return unreferencedBytes;
+    }
+    
+    
+    /**
+     * Acrescentar à estimativa de bytes sem referência os bytes da entrada de
+     * um arquivo que deixou de ser referenciado pela tabela de arquivos.
+     * @param fileMetadata metadados do arquivo.
+     * @throws IOException 
+     */
+    private void unreference(EncryptedFileMetadata fileMetadata) throws IOException {
+        if (unreferencedBytes >= 0 && !isEmptyFolder(fileMetadata)) {
+            StorageEntry zipHeader = getFileHeader(fileMetadata.getInternalFileName());
+            if (zipHeader != null) {
+                unreferencedBytes += zipHeader.getSize();
+            }
+        }
+    }
+    
+    
+    /**
+     * Gravar o stream no contêiner, acrescentando à estimativa de bytes sem
+     * referência os bytes da entrada substituída, caso exista.
+     * @param inputStream stream do arquivo.
+     * @param fileNameInZip nome interno do arquivo.
+     * @throws IOException 
+     */
+    @Override
+    protected void addStream(InputStream inputStream, String fileNameInZip) throws IOException {
+        StorageEntry previous = (unreferencedBytes >= 0 ? getFileHeader(fileNameInZip) : null);
+        super.addStream(inputStream, fileNameInZip);
+        if (previous != null) {
+            unreferencedBytes += previous.getSize();
+        }
+    }
+    
+    
+    /**
+     * Remover a entrada do contêiner, acrescentando os seus bytes à estimativa
+     * de bytes sem referência.
+     * @param fileHeader entrada do arquivo.
+     * @throws IOException 
+     */
+    @Override
+    protected void deleteFile(StorageEntry fileHeader) throws IOException {
+        super.deleteFile(fileHeader);
+        if (unreferencedBytes >= 0) {
+            unreferencedBytes += fileHeader.getSize();
+        }
+    }
+    
+    
+    /**
+     * Compactar o arquivo, recuperando o espaço ocupado por arquivos excluídos
+     * e metadados substituídos. O arquivo é reconstruído em uma única passagem
+     * sequencial, sem decriptação. Caso o processo seja abortado, o arquivo
+     * permanece inalterado.
+     * @return número de bytes recuperados.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public long vacuum() throws Exception {
+        
+        try {
+            
+            return compact(false);
+            
+        } finally {
+            
+            for (ProcessListener listener : listeners) {
+                listener.done();
+            }
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Compactar o arquivo caso a proporção de bytes sem referência tenha
+     * atingido o limite definido em {@link #setVacuumThreshold(double)}.
+     * 
+     * <br><br>
+     * 
+     * O número de bytes sem referência é calculado percorrendo todas as
+     * entradas apenas na primeira verificação e a cada consolidação da tabela
+     * de arquivos, cujo custo já é proporcional ao número de arquivos. Entre
+     * elas, a estimativa é atualizada a cada entrada substituída, removida ou
+     * excluída da tabela, sem percorrer as entradas.
+     * @throws Exception 
+     */
+    private void vacuumIfNeeded() throws Exception {
+        
+        if (vacuumThreshold <= 0) return;
+        
+        if (unreferencedBytes < 0) {
+            getUnreferencedBytes();
+        }
+        
+        if (unreferencedBytes >= VACUUM_MINIMUM_BYTES && 
+        unreferencedBytes >= getFile().length() * vacuumThreshold) {
+            boolean blockAbort2 = blockAbort;
+            try {
+                compact(true);
+            } finally {
+                for (ProcessListener listener : listeners) {
+                    listener.abortBlocked(blockAbort2);
+                }
+                blockAbort = blockAbort2;
+            }
+        }
+        
+    }
+    
+    
+    /**
+     * Compactar o arquivo.
+     * @param blockAbort se true, o processo não pode ser abortado.
+     * @return número de bytes recuperados, ou 0 caso o processo seja abortado.
+     * @throws Exception 
+     */
+    private long compact(boolean blockAbort) throws Exception {
+        
+        Set<String> entries = getReferencedEntries();
+        
+        long totalBytes = 0;
+        
+        for (StorageEntry zipHeader : getFileHeaders()) {
+            if (isReferenced(entries, zipHeader)) {
+                totalBytes += zipHeader.getSize();
+            }
+        }
+        
+        reset(blockAbort, totalBytes);
+        
+        for (ProcessListener listener : listeners) {
+            listener.abortBlocked(blockAbort);
+        }
+        
+        updateFileInProcess(getFile().getAbsolutePath(), VACUUM, totalBytes);
+        
+        try {
+            
+            long reclaimedBytes = vacuum(zipHeader -> isReferenced(entries, zipHeader), this);
+            updateZipHeaders();
+            unreferencedBytes = -1;
+            return reclaimedBytes;
+            
+        } catch (Exception ex) {
+            
+            if (abort) return 0;
+            throw ex;
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Definir a proporção de bytes sem referência, em relação ao tamanho do
+     * arquivo, a partir da qual o arquivo é compactado automaticamente após a
+     * atualização da tabela de arquivos. Um valor menor ou igual a zero
+     * desativa a compactação automática.
+     * @param vacuumThreshold proporção entre 0 e 1.
+     * @since 2.0
+     */
+    public void setVacuumThreshold(double vacuumThreshold) {
+        this.vacuumThreshold = vacuumThreshold;
+    }
+    
+    
+    /**
+     * Obter a proporção de bytes sem referência para a compactação automática.
+     * @return proporção entre 0 e 1.
+     * @since 2.0
+     */
+    public double getVacuumThreshold() {
+        return vacuumThreshold;
+    }
+
+
+    /**
+     * Definir a proporção do tamanho do diário, em relação ao tamanho da tabela
+     * de arquivos, a partir da qual a tabela é consolidada (versão 3). Um valor
+     * menor ou igual a zero desativa o diário, e a tabela inteira é gravada a
+     * cada atualização.
+     * @param journalThreshold proporção maior que 0.
+     * @since 2.0
+     */
+    public void setJournalThreshold(double journalThreshold) {
+        this.journalThreshold = journalThreshold;
+    }
+
+
+    /**
+     * Obter a proporção do diário para a consolidação da tabela de arquivos.
+     * @return proporção maior que 0, ou um valor menor ou igual a zero se o
+     * diário estiver desativado.
+     * @since 2.0
+     */
+    public double getJournalThreshold() {
+        return journalThreshold;
+    }
+
+    
+    /**
+     * Verificar se há no nome do arquivo ou diretório algum caractere inválido,
+     * que não faz parte do conjunto aceito para as diversas plataformas. Caso um
+     * caractere inválido seja detectado, retorna true para a chamada do método.
+     * @param fileName nome do arquivo ou diretório.
+     * @return true, há caracteres inválidos no nome do arquivo ou diretório,
+     * false, não há caracteres inválidos.
+     */
+    private boolean containsInvalidCharacters(String fileName) {
+        boolean contains = false;
+        for (int i = 0; i < fileName.length(); i++) {
+            if (contains) break;
+            for (int j = 0; j < INVALID_FILE_NAME_CHARACTERS.length; j++) {
+                if (fileName.charAt(i) == INVALID_FILE_NAME_CHARACTERS[j]) {
+                    contains = true;
+                    break;
+                }
+            }
+        }
+        return contains;
+    }
+
+    
+    /**
+     * Renomear um arquivo. O nome que será alterado é o que identifica o arquivo,
+     * e não o que ele usa internamente, que sempre será FileXXXXXXX.
+     * @param fileMetadata metadados do arquivo a ser renomeado.
+     * @param newFileName novo nome do arquivo.
+     * @throws Exception
+     */
+    private void renameFile(EncryptedFileMetadata fileMetadata, String newFileName) throws Exception {
+        
+        if (!containsInvalidCharacters(newFileName)) {
+            
+            String parent = getParentPath(fileMetadata);
+            String newFilePath = (parent.equals(FILE_SEPARATOR) ? parent + 
             newFileName : parent + FILE_SEPARATOR + newFileName);
             
             if (fileExists(newFilePath)) {
@@ -1279,7 +2313,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
                 );
             }
             
-            fileMetadata.setFileName(newFilePath);
+            fileTable.rename(fileMetadata, newFilePath);
             
             updateFileTable();
             
@@ -1349,16 +2383,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
             );
         }
         
-        boolean containsFolder = false;
-        
-        for (String folder : folders) {
-            if (equals(folderName, folder)) {
-                containsFolder = true;
-                break;
-            }
-        }
-        
-        if (containsFolder) {
+        if (folderExists(folderName)) {
             
             if (!folderName.equals(FILE_SEPARATOR)) {
 
@@ -1387,12 +2412,12 @@ public final class BravoFile extends ZipFile implements CipherListener {
                                 folderName,
                                 newFolderPath
                             );
-                            fileMetadata.setFileName(filePath);
+                            fileTable.rename(fileMetadata, filePath);
                         }
                     
                     } else {
                         
-                        emptyFolderMetadata.setFileName(getRelativeFolderPath(newFolderName));
+                        fileTable.rename(emptyFolderMetadata, getRelativeFolderPath(newFolderName));
                         
                     }
 
@@ -1542,7 +2567,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
                         } else {
                             newFilePath = FILE_SEPARATOR + fileName;
                         }
-                        fileMetadata.setFileName(newFilePath);
+                        fileTable.rename(fileMetadata, newFilePath);
                     }
                     
                 }
@@ -1588,7 +2613,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
                             for (EncryptedFileMetadata fileMetadata : encryptedFiles) {
                                 String newFileName = fileMetadata.getFileName()
                                 .replaceFirst(folder, newFolderPath);
-                                fileMetadata.setFileName(newFileName);
+                                fileTable.rename(fileMetadata, newFileName);
                             }
                             
                         }
@@ -1599,9 +2624,9 @@ public final class BravoFile extends ZipFile implements CipherListener {
                 
                 EncryptedFileMetadata metadata = getEncryptedFileMetadata(destinationFolder);
             
-                if (isEmptyFolder(metadata)) {
+                if (metadata != null && isEmptyFolder(metadata)) {
 
-                    fileMetadataList.remove(metadata);
+                    fileTable.remove(metadata);
 
                 }
 
@@ -1718,33 +2743,176 @@ public final class BravoFile extends ZipFile implements CipherListener {
             File parentFolder = destinationFile.getParentFile();
             if (!parentFolder.exists()) parentFolder.mkdirs();
             
-            try (ZipInputStream zipInputStream = getInputStream(fileMetadata.getZipHeader());
-            FileOutputStream fileOutputStream = new FileOutputStream(destinationFile)) {
+            writeExtractedFile(fileMetadata, destinationFile, this);
+            
+        } else {
+            
+            destinationFile.mkdirs();
+            
+        }
+        
+        return destinationFile;
+        
+    }
+    
+    
+    /**
+     * Decriptar um arquivo para o arquivo de destino em disco, cujo diretório
+     * já deve existir. Pode ser executado por várias threads ao mesmo tempo,
+     * pois a leitura do ZIP é feita por leituras posicionais e o ouvinte é
+     * próprio de cada extração.
+     * @param fileMetadata metadados do arquivo.
+     * @param destinationFile arquivo de destino.
+     * @param listener ouvinte do processo de decriptação.
+     * @throws Exception 
+     */
+    private void writeExtractedFile(EncryptedFileMetadata fileMetadata, File destinationFile,
+    CipherListener listener) throws Exception {
+        
+        try (InputStream zipInputStream = getInputStream(fileMetadata.getZipHeader());
+        FileOutputStream fileOutputStream = new FileOutputStream(destinationFile)) {
 
-                new AESCipher().decrypt(
-                    zipInputStream,
-                    fileOutputStream,
-                    fileMetadata,
-                    passwordHash,
-                    this
+            decryptFile(
+                zipInputStream,
+                fileOutputStream,
+                fileMetadata,
+                listener
+            );
+
+            if (!listener.abort()) {
+                FileTime creationTime = FileTime.fromMillis(fileMetadata.getCreatedTime());
+                FileTime modifiedTime = FileTime.fromMillis(fileMetadata.getLastModifiedTime());
+                Files.setAttribute(destinationFile.toPath(), "basic:creationTime", creationTime);
+                Files.setAttribute(destinationFile.toPath(), "basic:lastModifiedTime", modifiedTime);
+            }
+
+        }
+        
+    }
+    
+    
+    /**
+     * Submeter ao pipeline a extração dos próximos arquivos da lista, enquanto
+     * houver espaço disponível. Os diretórios de destino são criados pela
+     * thread atual, antes da submissão.
+     * @param pipeline pipeline de extração.
+     * @param encryptedFiles lista de arquivos a serem extraídos.
+     * @param destinationPath diretório aonde os arquivos serão extraídos.
+     * @param index índice do próximo arquivo a ser submetido.
+     * @return índice do próximo arquivo a ser submetido na chamada seguinte.
+     */
+    private int submitExtractions(ExtractionPipeline pipeline,
+    List<EncryptedFileMetadata> encryptedFiles, String destinationPath, int index) {
+        
+        while (index < encryptedFiles.size()) {
+            
+            EncryptedFileMetadata fileMetadata = encryptedFiles.get(index);
+            
+            if (!isEmptyFolder(fileMetadata)) {
+                
+                if (!pipeline.hasRoom()) break;
+                
+                File destinationFile = getDestinationFile(
+                    fileMetadata.getFileName(),
+                    destinationPath
                 );
                 
-                if (!abort()) {
-                    FileTime creationTime = FileTime.fromMillis(fileMetadata.getCreatedTime());
-                    FileTime modifiedTime = FileTime.fromMillis(fileMetadata.getLastModifiedTime());
-                    Files.setAttribute(destinationFile.toPath(), "basic:creationTime", creationTime);
-                    Files.setAttribute(destinationFile.toPath(), "basic:lastModifiedTime", modifiedTime);
-                }
+                File parentFolder = destinationFile.getParentFile();
+                if (!parentFolder.exists()) parentFolder.mkdirs();
+                
+                pipeline.submit(
+                    listener -> writeExtractedFile(fileMetadata, destinationFile, listener)
+                );
                 
             }
             
-        } else {
-            
-            destinationFile.mkdirs();
+            index++;
             
         }
         
-        return destinationFile;
+        return index;
+        
+    }
+    
+    
+    /**
+     * Extrair uma lista de arquivos para um diretório em disco.
+     * 
+     * <br><br>
+     * 
+     * Com mais de uma thread de extração (ver {@link #setExtractionThreads(int)}),
+     * os arquivos são lidos e decriptados concorrentemente, à frente do
+     * arquivo atual. A thread atual acompanha os arquivos na ordem da lista,
+     * de modo que os ouvintes são notificados da mesma forma que na extração
+     * sequencial, com o percentual total incluindo os bytes já processados
+     * dos arquivos seguintes. Caso o processo seja abortado, os arquivos
+     * seguintes cuja extração já terminou permanecem no destino, mas não são
+     * incluídos na lista de arquivos extraídos.
+     * 
+     * @param encryptedFiles arquivos a serem extraídos.
+     * @param destinationPath diretório em disco.
+     * @param filesList lista que recebe os arquivos extraídos.
+     * @throws Exception 
+     */
+    private void extractFiles(List<EncryptedFileMetadata> encryptedFiles, String destinationPath,
+    List<File> filesList) throws Exception {
+        
+        if (extractionThreads == 1) {
+            for (EncryptedFileMetadata fileMetadata : encryptedFiles) {
+                if (abort()) break;
+                filesList.add(extractFile(fileMetadata, destinationPath));
+            }
+            return;
+        }
+        
+        try (ExtractionPipeline pipeline = new ExtractionPipeline(extractionThreads)) {
+            
+            int nextIndex = 0;
+            
+            for (int i = 0; i < encryptedFiles.size(); i++) {
+                
+                if (abort()) break;
+                
+                nextIndex = submitExtractions(pipeline, encryptedFiles, destinationPath,
+                Math.max(i, nextIndex));
+                
+                EncryptedFileMetadata fileMetadata = encryptedFiles.get(i);
+                
+                File destinationFile = getDestinationFile(
+                    fileMetadata.getFileName(),
+                    destinationPath
+                );
+                
+                if (!isEmptyFolder(fileMetadata)) {
+                    
+                    updateFileInProcess(
+                        destinationFile.getAbsolutePath(),
+                        EXTRACT,
+                        fileMetadata.getOriginalSize()
+                    );
+                    
+                    ExtractionPipeline.Extraction extraction = pipeline.take();
+                    
+                    // O abortamento é repassado às extrações em andamento,
+                    // que terminam no próximo bloco processado.
+                    while (!extraction.await(PROGRESS_INTERVAL)) {
+                        if (abort()) pipeline.abort();
+                        updateProgress(extraction.getBytes(), pipeline.getProcessedBytes());
+                    }
+                    
+                    updateProgress(extraction.getBytes(), pipeline.getProcessedBytes());
+                    
+                } else {
+                    
+                    destinationFile.mkdirs();
+                    
+                }
+                
+                filesList.add(destinationFile);
+                
+            }
+            
+        }
         
     }
 
@@ -1789,10 +2957,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
 
             reset(false, calculateSize(encryptedFiles, 1));
 
-            for (EncryptedFileMetadata fileMetadata : encryptedFiles) {
-                if (abort()) break;
-                filesList.add(extractFile(fileMetadata, destinationPath));
-            }
+            extractFiles(encryptedFiles, destinationPath, filesList);
             
             if (abort()) return filesList;
 
@@ -1891,14 +3056,13 @@ public final class BravoFile extends ZipFile implements CipherListener {
                     fileMetadata.getOriginalSize()
                 );
                 
-                try (ZipInputStream zipInputStream = getInputStream(fileMetadata.getZipHeader());
+                try (InputStream zipInputStream = getInputStream(fileMetadata.getZipHeader());
                 FileOutputStream fileOutputStream = new FileOutputStream(destinationFile)) {
                     
-                    new AESCipher().decrypt(
+                    decryptFile(
                         zipInputStream,
                         fileOutputStream,
                         fileMetadata,
-                        passwordHash,
                         this
                     );
                     
@@ -1912,16 +3076,530 @@ public final class BravoFile extends ZipFile implements CipherListener {
                     
                 }
                 
-                if (!abort()) {
-                    filesList.add(destinationFile);
+                if (!abort()) {
+                    filesList.add(destinationFile);
+                }
+                
+            }
+            
+            return filesList;
+            
+        } finally {
+            
+            for (ProcessListener listener : listeners) {
+                listener.done();
+            }
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Testar o processo de extração de arquivos e diretórios. O objetivo é 
+     * listar os arquivos que serão sobrescritos se for realizado o processo.
+     * @param filesAndFolders arquivos e diretórios a serem extraídos.
+     * @param destinationPath diretório de destino.
+     * @return lista dos arquivos que serão sobrescritos no destino.
+     * @throws Exception 
+     */
+    public List<File> testExtractFilesAndFolders(List<String> filesAndFolders, 
+    String destinationPath) throws Exception  {
+        
+        List<File> existingFiles = new ArrayList<>();
+        
+        List<String> filesAndFoldersCopy = new ArrayList<>(filesAndFolders.size());
+        filesAndFoldersCopy.addAll(filesAndFolders);
+        List<String> foldersList = new ArrayList<>();
+        
+        for (String folderName : filesAndFoldersCopy) {
+            
+            if (isFolderPath(folderName)) {
+                
+                foldersList.add(folderName);
+                List<EncryptedFileMetadata> encryptedFiles = getAllFilesFromFolder(folderName);
+                
+                for (EncryptedFileMetadata fileMetadata : encryptedFiles) {
+                    File file = getDestinationFile(
+                        fileMetadata.getFileName(),
+                        destinationPath
+                    );
+                    if (file.exists()) {
+                        existingFiles.add(file);
+                    }
+                }
+                
+            }
+            
+        }
+        
+        filesAndFoldersCopy.removeAll(foldersList);
+        
+        for (String fileName : filesAndFoldersCopy) {
+            File file = getDestinationFile(fileName, destinationPath);
+            if (file.exists()) {
+                existingFiles.add(file);
+            }
+        }
+        
+        return existingFiles;
+        
+    }
+
+    
+    /**
+     * Extrair todos os arquivos e diretórios para o diretório em disco.
+     * @param destinationPath diretório em disco.
+     * @throws Exception 
+     */
+    public void extractAllFiles(String destinationPath) throws Exception {
+        
+        try {
+            
+            List<EncryptedFileMetadata> encryptedFiles = getAllFilesFromFolder(rootFolder);
+            
+            reset(false, calculateSize(encryptedFiles, 1));
+            
+            extractFiles(encryptedFiles, destinationPath, new ArrayList<>());
+            
+        } finally {
+            
+            for (ProcessListener listener : listeners) {
+                listener.done();
+            }
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Trocar a senha usada na abertura do arquivo, mantendo os parâmetros do
+     * Argon2 da senha atual.
+     * @param newPassword nova senha.
+     * @throws Exception 
+     * @since 2.0
+     * @see #changePassword(char[], Argon2Params, byte[])
+     */
+    public void changePassword(char[] newPassword) throws Exception {
+        changePassword(newPassword, getPasswordParams(), new SecureRandom());
+    }
+    
+    
+    /**
+     * Trocar a senha usada na abertura do arquivo. Apenas o compartimento de
+     * chave da senha é regravado: a chave dos dados não muda, e os arquivos
+     * não são reencriptados. O novo compartimento é gravado antes da remoção
+     * do anterior, de modo que uma interrupção não deixa o arquivo sem senha.
+     * 
+     * <br><br>
+     * 
+     * Um arquivo na versão 3 é convertido para a versão 4: o hash da senha
+     * atual passa a ser a chave dos dados, protegida pela nova senha. Os
+     * arquivos nas versões 1 e 2 não são suportados.
+     * 
+     * <br><br>
+     * 
+     * <b>Obs.:</b> Para que a senha anterior deixe de abrir o arquivo, o
+     * compartimento removido (ou <i>METADATA/Test</i>, na versão 3) não pode
+     * permanecer no contêiner; por isso, o arquivo é compactado em seguida
+     * ({@link #vacuum()}), sem a possibilidade de abortar o processo. Apenas
+     * as cópias anteriores do arquivo, como backups, continuam abertas pela
+     * senha anterior, pois a chave dos dados é a mesma.
+     * 
+     * @param newPassword nova senha.
+     * @param params parâmetros para o algoritmo Argon2.
+     * @param seed semente para o gerador de números pseudo-aleatórios.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public void changePassword(char[] newPassword, Argon2Params params, byte[] seed)
+    throws Exception {
+        changePassword(newPassword, params, new SecureRandom(seed));
+    }
+    
+    
+    private void changePassword(char[] newPassword, Argon2Params params,
+    SecureRandom secureRandom) throws Exception {
+        
+        try {
+            
+            if (version < VERSION_3) {
+                throw new Exception("A troca de senha requer um arquivo na versão 3 ou superior.");
+            }
+            
+            TreeMap<Integer, StorageEntry> keySlotHeaders = getKeySlotHeaders();
+            
+            // Salt e parâmetros da senha anterior, cuja chave é removida do
+            // cache de sessão.
+            byte[] oldSalt = null;
+            Argon2Params oldParams = null;
+            
+            if (version == VERSION_3) {
+                try (InputStream inputStream = getInputStream(getFileHeader(TEST_FILE_NAME))) {
+                    oldSalt = inputStream.readNBytes(SALT_LENGTH);
+                }
+                oldParams = getPasswordParams();
+            } else if (keySlot >= 0 && keySlotHeaders.containsKey(keySlot)) {
+                KeySlot oldSlot = readKeySlot(keySlotHeaders.get(keySlot));
+                oldSalt = oldSlot.getSalt();
+                oldParams = oldSlot.getParams();
+            }
+            
+            beginBatch();
+            
+            try {
+                
+                if (version == VERSION_3) {
+                    
+                    writeKeySlot(0, newPassword, params, secureRandom);
+                    
+                    version = VERSION_4;
+                    addStream(new ByteArrayInputStream(intToByteArray(version)),
+                    VERSION_FILE_NAME);
+                    
+                    deleteFile(getFileHeader(TEST_FILE_NAME));
+                    
+                    keySlot = 0;
+                    
+                } else {
+                    
+                    int slot = getFreeKeySlot(keySlotHeaders);
+                    
+                    writeKeySlot(slot, newPassword, params, secureRandom);
+                    
+                    if (keySlot >= 0 && keySlotHeaders.containsKey(keySlot)) {
+                        deleteFile(keySlotHeaders.get(keySlot));
+                    }
+                    
+                    keySlot = slot;
+                    
+                }
+                
+            } finally {
+                commitBatch();
+                updateZipHeaders();
+            }
+            
+            if (oldSalt != null) {
+                compactRevokedPassword();
+                SessionKeyCache.remove(getFile(), oldSalt, oldParams);
+            }
+            
+        } finally {
+            
+            Arrays.fill(newPassword, (char) 0x00);
+            
+            for (ProcessListener listener : listeners) {
+                listener.done();
+            }
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Incluir uma senha no arquivo (versão 4). A nova senha abre o arquivo
+     * independentemente das demais, e pode ser revogada com
+     * {@link #removePassword(char[])}. Apenas um novo compartimento de chave é
+     * gravado.
+     * @param password senha a ser incluída.
+     * @param params parâmetros para o algoritmo Argon2.
+     * @param seed semente para o gerador de números pseudo-aleatórios.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public void addPassword(char[] password, Argon2Params params, byte[] seed) throws Exception {
+        
+        try {
+            
+            if (version < VERSION_4) {
+                throw new Exception("A inclusão de senhas requer um arquivo na versão 4. " +
+                "Troque a senha para converter o arquivo.");
+            }
+            
+            int slot = getFreeKeySlot(getKeySlotHeaders());
+            
+            beginBatch();
+            
+            try {
+                writeKeySlot(slot, password, params, new SecureRandom(seed));
+            } finally {
+                commitBatch();
+                updateZipHeaders();
+            }
+            
+        } finally {
+            Arrays.fill(password, (char) 0x00);
+        }
+        
+    }
+    
+    
+    /**
+     * Revogar uma senha do arquivo (versão 4), removendo o seu compartimento
+     * de chave. A última senha do arquivo não pode ser revogada.
+     * 
+     * <br><br>
+     * 
+     * <b>Obs.:</b> Para que a senha revogada deixe de abrir o arquivo, o
+     * compartimento não pode permanecer no contêiner; por isso, o arquivo é
+     * compactado em seguida ({@link #vacuum()}), sem a possibilidade de
+     * abortar o processo. Apenas as cópias anteriores do arquivo, como
+     * backups, continuam abertas pela senha revogada, pois a chave dos dados
+     * é a mesma; para substituí-la, é necessária a reencriptação dos arquivos
+     * com uma nova chave.
+     * @param password senha a ser revogada.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public void removePassword(char[] password) throws Exception {
+        
+        try {
+            
+            if (version < VERSION_4) {
+                throw new Exception("A revogação de senhas requer um arquivo na versão 4.");
+            }
+            
+            TreeMap<Integer, StorageEntry> keySlotHeaders = getKeySlotHeaders();
+            
+            for (Map.Entry<Integer, StorageEntry> entry : keySlotHeaders.entrySet()) {
+                
+                KeySlot slot = readKeySlot(entry.getValue());
+                
+                byte[] passwordKey = derivePasswordKey(password, slot.getSalt(), slot.getParams());
+                
+                byte[] key = slot.unwrap(passwordKey);
+                
+                Arrays.fill(passwordKey, (byte) 0x00);
+                
+                if (key != null) {
+                    
+                    Arrays.fill(key, (byte) 0x00);
+                    
+                    if (keySlotHeaders.size() == 1) {
+                        throw new Exception("A última senha do arquivo não pode ser revogada.");
+                    }
+                    
+                    beginBatch();
+                    
+                    try {
+                        deleteFile(entry.getValue());
+                    } finally {
+                        commitBatch();
+                        updateZipHeaders();
+                    }
+                    
+                    compactRevokedPassword();
+                    
+                    SessionKeyCache.remove(getFile(), slot.getSalt(), slot.getParams());
+                    
+                    if (keySlot == entry.getKey()) {
+                        keySlot = -1;
+                    }
+                    
+                    return;
+                    
+                }
+                
+            }
+            
+            throw new Exception("A senha não pertence ao arquivo.");
+            
+        } finally {
+            
+            Arrays.fill(password, (char) 0x00);
+            
+            for (ProcessListener listener : listeners) {
+                listener.done();
+            }
+            
+        }
+        
+    }
+    
+    
+    /**
+     * Compactar o arquivo após a remoção do compartimento de chave de uma
+     * senha, ou do hash da senha da versão 3, para que os seus bytes não
+     * permaneçam no contêiner. O processo não pode ser abortado.
+     * @throws Exception 
+     */
+    private void compactRevokedPassword() throws Exception {
+        
+        boolean blockAbort2 = blockAbort;
+        
+        try {
+            compact(true);
+        } finally {
+            for (ProcessListener listener : listeners) {
+                listener.abortBlocked(blockAbort2);
+            }
+            blockAbort = blockAbort2;
+        }
+        
+    }
+    
+    
+    /**
+     * Obter o número de senhas que abrem o arquivo.
+     * @return número de senhas.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public int getNumberOfPasswords() throws Exception {
+        return (version >= VERSION_4 ? getKeySlotHeaders().size() : 1);
+    }
+    
+    
+    /**
+     * Obter os parâmetros do Argon2 da senha usada na abertura do arquivo.
+     * @return parâmetros do Argon2.
+     * @throws Exception 
+     */
+    private Argon2Params getPasswordParams() throws Exception {
+        
+        if (version >= VERSION_4) {
+            TreeMap<Integer, StorageEntry> keySlotHeaders = getKeySlotHeaders();
+            StorageEntry zipHeader = keySlotHeaders.get(keySlot);
+            if (zipHeader == null) {
+                zipHeader = keySlotHeaders.firstEntry().getValue();
+            }
+            return readKeySlot(zipHeader).getParams();
+        }
+        
+        try (InputStream inputStream = getInputStream(getFileHeader(TEST_FILE_NAME))) {
+            inputStream.skipNBytes(SALT_LENGTH);
+            int iterations = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+            int memory = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+            int parallelism = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+            return new Argon2Params(iterations, memory, parallelism);
+        }
+        
+    }
+    
+    
+    /**
+     * Obter o primeiro compartimento de chave livre.
+     * @param keySlotHeaders cabeçalhos dos compartimentos gravados.
+     * @return número do compartimento.
+     * @throws Exception 
+     */
+    private int getFreeKeySlot(TreeMap<Integer, StorageEntry> keySlotHeaders) throws Exception {
+        for (int slot = 0; slot < MAX_KEY_SLOTS; slot++) {
+            if (!keySlotHeaders.containsKey(slot)) {
+                return slot;
+            }
+        }
+        throw new Exception("O arquivo já possui o número máximo de senhas (" +
+        MAX_KEY_SLOTS + ").");
+    }
+    
+    
+    /**
+     * Reencriptar o arquivo com uma nova chave dos dados, gravando o resultado
+     * em um novo arquivo. Use para substituir a chave dos dados, por exemplo,
+     * após a suspeita de comprometimento do arquivo ou de uma senha: ao
+     * contrário da troca de senha, a chave anterior deixa de abrir o novo
+     * arquivo. O arquivo atual não é alterado.
+     * 
+     * <br><br>
+     * 
+     * Cada entrada é lida do arquivo atual, decriptada e encriptada com a nova
+     * chave segmento a segmento (ver {@link SegmentedCipher}), e gravada
+     * diretamente no novo arquivo, sem que os bytes em claro sejam gravados em
+     * disco. As entradas são processadas concorrentemente por
+     * {@link #getEncryptionThreads()} threads, e os segmentos de cada entrada
+     * em paralelo. O novo arquivo é gravado no mesmo formato de armazenamento,
+     * na versão 4, com uma única senha.
+     * 
+     * <br><br>
+     * 
+     * A reencriptação pode ser retomada: o progresso é gravado no novo arquivo
+     * periodicamente e ao abortar o processo. Chamando este método novamente
+     * com o mesmo destino e a mesma senha, as entradas já gravadas são
+     * mantidas, e a reencriptação continua das demais. Enquanto não concluído,
+     * o novo arquivo é identificado pela entrada <i>METADATA/Rekey</i>.
+     * 
+     * @param destination novo arquivo.
+     * @param password senha do novo arquivo.
+     * @param params parâmetros para o algoritmo Argon2.
+     * @param seed semente para o gerador de números pseudo-aleatórios.
+     * @return true, se a reencriptação foi concluída; false, se foi abortada.
+     * @throws Exception 
+     * @since 2.0
+     */
+    public boolean rekey(File destination, char[] password, Argon2Params params, byte[] seed)
+    throws Exception {
+        
+        BravoFile target = null;
+        
+        try {
+            
+            if (destination.getCanonicalFile().equals(getFile().getCanonicalFile())) {
+                throw new Exception("O novo arquivo deve ser diferente do arquivo atual.");
+            }
+            
+            byte[] rekeyId = getRekeyId();
+            
+            if (destination.exists()) {
+                
+                // Retomada: o novo arquivo deve ser uma reencriptação
+                // incompleta deste arquivo.
+                target = new BravoFile(destination, password);
+                
+                StorageEntry rekeyHeader = target.getFileHeader(REKEY_FILE_NAME);
+                
+                byte[] targetId = null;
+                
+                if (rekeyHeader != null) {
+                    try (InputStream inputStream = target.getInputStream(rekeyHeader)) {
+                        targetId = inputStream.readAllBytes();
+                    }
+                }
+                
+                if (!Arrays.equals(rekeyId, targetId)) {
+                    throw new Exception("O novo arquivo já existe, e não é uma " +
+                    "reencriptação incompleta deste arquivo.");
+                }
+                
+            } else {
+                
+                target = new BravoFile(destination, password, params, seed, getStorageFormat());
+                
+                target.addStream(new ByteArrayInputStream(rekeyId), REKEY_FILE_NAME);
+                
+            }
+            
+            boolean completed = rekeyFiles(target);
+            
+            if (completed) {
+                
+                target.beginBatch();
+                
+                try {
+                    target.internalFileNameIndex = internalFileNameIndex;
+                    target.updateInternalFileNameIndex();
+                    target.setComment(getComment());
+                    target.deleteFile(target.getFileHeader(REKEY_FILE_NAME));
+                } finally {
+                    target.commitBatch();
+                    target.updateZipHeaders();
                 }
                 
             }
             
-            return filesList;
+            return completed;
             
         } finally {
             
+            Arrays.fill(password, (char) 0x00);
+            
+            if (target != null) {
+                target.close();
+            }
+            
             for (ProcessListener listener : listeners) {
                 listener.done();
             }
@@ -1932,168 +3610,242 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     
     /**
-     * Testar o processo de extração de arquivos e diretórios. O objetivo é 
-     * listar os arquivos que serão sobrescritos se for realizado o processo.
-     * @param filesAndFolders arquivos e diretórios a serem extraídos.
-     * @param destinationPath diretório de destino.
-     * @return lista dos arquivos que serão sobrescritos no destino.
+     * Reencriptar as entradas ainda não gravadas no novo arquivo. Os
+     * metadados são gravados no novo arquivo a cada
+     * {@link #REKEY_CHECKPOINT_BYTES} bytes e ao final, inclusive se o
+     * processo for abortado.
+     * @param target novo arquivo.
+     * @return true, se todas as entradas foram gravadas.
      * @throws Exception 
      */
-    public List<File> testExtractFilesAndFolders(List<String> filesAndFolders, 
-    String destinationPath) throws Exception  {
+    private boolean rekeyFiles(BravoFile target) throws Exception {
         
-        List<File> existingFiles = new ArrayList<>();
+        List<EncryptedFileMetadata> sourceFiles = new ArrayList<>();
+        List<EncryptedFileMetadata> targetFiles = new ArrayList<>();
         
-        List<String> filesAndFoldersCopy = new ArrayList<>(filesAndFolders.size());
-        filesAndFoldersCopy.addAll(filesAndFolders);
-        List<String> foldersList = new ArrayList<>();
+        long totalBytes = 0;
         
-        for (String folderName : filesAndFoldersCopy) {
+        for (EncryptedFileMetadata fileMetadata : fileTable) {
             
-            if (isFolderPath(folderName)) {
-                
-                foldersList.add(folderName);
-                List<EncryptedFileMetadata> encryptedFiles = getAllFilesFromFolder(folderName);
-                
-                for (EncryptedFileMetadata fileMetadata : encryptedFiles) {
-                    File file = getDestinationFile(
-                        fileMetadata.getFileName(),
-                        destinationPath
-                    );
-                    if (file.exists()) {
-                        existingFiles.add(file);
-                    }
-                }
-                
+            EncryptedFileMetadata targetMetadata = target.getEncryptedFileMetadata(
+                fileMetadata.getFileName()
+            );
+            
+            // Entrada gravada em uma execução anterior.
+            if (targetMetadata != null && Objects.equals(targetMetadata.getInternalFileName(),
+            fileMetadata.getInternalFileName())) {
+                continue;
+            }
+            
+            EncryptedFileMetadata newMetadata = new EncryptedFileMetadata(fileMetadata);
+            newMetadata.setZipHeader(null);
+            
+            sourceFiles.add(fileMetadata);
+            targetFiles.add(newMetadata);
+            
+            if (!isEmptyFolder(fileMetadata)) {
+                totalBytes += target.getEncryptedLength(fileMetadata.getOriginalSize());
             }
             
         }
         
-        filesAndFoldersCopy.removeAll(foldersList);
+        EncryptionPipeline pipeline = new EncryptionPipeline(
+            encryptionThreads,
+            EncryptionPipeline.DEFAULT_BUDGET,
+            PIPE_CAPACITY
+        );
         
-        for (String fileName : filesAndFoldersCopy) {
-            File file = getDestinationFile(fileName, destinationPath);
-            if (file.exists()) {
-                existingFiles.add(file);
-            }
+        reset(false, totalBytes);
+        
+        for (ProcessListener listener : listeners) {
+            listener.abortBlocked(blockAbort);
         }
         
-        return existingFiles;
+        int count = 0;
         
-    }
-
-    
-    /**
-     * Extrair todos os arquivos e diretórios para o diretório em disco.
-     * @param destinationPath diretório em disco.
-     * @throws Exception 
-     */
-    public void extractAllFiles(String destinationPath) throws Exception {
+        target.beginBatch();
         
-        try {
+        try (pipeline) {
             
-            List<EncryptedFileMetadata> encryptedFiles = getAllFilesFromFolder(rootFolder);
+            int nextIndex = 0;
             
-            reset(false, calculateSize(encryptedFiles, 1));
+            long checkpointBytes = 0;
             
-            for (EncryptedFileMetadata fileMetadata : encryptedFiles) {
+            for (int i = 0; i < sourceFiles.size(); i++) {
+                
                 if (abort()) break;
-                extractFile(fileMetadata, destinationPath);
+                
+                nextIndex = submitRekeys(pipeline, target, sourceFiles, targetFiles,
+                Math.max(i, nextIndex));
+                
+                EncryptedFileMetadata fileMetadata = sourceFiles.get(i);
+                EncryptedFileMetadata newMetadata = targetFiles.get(i);
+                
+                if (!isEmptyFolder(fileMetadata)) {
+                    
+                    long encryptedLength = target.getEncryptedLength(fileMetadata.getOriginalSize());
+                    
+                    updateFileInProcess(fileMetadata.getFileName(), REKEY, encryptedLength);
+                    
+                    PipedCipherInputStream inputStream = pipeline.take();
+                    
+                    try (inputStream) {
+                        target.addStream(inputStream, newMetadata.getInternalFileName());
+                    } catch (Exception ex) {
+                        if (abort) break;
+                        throw ex;
+                    }
+                    
+                    checkpointBytes += encryptedLength;
+                    
+                }
+                
+                if (target.fileTable.contains(newMetadata.getFileName())) {
+                    target.fileTable.update(newMetadata);
+                } else {
+                    target.fileTable.add(newMetadata);
+                }
+                
+                count++;
+                
+                // Gravação do progresso: as entradas gravadas passam a ser
+                // referenciadas pela tabela do novo arquivo.
+                if (checkpointBytes >= REKEY_CHECKPOINT_BYTES) {
+                    target.writeFileTable();
+                    target.commitBatch();
+                    target.beginBatch();
+                    checkpointBytes = 0;
+                }
+                
             }
             
         } finally {
             
-            for (ProcessListener listener : listeners) {
-                listener.done();
+            try {
+                target.writeFileTable();
+            } finally {
+                target.commitBatch();
+                target.updateZipHeaders();
             }
             
         }
         
+        return count == sourceFiles.size();
+        
     }
     
     
-    public void changePassword(String newPassword, Argon2Params params, byte[] seed) throws Exception {
-        /*FileEraser fileEraser = new FileEraser();
-        fileEraser.addCipherListener(this);        
-        try {
-            if (!isFilePassword(newPassword)) {
-                List<File> list = new ArrayList<>();
-                File cacheFolder = RootFolder.getExtractFolder2();
-                list.add(cacheFolder);
-                reset(true, 0);
-                fileEraser.wipeFiles(list);
-                int passes = 3 + fileEraser.getPassesByMethod();
-                reset(true, calculateSize2(fileMetadataList, passes));
-                for (FileMetadata fileMetadata : fileMetadataList) {
-                    if (abort()) break;
-                    extractFile(fileMetadata, cacheFolder.getAbsolutePath());
-                }
-                writeTestBytes(newPassword);
-                this.password = newPassword;
-                fileMetadataList.clear();
-                index = 0;        
-                writeFileMetadataList();
-                setRootFolder(SEPARATOR);
-                List<EncryptedFileData> encryptedFiles = new ArrayList<>();
-                List<File> filesList = new ArrayList<>();
-                listFilesFromFolder(cacheFolder, filesList);
-                for (File file : filesList) {
-                    EncryptedFileData encryptedFile = getEncryptedFileData(file, null);
-                    if (encryptedFile != null) encryptedFiles.add(encryptedFile);
-                }
-                List<File> subfolders = new ArrayList<>();
-                File[] foldersList = cacheFolder.listFiles(new DirectoryFilter());
-                if (foldersList != null) {
-                    subfolders.addAll(Arrays.asList(foldersList));
-                }
-                for (File folder : subfolders) {
-                    encryptedFiles.addAll(encryptFolder(folder));
-                }                
-                addEncryptedFiles(encryptedFiles);
-                updateFileInProcess(cacheFolder.getAbsolutePath(), WIPE,
-                calculateSize(list, fileEraser.getPassesByMethod()));
-                fileEraser.wipeFiles(list);
-            }
-        } finally {
-            fileEraser.removeCipherListener(this);
-            for (ProcessListener listener : listeners) {
-                listener.done();
+    /**
+     * Submeter ao pipeline a reencriptação das próximas entradas da lista,
+     * enquanto houver orçamento disponível.
+     * @param pipeline pipeline de encriptação.
+     * @param target novo arquivo.
+     * @param sourceFiles metadados das entradas no arquivo atual.
+     * @param targetFiles metadados das entradas no novo arquivo.
+     * @param index posição da próxima entrada a ser submetida.
+     * @return posição da próxima entrada a ser submetida.
+     */
+    private int submitRekeys(EncryptionPipeline pipeline, BravoFile target,
+    List<EncryptedFileMetadata> sourceFiles, List<EncryptedFileMetadata> targetFiles,
+    int index) {
+        
+        while (index < sourceFiles.size()) {
+            
+            EncryptedFileMetadata fileMetadata = sourceFiles.get(index);
+            EncryptedFileMetadata newMetadata = targetFiles.get(index);
+            
+            if (!isEmptyFolder(fileMetadata)) {
+                
+                long encryptedLength = target.getEncryptedLength(fileMetadata.getOriginalSize());
+                
+                if (!pipeline.hasRoom(encryptedLength)) break;
+                
+                pipeline.submit(
+                    ostream -> rekeyFile(fileMetadata, target, newMetadata, ostream),
+                    encryptedLength,
+                    this
+                );
+                
             }
-        }*/
+            
+            index++;
+            
+        }
+        
+        return index;
+        
     }
     
     
     /**
-     * Obter todos os arquivos criptografados de um diretório e de seus
-     * subdiretórios.
-     * @param folderName diretório que será obtida a lista de arquivos.
-     * @return lista dos arquivos criptografados do diretório.
+     * Reencriptar uma entrada com a chave do novo arquivo.
+     * @param fileMetadata metadados da entrada no arquivo atual.
+     * @param target novo arquivo.
+     * @param newMetadata metadados da entrada no novo arquivo, que recebem o
+     * novo IV.
+     * @param ostream stream da entrada no novo arquivo.
+     * @throws Exception 
      */
-    private List<EncryptedFileMetadata> getAllFilesFromFolder(String folderName) {
-        
-        List<EncryptedFileMetadata> filesList = new ArrayList<>();
+    private void rekeyFile(EncryptedFileMetadata fileMetadata, BravoFile target,
+    EncryptedFileMetadata newMetadata, OutputStream ostream) throws Exception {
         
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
+        try (InputStream zipInputStream = getInputStream(fileMetadata.getZipHeader())) {
             
-            boolean isParent = false;
-            String parent = fileMetadata.getFileName();
-            
-            do {
-                parent = getParentPath(parent);
-                if (equals(parent, folderName)) {
-                    isParent = true;
-                    break;
+            switch (version) {
+                
+                // Versão 1: AES/CFB em um único stream. Os bytes decriptados
+                // passam por um buffer em memória até a encriptação.
+                case VERSION_1 -> {
+                    try (PipedCipherInputStream inputStream = new PipedCipherInputStream(
+                        pstream -> decryptFile(zipInputStream, pstream, fileMetadata),
+                        FILE_TABLE_EXECUTOR,
+                        PIPE_CAPACITY
+                    )) {
+                        target.encryptFile(inputStream, ostream, newMetadata);
+                    }
                 }
-            } while (!parent.equals(FILE_SEPARATOR));
-            
-            if (isParent) {
-                filesList.add(fileMetadata);
+                
+                default -> new SegmentedCipher().reencrypt(
+                    zipInputStream,
+                    ostream,
+                    fileMetadata,
+                    dataKey,
+                    newMetadata,
+                    target.dataKey
+                );
+                
             }
             
         }
         
-        return filesList;
-        
+    }
+    
+    
+    /**
+     * Obter o identificador da reencriptação deste arquivo: HMAC-SHA256 de um
+     * rótulo fixo com a chave dos dados, que não expõe a chave.
+     * @return identificador da reencriptação.
+     */
+    private byte[] getRekeyId() {
+        HMac hmac = new HMac(new SHA256Digest());
+        hmac.init(new KeyParameter(dataKey));
+        byte[] label = REKEY_FILE_NAME.getBytes(StandardCharsets.UTF_8);
+        hmac.update(label, 0, label.length);
+        byte[] rekeyId = new byte[hmac.getMacSize()];
+        hmac.doFinal(rekeyId, 0);
+        return rekeyId;
+    }
+    
+    
+    /**
+     * Obter todos os arquivos criptografados de um diretório e de seus
+     * subdiretórios. Os arquivos são obtidos por um intervalo da tabela de
+     * arquivos ordenada pelo caminho, sem percorrer a tabela inteira.
+     * @param folderName diretório que será obtida a lista de arquivos.
+     * @return lista dos arquivos criptografados do diretório.
+     */
+    private List<EncryptedFileMetadata> getAllFilesFromFolder(String folderName) {
+        return fileTable.getAllFromFolder(folderName);
     }
     
     
@@ -2113,10 +3865,10 @@ public final class BravoFile extends ZipFile implements CipherListener {
         
         for (String folder : folders) {
             
-            List<EncryptedFileMetadata> filesList = getAllFilesFromFolder(folder);
-            List<String> foldersList = getAllSubfoldersFromFolder(folder);
-            
-            if (filesList.isEmpty() && foldersList.isEmpty()) {
+            // Os subdiretórios só existem enquanto houver entradas abaixo
+            // deles, então basta verificar se o intervalo do diretório na
+            // tabela de arquivos está vazio.
+            if (!fileTable.containsAnyInFolder(folder)) {
                 EncryptedFileMetadata fileMetadata = new EncryptedFileMetadata();
                 fileMetadata.setFileName(folder);
                 fileMetadata.setInternalFileName(EMPTY_FOLDER_TAG);
@@ -2186,20 +3938,13 @@ public final class BravoFile extends ZipFile implements CipherListener {
     public String getParentPath(String file) {
         
         int lastIndex = file.lastIndexOf(FILE_SEPARATOR);
-        String parentPath = file.substring(0, lastIndex == 0 ? 1 : lastIndex);
-        int index = -1;
-        
-        for (int i = 0; i < folders.size(); i++) {
-            if (equals(folders.get(i), parentPath)) {
-                index = i;
-                break;
-            }
-        }
+        int length = (lastIndex == 0 ? 1 : lastIndex);
+        String parent = folderTree.getPath(file, length);
         
-        if (index != -1) {
-            return folders.get(index);
+        if (parent != null) {
+            return parent;
         } else {
-            return parentPath;
+            return file.substring(0, length);
         }
         
     }
@@ -2228,55 +3973,27 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     
     private boolean equals(String file1, String file2) {
-        return file1.toLowerCase().equals(file2.toLowerCase());
+        return PathIndex.equalsIgnoreCase(file1, file2);
     }
     
     
     private boolean fileExists(String fileName) {
-        boolean inserted = false;
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
-            if (equals(fileMetadata.getFileName(), fileName)) {
-                inserted = true;
-                break;
-            }
-        }
-        return inserted;
+        return fileTable.contains(fileName);
     }
     
     
     private boolean folderExists(String folderName) {
-        boolean inserted = false;
-        for (String folder : folders) {
-            if (equals(folder, folderName)) {
-                inserted = true;
-                break;
-            }
-        }
-        return inserted;
+        return folderTree.contains(folderName);
     }
 
     
     private boolean isFilePath(String path) {
-        boolean value = false;
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
-            if (equals(fileMetadata.getFileName(), path)) {
-                value = true;
-                break;
-            }
-        }
-        return value;
+        return fileTable.contains(path);
     }
     
     
     private boolean isFolderPath(String path) {
-        boolean value = false;
-        for (String folderName : folders) {
-            if (equals(path, folderName)) {
-                value = true;
-                break;
-            }
-        }
-        return value;
+        return folderTree.contains(path);
     }
     
     
@@ -2358,63 +4075,6 @@ public final class BravoFile extends ZipFile implements CipherListener {
     }
     
     
-    private List<String> getFolders() {
-        
-        List<String> foldersList = new ArrayList<>();
-        foldersList.add(FILE_SEPARATOR);
-        
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
-            
-            String fileName = fileMetadata.getFileName();
-            int lastIndex = fileName.lastIndexOf(FILE_SEPARATOR);
-            String parent = fileName.substring(0, lastIndex == 0 ? 1 : lastIndex);
-            String[] splitPath = parent.split(FILE_SEPARATOR);
-            
-            for (int i = 1; i < splitPath.length; i++) {
-                
-                StringBuilder sb = new StringBuilder();
-                
-                for (int j = 1; j <= i; j++) {
-                    sb.append(FILE_SEPARATOR);
-                    sb.append(splitPath[j]);                    
-                }
-                
-                String folderPath = sb.toString();
-                
-                if (!foldersList.contains(folderPath)) {
-                    foldersList.add(folderPath);
-                }
-                
-            }
-            
-            if (isEmptyFolder(fileMetadata)) {
-                if (!foldersList.contains(fileMetadata.getFileName())) {
-                    foldersList.add(fileMetadata.getFileName());
-                }
-            }
-            
-        }
-        
-        return foldersList;
-        
-    }
-    
-    
-    private List<EncryptedFileMetadata> getEmptyFolders() {
-        
-        List<EncryptedFileMetadata> emptyFolders = new ArrayList<>();
-        
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
-            if (isEmptyFolder(fileMetadata)) {
-                emptyFolders.add(fileMetadata);
-            }
-        }
-        
-        return emptyFolders;
-        
-    }
-    
-    
     /**
      * Obter todos os arquivos criptografados.
      * @return lista com todos os arquivos criptografados.
@@ -2423,7 +4083,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
         
         List<FileEntry> encryptedFiles = new ArrayList<>();
         
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
+        for (EncryptedFileMetadata fileMetadata : fileTable) {
             encryptedFiles.add(new FileEntry(fileMetadata));
         }
         
@@ -2442,7 +4102,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
         
         List<FileEntry> encryptedFiles = new ArrayList<>();
         
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
+        for (EncryptedFileMetadata fileMetadata : getAllFilesFromFolder(folderName)) {
             
             if (!isEmptyFolder(fileMetadata)) {
                 
@@ -2473,14 +4133,9 @@ public final class BravoFile extends ZipFile implements CipherListener {
         
         List<FileEntry> encryptedFiles = new ArrayList<>();
         
-        for (String folder : folders) {
-            if (!equals(folderName, folder)) {
-                String parent = getParentPath(folder);
-                if (equals(folderName, parent)) {
-                    encryptedFiles.add(new FileEntry(null, folder, 0, 0, 0,
-                    true, false));
-                }
-            }
+        for (String folder : folderTree.getChildren(folderName)) {
+            encryptedFiles.add(new FileEntry(null, folder, 0, 0, 0,
+            true, false));
         }
         
         encryptedFiles.sort(new EncryptedFileComparator());
@@ -2496,34 +4151,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
      * @return lista de subdiretórios do diretório.
      */
     private List<String> getAllSubfoldersFromFolder(String folderName) {
-        
-        List<String> foldersList = new ArrayList<>();
-        
-        for (String folder : folders) {
-            
-            if (!equals(folder, folderName)) {
-                
-                boolean isParent = false;
-                String parent = folder;
-                
-                do {
-                    parent = getParentPath(parent);
-                    if (equals(parent, folderName)) {
-                        isParent = true;
-                        break;
-                    }
-                } while (!parent.equals(FILE_SEPARATOR));
-                
-                if (isParent) {
-                    foldersList.add(folder);
-                }
-                
-            }
-            
-        }
-        
-        return foldersList;
-        
+        return folderTree.getSubtree(folderName);
     }
     
     
@@ -2540,7 +4168,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
      * @throws Exception 
      */
     public void setRootFolder(String rootFolder) throws Exception {
-        if (!folders.contains(rootFolder)) {
+        if (!rootFolder.equals(folderTree.getPath(rootFolder))) {
             throw new Exception("Diretório raiz inválido");
         }
         this.rootFolder = rootFolder;
@@ -2579,9 +4207,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
      * @return lista com todos os diretórios internos.
      */
     public List<String> getFoldersTree() {
-        List<String> foldersList = new ArrayList<>(folders.size());
-        foldersList.addAll(folders);
-        return foldersList;
+        return folderTree.getPaths();
     }
     
     
@@ -2629,7 +4255,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     public int getNumberOfFiles() {
         int counter = 0;
-        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
+        for (EncryptedFileMetadata fileMetadata : fileTable) {
             if (!isEmptyFolder(fileMetadata)) {
                 counter++;
             }
@@ -2660,6 +4286,50 @@ public final class BravoFile extends ZipFile implements CipherListener {
     public List<ProcessListener> getListeners() {
         return listeners;
     }
+
+
+    /**
+     * Definir o número de threads para a encriptação concorrente de arquivos
+     * na adição. Com uma única thread, os arquivos são encriptados um a um,
+     * ainda que a encriptação do próximo arquivo possa começar durante a
+     * gravação do atual.
+     * @param encryptionThreads número de threads.
+     * @since 2.0
+     */
+    public void setEncryptionThreads(int encryptionThreads) {
+        this.encryptionThreads = Math.max(1, encryptionThreads);
+    }
+
+
+    /**
+     * Obter o número de threads para a encriptação concorrente de arquivos.
+     * @return número de threads.
+     * @since 2.0
+     */
+    public int getEncryptionThreads() {
+        return encryptionThreads;
+    }
+
+
+    /**
+     * Definir o número de threads para a extração concorrente de arquivos.
+     * Com uma única thread, os arquivos são extraídos um a um.
+     * @param extractionThreads número de threads.
+     * @since 2.0
+     */
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = Math.max(1, extractionThreads);
+    }
+
+
+    /**
+     * Obter o número de threads para a extração concorrente de arquivos.
+     * @return número de threads.
+     * @since 2.0
+     */
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
     
     
     private void reset(boolean blockAbort, long totalBytesCounter) {
@@ -2682,9 +4352,20 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     
     private void notify(long length) {
+        updateProgress(fileBytesCounter + length, totalBytesCounter + length);
+    }
+    
+    
+    /**
+     * Atualizar o número de bytes processados do arquivo atual e do total,
+     * notificando os ouvintes quando os percentuais aumentam.
+     * @param fileBytesCounter bytes processados do arquivo atual.
+     * @param totalBytesCounter bytes processados no total.
+     */
+    private void updateProgress(long fileBytesCounter, long totalBytesCounter) {
         
         if (fileLength > 0) {
-            fileBytesCounter += length;
+            this.fileBytesCounter = fileBytesCounter;
             int percentage = (int)((fileBytesCounter * 100) / fileLength);
             if (percentage > filePercentage) {
                 filePercentage = percentage;
@@ -2695,7 +4376,7 @@ public final class BravoFile extends ZipFile implements CipherListener {
         }
         
         if (totalLength > 0) {
-            totalBytesCounter += length;
+            this.totalBytesCounter = totalBytesCounter;
             int percentage = (int)((totalBytesCounter * 100) / totalLength);
             if (percentage > totalPercentage) {
                 totalPercentage = percentage;
@@ -2746,6 +4427,11 @@ public final class BravoFile extends ZipFile implements CipherListener {
     
     
     public void close() throws IOException {
+        if (checkpoint != null) {
+            checkpoint.cancel(true);
+            checkpoint = null;
+        }
+        closeDataChannel();
         release();
     }
     
@@ -1,7 +1,6 @@
 package bravo.file;
 
 import java.io.Serializable;
-import net.lingala.zip4j.model.FileHeader;
 
 
 /**
@@ -18,8 +17,8 @@ final class EncryptedFileMetadata implements Serializable {
     //@java.io.Serial
     private static final long serialVersionUID = 1L;
     
-    /**Cabeçalho do arquivo ZIP conforme especificado pelo pacote Zip4j.*/
-    private transient FileHeader zipHeader;
+    /**Entrada do arquivo no armazenamento do contêiner.*/
+    private transient StorageEntry zipHeader;
     
     /**Nome interno do arquivo, conforme lido pelo ZIP.*/
     private String internalFileName;
@@ -44,10 +43,35 @@ final class EncryptedFileMetadata implements Serializable {
 
     
     /**
-     * Obter o cabeçalho do arquivo ZIP conforme especificado pelo pacote Zip4j.
-     * @return cabeçalho do arquivo ZIP conforme especificado pelo pacote Zip4j.
+     * Constructor padrão.
      */
-    public FileHeader getZipHeader() {
+    public EncryptedFileMetadata() {
+    }
+    
+    
+    /**
+     * Constructor de cópia. Os arrays de IV e SALT são compartilhados, pois
+     * nunca são alterados após a encriptação do arquivo.
+     * @param fileMetadata metadados a serem copiados.
+     * @since 2.0
+     */
+    public EncryptedFileMetadata(EncryptedFileMetadata fileMetadata) {
+        this.zipHeader = fileMetadata.zipHeader;
+        this.internalFileName = fileMetadata.internalFileName;
+        this.fileName = fileMetadata.fileName;
+        this.ivBytes = fileMetadata.ivBytes;
+        this.saltBytes = fileMetadata.saltBytes;
+        this.lastModifiedTime = fileMetadata.lastModifiedTime;
+        this.createdTime = fileMetadata.createdTime;
+        this.originalSize = fileMetadata.originalSize;
+    }
+    
+    
+    /**
+     * Obter a entrada do arquivo no armazenamento do contêiner.
+     * @return entrada do arquivo no armazenamento.
+     */
+    public StorageEntry getZipHeader() {
         return zipHeader;
     }
     
@@ -117,10 +141,10 @@ final class EncryptedFileMetadata implements Serializable {
 
     
     /**
-     * Difinir o cabeçalho do arquivo ZIP conforme especificado pelo pacote Zip4j.
-     * @param fileHeader cabeçalho do arquivo ZIP conforme especificado pelo pacote Zip4j.
+     * Difinir a entrada do arquivo no armazenamento do contêiner.
+     * @param fileHeader entrada do arquivo no armazenamento.
      */
-    public void setZipHeader(FileHeader fileHeader) {
+    public void setZipHeader(StorageEntry fileHeader) {
         this.zipHeader = fileHeader;
     }
 
@@ -0,0 +1,146 @@
+package bravo.file;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pipeline de encriptação de múltiplos arquivos. Os arquivos são encriptados
+ * concorrentemente por um conjunto de threads de trabalho, enquanto uma única
+ * thread (a que consome o pipeline) grava as entradas no ZIP, sempre na ordem
+ * em que foram submetidas.
+ *
+ * <br><br>
+ *
+ * Cada arquivo submetido ocupa um {@link PipedCipherInputStream}, cuja
+ * capacidade é descontada de um orçamento de bytes em trânsito. Novos arquivos
+ * só são aceitos enquanto houver orçamento disponível, de modo que o consumo de
+ * memória permanece limitado independentemente do número de arquivos. Arquivos
+ * pequenos são encriptados por completo na memória antes de serem gravados;
+ * arquivos grandes bloqueiam a thread de trabalho até que a gravação avance.
+ *
+ * @since 2.0
+ */
+final class EncryptionPipeline implements AutoCloseable {
+
+
+    /**Orçamento padrão de bytes em trânsito (64 MB).*/
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    /**Número máximo de arquivos em trânsito por thread de trabalho.*/
+    private static final int FILES_PER_THREAD = 16;
+
+    /**Threads de trabalho para a encriptação.*/
+    private final ExecutorService executor;
+
+    /**Orçamento de bytes em trânsito.*/
+    private final long budget;
+
+    /**Número máximo de arquivos em trânsito.*/
+    private final int maxFiles;
+
+    /**Capacidade máxima do buffer de um arquivo.*/
+    private final int pipeCapacity;
+
+    /**Arquivos submetidos e ainda não consumidos, na ordem de submissão.*/
+    private final Deque<PipedCipherInputStream> queue;
+
+    /**Capacidades dos buffers dos arquivos em trânsito.*/
+    private final Deque<Integer> capacities;
+
+    /**Número de bytes em trânsito.*/
+    private long inFlight;
+
+
+    /**
+     * Constructor da classe.
+     * @param threads número de threads de trabalho.
+     * @param budget orçamento de bytes em trânsito.
+     * @param pipeCapacity capacidade máxima do buffer de um arquivo.
+     */
+    public EncryptionPipeline(int threads, long budget, int pipeCapacity) {
+        this.executor = Executors.newFixedThreadPool(
+            Math.max(1, threads),
+            runnable -> {
+                Thread thread = new Thread(runnable, "bravo-encryption");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.budget = budget;
+        this.maxFiles = Math.max(1, threads) * FILES_PER_THREAD;
+        this.pipeCapacity = pipeCapacity;
+        this.queue = new ArrayDeque<>();
+        this.capacities = new ArrayDeque<>();
+    }
+
+
+    /**
+     * Obter a capacidade do buffer para um arquivo.
+     * @param encryptedLength tamanho do arquivo encriptado.
+     * @return capacidade do buffer.
+     */
+    private int getCapacity(long encryptedLength) {
+        return (int) Math.max(1, Math.min(pipeCapacity, encryptedLength));
+    }
+
+
+    /**
+     * Verificar se há orçamento para um novo arquivo. Quando não há arquivos
+     * em trânsito, o arquivo é sempre aceito, mesmo que exceda o orçamento.
+     * @param encryptedLength tamanho do arquivo encriptado.
+     * @return true, se o arquivo pode ser submetido.
+     */
+    public boolean hasRoom(long encryptedLength) {
+        return queue.isEmpty() || (queue.size() < maxFiles &&
+        inFlight + getCapacity(encryptedLength) <= budget);
+    }
+
+
+    /**
+     * Submeter a encriptação de um arquivo. A encriptação é iniciada assim que
+     * houver uma thread de trabalho livre.
+     * @param producer tarefa de encriptação.
+     * @param encryptedLength tamanho do arquivo encriptado.
+     * @param listeners ouvintes notificados na leitura dos bytes encriptados.
+     */
+    public void submit(PipedCipherInputStream.Producer producer, long encryptedLength,
+    CipherListener... listeners) {
+        int capacity = getCapacity(encryptedLength);
+        queue.addLast(new PipedCipherInputStream(producer, executor, capacity, listeners));
+        capacities.addLast(capacity);
+        inFlight += capacity;
+    }
+
+
+    /**
+     * Retirar o próximo arquivo do pipeline, na ordem de submissão. O
+     * orçamento ocupado pelo arquivo é liberado; o stream retornado deve ser
+     * fechado após a leitura.
+     * @return stream de leitura dos bytes encriptados, ou null se não houver
+     * arquivos em trânsito.
+     */
+    public PipedCipherInputStream take() {
+        PipedCipherInputStream istream = queue.pollFirst();
+        if (istream != null) {
+            inFlight -= capacities.pollFirst();
+        }
+        return istream;
+    }
+
+
+    /**
+     * Encerrar o pipeline, interrompendo as encriptações em andamento.
+     */
+    @Override
+    public void close() {
+        PipedCipherInputStream istream;
+        while ((istream = take()) != null) {
+            istream.close();
+        }
+        executor.shutdownNow();
+    }
+
+
+}
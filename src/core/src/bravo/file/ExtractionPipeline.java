@@ -0,0 +1,231 @@
+package bravo.file;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline de extração de múltiplos arquivos. Os arquivos são lidos do ZIP e
+ * decriptados concorrentemente por um número limitado de threads de trabalho,
+ * cada uma gravando diretamente o arquivo de destino, enquanto uma única
+ * thread (a que consome o pipeline) acompanha os arquivos na ordem em que
+ * foram submetidos.
+ *
+ * <br><br>
+ *
+ * As threads de trabalho não notificam os ouvintes do processo: cada arquivo
+ * apenas acumula o número de bytes processados, que a thread consumidora lê
+ * periodicamente. Deste modo, as notificações de progresso e de troca de
+ * arquivo são feitas por uma única thread e na ordem da lista, como na
+ * extração sequencial. O abortamento é sinalizado pela thread consumidora e
+ * verificado pelas tarefas a cada bloco processado.
+ *
+ * @since 2.0
+ */
+final class ExtractionPipeline implements AutoCloseable {
+
+
+    /**Número máximo de arquivos em trânsito por thread de trabalho.*/
+    private static final int FILES_PER_THREAD = 4;
+
+    /**Threads de trabalho para a extração.*/
+    private final ExecutorService executor;
+
+    /**Número máximo de arquivos em trânsito.*/
+    private final int maxFiles;
+
+    /**Arquivos submetidos e ainda não consumidos, na ordem de submissão.*/
+    private final Deque<Extraction> queue;
+
+    /**Número total de bytes processados por todos os arquivos.*/
+    private final AtomicLong processedBytes;
+
+    /**Sinaliza o abortamento das extrações.*/
+    private volatile boolean aborted;
+
+
+    /**
+     * Tarefa de extração de um arquivo.
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        /**
+         * Extrair o arquivo.
+         * @param listener ouvinte a ser notificado dos bytes processados, e
+         * que sinaliza o abortamento da extração.
+         * @throws Exception
+         */
+        void run(CipherListener listener) throws Exception;
+
+    }
+
+
+    /**
+     * Constructor da classe.
+     * @param threads número de threads de trabalho.
+     */
+    public ExtractionPipeline(int threads) {
+        this.executor = Executors.newFixedThreadPool(
+            Math.max(1, threads),
+            runnable -> {
+                Thread thread = new Thread(runnable, "bravo-extraction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.maxFiles = Math.max(1, threads) * FILES_PER_THREAD;
+        this.queue = new ArrayDeque<>();
+        this.processedBytes = new AtomicLong();
+    }
+
+
+    /**
+     * Verificar se um novo arquivo pode ser submetido.
+     * @return true, se o número de arquivos em trânsito está abaixo do limite.
+     */
+    public boolean hasRoom() {
+        return queue.size() < maxFiles;
+    }
+
+
+    /**
+     * Submeter a extração de um arquivo. A extração é iniciada assim que
+     * houver uma thread de trabalho livre.
+     * @param task tarefa de extração.
+     */
+    public void submit(Task task) {
+        Extraction extraction = new Extraction(task);
+        queue.addLast(extraction);
+        executor.execute(extraction.future);
+    }
+
+
+    /**
+     * Retirar o próximo arquivo do pipeline, na ordem de submissão.
+     * @return extração do arquivo, ou null se não houver arquivos em trânsito.
+     */
+    public Extraction take() {
+        return queue.pollFirst();
+    }
+
+
+    /**
+     * Obter o número total de bytes processados pelas extrações.
+     * @return número de bytes.
+     */
+    public long getProcessedBytes() {
+        return processedBytes.get();
+    }
+
+
+    /**
+     * Sinalizar o abortamento das extrações. As tarefas em andamento são
+     * encerradas no próximo bloco processado, e as ainda não iniciadas não são
+     * executadas.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+
+    /**
+     * Encerrar o pipeline, abortando as extrações ainda em andamento e
+     * aguardando o seu término, de modo que nenhum arquivo continue a ser
+     * gravado após o retorno.
+     */
+    @Override
+    public void close() {
+        abort();
+        queue.clear();
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Extração de um arquivo submetida ao pipeline.
+     */
+    public final class Extraction implements CipherListener {
+
+
+        private final FutureTask<Void> future;
+
+        /**Número de bytes processados do arquivo.*/
+        private final AtomicLong bytes;
+
+
+        private Extraction(Task task) {
+            this.bytes = new AtomicLong();
+            this.future = new FutureTask<>(() -> {
+                if (!aborted) {
+                    task.run(this);
+                }
+                return null;
+            });
+        }
+
+
+        /**
+         * Aguardar o término da extração.
+         * @param timeout tempo máximo de espera em milissegundos.
+         * @return true, se a extração terminou; false, se o tempo esgotou.
+         * @throws Exception erro ocorrido na extração.
+         */
+        public boolean await(long timeout) throws Exception {
+            try {
+                future.get(timeout, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException ex) {
+                return false;
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof Exception exception) throw exception;
+                if (cause instanceof Error error) throw error;
+                throw ex;
+            }
+        }
+
+
+        /**
+         * Obter o número de bytes processados do arquivo.
+         * @return número de bytes.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+
+        @Override
+        public void update(long numberOfBytes) {
+            bytes.addAndGet(numberOfBytes);
+            processedBytes.addAndGet(numberOfBytes);
+        }
+
+
+        @Override
+        public boolean abort() {
+            return aborted;
+        }
+
+
+    }
+
+
+}
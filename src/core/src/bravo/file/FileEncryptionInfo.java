@@ -7,21 +7,17 @@ final class FileEncryptionInfo {
     
     private File inputFile;
     
-    private File outputFile;
-    
     private EncryptedFileMetadata fileMetadata;
 
     
-    public FileEncryptionInfo(File inputFile, File outputFile,
-    EncryptedFileMetadata fileMetadata) {
+    public FileEncryptionInfo(File inputFile, EncryptedFileMetadata fileMetadata) {
         this.inputFile = inputFile;
-        this.outputFile = outputFile;
         this.fileMetadata = fileMetadata;
     }
     
     
     public FileEncryptionInfo(EncryptedFileMetadata fileMetadata) {
-        this(null, null, fileMetadata);
+        this(null, fileMetadata);
     }
 
     
@@ -30,11 +26,6 @@ final class FileEncryptionInfo {
     }
     
     
-    public File getOutputFile() {
-        return outputFile;
-    }
-
-    
     public EncryptedFileMetadata getFileMetadata() {
         return fileMetadata;
     }
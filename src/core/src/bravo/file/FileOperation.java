@@ -20,6 +20,12 @@ public enum FileOperation {
     EXTRACT,
     
     /**Encriptar arquivo.*/
-    ENCRYPT; 
+    ENCRYPT,
+    
+    /**Compactar o arquivo ZIP, descartando entradas sem referência.*/
+    VACUUM,
+    
+    /**Reencriptar arquivo com uma nova chave.*/
+    REKEY; 
     
 }
\ No newline at end of file
@@ -0,0 +1,455 @@
+package bravo.file;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Tabela de arquivos em memória. Mantém os metadados dos arquivos na ordem de
+ * inserção, junto de um {@link PathIndex} pelo nome do arquivo, de modo que as
+ * consultas por caminho (sem distinção entre maiúsculas e minúsculas) sejam
+ * feitas em tempo constante. A tabela também mantém a {@link FolderTree} com os
+ * diretórios formados pelos caminhos dos arquivos.
+ *
+ * <br><br>
+ *
+ * Os metadados também são ordenados pelo caminho normalizado (ver
+ * {@link PathIndex#normalize(String)}). Como todos os arquivos de um diretório
+ * e de seus subdiretórios têm o caminho do diretório como prefixo, eles formam
+ * um intervalo contínuo da ordenação, obtido em tempo logarítmico mais o
+ * número de arquivos do intervalo.
+ *
+ * <br><br>
+ *
+ * Toda alteração do nome de um arquivo contido na tabela deve ser feita por
+ * {@link #rename(EncryptedFileMetadata, String)}, para que os índices e a
+ * árvore de diretórios permaneçam sincronizados. As remoções deixam posições
+ * livres na lista, que são descartadas de tempos em tempos, evitando o
+ * deslocamento dos itens a cada remoção.
+ *
+ * <br><br>
+ *
+ * Quando há um {@link FileTableJournal} associado, cada inclusão, remoção,
+ * alteração de caminho ou atualização de metadados é também registrada no
+ * diário.
+ *
+ * @since 2.0
+ */
+final class FileTable implements Iterable<EncryptedFileMetadata> {
+
+
+    /**Metadados dos arquivos, com null nas posições removidas.*/
+    private final ArrayList<EncryptedFileMetadata> entries;
+
+    /**Índice da posição dos metadados pelo nome do arquivo.*/
+    private final PathIndex index;
+
+    /**Metadados indexados, ordenados pelo caminho normalizado.*/
+    private final NavigableMap<String, EncryptedFileMetadata> sortedIndex;
+
+    /**Metadados com caminho repetido, que ficam fora dos índices.*/
+    private final List<EncryptedFileMetadata> duplicates;
+
+    /**Árvore de diretórios formada pelos caminhos dos arquivos.*/
+    private final FolderTree folderTree;
+
+    /**Condição que identifica as entradas de diretório vazio.*/
+    private final Predicate<EncryptedFileMetadata> emptyFolder;
+
+    /**Diário das alterações, ou null se as alterações não são registradas.*/
+    private FileTableJournal journal;
+
+    /**Número de posições removidas na lista.*/
+    private int holes;
+
+
+    /**
+     * Constructor da classe.
+     * @param emptyFolder condição que identifica as entradas de diretório
+     * vazio.
+     */
+    public FileTable(Predicate<EncryptedFileMetadata> emptyFolder) {
+        this(new ArrayList<>(), emptyFolder);
+    }
+
+
+    /**
+     * Constructor da classe.
+     * @param fileMetadataList metadados dos arquivos.
+     * @param emptyFolder condição que identifica as entradas de diretório
+     * vazio.
+     */
+    public FileTable(List<EncryptedFileMetadata> fileMetadataList,
+    Predicate<EncryptedFileMetadata> emptyFolder) {
+        this.entries = new ArrayList<>(fileMetadataList.size());
+        this.index = new PathIndex(fileMetadataList.size());
+        this.sortedIndex = new TreeMap<>();
+        this.duplicates = new ArrayList<>();
+        this.folderTree = new FolderTree();
+        this.emptyFolder = emptyFolder;
+        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
+            add(fileMetadata);
+        }
+    }
+
+
+    /**
+     * Obter os metadados do arquivo.
+     * @param fileName caminho do arquivo.
+     * @return metadados do arquivo, ou null se não estiver na tabela.
+     */
+    public EncryptedFileMetadata get(String fileName) {
+        int position = index.get(fileName);
+        return (position != PathIndex.NOT_FOUND ? entries.get(position) : null);
+    }
+
+
+    /**
+     * Verificar se o arquivo está na tabela.
+     * @param fileName caminho do arquivo.
+     * @return true, se o arquivo está na tabela.
+     */
+    public boolean contains(String fileName) {
+        return index.contains(fileName);
+    }
+
+
+    /**
+     * Adicionar os metadados de um arquivo ao final da tabela. Caso já exista
+     * um arquivo com o mesmo caminho, o índice continua apontando para o
+     * primeiro.
+     * @param fileMetadata metadados do arquivo.
+     */
+    public void add(EncryptedFileMetadata fileMetadata) {
+        addToIndex(fileMetadata, entries.size());
+        entries.add(fileMetadata);
+        folderTree.add(fileMetadata.getFileName(), emptyFolder.test(fileMetadata));
+        if (journal != null) {
+            journal.add(fileMetadata);
+        }
+    }
+
+
+    /**
+     * Registrar no diário a atualização dos metadados de um arquivo da tabela
+     * (por exemplo, quando o arquivo é substituído). O caminho do arquivo não
+     * deve ter sido alterado.
+     * @param fileMetadata metadados do arquivo.
+     */
+    public void update(EncryptedFileMetadata fileMetadata) {
+        if (journal != null) {
+            journal.add(fileMetadata);
+        }
+    }
+
+
+    /**
+     * Remover os metadados de um arquivo da tabela.
+     * @param fileMetadata metadados do arquivo.
+     * @return true, se os metadados estavam na tabela.
+     */
+    public boolean remove(EncryptedFileMetadata fileMetadata) {
+
+        int position = index.get(fileMetadata.getFileName());
+
+        if (position == PathIndex.NOT_FOUND || entries.get(position) != fileMetadata) {
+            // Metadados duplicados, fora do índice.
+            position = indexOf(fileMetadata);
+            if (position == -1) return false;
+            removeDuplicate(fileMetadata);
+        } else {
+            removeFromIndex(fileMetadata);
+        }
+
+        entries.set(position, null);
+        holes++;
+
+        folderTree.remove(fileMetadata.getFileName(), emptyFolder.test(fileMetadata));
+
+        if (journal != null) {
+            journal.delete(fileMetadata.getFileName());
+        }
+
+        if (holes > 16 && holes * 2 > entries.size()) {
+            compact();
+        }
+
+        return true;
+
+    }
+
+
+    /**
+     * Renomear um arquivo da tabela.
+     * @param fileMetadata metadados do arquivo.
+     * @param newFileName novo caminho do arquivo.
+     */
+    public void rename(EncryptedFileMetadata fileMetadata, String newFileName) {
+        String fileName = fileMetadata.getFileName();
+        int position = index.get(fileName);
+        if (position != PathIndex.NOT_FOUND && entries.get(position) == fileMetadata) {
+            removeFromIndex(fileMetadata);
+        } else {
+            position = indexOf(fileMetadata);
+            removeDuplicate(fileMetadata);
+        }
+        fileMetadata.setFileName(newFileName);
+        if (position != -1) {
+            boolean folder = emptyFolder.test(fileMetadata);
+            folderTree.remove(fileName, folder);
+            folderTree.add(newFileName, folder);
+            addToIndex(fileMetadata, position);
+            if (journal != null) {
+                journal.rename(fileName, newFileName);
+            }
+        }
+    }
+
+
+    /**
+     * Obter os metadados de todos os arquivos de um diretório e de seus
+     * subdiretórios, incluindo as entradas de diretório vazio, na ordem dos
+     * caminhos normalizados. O próprio diretório não é incluído.
+     * @param folderName caminho do diretório.
+     * @return lista com os metadados.
+     */
+    public List<EncryptedFileMetadata> getAllFromFolder(String folderName) {
+
+        String prefix = getFolderPrefix(folderName);
+
+        List<EncryptedFileMetadata> list = new ArrayList<>(
+            getFolderRange(prefix).values()
+        );
+
+        for (EncryptedFileMetadata fileMetadata : duplicates) {
+            if (PathIndex.normalize(fileMetadata.getFileName()).startsWith(prefix)) {
+                list.add(fileMetadata);
+            }
+        }
+
+        return list;
+
+    }
+
+
+    /**
+     * Verificar se há algum arquivo (ou entrada de diretório vazio) em um
+     * diretório ou em seus subdiretórios.
+     * @param folderName caminho do diretório.
+     * @return true, se o diretório contém algum arquivo.
+     */
+    public boolean containsAnyInFolder(String folderName) {
+
+        String prefix = getFolderPrefix(folderName);
+
+        if (!getFolderRange(prefix).isEmpty()) {
+            return true;
+        }
+
+        for (EncryptedFileMetadata fileMetadata : duplicates) {
+            if (PathIndex.normalize(fileMetadata.getFileName()).startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+
+    /**
+     * Obter o prefixo normalizado comum aos caminhos contidos no diretório.
+     * @param folderName caminho do diretório.
+     * @return prefixo, terminado pelo separador.
+     */
+    private static String getFolderPrefix(String folderName) {
+        String prefix = PathIndex.normalize(folderName);
+        return (prefix.endsWith(ZipFile.FILE_SEPARATOR) ? prefix : prefix + ZipFile.FILE_SEPARATOR);
+    }
+
+
+    /**
+     * Obter o intervalo da ordenação com os caminhos iniciados pelo prefixo.
+     * O limite superior troca o separador final pelo caractere seguinte, de
+     * modo que todos os caminhos com o prefixo ficam dentro do intervalo.
+     * @param prefix prefixo terminado pelo separador.
+     * @return intervalo da ordenação.
+     */
+    private NavigableMap<String, EncryptedFileMetadata> getFolderRange(String prefix) {
+        int last = prefix.length() - 1;
+        String upperBound = prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+        return sortedIndex.subMap(prefix, true, upperBound, false);
+    }
+
+
+    /**
+     * Incluir os metadados nos índices, ou na lista de duplicados se já
+     * existir um arquivo com o mesmo caminho.
+     */
+    private void addToIndex(EncryptedFileMetadata fileMetadata, int position) {
+        String fileName = fileMetadata.getFileName();
+        if (!index.contains(fileName)) {
+            index.put(fileName, position);
+            sortedIndex.put(PathIndex.normalize(fileName), fileMetadata);
+        } else {
+            duplicates.add(fileMetadata);
+        }
+    }
+
+
+    /**
+     * Retirar os metadados dos índices. Caso haja um arquivo duplicado com o
+     * mesmo caminho, ele passa a ocupar os índices.
+     */
+    private void removeFromIndex(EncryptedFileMetadata fileMetadata) {
+
+        String fileName = fileMetadata.getFileName();
+        index.remove(fileName);
+        sortedIndex.remove(PathIndex.normalize(fileName));
+
+        for (int i = 0; i < duplicates.size(); i++) {
+            EncryptedFileMetadata duplicate = duplicates.get(i);
+            if (PathIndex.equalsIgnoreCase(duplicate.getFileName(), fileName)) {
+                duplicates.remove(i);
+                addToIndex(duplicate, indexOf(duplicate));
+                break;
+            }
+        }
+
+    }
+
+
+    private void removeDuplicate(EncryptedFileMetadata fileMetadata) {
+        for (int i = 0; i < duplicates.size(); i++) {
+            if (duplicates.get(i) == fileMetadata) {
+                duplicates.remove(i);
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Localizar a posição dos metadados na lista, por identidade (a igualdade
+     * de {@link EncryptedFileMetadata} compara apenas o caminho).
+     */
+    private int indexOf(EncryptedFileMetadata fileMetadata) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) == fileMetadata) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Obter a árvore de diretórios formada pelos caminhos dos arquivos. A
+     * árvore é atualizada pela própria tabela, e não deve ser alterada
+     * diretamente.
+     * @return árvore de diretórios.
+     */
+    public FolderTree getFolderTree() {
+        return folderTree;
+    }
+
+
+    /**
+     * Associar um diário à tabela, que passa a registrar as alterações.
+     * @param journal diário das alterações, ou null para não registrar.
+     */
+    public void setJournal(FileTableJournal journal) {
+        this.journal = journal;
+    }
+
+
+    /**
+     * Obter uma cópia dos metadados, independente das alterações posteriores
+     * da tabela, na ordem de inserção.
+     * @return lista com as cópias dos metadados.
+     */
+    public ArrayList<EncryptedFileMetadata> copyEntries() {
+        ArrayList<EncryptedFileMetadata> list = new ArrayList<>(size());
+        for (EncryptedFileMetadata fileMetadata : this) {
+            list.add(new EncryptedFileMetadata(fileMetadata));
+        }
+        return list;
+    }
+
+
+    /**
+     * Obter o número de arquivos na tabela.
+     * @return número de arquivos.
+     */
+    public int size() {
+        return entries.size() - holes;
+    }
+
+
+    /**
+     * Obter uma cópia da lista de metadados, na ordem de inserção.
+     * @return lista de metadados.
+     */
+    public ArrayList<EncryptedFileMetadata> toList() {
+        ArrayList<EncryptedFileMetadata> list = new ArrayList<>(size());
+        for (EncryptedFileMetadata fileMetadata : this) {
+            list.add(fileMetadata);
+        }
+        return list;
+    }
+
+
+    /**
+     * Descartar as posições removidas da lista e reconstruir o índice.
+     */
+    private void compact() {
+        entries.removeIf(fileMetadata -> fileMetadata == null);
+        holes = 0;
+        index.clear();
+        sortedIndex.clear();
+        duplicates.clear();
+        for (int i = 0; i < entries.size(); i++) {
+            addToIndex(entries.get(i), i);
+        }
+    }
+
+
+    @Override
+    public Iterator<EncryptedFileMetadata> iterator() {
+
+        return new Iterator<>() {
+
+            private int position = advance(0);
+
+            private int advance(int from) {
+                while (from < entries.size() && entries.get(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return position < entries.size();
+            }
+
+            @Override
+            public EncryptedFileMetadata next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                EncryptedFileMetadata fileMetadata = entries.get(position);
+                position = advance(position + 1);
+                return fileMetadata;
+            }
+
+        };
+
+    }
+
+
+}
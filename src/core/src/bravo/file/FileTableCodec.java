@@ -0,0 +1,392 @@
+package bravo.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static bravo.file.AESCipher.IV_LENGTH;
+
+/**
+ * Codificação binária da tabela de arquivos, usada a partir da versão 3 do
+ * arquivo bravo no lugar da serialização do Java.
+ *
+ * <br><br>
+ *
+ * Formato (antes da encriptação):
+ *
+ * <ul>
+ *
+ * <li>1 byte com a versão do formato ({@link #FORMAT_VERSION});</li>
+ *
+ * <li>varint com o número de arquivos;</li>
+ *
+ * <li>para cada arquivo: 1 byte de flags (IV e SALT presentes), o caminho e o
+ * nome interno do arquivo, a data da última modificação, a data de criação, o
+ * tamanho original e, se presentes, o IV e o SALT com tamanho fixo de
+ * {@link AESCipher#IV_LENGTH} e {@link #SALT_LENGTH} bytes.</li>
+ *
+ * </ul>
+ *
+ * Os textos são gravados em UTF-8 com compressão de prefixo em relação ao texto
+ * do arquivo anterior: varint com o número de bytes em comum, varint com o
+ * número de bytes restantes e os bytes restantes. Os números são gravados como
+ * varint (7 bits por byte); a data da última modificação é gravada como a
+ * diferença para a do arquivo anterior, e a data de criação como a diferença
+ * para a data da última modificação, ambas em zigzag, para que valores
+ * próximos ocupem poucos bytes.
+ *
+ * <br><br>
+ *
+ * A decodificação lê o stream sequencialmente, sem carregar a tabela inteira
+ * em memória antes de criar os metadados. O mesmo formato de arquivo é usado
+ * pelos registros do diário da tabela (ver {@link FileTableJournal}).
+ *
+ * @since 2.0
+ */
+final class FileTableCodec {
+
+
+    /**Versão do formato da tabela.*/
+    public static final int FORMAT_VERSION = 1;
+
+    /**Tamanho fixo do SALT de um arquivo.*/
+    public static final int SALT_LENGTH = 16;
+
+    /**Tamanho máximo de um texto da tabela.*/
+    private static final int MAX_TEXT_LENGTH = 1024 * 1024;
+
+    private static final int FLAG_IV = 0x01;
+
+    private static final int FLAG_SALT = 0x02;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+
+    private FileTableCodec() {
+    }
+
+
+    /**
+     * Gravar a tabela de arquivos no stream de saída.
+     * @param fileMetadataList metadados dos arquivos.
+     * @param size número de arquivos.
+     * @param ostream stream de saída. O stream não é fechado.
+     * @throws IOException
+     */
+    public static void write(Iterable<EncryptedFileMetadata> fileMetadataList, int size,
+    OutputStream ostream) throws IOException {
+
+        Encoder encoder = new Encoder(new BufferedOutputStream(ostream, BUFFER_SIZE));
+
+        encoder.writeByte(FORMAT_VERSION);
+        encoder.writeVarLong(size);
+
+        int count = 0;
+
+        for (EncryptedFileMetadata fileMetadata : fileMetadataList) {
+            encoder.writeEntry(fileMetadata);
+            count++;
+        }
+
+        if (count != size) {
+            throw new IOException("Número de arquivos da tabela inconsistente.");
+        }
+
+        encoder.flush();
+
+    }
+
+
+    /**
+     * Ler a tabela de arquivos do stream de entrada.
+     * @param istream stream de entrada.
+     * @return metadados dos arquivos, na ordem gravada.
+     * @throws IOException se o stream estiver corrompido.
+     */
+    public static ArrayList<EncryptedFileMetadata> read(InputStream istream) throws IOException {
+
+        Decoder decoder = new Decoder(new BufferedInputStream(istream, BUFFER_SIZE));
+
+        int formatVersion = decoder.readByte();
+
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Formato da tabela de arquivos não suportado: " + formatVersion);
+        }
+
+        long count = decoder.readVarLong();
+
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException("Tabela de arquivos corrompida.");
+        }
+
+        // A capacidade inicial é limitada, para que um contador corrompido
+        // não provoque uma alocação excessiva antes da leitura dos arquivos.
+        ArrayList<EncryptedFileMetadata> list = new ArrayList<>((int) Math.min(count, 1 << 16));
+
+        for (long i = 0; i < count; i++) {
+            list.add(decoder.readEntry());
+        }
+
+        return list;
+
+    }
+
+
+    /**
+     * Texto da tabela em UTF-8, reaproveitado entre os arquivos para a
+     * descompressão de prefixo.
+     */
+    private static final class Text {
+
+
+        byte[] bytes = new byte[256];
+
+        int length;
+
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+
+    }
+
+
+    /**
+     * Codificador dos campos da tabela. Guarda o último arquivo gravado, base
+     * da compressão do arquivo seguinte.
+     */
+    static final class Encoder {
+
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private final OutputStream ostream;
+
+        private byte[] previousName = EMPTY;
+
+        private byte[] previousInternalName = EMPTY;
+
+        private long previousModifiedTime;
+
+
+        Encoder(OutputStream ostream) {
+            this.ostream = ostream;
+        }
+
+
+        void writeEntry(EncryptedFileMetadata fileMetadata) throws IOException {
+
+            byte[] iv = fileMetadata.getIVBytes();
+            byte[] salt = fileMetadata.getSaltBytes();
+
+            if (iv != null && iv.length != IV_LENGTH) {
+                throw new IOException("Tamanho do IV inválido: " + fileMetadata.getFileName());
+            }
+
+            if (salt != null && salt.length != SALT_LENGTH) {
+                throw new IOException("Tamanho do SALT inválido: " + fileMetadata.getFileName());
+            }
+
+            writeByte((iv != null ? FLAG_IV : 0) | (salt != null ? FLAG_SALT : 0));
+
+            byte[] name = fileMetadata.getFileName().getBytes(StandardCharsets.UTF_8);
+            byte[] internalName = fileMetadata.getInternalFileName().getBytes(StandardCharsets.UTF_8);
+
+            writeText(name, previousName);
+            writeText(internalName, previousInternalName);
+
+            long modifiedTime = fileMetadata.getLastModifiedTime();
+            writeZigZag(modifiedTime - previousModifiedTime);
+            writeZigZag(fileMetadata.getCreatedTime() - modifiedTime);
+            writeVarLong(fileMetadata.getOriginalSize());
+
+            if (iv != null) ostream.write(iv);
+            if (salt != null) ostream.write(salt);
+
+            previousName = name;
+            previousInternalName = internalName;
+            previousModifiedTime = modifiedTime;
+
+        }
+
+
+        void writeByte(int value) throws IOException {
+            ostream.write(value);
+        }
+
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                ostream.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            ostream.write((int) value);
+        }
+
+
+        void writeZigZag(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+
+        void writeString(String text) throws IOException {
+            writeText(text.getBytes(StandardCharsets.UTF_8), EMPTY);
+        }
+
+
+        private void writeText(byte[] text, byte[] previous) throws IOException {
+            int shared = Arrays.mismatch(text, previous);
+            if (shared == -1) shared = text.length;
+            writeVarLong(shared);
+            writeVarLong(text.length - shared);
+            ostream.write(text, shared, text.length - shared);
+        }
+
+
+        void flush() throws IOException {
+            ostream.flush();
+        }
+
+
+    }
+
+
+    /**
+     * Decodificador dos campos da tabela. Guarda o último arquivo lido, base
+     * da descompressão do arquivo seguinte.
+     */
+    static final class Decoder {
+
+
+        private final InputStream istream;
+
+        private final Text name = new Text();
+
+        private final Text internalName = new Text();
+
+        private final Text text = new Text();
+
+        private long modifiedTime;
+
+
+        Decoder(InputStream istream) {
+            this.istream = istream;
+        }
+
+
+        EncryptedFileMetadata readEntry() throws IOException {
+
+            int flags = readByte();
+
+            readText(name);
+            readText(internalName);
+
+            modifiedTime += readZigZag();
+
+            EncryptedFileMetadata fileMetadata = new EncryptedFileMetadata();
+            fileMetadata.setFileName(name.toString());
+            fileMetadata.setInternalFileName(internalName.toString());
+            fileMetadata.setLastModifiedTime(modifiedTime);
+            fileMetadata.setCreatedTime(modifiedTime + readZigZag());
+            fileMetadata.setOriginalSize(readVarLong());
+
+            if ((flags & FLAG_IV) != 0) {
+                fileMetadata.setIVBytes(readBytes(IV_LENGTH));
+            }
+
+            if ((flags & FLAG_SALT) != 0) {
+                fileMetadata.setSaltBytes(readBytes(SALT_LENGTH));
+            }
+
+            return fileMetadata;
+
+        }
+
+
+        /**
+         * Ler um byte, ou -1 ao final do stream.
+         */
+        int read() throws IOException {
+            return istream.read();
+        }
+
+
+        int readByte() throws IOException {
+            int value = istream.read();
+            if (value == -1) {
+                throw new EOFException("Tabela de arquivos incompleta.");
+            }
+            return value;
+        }
+
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = istream.readNBytes(length);
+            if (bytes.length != length) {
+                throw new EOFException("Tabela de arquivos incompleta.");
+            }
+            return bytes;
+        }
+
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Tabela de arquivos corrompida.");
+        }
+
+
+        long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+
+        String readString() throws IOException {
+            text.length = 0;
+            readText(text);
+            return text.toString();
+        }
+
+
+        private void readText(Text text) throws IOException {
+
+            long shared = readVarLong();
+            long suffix = readVarLong();
+
+            if (shared > text.length || shared + suffix > MAX_TEXT_LENGTH) {
+                throw new IOException("Tabela de arquivos corrompida.");
+            }
+
+            int length = (int) (shared + suffix);
+
+            if (length > text.bytes.length) {
+                text.bytes = Arrays.copyOf(text.bytes, Math.max(length, text.bytes.length * 2));
+            }
+
+            if (istream.readNBytes(text.bytes, (int) shared, (int) suffix) != suffix) {
+                throw new EOFException("Tabela de arquivos incompleta.");
+            }
+
+            text.length = length;
+
+        }
+
+
+    }
+
+
+}
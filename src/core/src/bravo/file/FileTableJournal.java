@@ -0,0 +1,202 @@
+package bravo.file;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Diário de alterações da tabela de arquivos. Em vez de regravar a tabela
+ * inteira a cada alteração, as alterações são registradas como pequenos
+ * registros, gravados no ZIP em uma nova entrada encriptada a cada
+ * atualização, e reaplicados sobre a tabela na abertura do arquivo.
+ *
+ * <br><br>
+ *
+ * Registros (codificados com {@link FileTableCodec}):
+ *
+ * <ul>
+ *
+ * <li><b>ADD:</b> metadados completos do arquivo. Se a tabela já contém um
+ * arquivo com o mesmo caminho, os seus metadados são substituídos; caso
+ * contrário, o arquivo é incluído.</li>
+ *
+ * <li><b>DELETE:</b> caminho do arquivo excluído.</li>
+ *
+ * <li><b>RENAME:</b> caminho anterior e novo caminho do arquivo, usado tanto
+ * para renomear quanto para mover arquivos.</li>
+ *
+ * </ul>
+ *
+ * Os registros são codificados no momento da alteração, de modo que refletem
+ * o estado do arquivo naquele instante, e são reaplicados na mesma ordem.
+ *
+ * @since 2.0
+ */
+final class FileTableJournal {
+
+
+    private static final int ADD = 1;
+
+    private static final int DELETE = 2;
+
+    private static final int RENAME = 3;
+
+    /**Registros pendentes de gravação.*/
+    private final ByteArrayOutputStream buffer;
+
+    /**Codificador dos registros pendentes.*/
+    private FileTableCodec.Encoder encoder;
+
+
+    /**
+     * Constructor padrão.
+     */
+    public FileTableJournal() {
+        buffer = new ByteArrayOutputStream();
+        encoder = new FileTableCodec.Encoder(buffer);
+    }
+
+
+    /**
+     * Registrar a inclusão ou a atualização dos metadados de um arquivo.
+     * @param fileMetadata metadados do arquivo.
+     */
+    public void add(EncryptedFileMetadata fileMetadata) {
+        try {
+            encoder.writeByte(ADD);
+            encoder.writeEntry(fileMetadata);
+        } catch (IOException ex) {
+            // ByteArrayOutputStream não lança IOException; apenas um IV ou
+            // SALT de tamanho inválido chegam aqui.
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+
+    /**
+     * Registrar a exclusão de um arquivo.
+     * @param fileName caminho do arquivo.
+     */
+    public void delete(String fileName) {
+        try {
+            encoder.writeByte(DELETE);
+            encoder.writeString(fileName);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+
+    /**
+     * Registrar a alteração do caminho de um arquivo.
+     * @param fileName caminho anterior do arquivo.
+     * @param newFileName novo caminho do arquivo.
+     */
+    public void rename(String fileName, String newFileName) {
+        try {
+            encoder.writeByte(RENAME);
+            encoder.writeString(fileName);
+            encoder.writeString(newFileName);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+
+    /**
+     * Verificar se há registros pendentes de gravação.
+     * @return true, se não há registros pendentes.
+     */
+    public boolean isEmpty() {
+        return buffer.size() == 0;
+    }
+
+
+    /**
+     * Obter o tamanho dos registros pendentes de gravação.
+     * @return número de bytes.
+     */
+    public int size() {
+        return buffer.size();
+    }
+
+
+    /**
+     * Obter os registros pendentes de gravação.
+     * @return bytes dos registros.
+     */
+    public byte[] toByteArray() {
+        return buffer.toByteArray();
+    }
+
+
+    /**
+     * Descartar os registros pendentes, após a sua gravação.
+     */
+    public void clear() {
+        buffer.reset();
+        encoder = new FileTableCodec.Encoder(buffer);
+    }
+
+
+    /**
+     * Reaplicar os registros de uma entrada do diário sobre a tabela de
+     * arquivos. A tabela não deve ter um diário associado durante a
+     * reaplicação.
+     * @param istream stream com os registros decriptados.
+     * @param fileTable tabela de arquivos.
+     * @throws IOException se os registros estiverem corrompidos.
+     */
+    public static void replay(InputStream istream, FileTable fileTable) throws IOException {
+
+        FileTableCodec.Decoder decoder = new FileTableCodec.Decoder(
+            new BufferedInputStream(istream)
+        );
+
+        int type;
+
+        while ((type = decoder.read()) != -1) {
+
+            switch (type) {
+
+                case ADD -> {
+                    EncryptedFileMetadata fileMetadata = decoder.readEntry();
+                    EncryptedFileMetadata current = fileTable.get(fileMetadata.getFileName());
+                    if (current != null) {
+                        current.setInternalFileName(fileMetadata.getInternalFileName());
+                        current.setLastModifiedTime(fileMetadata.getLastModifiedTime());
+                        current.setCreatedTime(fileMetadata.getCreatedTime());
+                        current.setOriginalSize(fileMetadata.getOriginalSize());
+                        current.setIVBytes(fileMetadata.getIVBytes());
+                        current.setSaltBytes(fileMetadata.getSaltBytes());
+                    } else {
+                        fileTable.add(fileMetadata);
+                    }
+                }
+
+                case DELETE -> {
+                    EncryptedFileMetadata fileMetadata = fileTable.get(decoder.readString());
+                    if (fileMetadata != null) {
+                        fileTable.remove(fileMetadata);
+                    }
+                }
+
+                case RENAME -> {
+                    EncryptedFileMetadata fileMetadata = fileTable.get(decoder.readString());
+                    String newFileName = decoder.readString();
+                    if (fileMetadata != null) {
+                        fileTable.rename(fileMetadata, newFileName);
+                    }
+                }
+
+                default -> throw new IOException("Diário da tabela de arquivos corrompido.");
+
+            }
+
+        }
+
+    }
+
+
+}
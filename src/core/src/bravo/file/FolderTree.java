@@ -0,0 +1,315 @@
+package bravo.file;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Árvore de diretórios internos, sem distinção entre maiúsculas e minúsculas.
+ * Cada nó é um diretório e guarda o número de entradas da tabela de arquivos
+ * (arquivos e diretórios vazios) contidas nele e em seus subdiretórios. Um
+ * diretório existe enquanto houver alguma entrada abaixo dele; o diretório
+ * raiz sempre existe.
+ *
+ * <br><br>
+ *
+ * A árvore é atualizada a cada inserção ou remoção de entrada, percorrendo
+ * apenas os diretórios do caminho, de modo que as consultas de existência,
+ * diretório pai e subdiretórios são feitas em tempo proporcional à
+ * profundidade do caminho, e não ao número de arquivos. Os filhos de cada nó
+ * são localizados por um {@link PathIndex} com o nome do diretório, sem a
+ * criação de substrings nas consultas.
+ *
+ * @since 2.0
+ */
+final class FolderTree {
+
+
+    private static final char SEPARATOR = ZipFile.FILE_SEPARATOR.charAt(0);
+
+    /**Diretório raiz.*/
+    private final Node root;
+
+    /**Número de diretórios, incluindo o diretório raiz.*/
+    private int size;
+
+
+    /**
+     * Constructor padrão.
+     */
+    public FolderTree() {
+        root = new Node(ZipFile.FILE_SEPARATOR, null, 1);
+        size = 1;
+    }
+
+
+    /**
+     * Incluir uma entrada da tabela de arquivos, criando os diretórios do seu
+     * caminho que ainda não existirem. Os diretórios criados recebem a grafia
+     * do caminho da entrada.
+     * @param path caminho da entrada.
+     * @param folder true, se a entrada é um diretório vazio.
+     */
+    public void add(String path, boolean folder) {
+
+        int limit = getLimit(path, folder);
+        Node node = root;
+        int start = 1;
+
+        while (start < limit) {
+            int end = getSegmentEnd(path, start, limit);
+            Node child = node.getChild(path, start, end);
+            if (child == null) {
+                child = new Node(path.substring(0, end), node, start);
+                node.addChild(child);
+                size++;
+            }
+            child.count++;
+            node = child;
+            start = end + 1;
+        }
+
+    }
+
+
+    /**
+     * Excluir uma entrada da tabela de arquivos, removendo os diretórios do
+     * seu caminho que ficarem sem entradas.
+     * @param path caminho da entrada.
+     * @param folder true, se a entrada é um diretório vazio.
+     */
+    public void remove(String path, boolean folder) {
+
+        Node node = find(path, getLimit(path, folder));
+
+        while (node != null && node != root) {
+            Node parent = node.parent;
+            if (--node.count == 0) {
+                parent.removeChild(node);
+                size--;
+            }
+            node = parent;
+        }
+
+    }
+
+
+    /**
+     * Verificar se o diretório existe.
+     * @param path caminho do diretório.
+     * @return true, se o diretório existe.
+     */
+    public boolean contains(String path) {
+        return find(path, path.length()) != null;
+    }
+
+
+    /**
+     * Obter o caminho do diretório com a grafia armazenada na árvore.
+     * @param path caminho do diretório.
+     * @return caminho do diretório, ou null se não existir.
+     */
+    public String getPath(String path) {
+        Node node = find(path, path.length());
+        return (node != null ? node.path : null);
+    }
+
+
+    /**
+     * Obter o caminho com a grafia armazenada na árvore para os primeiros
+     * caracteres de um caminho (por exemplo, o diretório pai de um arquivo).
+     * @param path caminho.
+     * @param length número de caracteres considerados.
+     * @return caminho do diretório, ou null se não existir.
+     */
+    public String getPath(String path, int length) {
+        Node node = find(path, length);
+        return (node != null ? node.path : null);
+    }
+
+
+    /**
+     * Obter os subdiretórios imediatos de um diretório.
+     * @param path caminho do diretório.
+     * @return lista dos subdiretórios, vazia se o diretório não existir.
+     */
+    public List<String> getChildren(String path) {
+        List<String> children = new ArrayList<>();
+        Node node = find(path, path.length());
+        if (node != null && node.children != null) {
+            for (Node child : node.children) {
+                children.add(child.path);
+            }
+        }
+        return children;
+    }
+
+
+    /**
+     * Obter todos os subdiretórios de um diretório, em pré-ordem, sem incluir
+     * o próprio diretório.
+     * @param path caminho do diretório.
+     * @return lista dos subdiretórios, vazia se o diretório não existir.
+     */
+    public List<String> getSubtree(String path) {
+        List<String> subtree = new ArrayList<>();
+        Node node = find(path, path.length());
+        if (node != null) {
+            listSubtree(node, subtree);
+        }
+        return subtree;
+    }
+
+
+    /**
+     * Obter todos os diretórios da árvore, em pré-ordem, começando pelo
+     * diretório raiz.
+     * @return lista dos diretórios.
+     */
+    public List<String> getPaths() {
+        List<String> paths = new ArrayList<>(size);
+        paths.add(root.path);
+        listSubtree(root, paths);
+        return paths;
+    }
+
+
+    /**
+     * Obter o número de diretórios, incluindo o diretório raiz.
+     * @return número de diretórios.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private void listSubtree(Node node, List<String> paths) {
+        if (node.children != null) {
+            for (Node child : node.children) {
+                paths.add(child.path);
+                listSubtree(child, paths);
+            }
+        }
+    }
+
+
+    /**
+     * Localizar o nó do diretório formado pelos primeiros caracteres de um
+     * caminho.
+     * @param path caminho.
+     * @param limit número de caracteres considerados.
+     * @return nó do diretório, ou null se não existir.
+     */
+    private Node find(String path, int limit) {
+
+        if (limit == 0 || path.charAt(0) != SEPARATOR) {
+            return null;
+        }
+
+        Node node = root;
+        int start = 1;
+
+        while (start < limit && node != null) {
+            int end = getSegmentEnd(path, start, limit);
+            node = node.getChild(path, start, end);
+            start = end + 1;
+        }
+
+        return node;
+
+    }
+
+
+    /**
+     * Obter a posição final do trecho do caminho que corresponde a diretórios:
+     * o caminho inteiro, para um diretório vazio, ou até o último separador,
+     * para um arquivo.
+     */
+    private static int getLimit(String path, boolean folder) {
+        return (folder ? path.length() : Math.max(path.lastIndexOf(SEPARATOR), 0));
+    }
+
+
+    private static int getSegmentEnd(String path, int start, int limit) {
+        int end = path.indexOf(SEPARATOR, start);
+        return (end == -1 || end > limit ? limit : end);
+    }
+
+
+    /**
+     * Nó da árvore de diretórios.
+     */
+    private static final class Node {
+
+
+        /**Caminho completo do diretório.*/
+        final String path;
+
+        /**Nome do diretório (último trecho do caminho).*/
+        final String name;
+
+        /**Diretório pai, ou null no diretório raiz.*/
+        final Node parent;
+
+        /**Subdiretórios, ou null se não houver.*/
+        ArrayList<Node> children;
+
+        /**Índice da posição dos subdiretórios pelo nome.*/
+        PathIndex childIndex;
+
+        /**Posição do nó na lista de subdiretórios do pai.*/
+        int position;
+
+        /**Número de entradas no diretório e em seus subdiretórios.*/
+        int count;
+
+
+        Node(String path, Node parent, int nameStart) {
+            this.path = path;
+            this.name = path.substring(nameStart);
+            this.parent = parent;
+        }
+
+
+        Node getChild(String path, int start, int end) {
+            if (childIndex == null) return null;
+            int index = childIndex.get(path, start, end);
+            return (index != PathIndex.NOT_FOUND ? children.get(index) : null);
+        }
+
+
+        void addChild(Node child) {
+            if (children == null) {
+                children = new ArrayList<>();
+                childIndex = new PathIndex();
+            }
+            child.position = children.size();
+            children.add(child);
+            childIndex.put(child.name, child.position);
+        }
+
+
+        void removeChild(Node child) {
+
+            childIndex.remove(child.name);
+
+            // O último subdiretório ocupa a posição do removido.
+            Node last = children.remove(children.size() - 1);
+
+            if (last != child) {
+                last.position = child.position;
+                children.set(last.position, last);
+                childIndex.put(last.name, last.position);
+            }
+
+            if (children.isEmpty()) {
+                children = null;
+                childIndex = null;
+            }
+
+        }
+
+
+    }
+
+
+}
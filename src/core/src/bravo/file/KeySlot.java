@@ -0,0 +1,162 @@
+package bravo.file;
+
+import bravo.utils.ArrayUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESWrapEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import static bravo.file.AESCipher.KEY_LENGTH;
+
+/**
+ * Compartimento de chave (<i>key slot</i>): a chave dos dados do arquivo,
+ * protegida por uma chave derivada de uma senha com o algoritmo Argon2.
+ *
+ * <br><br>
+ *
+ * A chave dos dados é aleatória, e encripta os arquivos, a tabela de arquivos,
+ * o diário e os comentários. Cada senha do arquivo tem o seu compartimento,
+ * com o salt e os parâmetros da derivação, e a chave dos dados envolvida pela
+ * chave derivada da senha com o algoritmo <i>AES Key Wrap</i> (RFC 3394). O
+ * envolvimento tem verificação de integridade, de modo que uma senha incorreta
+ * é identificada sem bytes de teste adicionais. A troca, a inclusão ou a
+ * revogação de uma senha alteram apenas os compartimentos, sem a
+ * reencriptação dos arquivos.
+ *
+ * <br><br>
+ *
+ * Formato: salt, número de iterações, memória e paralelismo (inteiros de 4
+ * bytes), seguidos da chave envolvida ({@value #WRAPPED_KEY_LENGTH} bytes).
+ *
+ * @since 2.0
+ */
+final class KeySlot {
+
+
+    /**Tamanho da chave dos dados envolvida.*/
+    public static final int WRAPPED_KEY_LENGTH = KEY_LENGTH + 8;
+
+    /**Salt da derivação da chave da senha.*/
+    private final byte[] salt;
+
+    /**Parâmetros da derivação da chave da senha.*/
+    private final Argon2Params params;
+
+    /**Chave dos dados envolvida pela chave da senha.*/
+    private final byte[] wrappedKey;
+
+
+    /**
+     * Constructor da classe.
+     * @param salt salt da derivação da chave da senha.
+     * @param params parâmetros da derivação da chave da senha.
+     * @param wrappedKey chave dos dados envolvida.
+     */
+    KeySlot(byte[] salt, Argon2Params params, byte[] wrappedKey) {
+        this.salt = salt;
+        this.params = params;
+        this.wrappedKey = wrappedKey;
+    }
+
+
+    /**
+     * Criar o compartimento da chave dos dados para uma senha.
+     * @param salt salt da derivação da chave da senha.
+     * @param params parâmetros da derivação da chave da senha.
+     * @param passwordKey chave derivada da senha.
+     * @param dataKey chave dos dados.
+     * @return compartimento da chave.
+     */
+    public static KeySlot wrap(byte[] salt, Argon2Params params, byte[] passwordKey,
+    byte[] dataKey) {
+        AESWrapEngine engine = new AESWrapEngine();
+        engine.init(true, new KeyParameter(passwordKey));
+        return new KeySlot(salt, params, engine.wrap(dataKey, 0, dataKey.length));
+    }
+
+
+    /**
+     * Obter a chave dos dados com a chave derivada da senha.
+     * @param passwordKey chave derivada da senha.
+     * @return chave dos dados, ou null se a chave da senha for incorreta.
+     */
+    public byte[] unwrap(byte[] passwordKey) {
+        AESWrapEngine engine = new AESWrapEngine();
+        engine.init(false, new KeyParameter(passwordKey));
+        try {
+            return engine.unwrap(wrappedKey, 0, wrappedKey.length);
+        } catch (InvalidCipherTextException ex) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Ler o compartimento gravado no arquivo.
+     * @param bytes bytes do compartimento.
+     * @param saltLength tamanho do salt.
+     * @return compartimento da chave.
+     * @throws IOException
+     */
+    public static KeySlot fromByteArray(byte[] bytes, int saltLength) throws IOException {
+
+        if (bytes.length != saltLength + (3 * Integer.BYTES) + WRAPPED_KEY_LENGTH) {
+            throw new IOException("Compartimento de chave inválido.");
+        }
+
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+
+        byte[] salt = inputStream.readNBytes(saltLength);
+        int iterations = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+        int memory = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+        int parallelism = ArrayUtils.byteArrayToInt(inputStream.readNBytes(Integer.BYTES));
+        byte[] wrappedKey = inputStream.readNBytes(WRAPPED_KEY_LENGTH);
+
+        return new KeySlot(salt, new Argon2Params(iterations, memory, parallelism), wrappedKey);
+
+    }
+
+
+    /**
+     * Obter os bytes do compartimento para a gravação no arquivo.
+     * @return bytes do compartimento.
+     */
+    public byte[] toByteArray() {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+            salt.length +
+            (3 * Integer.BYTES) +
+            wrappedKey.length
+        );
+
+        outputStream.writeBytes(salt);
+        outputStream.writeBytes(ArrayUtils.intToByteArray(params.getIterations()));
+        outputStream.writeBytes(ArrayUtils.intToByteArray(params.getMemory()));
+        outputStream.writeBytes(ArrayUtils.intToByteArray(params.getParallelism()));
+        outputStream.writeBytes(wrappedKey);
+
+        return outputStream.toByteArray();
+
+    }
+
+
+    /**
+     * Obter o salt da derivação da chave da senha.
+     * @return salt.
+     */
+    public byte[] getSalt() {
+        return salt;
+    }
+
+
+    /**
+     * Obter os parâmetros da derivação da chave da senha.
+     * @return parâmetros do Argon2.
+     */
+    public Argon2Params getParams() {
+        return params;
+    }
+
+
+}
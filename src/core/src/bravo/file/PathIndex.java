@@ -0,0 +1,313 @@
+package bravo.file;
+
+import java.util.Arrays;
+
+/**
+ * Índice de caminhos internos sem distinção entre maiúsculas e minúsculas,
+ * associando cada caminho a um número inteiro (em geral, a posição do item em
+ * uma lista).
+ *
+ * <br><br>
+ *
+ * O índice é uma tabela hash de endereçamento aberto com sondagem linear. O
+ * hash e a comparação dos caminhos são feitos caractere a caractere, com a
+ * conversão de maiúsculas e minúsculas por code point, de modo que as
+ * consultas não alocam objetos. Também é possível consultar um trecho de um
+ * caminho (por exemplo, o diretório pai) sem a criação de uma substring.
+ *
+ * @since 2.0
+ */
+final class PathIndex {
+
+
+    /**Valor retornado quando o caminho não está no índice.*/
+    public static final int NOT_FOUND = -1;
+
+    /**Capacidade inicial mínima da tabela.*/
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /**Caminhos indexados, ou null nas posições livres.*/
+    private String[] keys;
+
+    /**Valores associados aos caminhos.*/
+    private int[] values;
+
+    /**Número de caminhos indexados.*/
+    private int size;
+
+
+    /**
+     * Constructor padrão.
+     */
+    public PathIndex() {
+        this(MINIMUM_CAPACITY);
+    }
+
+
+    /**
+     * Constructor da classe.
+     * @param expectedSize número esperado de caminhos.
+     */
+    public PathIndex(int expectedSize) {
+        allocate(getCapacity(expectedSize));
+    }
+
+
+    /**
+     * Obter a capacidade da tabela para o número de caminhos, mantendo a
+     * ocupação abaixo de 50%.
+     * @param expectedSize número de caminhos.
+     * @return capacidade da tabela (potência de 2).
+     */
+    private static int getCapacity(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new int[capacity];
+    }
+
+
+    /**
+     * Normalizar um code point para a comparação sem distinção entre maiúsculas
+     * e minúsculas.
+     * @param codePoint code point.
+     * @return code point normalizado.
+     */
+    private static int fold(int codePoint) {
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+
+
+    /**
+     * Calcular o hash de um trecho de um caminho.
+     * @param path caminho.
+     * @param start posição inicial do trecho.
+     * @param end posição final (exclusiva) do trecho.
+     * @return hash.
+     */
+    private static int hash(String path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; ) {
+            int codePoint = path.codePointAt(i);
+            h = 31 * h + fold(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        // Espalhamento dos bits, como em java.util.HashMap.
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * Comparar um caminho indexado com um trecho de outro caminho.
+     * @param key caminho indexado.
+     * @param path caminho consultado.
+     * @param start posição inicial do trecho.
+     * @param end posição final (exclusiva) do trecho.
+     * @return true, se os caminhos são equivalentes.
+     */
+    private static boolean matches(String key, String path, int start, int end) {
+        int i = 0;
+        int j = start;
+        while (i < key.length() && j < end) {
+            int c1 = key.codePointAt(i);
+            int c2 = path.codePointAt(j);
+            if (c1 != c2 && fold(c1) != fold(c2)) {
+                return false;
+            }
+            i += Character.charCount(c1);
+            j += Character.charCount(c2);
+        }
+        return i == key.length() && j == end;
+    }
+
+
+    /**
+     * Normalizar um caminho para a comparação sem distinção entre maiúsculas e
+     * minúsculas, com o mesmo critério usado pelo índice. Caminhos
+     * equivalentes resultam na mesma string normalizada.
+     * @param path caminho.
+     * @return caminho normalizado (o próprio caminho, se já estiver
+     * normalizado).
+     */
+    public static String normalize(String path) {
+        StringBuilder sb = null;
+        for (int i = 0; i < path.length(); ) {
+            int codePoint = path.codePointAt(i);
+            int folded = fold(codePoint);
+            if (sb == null && folded != codePoint) {
+                sb = new StringBuilder(path.length());
+                sb.append(path, 0, i);
+            }
+            if (sb != null) {
+                sb.appendCodePoint(folded);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return (sb != null ? sb.toString() : path);
+    }
+
+
+    /**
+     * Comparar dois caminhos sem distinção entre maiúsculas e minúsculas, com
+     * o mesmo critério usado pelo índice.
+     * @param path1 caminho.
+     * @param path2 caminho.
+     * @return true, se os caminhos são equivalentes.
+     */
+    public static boolean equalsIgnoreCase(String path1, String path2) {
+        return matches(path1, path2, 0, path2.length());
+    }
+
+
+    /**
+     * Localizar a posição do caminho na tabela.
+     * @param path caminho.
+     * @param start posição inicial do trecho considerado.
+     * @param end posição final (exclusiva) do trecho considerado.
+     * @return posição do caminho, ou a posição livre onde ele seria inserido.
+     */
+    private int find(String path, int start, int end) {
+        int mask = keys.length - 1;
+        int slot = hash(path, start, end) & mask;
+        String key;
+        while ((key = keys[slot]) != null && !matches(key, path, start, end)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    /**
+     * Obter o valor associado ao caminho.
+     * @param path caminho.
+     * @return valor associado, ou {@link #NOT_FOUND}.
+     */
+    public int get(String path) {
+        return get(path, 0, path.length());
+    }
+
+
+    /**
+     * Obter o valor associado a um trecho de um caminho.
+     * @param path caminho.
+     * @param start posição inicial do trecho.
+     * @param end posição final (exclusiva) do trecho.
+     * @return valor associado, ou {@link #NOT_FOUND}.
+     */
+    public int get(String path, int start, int end) {
+        int slot = find(path, start, end);
+        return (keys[slot] != null ? values[slot] : NOT_FOUND);
+    }
+
+
+    /**
+     * Verificar se o caminho está no índice.
+     * @param path caminho.
+     * @return true, se o caminho está no índice.
+     */
+    public boolean contains(String path) {
+        return keys[find(path, 0, path.length())] != null;
+    }
+
+
+    /**
+     * Associar um valor ao caminho. Caso um caminho equivalente já esteja no
+     * índice, apenas o seu valor é substituído.
+     * @param path caminho.
+     * @param value valor associado.
+     * @return valor anterior, ou {@link #NOT_FOUND}.
+     */
+    public int put(String path, int value) {
+        int slot = find(path, 0, path.length());
+        if (keys[slot] != null) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = path;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        return NOT_FOUND;
+    }
+
+
+    /**
+     * Remover o caminho do índice.
+     * @param path caminho.
+     * @return valor que estava associado, ou {@link #NOT_FOUND}.
+     */
+    public int remove(String path) {
+
+        int mask = keys.length - 1;
+        int slot = find(path, 0, path.length());
+
+        if (keys[slot] == null) {
+            return NOT_FOUND;
+        }
+
+        int value = values[slot];
+        keys[slot] = null;
+        size--;
+
+        // Reposiciona os caminhos seguintes do mesmo agrupamento, para que
+        // nenhuma sequência de sondagem seja interrompida.
+        int next = (slot + 1) & mask;
+
+        while (keys[next] != null) {
+            int ideal = hash(keys[next], 0, keys[next].length()) & mask;
+            if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                keys[next] = null;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        return value;
+
+    }
+
+
+    /**
+     * Remover todos os caminhos do índice.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+
+    /**
+     * Obter o número de caminhos no índice.
+     * @return número de caminhos.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = find(oldKeys[i], 0, oldKeys[i].length());
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+
+}
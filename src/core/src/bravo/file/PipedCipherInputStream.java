@@ -0,0 +1,266 @@
+package bravo.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * Stream de leitura dos bytes encriptados de um arquivo, produzidos em memória
+ * por uma tarefa de encriptação executada em outra thread. Os bytes passam por
+ * um buffer circular de capacidade limitada: a tarefa de encriptação bloqueia
+ * quando o buffer está cheio, e a leitura bloqueia quando ele está vazio.
+ *
+ * <br><br>
+ *
+ * Desta forma, os bytes encriptados são gravados diretamente na entrada do ZIP,
+ * sem a necessidade de um arquivo temporário em disco. Os ouvintes
+ * {@link CipherListener} são notificados a cada leitura, de forma que o progresso
+ * acompanha a gravação no ZIP, e podem abortar o processo, o que faz com que a
+ * leitura lance uma {@link IOException}.
+ *
+ * @since 2.0
+ */
+final class PipedCipherInputStream extends InputStream {
+
+
+    /**
+     * Tarefa que grava os bytes encriptados no stream de saída do pipe.
+     */
+    @FunctionalInterface
+    interface Producer {
+
+
+        /**
+         * Gravar os bytes encriptados no stream de saída.
+         * @param ostream stream de saída do pipe.
+         * @throws Exception
+         */
+        void produce(OutputStream ostream) throws Exception;
+
+
+    }
+
+
+    /**Capacidade padrão do buffer circular (4 MB).*/
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    /**Buffer circular.*/
+    private final byte[] buffer;
+
+    /**Ouvintes do processo de encriptação.*/
+    private final CipherListener[] listeners;
+
+    /**Posição de leitura no buffer circular.*/
+    private int readPosition;
+
+    /**Número de bytes disponíveis no buffer circular.*/
+    private int count;
+
+    /**Sinaliza que a tarefa de encriptação terminou de gravar.*/
+    private boolean writerClosed;
+
+    /**Sinaliza que a leitura foi encerrada.*/
+    private boolean readerClosed;
+
+    /**Erro ocorrido na tarefa de encriptação.*/
+    private Throwable error;
+
+
+    /**
+     * Constructor da classe. A tarefa de encriptação é iniciada imediatamente
+     * no executor informado.
+     * @param producer tarefa de encriptação.
+     * @param executor executor da tarefa de encriptação.
+     * @param capacity capacidade do buffer circular em bytes.
+     * @param listeners ouvintes do processo de encriptação.
+     */
+    public PipedCipherInputStream(Producer producer, Executor executor, int capacity,
+    CipherListener... listeners) {
+        this.buffer = new byte[capacity];
+        this.listeners = listeners;
+        executor.execute(() -> run(producer));
+    }
+
+
+    /**
+     * Executar a tarefa de encriptação, sinalizando o término ou o erro para
+     * a leitura.
+     * @param producer tarefa de encriptação.
+     */
+    private void run(Producer producer) {
+        Throwable throwable = null;
+        try (OutputStream ostream = new PipeOutputStream()) {
+            producer.produce(ostream);
+        } catch (Throwable ex) {
+            throwable = ex;
+        }
+        synchronized (this) {
+            if (throwable != null && !readerClosed) {
+                error = throwable;
+            }
+            writerClosed = true;
+            notifyAll();
+        }
+    }
+
+
+    /**
+     * Gravar bytes no buffer circular, bloqueando enquanto ele estiver cheio.
+     * @param b bytes a serem gravados.
+     * @param off posição inicial.
+     * @param len número de bytes.
+     * @throws IOException
+     */
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+
+        while (len > 0) {
+
+            while (count == buffer.length && !readerClosed) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Processo interrompido.", ex);
+                }
+            }
+
+            if (readerClosed) {
+                throw new IOException("Pipe fechado.");
+            }
+
+            int writePosition = (readPosition + count) % buffer.length;
+            int length = Math.min(len, Math.min(buffer.length - count,
+            buffer.length - writePosition));
+
+            System.arraycopy(b, off, buffer, writePosition, length);
+
+            count += length;
+            off += length;
+            len -= length;
+
+            notifyAll();
+
+        }
+
+    }
+
+
+    /**
+     * Ler bytes do buffer circular, bloqueando enquanto ele estiver vazio.
+     * @param b buffer de destino.
+     * @param off posição inicial.
+     * @param len número máximo de bytes.
+     * @return número de bytes lidos, ou -1 ao final do stream.
+     * @throws IOException
+     */
+    private synchronized int take(byte[] b, int off, int len) throws IOException {
+
+        while (count == 0 && !writerClosed && !readerClosed) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Processo interrompido.", ex);
+            }
+        }
+
+        if (readerClosed) {
+            throw new IOException("Stream fechado.");
+        }
+
+        if (error != null) {
+            throw new IOException(error.getMessage(), error);
+        }
+
+        if (count == 0) {
+            return -1;
+        }
+
+        int length = Math.min(len, Math.min(count, buffer.length - readPosition));
+
+        System.arraycopy(buffer, readPosition, b, off, length);
+
+        readPosition = (readPosition + length) % buffer.length;
+        count -= length;
+
+        notifyAll();
+
+        return length;
+
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) return 0;
+
+        for (CipherListener listener : listeners) {
+            if (listener.abort()) {
+                close();
+                throw new IOException("Processo abortado.");
+            }
+        }
+
+        int length = take(b, off, len);
+
+        if (length != -1) {
+            for (CipherListener listener : listeners) {
+                listener.update(length);
+            }
+        }
+
+        return length;
+
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int length = read(b, 0, 1);
+        return (length == -1 ? -1 : b[0] & 0xFF);
+    }
+
+
+    @Override
+    public synchronized int available() {
+        return count;
+    }
+
+
+    /**
+     * Encerrar a leitura. Caso a tarefa de encriptação ainda esteja em execução,
+     * ela será interrompida na próxima gravação.
+     */
+    @Override
+    public synchronized void close() {
+        readerClosed = true;
+        count = 0;
+        notifyAll();
+    }
+
+
+    /**
+     * Stream de saída do pipe, usado pela tarefa de encriptação.
+     */
+    private final class PipeOutputStream extends OutputStream {
+
+
+        @Override
+        public void write(int b) throws IOException {
+            PipedCipherInputStream.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            PipedCipherInputStream.this.write(b, off, len);
+        }
+
+
+    }
+
+
+}
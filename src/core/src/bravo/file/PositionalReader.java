@@ -0,0 +1,224 @@
+package bravo.file;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Leitor de trechos de um arquivo em disco, seguro para o uso por várias
+ * threads ao mesmo tempo. Usado pelos armazenamentos ({@link StorageBackend})
+ * para a leitura do conteúdo das entradas.
+ *
+ * <br><br>
+ *
+ * Os bytes são lidos por leituras posicionais em um único {@link FileChannel}:
+ * cada stream guarda a sua própria posição, e não há ponteiro de arquivo
+ * compartilhado entre as leituras. O Java fecha o canal quando uma thread é
+ * interrompida durante uma leitura; neste caso, o canal é reaberto, e as
+ * leituras das demais threads são repetidas no novo canal, a partir da mesma
+ * posição.
+ *
+ * @since 2.0
+ */
+final class PositionalReader implements AutoCloseable {
+
+
+    /**Arquivo em disco.*/
+    private final File file;
+
+    /**Canal de leitura, ou null se ainda não aberto ou já fechado.*/
+    private FileChannel channel;
+
+    /**Sinaliza que o leitor foi fechado.*/
+    private boolean closed;
+
+
+    /**
+     * Constructor da classe. O canal de leitura é aberto na primeira leitura.
+     * @param file arquivo em disco.
+     */
+    public PositionalReader(File file) {
+        this.file = file;
+    }
+
+
+    /**
+     * Obter o canal de leitura, abrindo-o caso ainda não esteja aberto ou
+     * tenha sido fechado pela interrupção de uma thread.
+     * @return canal de leitura.
+     * @throws IOException
+     */
+    private synchronized FileChannel getChannel() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+
+    /**
+     * Ler bytes do arquivo a partir de uma posição. Caso o canal tenha sido
+     * fechado pela interrupção de outra thread, a leitura é repetida no canal
+     * reaberto.
+     * @param buffer buffer de destino.
+     * @param position posição no arquivo.
+     * @return número de bytes lidos, ou -1 no final do arquivo.
+     * @throws IOException
+     */
+    private int read(ByteBuffer buffer, long position) throws IOException {
+        while (true) {
+            try {
+                return getChannel().read(buffer, position);
+            } catch (ClosedByInterruptException ex) {
+                throw ex;
+            } catch (ClosedChannelException ex) {
+                if (Thread.currentThread().isInterrupted() || isClosed()) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+
+    /**
+     * Ler bytes do arquivo até completar o buffer.
+     * @param buffer buffer de destino.
+     * @param position posição no arquivo.
+     * @throws IOException se o final do arquivo for atingido antes.
+     */
+    public void readFully(ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (read(buffer, position + buffer.position() - start) == -1) {
+                throw new EOFException("Fim inesperado do arquivo.");
+            }
+        }
+    }
+
+
+    /**
+     * Abrir o stream de leitura de um trecho do arquivo. O stream não precisa
+     * ser fechado, e pode ser lido por uma thread diferente da que o abriu.
+     * @param position posição inicial do trecho.
+     * @param length número de bytes do trecho.
+     * @param expectedCrc CRC32 esperado dos bytes do trecho, verificado ao
+     * final da leitura, ou -1 para não verificar.
+     * @param listeners ouvintes notificados dos bytes lidos, que também podem
+     * abortar a leitura.
+     * @return stream de leitura do trecho.
+     */
+    public InputStream open(long position, long length, long expectedCrc,
+    CipherListener... listeners) {
+        return new RangeInputStream(position, length, expectedCrc, listeners);
+    }
+
+
+    /**
+     * Fechar o canal de leitura. Os streams abertos deixam de poder ser lidos.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+
+    /**
+     * Stream de leitura de um trecho do arquivo.
+     */
+    private final class RangeInputStream extends InputStream {
+
+
+        private final CipherListener[] listeners;
+
+        /**CRC dos bytes lidos, ou null se o CRC não é verificado.*/
+        private final CRC32 crc;
+
+        private final long expectedCrc;
+
+        private long position;
+
+        private long remaining;
+
+
+        RangeInputStream(long position, long length, long expectedCrc,
+        CipherListener... listeners) {
+            this.listeners = listeners;
+            this.crc = (expectedCrc >= 0 ? new CRC32() : null);
+            this.expectedCrc = expectedCrc;
+            this.position = position;
+            this.remaining = length;
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            for (CipherListener listener : listeners) {
+                if (listener.abort()) {
+                    throw new IOException("Processo abortado.");
+                }
+            }
+            if (remaining == 0) return -1;
+            if (len == 0) return 0;
+            int length = PositionalReader.this.read(
+                ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)),
+                position
+            );
+            if (length == -1) {
+                throw new EOFException("Fim inesperado do arquivo.");
+            }
+            position += length;
+            remaining -= length;
+            if (crc != null) {
+                crc.update(b, off, length);
+                if (remaining == 0 && crc.getValue() != expectedCrc) {
+                    throw new IOException("Falha na verificação do CRC da entrada.");
+                }
+            }
+            for (CipherListener listener : listeners) {
+                listener.update(length);
+            }
+            return length;
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int length = read(b, 0, 1);
+            return (length == -1 ? -1 : b[0] & 0xFF);
+        }
+
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,1268 @@
+package bravo.file;
+
+import bravo.utils.FileUtils;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Armazenamento das entradas em um arquivo de segmentos somente de acréscimo.
+ * Nenhum byte gravado é alterado depois de referenciado por um índice: as
+ * entradas e os índices são sempre anexados ao final do arquivo, e o espaço
+ * de entradas substituídas ou removidas é recuperado apenas na compactação.
+ *
+ * <br><br>
+ *
+ * Formato (little-endian):
+ *
+ * <ul>
+ *
+ * <li><b>Cabeçalho</b> ({@value #FILE_HEADER_LENGTH} bytes): assinatura
+ * <i>BRAVOSEG</i> e versão do formato.</li>
+ *
+ * <li><b>Registro de entrada</b>: assinatura, tamanho do conteúdo, CRC32 do
+ * conteúdo, tamanho do nome, nome em UTF-8 e o conteúdo.</li>
+ *
+ * <li><b>Bloco de índice</b>, alinhado em 8 bytes: cabeçalho de
+ * {@value #INDEX_HEADER_LENGTH} bytes (assinatura, tipo, número de posições,
+ * posição do bloco anterior, tamanho dos nomes e dos metadados), um arranjo
+ * de posições de tamanho fixo ({@value #SLOT_LENGTH} bytes: posição e tamanho
+ * do registro, CRC32, posição e tamanho do nome e flags), os nomes em UTF-8 e
+ * os metadados do contêiner.</li>
+ *
+ * <li><b>Final de índice</b> ({@value #TRAILER_LENGTH} bytes), logo após cada
+ * bloco: assinatura, posição e tamanho do bloco e CRC32 do bloco.</li>
+ *
+ * </ul>
+ *
+ * Um bloco completo contém todas as entradas; um bloco parcial contém apenas
+ * as entradas incluídas e excluídas desde o bloco anterior, como o diário da
+ * tabela de arquivos. Um novo bloco completo é gravado quando os blocos
+ * parciais passam de um quarto do bloco completo, de modo que
+ * cada gravação em lote anexa poucos bytes mesmo com muitas entradas. Como as
+ * posições têm tamanho fixo e os blocos são alinhados, um bloco pode ser
+ * mapeado em memória e consultado diretamente; aqui os blocos são lidos
+ * sequencialmente por leituras posicionais, pois um mapeamento ativo impede a
+ * substituição do arquivo na compactação no Windows.
+ *
+ * <br><br>
+ *
+ * O último final de índice do arquivo aponta o índice em vigor. Caso o final
+ * do arquivo esteja incompleto (por exemplo, após uma interrupção durante a
+ * gravação), o arquivo é percorrido de trás para frente até o último final de
+ * índice válido, e as gravações posteriores são descartadas.
+ *
+ * @since 2.0
+ */
+final class SegmentStorage implements StorageBackend {
+
+
+    /**Tamanho do cabeçalho do arquivo.*/
+    private static final int FILE_HEADER_LENGTH = 16;
+
+    /**Versão do formato do arquivo.*/
+    private static final int FORMAT_VERSION = 1;
+
+    /**Tamanho do cabeçalho de um registro, sem o nome.*/
+    private static final int RECORD_HEADER_LENGTH = 18;
+
+    /**Tamanho do cabeçalho de um bloco de índice.*/
+    private static final int INDEX_HEADER_LENGTH = 32;
+
+    /**Tamanho de uma posição do índice.*/
+    private static final int SLOT_LENGTH = 32;
+
+    /**Tamanho do final de índice.*/
+    private static final int TRAILER_LENGTH = 32;
+
+    /**Alinhamento dos blocos de índice.*/
+    private static final int ALIGNMENT = 8;
+
+    /**Tamanho máximo do nome de uma entrada em UTF-8.*/
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    /**Tamanho do buffer de leitura/gravação.*/
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**Proporção dos blocos parciais, em relação ao bloco completo, para a gravação de um novo bloco completo.*/
+    private static final double DELTA_THRESHOLD = 0.25;
+
+    /**Tamanho mínimo dos blocos parciais para a gravação de um novo bloco completo.*/
+    private static final long DELTA_MINIMUM_BYTES = 64 * 1024;
+
+    private static final long FILE_MAGIC = getMagic("BRAVOSEG");
+
+    private static final long INDEX_MAGIC = getMagic("BRAVOIDX");
+
+    private static final long TRAILER_MAGIC = getMagic("BRAVOEND");
+
+    private static final int RECORD_MAGIC = (int) getMagic("SEGR\0\0\0\0");
+
+    private static final byte FULL_INDEX = 1;
+
+    private static final byte DELTA_INDEX = 2;
+
+    /**Flag do bloco de índice: contém os metadados do contêiner.*/
+    private static final byte HAS_METADATA = 0x01;
+
+    /**Flag da posição do índice: entrada excluída (apenas em blocos parciais).*/
+    private static final short DELETED = 0x01;
+
+    /**Arquivo em disco.*/
+    private final File file;
+
+    /**Entradas indexadas pelo nome.*/
+    private final Map<String, StorageEntry> entries;
+
+    /**Entradas incluídas desde o último bloco de índice.*/
+    private final Map<String, Entry> changed;
+
+    /**Entradas excluídas desde o último bloco de índice.*/
+    private final Set<String> deleted;
+
+    /**Metadados do contêiner.*/
+    private String metadata;
+
+    /**Sinaliza que os metadados foram alterados desde o último bloco.*/
+    private boolean metadataChanged;
+
+    /**Canal de gravação, aberto durante uma gravação em lote.*/
+    private FileChannel channel;
+
+    /**Posição de gravação do próximo registro.*/
+    private long end;
+
+    /**Posição do bloco de índice em vigor.*/
+    private long indexOffset;
+
+    /**Tamanho do último bloco completo, com o seu final.*/
+    private long fullIndexBytes;
+
+    /**Tamanho dos blocos parciais posteriores ao último bloco completo, com os seus finais.*/
+    private long deltaBytes;
+
+    /**Leitor das entradas, ou null se ainda não aberto.*/
+    private PositionalReader reader;
+
+
+    /**
+     * Constructor da classe. Caso o arquivo não exista ou esteja vazio, é
+     * criado um arquivo de segmentos sem entradas.
+     * @param file arquivo em disco.
+     * @throws IOException se o arquivo existir e não estiver no formato de
+     * segmentos.
+     */
+    public SegmentStorage(File file) throws IOException {
+
+        this.file = file;
+        this.entries = new HashMap<>();
+        this.changed = new LinkedHashMap<>();
+        this.deleted = new LinkedHashSet<>();
+
+        if (!file.exists() || file.length() == 0) {
+            create(file);
+        }
+
+        load();
+
+    }
+
+
+    /**
+     * Verificar se o arquivo está no formato de segmentos.
+     * @param file arquivo em disco.
+     * @return true, se o arquivo começa com a assinatura do formato.
+     * @throws IOException
+     */
+    public static boolean isSegmentFile(File file) throws IOException {
+        if (!file.isFile() || file.length() < FILE_HEADER_LENGTH) {
+            return false;
+        }
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = newBuffer(Long.BYTES);
+            readFully(fileChannel, buffer, 0);
+            return buffer.getLong(0) == FILE_MAGIC;
+        }
+    }
+
+
+    private static long getMagic(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII))
+        .order(ByteOrder.LITTLE_ENDIAN).getLong();
+    }
+
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+
+    private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position)
+    throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Fim inesperado do arquivo de segmentos.");
+            }
+        }
+    }
+
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer buffer, long position)
+    throws IOException {
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer, position + buffer.position());
+        }
+    }
+
+
+    /**
+     * Criar um arquivo de segmentos sem entradas.
+     * @param file arquivo em disco.
+     * @throws IOException
+     */
+    private static void create(File file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(fileChannel);
+            writeIndex(fileChannel, FILE_HEADER_LENGTH, FULL_INDEX, -1,
+            Collections.emptyList(), Collections.emptySet(), null, false);
+            fileChannel.force(true);
+        }
+        FileUtils.syncDirectory(file);
+    }
+
+
+    private static void writeHeader(FileChannel fileChannel) throws IOException {
+        ByteBuffer header = newBuffer(FILE_HEADER_LENGTH);
+        header.putLong(FILE_MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(0);
+        header.flip();
+        writeFully(fileChannel, header, 0);
+    }
+
+
+    /**
+     * Ler o índice em vigor e reconstruir as entradas.
+     * @throws IOException
+     */
+    private void load() throws IOException {
+
+        entries.clear();
+        changed.clear();
+        deleted.clear();
+        metadata = null;
+        metadataChanged = false;
+
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            ByteBuffer header = newBuffer(FILE_HEADER_LENGTH);
+            readFully(fileChannel, header, 0);
+
+            if (header.getLong(0) != FILE_MAGIC) {
+                throw new IOException("O arquivo não está no formato de segmentos.");
+            }
+
+            if (header.getInt(8) != FORMAT_VERSION) {
+                throw new IOException("Versão do arquivo de segmentos não suportada: " +
+                header.getInt(8));
+            }
+
+            long trailerOffset = findTrailer(fileChannel);
+
+            if (trailerOffset < 0) {
+                throw new IOException("Índice do arquivo de segmentos não encontrado.");
+            }
+
+            // Blocos do índice em vigor, empilhados do último até o último
+            // bloco completo, e aplicados na ordem inversa.
+            Deque<Long> blocks = new ArrayDeque<>();
+            long offset = readTrailer(fileChannel, trailerOffset);
+
+            indexOffset = offset;
+            fullIndexBytes = 0;
+            deltaBytes = 0;
+
+            while (true) {
+
+                ByteBuffer indexHeader = newBuffer(INDEX_HEADER_LENGTH);
+                readFully(fileChannel, indexHeader, offset);
+                long length = getBlockLength(indexHeader);
+
+                // O último bloco já foi validado pelo final encontrado.
+                if (offset != indexOffset && readTrailer(fileChannel, offset + length) != offset) {
+                    throw new IOException("Índice do arquivo de segmentos corrompido.");
+                }
+
+                blocks.push(offset);
+
+                if (indexHeader.get(8) == FULL_INDEX) {
+                    fullIndexBytes = length + TRAILER_LENGTH;
+                    break;
+                }
+
+                deltaBytes += length + TRAILER_LENGTH;
+
+                long previousOffset = indexHeader.getLong(16);
+
+                if (previousOffset < FILE_HEADER_LENGTH || previousOffset >= offset) {
+                    throw new IOException("Índice do arquivo de segmentos corrompido.");
+                }
+
+                offset = previousOffset;
+
+            }
+
+            for (long blockOffset : blocks) {
+                readIndex(fileChannel, blockOffset);
+            }
+
+            end = trailerOffset + TRAILER_LENGTH;
+
+        }
+
+    }
+
+
+    /**
+     * Obter o tamanho de um bloco de índice, sem o final.
+     * @param indexHeader cabeçalho do bloco.
+     * @return tamanho do bloco, alinhado.
+     * @throws IOException se o cabeçalho for inválido.
+     */
+    private static long getBlockLength(ByteBuffer indexHeader) throws IOException {
+        if (indexHeader.getLong(0) != INDEX_MAGIC) {
+            throw new IOException("Índice do arquivo de segmentos corrompido.");
+        }
+        long slots = Integer.toUnsignedLong(indexHeader.getInt(12));
+        long namesLength = Integer.toUnsignedLong(indexHeader.getInt(24));
+        long metadataLength = Integer.toUnsignedLong(indexHeader.getInt(28));
+        return align(INDEX_HEADER_LENGTH + slots * SLOT_LENGTH + namesLength + metadataLength);
+    }
+
+
+    /**
+     * Localizar o último final de índice válido, começando pelo final do
+     * arquivo e, caso este esteja incompleto, percorrendo o arquivo de trás
+     * para frente.
+     * @param fileChannel canal de leitura.
+     * @return posição do final de índice, ou -1 se não encontrado.
+     * @throws IOException
+     */
+    private long findTrailer(FileChannel fileChannel) throws IOException {
+
+        long size = fileChannel.size();
+        long candidate = size - TRAILER_LENGTH;
+
+        if (candidate >= FILE_HEADER_LENGTH && readTrailer(fileChannel, candidate) >= 0) {
+            return candidate;
+        }
+
+        ByteBuffer buffer = newBuffer(BUFFER_SIZE);
+        long limit = align(size);
+
+        while (limit > FILE_HEADER_LENGTH) {
+
+            long start = Math.max(FILE_HEADER_LENGTH, limit - BUFFER_SIZE);
+            buffer.clear().limit((int) (Math.min(limit, size) - start));
+            readFully(fileChannel, buffer, start);
+
+            for (long position = align(Math.min(limit, size)) - ALIGNMENT; position >= start;
+            position -= ALIGNMENT) {
+                int index = (int) (position - start);
+                if (index + Long.BYTES <= buffer.limit() &&
+                buffer.getLong(index) == TRAILER_MAGIC &&
+                readTrailer(fileChannel, position) >= 0) {
+                    return position;
+                }
+            }
+
+            limit = start;
+
+        }
+
+        return -1;
+
+    }
+
+
+    /**
+     * Ler e validar um final de índice, incluindo o CRC do bloco.
+     * @param fileChannel canal de leitura.
+     * @param position posição do final de índice.
+     * @return posição do bloco de índice, ou -1 se o final for inválido.
+     * @throws IOException
+     */
+    private static long readTrailer(FileChannel fileChannel, long position) throws IOException {
+
+        if (position < FILE_HEADER_LENGTH || position + TRAILER_LENGTH > fileChannel.size()) {
+            return -1;
+        }
+
+        ByteBuffer trailer = newBuffer(TRAILER_LENGTH);
+        readFully(fileChannel, trailer, position);
+
+        long offset = trailer.getLong(8);
+        long length = trailer.getLong(16);
+
+        if (trailer.getLong(0) != TRAILER_MAGIC || offset < FILE_HEADER_LENGTH ||
+        length < INDEX_HEADER_LENGTH || offset + length != position) {
+            return -1;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = newBuffer(BUFFER_SIZE);
+
+        for (long done = 0; done < length; ) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - done));
+            readFully(fileChannel, buffer, offset + done);
+            buffer.flip();
+            crc.update(buffer);
+            done += buffer.limit();
+        }
+
+        return ((int) crc.getValue() == trailer.getInt(24) ? offset : -1);
+
+    }
+
+
+    /**
+     * Aplicar um bloco de índice sobre as entradas.
+     * @param fileChannel canal de leitura.
+     * @param offset posição do bloco.
+     * @throws IOException
+     */
+    private void readIndex(FileChannel fileChannel, long offset) throws IOException {
+
+        ByteBuffer indexHeader = newBuffer(INDEX_HEADER_LENGTH);
+        readFully(fileChannel, indexHeader, offset);
+
+        byte type = indexHeader.get(8);
+        byte flags = indexHeader.get(9);
+        int slots = indexHeader.getInt(12);
+        long namesLength = Integer.toUnsignedLong(indexHeader.getInt(24));
+        int metadataLength = indexHeader.getInt(28);
+
+        if (type == FULL_INDEX) {
+            entries.clear();
+        }
+
+        long slotsOffset = offset + INDEX_HEADER_LENGTH;
+        long namesOffset = slotsOffset + (long) slots * SLOT_LENGTH;
+
+        // As posições e os nomes são lidos sequencialmente, cada um com o
+        // seu próprio buffer.
+        IndexReader slotCursor = new IndexReader(fileChannel, slotsOffset);
+        IndexReader nameCursor = new IndexReader(fileChannel, namesOffset);
+        byte[] name = new byte[256];
+
+        for (int i = 0; i < slots; i++) {
+
+            long recordOffset = slotCursor.getLong();
+            long size = slotCursor.getLong();
+            int crc = slotCursor.getInt();
+            long nameOffset = Integer.toUnsignedLong(slotCursor.getInt());
+            int nameLength = Short.toUnsignedInt(slotCursor.getShort());
+            short slotFlags = slotCursor.getShort();
+            slotCursor.getInt();
+
+            if (nameCursor.position() != namesOffset + nameOffset ||
+            nameOffset + nameLength > namesLength) {
+                throw new IOException("Índice do arquivo de segmentos corrompido.");
+            }
+
+            if (nameLength > name.length) {
+                name = new byte[Math.max(nameLength, name.length * 2)];
+            }
+
+            nameCursor.get(name, nameLength);
+            String entryName = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+
+            if ((slotFlags & DELETED) != 0) {
+                entries.remove(entryName);
+            } else {
+                entries.put(entryName, new Entry(entryName, recordOffset, nameLength, size, crc));
+            }
+
+        }
+
+        if ((flags & HAS_METADATA) != 0) {
+            byte[] bytes = new byte[metadataLength];
+            nameCursor.get(bytes, metadataLength);
+            metadata = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+    }
+
+
+    /**
+     * Gravar um bloco de índice e o seu final.
+     * @param fileChannel canal de gravação.
+     * @param position posição de gravação (alinhada em seguida).
+     * @param type tipo do bloco.
+     * @param previousOffset posição do bloco anterior, ou -1.
+     * @param slots entradas incluídas.
+     * @param deleted nomes das entradas excluídas.
+     * @param metadata metadados do contêiner.
+     * @param hasMetadata se true, os metadados são gravados no bloco.
+     * @return posição seguinte ao final de índice gravado.
+     * @throws IOException
+     */
+    private static long writeIndex(FileChannel fileChannel, long position, byte type,
+    long previousOffset, Collection<? extends StorageEntry> slots, Collection<String> deleted,
+    String metadata, boolean hasMetadata) throws IOException {
+
+        long offset = align(position);
+        long count = (long) slots.size() + deleted.size();
+
+        long namesLength = 0;
+        for (StorageEntry entry : slots) {
+            namesLength += ((Entry) entry).nameLength;
+        }
+        for (String name : deleted) {
+            namesLength += getNameLength(name);
+        }
+
+        byte[] metadataBytes = (hasMetadata && metadata != null ?
+        metadata.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+
+        if (count > Integer.MAX_VALUE || namesLength > 0xFFFFFFFFL) {
+            throw new IOException("Índice do arquivo de segmentos muito grande.");
+        }
+
+        IndexWriter writer = new IndexWriter(fileChannel, offset);
+
+        writer.putLong(INDEX_MAGIC);
+        writer.put(type);
+        writer.put(hasMetadata && metadata != null ? HAS_METADATA : 0);
+        writer.putShort((short) 0);
+        writer.putInt((int) count);
+        writer.putLong(previousOffset);
+        writer.putInt((int) namesLength);
+        writer.putInt(metadataBytes.length);
+
+        long nameOffset = 0;
+
+        for (StorageEntry slot : slots) {
+            Entry entry = (Entry) slot;
+            writer.putLong(entry.recordOffset);
+            writer.putLong(entry.size);
+            writer.putInt(entry.crc);
+            writer.putInt((int) nameOffset);
+            writer.putShort((short) entry.nameLength);
+            writer.putShort((short) 0);
+            writer.putInt(0);
+            nameOffset += entry.nameLength;
+        }
+
+        for (String name : deleted) {
+            int nameLength = getNameLength(name);
+            writer.putLong(-1);
+            writer.putLong(0);
+            writer.putInt(0);
+            writer.putInt((int) nameOffset);
+            writer.putShort((short) nameLength);
+            writer.putShort(DELETED);
+            writer.putInt(0);
+            nameOffset += nameLength;
+        }
+
+        for (StorageEntry entry : slots) {
+            writer.put(entry.getName().getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (String name : deleted) {
+            writer.put(name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        writer.put(metadataBytes);
+
+        while (writer.position() % ALIGNMENT != 0) {
+            writer.put((byte) 0);
+        }
+
+        long length = writer.position() - offset;
+        int crc = writer.finish();
+
+        ByteBuffer trailer = newBuffer(TRAILER_LENGTH);
+        trailer.putLong(TRAILER_MAGIC);
+        trailer.putLong(offset);
+        trailer.putLong(length);
+        trailer.putInt(crc);
+        trailer.putInt(0);
+        trailer.flip();
+        writeFully(fileChannel, trailer, offset + length);
+
+        return offset + length + TRAILER_LENGTH;
+
+    }
+
+
+    /**
+     * Obter o tamanho do nome de uma entrada em UTF-8.
+     * @param name nome da entrada.
+     * @return número de bytes.
+     * @throws IOException se o nome for longo demais.
+     */
+    private static int getNameLength(String name) throws IOException {
+        int length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < name.length() &&
+            Character.isLowSurrogate(name.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        if (length > MAX_NAME_LENGTH) {
+            throw new IOException("Nome da entrada muito longo: " + name);
+        }
+        return length;
+    }
+
+
+    @Override
+    public void beginBatch() throws IOException {
+        if (channel != null) {
+            throw new IOException("Já existe uma gravação em lote em andamento.");
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    }
+
+
+    @Override
+    public boolean isBatchActive() {
+        return channel != null;
+    }
+
+
+    /**
+     * Encerrar a gravação em lote, anexando um bloco de índice com as
+     * alterações do lote, ou com todas as entradas, caso os blocos parciais
+     * tenham atingido o limite em relação ao último bloco completo. Os bytes
+     * de registros incompletos após o último registro são descartados.
+     *
+     * <br><br>
+     *
+     * Os registros do lote são forçados para o disco antes da gravação do
+     * bloco de índice, e o bloco e o seu final logo após. Sem a primeira
+     * etapa, o sistema poderia gravar o final de índice antes dos registros,
+     * e uma queda neste intervalo deixaria um índice válido apontando para
+     * registros que não chegaram ao disco.
+     * @throws IOException
+     */
+    @Override
+    public void commitBatch() throws IOException {
+
+        if (channel == null) return;
+
+        try {
+
+            if (!changed.isEmpty() || !deleted.isEmpty() || metadataChanged) {
+
+                channel.force(false);
+
+                long deltaLength = INDEX_HEADER_LENGTH + TRAILER_LENGTH +
+                (long) (changed.size() + deleted.size()) * SLOT_LENGTH;
+
+                for (Entry entry : changed.values()) {
+                    deltaLength += entry.nameLength;
+                }
+
+                boolean full = (deltaBytes + deltaLength > Math.max(DELTA_MINIMUM_BYTES,
+                fullIndexBytes * DELTA_THRESHOLD));
+
+                long offset = align(end);
+                long blockEnd;
+
+                if (full) {
+                    blockEnd = writeIndex(channel, end, FULL_INDEX, -1, entries.values(),
+                    Collections.emptySet(), metadata, true);
+                } else {
+                    blockEnd = writeIndex(channel, end, DELTA_INDEX, indexOffset, changed.values(),
+                    deleted, metadata, metadataChanged);
+                }
+
+                long length = blockEnd - offset;
+
+                if (full) {
+                    fullIndexBytes = length;
+                    deltaBytes = 0;
+                } else {
+                    deltaBytes += length;
+                }
+
+                indexOffset = offset;
+                end = blockEnd;
+
+                changed.clear();
+                deleted.clear();
+                metadataChanged = false;
+
+            }
+
+            // O último final de índice deve ser o final do arquivo.
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+
+            channel.force(true);
+
+        } finally {
+
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+
+        }
+
+    }
+
+
+    /**
+     * Iniciar uma gravação em lote implícita, para uma alteração feita fora de
+     * um lote.
+     * @return true, se o lote foi iniciado e deve ser encerrado pela chamada.
+     * @throws IOException
+     */
+    private boolean beginImplicitBatch() throws IOException {
+        if (channel != null) return false;
+        beginBatch();
+        return true;
+    }
+
+
+    /**
+     * Anexar o stream como um novo registro. O tamanho e o CRC do conteúdo
+     * são gravados no cabeçalho do registro ao final da cópia. Caso a cópia
+     * falhe, o registro incompleto não é referenciado, e é sobrescrito pelo
+     * próximo registro ou descartado no encerramento do lote.
+     * @param inputStream stream do conteúdo.
+     * @param name nome da entrada.
+     * @throws IOException
+     */
+    @Override
+    public void putStream(InputStream inputStream, String name) throws IOException {
+
+        boolean implicit = beginImplicitBatch();
+
+        try {
+
+            Entry entry = appendRecord(channel, end, name, inputStream);
+
+            end = entry.recordOffset + entry.getRecordLength();
+
+            entries.put(name, entry);
+            changed.put(name, entry);
+            deleted.remove(name);
+
+        } finally {
+
+            if (implicit) commitBatch();
+
+        }
+
+    }
+
+
+    /**
+     * Gravar um registro.
+     * @param fileChannel canal de gravação.
+     * @param recordOffset posição do registro.
+     * @param name nome da entrada.
+     * @param inputStream stream do conteúdo.
+     * @return entrada gravada.
+     * @throws IOException
+     */
+    private static Entry appendRecord(FileChannel fileChannel, long recordOffset, String name,
+    InputStream inputStream) throws IOException {
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        if (nameBytes.length > MAX_NAME_LENGTH) {
+            throw new IOException("Nome da entrada muito longo: " + name);
+        }
+
+        ByteBuffer header = newBuffer(RECORD_HEADER_LENGTH + nameBytes.length);
+        header.putInt(RECORD_MAGIC);
+        header.putLong(0);
+        header.putInt(0);
+        header.putShort((short) nameBytes.length);
+        header.put(nameBytes);
+        header.flip();
+        writeFully(fileChannel, header, recordOffset);
+
+        long dataOffset = recordOffset + RECORD_HEADER_LENGTH + nameBytes.length;
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int length;
+
+        while ((length = inputStream.readNBytes(buffer, 0, buffer.length)) > 0) {
+            crc.update(buffer, 0, length);
+            writeFully(fileChannel, ByteBuffer.wrap(buffer, 0, length), dataOffset + size);
+            size += length;
+        }
+
+        header.putLong(4, size);
+        header.putInt(12, (int) crc.getValue());
+        header.limit(16).position(4);
+        writeFully(fileChannel, header, recordOffset);
+
+        return new Entry(name, recordOffset, nameBytes.length, size, (int) crc.getValue());
+
+    }
+
+
+    @Override
+    public InputStream openRange(StorageEntry entry, long offset, long length) throws IOException {
+
+        Entry segmentEntry = getEntry(entry);
+
+        if (offset < 0 || length < 0 || offset + length > segmentEntry.size) {
+            throw new IOException("Trecho inválido da entrada: " + entry.getName());
+        }
+
+        boolean whole = (offset == 0 && length == segmentEntry.size);
+
+        return new BufferedInputStream(
+            getReader().open(
+                segmentEntry.getDataOffset() + offset,
+                length,
+                (whole ? Integer.toUnsignedLong(segmentEntry.crc) : -1)
+            ),
+            BUFFER_SIZE
+        );
+
+    }
+
+
+    private synchronized PositionalReader getReader() {
+        if (reader == null) {
+            reader = new PositionalReader(file);
+        }
+        return reader;
+    }
+
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null) {
+            try {
+                reader.close();
+            } finally {
+                reader = null;
+            }
+        }
+    }
+
+
+    @Override
+    public void delete(StorageEntry entry) throws IOException {
+        boolean implicit = beginImplicitBatch();
+        try {
+            String name = entry.getName();
+            entries.remove(name);
+            changed.remove(name);
+            deleted.add(name);
+        } finally {
+            if (implicit) commitBatch();
+        }
+    }
+
+
+    @Override
+    public List<StorageEntry> list() {
+        return new ArrayList<>(entries.values());
+    }
+
+
+    @Override
+    public Map<String, StorageEntry> getEntryMap() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+
+    @Override
+    public void putMetadata(String metadata) throws IOException {
+        boolean implicit = beginImplicitBatch();
+        try {
+            this.metadata = metadata;
+            metadataChanged = true;
+        } finally {
+            if (implicit) commitBatch();
+        }
+    }
+
+
+    @Override
+    public String getMetadata() {
+        return metadata;
+    }
+
+
+    /**
+     * Estimar o número de bytes no arquivo que não pertencem a nenhuma das
+     * entradas mantidas nem ao índice em vigor: registros descartados pelo
+     * filtro, substituídos ou removidos, e blocos de índice anteriores.
+     * @param keep filtro das entradas mantidas.
+     * @return número de bytes sem referência.
+     */
+    @Override
+    public long getUnreferencedBytes(Predicate<StorageEntry> keep) {
+        long referenced = FILE_HEADER_LENGTH + fullIndexBytes + deltaBytes;
+        for (StorageEntry entry : entries.values()) {
+            if (keep.test(entry)) {
+                referenced += ((Entry) entry).getRecordLength();
+            }
+        }
+        return Math.max(0, end - referenced);
+    }
+
+
+    /**
+     * Compactar o arquivo. Os registros mantidos são copiados, na ordem em que
+     * foram gravados e sem decriptação, para um novo arquivo com um único
+     * bloco de índice completo, que então substitui o original. Caso o
+     * processo seja abortado ou falhe, o arquivo original permanece
+     * inalterado. O novo arquivo é forçado para o disco antes de substituir o
+     * original, e a pasta logo após.
+     * @param keep filtro das entradas mantidas.
+     * @param listeners ouvintes notificados a cada bloco copiado, e que podem
+     * abortar o processo.
+     * @return número de bytes recuperados.
+     * @throws Exception
+     */
+    @Override
+    public long vacuum(Predicate<StorageEntry> keep, CipherListener... listeners) throws Exception {
+
+        if (channel != null) {
+            throw new IOException("Há uma gravação em lote em andamento.");
+        }
+
+        List<Entry> kept = new ArrayList<>();
+        for (StorageEntry entry : entries.values()) {
+            if (keep.test(entry)) {
+                kept.add((Entry) entry);
+            }
+        }
+        kept.sort(Comparator.comparingLong(entry -> entry.recordOffset));
+
+        File tempFile = new File(file.getAbsolutePath() + ".vacuum");
+        Files.deleteIfExists(tempFile.toPath());
+
+        try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            writeHeader(tempChannel);
+
+            List<Entry> copies = new ArrayList<>(kept.size());
+            long position = FILE_HEADER_LENGTH;
+
+            for (Entry entry : kept) {
+                Entry copy = appendRecord(tempChannel, position, entry.getName(),
+                getReader().open(entry.getDataOffset(), entry.size, -1, listeners));
+                if (copy.crc != entry.crc) {
+                    throw new IOException("Falha na verificação do CRC da entrada: " +
+                    entry.getName());
+                }
+                copies.add(copy);
+                position += copy.getRecordLength();
+            }
+
+            writeIndex(tempChannel, position, FULL_INDEX, -1, copies, Collections.emptySet(),
+            metadata, true);
+
+        } catch (Exception ex) {
+
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex;
+
+        }
+
+        long reclaimed = file.length() - tempFile.length();
+
+        // O arquivo não pode ser substituído com um canal aberto no Windows.
+        close();
+
+        FileUtils.replace(tempFile, file);
+
+        load();
+
+        return reclaimed;
+
+    }
+
+
+    private static Entry getEntry(StorageEntry entry) {
+        if (entry instanceof Entry segmentEntry) {
+            return segmentEntry;
+        }
+        throw new IllegalArgumentException("Entrada de outro armazenamento: " + entry.getName());
+    }
+
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+
+    /**
+     * Entrada do arquivo de segmentos.
+     */
+    private static final class Entry implements StorageEntry {
+
+
+        private final String name;
+
+        /**Posição do registro no arquivo.*/
+        private final long recordOffset;
+
+        /**Tamanho do nome em UTF-8.*/
+        private final int nameLength;
+
+        private final long size;
+
+        private final int crc;
+
+
+        Entry(String name, long recordOffset, int nameLength, long size, int crc) {
+            this.name = name;
+            this.recordOffset = recordOffset;
+            this.nameLength = nameLength;
+            this.size = size;
+            this.crc = crc;
+        }
+
+
+        long getDataOffset() {
+            return recordOffset + RECORD_HEADER_LENGTH + nameLength;
+        }
+
+
+        long getRecordLength() {
+            return RECORD_HEADER_LENGTH + nameLength + size;
+        }
+
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+
+    }
+
+
+    /**
+     * Leitura sequencial de um trecho do arquivo com buffer.
+     */
+    private static final class IndexReader {
+
+
+        private final FileChannel fileChannel;
+
+        private final ByteBuffer buffer;
+
+        /**Posição no arquivo do início do buffer.*/
+        private long bufferPosition;
+
+
+        IndexReader(FileChannel fileChannel, long position) {
+            this.fileChannel = fileChannel;
+            this.buffer = newBuffer(BUFFER_SIZE);
+            this.buffer.limit(0);
+            this.bufferPosition = position;
+        }
+
+
+        long position() {
+            return bufferPosition + buffer.position();
+        }
+
+
+        private void require(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                bufferPosition += buffer.position();
+                buffer.compact();
+                while (buffer.position() < length) {
+                    if (fileChannel.read(buffer, bufferPosition + buffer.position()) == -1) {
+                        throw new EOFException("Fim inesperado do arquivo de segmentos.");
+                    }
+                }
+                buffer.flip();
+            }
+        }
+
+
+        long getLong() throws IOException {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+
+
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+
+        short getShort() throws IOException {
+            require(Short.BYTES);
+            return buffer.getShort();
+        }
+
+
+        void get(byte[] bytes, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                require(1);
+                int count = Math.min(length - done, buffer.remaining());
+                buffer.get(bytes, done, count);
+                done += count;
+            }
+        }
+
+
+    }
+
+
+    /**
+     * Gravação sequencial de um bloco de índice com buffer, calculando o CRC
+     * dos bytes gravados.
+     */
+    private static final class IndexWriter {
+
+
+        private final FileChannel fileChannel;
+
+        private final ByteBuffer buffer;
+
+        private final CRC32 crc;
+
+        /**Posição no arquivo do início do buffer.*/
+        private long bufferPosition;
+
+
+        IndexWriter(FileChannel fileChannel, long position) {
+            this.fileChannel = fileChannel;
+            this.buffer = newBuffer(BUFFER_SIZE);
+            this.crc = new CRC32();
+            this.bufferPosition = position;
+        }
+
+
+        long position() {
+            return bufferPosition + buffer.position();
+        }
+
+
+        private void require(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+        }
+
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            writeFully(fileChannel, buffer, bufferPosition);
+            bufferPosition += buffer.limit();
+            buffer.clear();
+        }
+
+
+        void putLong(long value) throws IOException {
+            require(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+
+        void putInt(int value) throws IOException {
+            require(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+
+        void putShort(short value) throws IOException {
+            require(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+
+        void put(byte value) throws IOException {
+            require(1);
+            buffer.put(value);
+        }
+
+
+        void put(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                require(1);
+                int count = Math.min(bytes.length - done, buffer.remaining());
+                buffer.put(bytes, done, count);
+                done += count;
+            }
+        }
+
+
+        /**
+         * Gravar os bytes restantes no buffer.
+         * @return CRC32 dos bytes gravados.
+         */
+        int finish() throws IOException {
+            flush();
+            return (int) crc.getValue();
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,476 @@
+package bravo.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import static bravo.file.AESCipher.IV_LENGTH;
+import static bravo.file.AESCipher.KEY_LENGTH;
+
+/**
+ * Classe para encriptação/decriptação de arquivos em segmentos autenticados
+ * de tamanho fixo, usando o algoritmo AES no modo GCM.
+ *
+ * <br><br>
+ *
+ * Cada arquivo é dividido em segmentos de {@link #SEGMENT_SIZE} bytes, sendo
+ * que cada segmento é encriptado de forma independente, com um nonce próprio
+ * derivado do vetor de inicialização (IV) do arquivo e do número sequencial do
+ * segmento. A chave de cada arquivo é derivada da chave principal e do IV por
+ * meio de HMAC-SHA256, evitando a repetição de nonces entre arquivos distintos.
+ * O último segmento é marcado no nonce, de modo que o truncamento do arquivo
+ * seja detectado na decriptação.
+ *
+ * <br><br>
+ *
+ * Como os segmentos são independentes, eles são processados em paralelo em um
+ * {@link ForkJoinPool}, permitindo que um único arquivo grande utilize todos os
+ * núcleos do processador. A escrita no stream de saída é sempre feita na ordem
+ * dos segmentos.
+ *
+ * <br><br>
+ *
+ * A troca da chave de um arquivo ({@link #reencrypt}) é feita segmento a
+ * segmento: cada segmento é decriptado com a chave anterior e encriptado com a
+ * nova na mesma tarefa, de modo que os bytes em claro existem apenas na
+ * memória, um segmento por vez.
+ *
+ * <br><br>
+ *
+ * Formato de um arquivo encriptado: sequência de segmentos, cada um com até
+ * {@link #SEGMENT_SIZE} bytes encriptados seguidos de {@link #TAG_LENGTH} bytes
+ * da tag de autenticação. Um arquivo vazio é representado por um único segmento
+ * contendo apenas a tag.
+ *
+ * @since 2.0
+ */
+final class SegmentedCipher {
+
+
+    /**Tamanho do segmento de bytes em claro (1 MB).*/
+    public static final int SEGMENT_SIZE = 1024 * 1024;
+
+    /**Tamanho da tag de autenticação de cada segmento.*/
+    public static final int TAG_LENGTH = 16;
+
+    /**Tamanho do nonce de cada segmento.*/
+    private static final int NONCE_LENGTH = 12;
+
+    /**Número de bytes do IV do arquivo usados como prefixo do nonce.*/
+    private static final int NONCE_PREFIX_LENGTH = 7;
+
+    /**Algoritmo para encriptação/decriptação dos segmentos.*/
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+
+    /**Provedor dos algoritmos criptográficos.*/
+    private static final Provider PROVIDER = new BouncyCastleProvider();
+
+    /**Pool de threads para o processamento dos segmentos.*/
+    private final ForkJoinPool pool;
+
+    /**Número de segmentos processados em cada lote.*/
+    private final int batchSize;
+
+
+    /**
+     * Constructor padrão. Usa o pool comum do {@link ForkJoinPool}.
+     */
+    public SegmentedCipher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Constructor da classe.
+     * @param pool pool de threads para o processamento dos segmentos.
+     */
+    public SegmentedCipher(ForkJoinPool pool) {
+        this.pool = pool;
+        this.batchSize = 2 * Math.max(1, pool.getParallelism());
+    }
+
+
+    /**
+     * Obter o tamanho em bytes do arquivo encriptado.
+     * @param length tamanho do arquivo original.
+     * @return tamanho do arquivo encriptado.
+     */
+    public static long getEncryptedLength(long length) {
+        long segments = Math.max(1, (length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        return length + (segments * TAG_LENGTH);
+    }
+
+
+    /**
+     * Encriptar o stream de entrada, direcionando os bytes criptografados para
+     * o stream de saída.
+     * @param istream stream de entrada.
+     * @param ostream stream de saída.
+     * @param fileMetadata cabeçalho de arquivo.
+     * @param key chave para encriptação do arquivo.
+     * @param listeners ouvintes do processo de encriptação.
+     */
+    public void encrypt(InputStream istream, OutputStream ostream,
+    EncryptedFileMetadata fileMetadata, byte[] key, CipherListener... listeners) throws Exception {
+
+        if (key.length != KEY_LENGTH) {
+            throw new Exception("Tamanho da chave inválido.");
+        }
+
+        byte[] iv = new byte[IV_LENGTH];
+        SecureRandom secureRandom = new SecureRandom();
+        secureRandom.nextBytes(iv);
+        fileMetadata.setIVBytes(iv);
+
+        encrypt(istream, ostream, iv, key, listeners);
+
+    }
+
+
+    /**
+     * Encriptar o stream de entrada com um vetor de inicialização já definido,
+     * direcionando os bytes criptografados para o stream de saída. Use quando
+     * o IV precisa ser gravado antes dos bytes encriptados no mesmo stream.
+     * @param istream stream de entrada.
+     * @param ostream stream de saída.
+     * @param iv vetor de inicialização, gerado aleatoriamente.
+     * @param key chave para encriptação do arquivo.
+     * @param listeners ouvintes do processo de encriptação.
+     */
+    public void encrypt(InputStream istream, OutputStream ostream, byte[] iv,
+    byte[] key, CipherListener... listeners) throws Exception {
+
+        if (key.length != KEY_LENGTH) {
+            throw new Exception("Tamanho da chave inválido.");
+        }
+
+        if (iv.length != IV_LENGTH) {
+            throw new Exception("Tamanho do vetor de inicialização inválido.");
+        }
+
+        byte[] fileKey = deriveFileKey(key, iv);
+
+        try {
+            process(istream, ostream, SEGMENT_SIZE, (index, last, input) ->
+            doFinal(Cipher.ENCRYPT_MODE, fileKey, getNonce(iv, index, last), input), listeners);
+        } finally {
+            Arrays.fill(fileKey, (byte) 0x00);
+        }
+
+    }
+
+
+    /**
+     * Decriptar o stream de entrada, direcionando os bytes decriptografados para
+     * o stream de saída. Caso algum segmento tenha sido alterado, removido ou
+     * reordenado, a autenticação falha e uma exceção é lançada.
+     * @param istream stream de entrada.
+     * @param ostream stream de saída.
+     * @param fileMetadata cabeçalho de arquivo contendo os dados para a decriptografia.
+     * @param key chave para decriptação do arquivo.
+     * @param listeners ouvintes do processo de decriptação.
+     */
+    public void decrypt(InputStream istream, OutputStream ostream,
+    EncryptedFileMetadata fileMetadata, byte[] key, CipherListener... listeners) throws Exception {
+
+        if (key.length != KEY_LENGTH) {
+            throw new Exception("Tamanho da chave inválido.");
+        }
+
+        byte[] iv = fileMetadata.getIVBytes();
+
+        byte[] fileKey = deriveFileKey(key, iv);
+
+        try {
+            process(istream, ostream, SEGMENT_SIZE + TAG_LENGTH, (index, last, input) ->
+            doFinal(Cipher.DECRYPT_MODE, fileKey, getNonce(iv, index, last), input), listeners);
+        } finally {
+            Arrays.fill(fileKey, (byte) 0x00);
+        }
+
+    }
+
+
+    /**
+     * Trocar a chave de um arquivo encriptado, direcionando os bytes
+     * encriptados com a nova chave para o stream de saída. Cada segmento é
+     * decriptado e encriptado novamente em uma única tarefa, sem que os bytes
+     * em claro saiam da memória. Caso algum segmento tenha sido alterado,
+     * removido ou reordenado, a autenticação falha e uma exceção é lançada.
+     * @param istream stream do arquivo encriptado com a chave anterior.
+     * @param ostream stream do arquivo encriptado com a nova chave.
+     * @param fileMetadata cabeçalho de arquivo com o IV da chave anterior.
+     * @param key chave anterior.
+     * @param newFileMetadata cabeçalho de arquivo que receberá o novo IV.
+     * @param newKey nova chave.
+     * @param listeners ouvintes do processo, notificados com o número de
+     * bytes em claro processados.
+     */
+    public void reencrypt(InputStream istream, OutputStream ostream,
+    EncryptedFileMetadata fileMetadata, byte[] key, EncryptedFileMetadata newFileMetadata,
+    byte[] newKey, CipherListener... listeners) throws Exception {
+
+        if (key.length != KEY_LENGTH || newKey.length != KEY_LENGTH) {
+            throw new Exception("Tamanho da chave inválido.");
+        }
+
+        byte[] iv = fileMetadata.getIVBytes();
+
+        byte[] newIv = new byte[IV_LENGTH];
+        SecureRandom secureRandom = new SecureRandom();
+        secureRandom.nextBytes(newIv);
+        newFileMetadata.setIVBytes(newIv);
+
+        byte[] fileKey = deriveFileKey(key, iv);
+        byte[] newFileKey = deriveFileKey(newKey, newIv);
+
+        try {
+            process(istream, ostream, SEGMENT_SIZE + TAG_LENGTH, (index, last, input) -> {
+                byte[] plain = doFinal(Cipher.DECRYPT_MODE, fileKey, getNonce(iv, index, last), input);
+                try {
+                    return doFinal(Cipher.ENCRYPT_MODE, newFileKey, getNonce(newIv, index, last), plain);
+                } finally {
+                    Arrays.fill(plain, (byte) 0x00);
+                }
+            }, listeners);
+        } finally {
+            Arrays.fill(fileKey, (byte) 0x00);
+            Arrays.fill(newFileKey, (byte) 0x00);
+        }
+
+    }
+
+
+    /**
+     * Processar o stream de entrada em lotes de segmentos. Os segmentos de cada
+     * lote são processados em paralelo, e o resultado é gravado no stream de
+     * saída na ordem original.
+     * @param istream stream de entrada.
+     * @param ostream stream de saída.
+     * @param segmentLength tamanho de um segmento completo no stream de entrada.
+     * @param operation operação sobre cada segmento.
+     * @param listeners ouvintes do processo, notificados com o número de bytes
+     * em claro de cada segmento.
+     * @throws Exception
+     */
+    private void process(InputStream istream, OutputStream ostream, int segmentLength,
+    SegmentOperation operation, CipherListener... listeners) throws Exception {
+
+        // Bytes de um segmento completo no stream de entrada além dos bytes em
+        // claro: zero na encriptação, a tag nos demais casos.
+        int overhead = segmentLength - SEGMENT_SIZE;
+
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(batchSize);
+
+        List<Integer> lengths = new ArrayList<>(batchSize);
+
+        byte[] current = readSegment(istream, segmentLength);
+
+        long index = 0;
+
+        boolean last = false;
+
+        boolean abort = false;
+
+        try {
+
+            while (!last && !abort) {
+
+                tasks.clear();
+                lengths.clear();
+
+                // Leitura do lote. Um segmento é o último quando não está
+                // completo ou quando não há mais bytes após ele.
+                while (tasks.size() < batchSize && !last) {
+
+                    byte[] following = null;
+
+                    if (current.length == segmentLength) {
+                        following = readSegment(istream, segmentLength);
+                        last = (following.length == 0);
+                    } else {
+                        last = true;
+                    }
+
+                    final byte[] input = current;
+                    final long segment = index++;
+                    final boolean lastSegment = last;
+
+                    tasks.add(pool.submit(() -> operation.apply(segment, lastSegment, input)));
+                    lengths.add(Math.max(0, input.length - overhead));
+
+                    current = following;
+
+                }
+
+                for (int i = 0; i < tasks.size(); i++) {
+
+                    byte[] output = join(tasks.get(i));
+
+                    ostream.write(output);
+
+                    for (CipherListener listener : listeners) {
+                        listener.update(lengths.get(i));
+                    }
+
+                }
+
+                ostream.flush();
+
+                for (CipherListener listener : listeners) {
+                    if (listener.abort()) {
+                        abort = true;
+                        break;
+                    }
+                }
+
+            }
+
+        } finally {
+
+            for (ForkJoinTask<byte[]> task : tasks) {
+                task.cancel(false);
+            }
+
+        }
+
+    }
+
+
+    /**
+     * Ler um segmento do stream de entrada. Quando o stream informa que há um
+     * segmento completo disponível, os bytes são lidos diretamente no array do
+     * segmento, em leituras tão grandes quanto o stream permitir; caso
+     * contrário, o array cresce à medida que os bytes são lidos, evitando a
+     * alocação de um segmento inteiro para arquivos pequenos.
+     * @param istream stream de entrada.
+     * @param segmentLength tamanho de um segmento completo.
+     * @return bytes do segmento, com menos de segmentLength bytes se o final
+     * do stream foi atingido.
+     * @throws IOException
+     */
+    private static byte[] readSegment(InputStream istream, int segmentLength) throws IOException {
+        if (istream.available() < segmentLength) {
+            return istream.readNBytes(segmentLength);
+        }
+        byte[] segment = new byte[segmentLength];
+        int length = istream.readNBytes(segment, 0, segmentLength);
+        return (length == segmentLength ? segment : Arrays.copyOf(segment, length));
+    }
+
+
+    /**
+     * Encriptar/decriptar um segmento.
+     * @param mode modo de operação.
+     * @param fileKey chave do arquivo.
+     * @param nonce nonce do segmento.
+     * @param input bytes do segmento.
+     * @return bytes processados do segmento.
+     * @throws Exception
+     */
+    private byte[] doFinal(int mode, byte[] fileKey, byte[] nonce, byte[] input) throws Exception {
+        Cipher cipher = Cipher.getInstance(ALGORITHM, PROVIDER);
+        cipher.init(mode, new SecretKeySpec(fileKey, "AES"), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        return cipher.doFinal(input);
+    }
+
+
+    /**
+     * Aguardar o término do processamento de um segmento.
+     * @param task tarefa de processamento do segmento.
+     * @return bytes processados do segmento.
+     * @throws Exception
+     */
+    private byte[] join(ForkJoinTask<byte[]> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof AEADBadTagException) {
+                throw new IOException("Arquivo corrompido ou adulterado.", cause);
+            } else if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else {
+                throw ex;
+            }
+        }
+    }
+
+
+    /**
+     * Derivar a chave do arquivo a partir da chave principal e do IV do arquivo.
+     * @param key chave principal.
+     * @param iv vetor de inicialização do arquivo.
+     * @return chave do arquivo.
+     */
+    private byte[] deriveFileKey(byte[] key, byte[] iv) {
+        HMac hmac = new HMac(new SHA256Digest());
+        hmac.init(new KeyParameter(key));
+        hmac.update(iv, 0, iv.length);
+        byte[] fileKey = new byte[hmac.getMacSize()];
+        hmac.doFinal(fileKey, 0);
+        return fileKey;
+    }
+
+
+    /**
+     * Obter o nonce do segmento. O nonce é composto pelos primeiros bytes do IV
+     * do arquivo, seguidos do número do segmento e de um byte indicando se este
+     * é o último segmento.
+     * @param iv vetor de inicialização do arquivo.
+     * @param index número sequencial do segmento.
+     * @param last se true, é o último segmento do arquivo.
+     * @return nonce do segmento.
+     */
+    private byte[] getNonce(byte[] iv, long index, boolean last) throws IOException {
+        if (index > 0xFFFFFFFFL) {
+            throw new IOException("Arquivo excede o número máximo de segmentos.");
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(iv, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte)(index >>> 24);
+        nonce[8] = (byte)(index >>> 16);
+        nonce[9] = (byte)(index >>> 8);
+        nonce[10] = (byte)index;
+        nonce[11] = (byte)(last ? 1 : 0);
+        return nonce;
+    }
+
+
+    /**
+     * Operação sobre um segmento.
+     */
+    @FunctionalInterface
+    private interface SegmentOperation {
+
+
+        /**
+         * Processar um segmento.
+         * @param index número sequencial do segmento.
+         * @param last se true, é o último segmento do arquivo.
+         * @param input bytes do segmento.
+         * @return bytes processados do segmento.
+         * @throws Exception
+         */
+        byte[] apply(long index, boolean last, byte[] input) throws Exception;
+
+
+    }
+
+
+}
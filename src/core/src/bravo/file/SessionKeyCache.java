@@ -0,0 +1,356 @@
+package bravo.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * Cache, em memória do processo, das chaves derivadas da senha pelo Argon2.
+ * Ao reabrir um arquivo já aberto na sessão, com a mesma senha, a chave é
+ * obtida do cache em milissegundos, em vez de ser derivada novamente.
+ *
+ * <br><br>
+ *
+ * O cache é desabilitado por padrão, e deve ser habilitado explicitamente com
+ * {@link #setEnabled(boolean)}. As chaves são indexadas pela identidade do
+ * arquivo (caminho canônico), pelo salt e pelos parâmetros do Argon2, de modo
+ * que um arquivo substituído ou com a senha alterada não reaproveita a chave
+ * anterior. Para que o cache não dispense a senha, cada chave é acompanhada de
+ * um verificador da senha (HMAC-SHA256 com uma chave aleatória do processo),
+ * e só é devolvida quando a senha informada produz o mesmo verificador.
+ *
+ * <br><br>
+ *
+ * As chaves ficam em buffers diretos, fora do heap, e são zeradas quando
+ * removidas do cache: após um tempo sem uso ({@link #setIdleTimeout(long)}),
+ * na desabilitação do cache ou na chamada de {@link #purge()}.
+ *
+ * @since 2.0
+ */
+public final class SessionKeyCache {
+
+
+    /**Tempo padrão sem uso para a remoção de uma chave, em milissegundos.*/
+    public static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000;
+
+    /**Intervalo máximo entre as verificações de chaves expiradas, em milissegundos.*/
+    private static final long MAX_SWEEP_INTERVAL = 60 * 1000;
+
+    /**Intervalo mínimo entre as verificações de chaves expiradas, em milissegundos.*/
+    private static final long MIN_SWEEP_INTERVAL = 1000;
+
+    /**Chaves indexadas pela identidade do arquivo, salt e parâmetros.*/
+    private static final Map<String, Entry> entries = new HashMap<>();
+
+    /**Chave do HMAC dos verificadores de senha, gerada para o processo.*/
+    private static final byte[] verifierKey = new byte[32];
+
+    private static boolean enabled = false;
+
+    private static long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**Thread de remoção das chaves expiradas, ativa enquanto o cache estiver habilitado.*/
+    private static ScheduledExecutorService sweeper;
+
+    static {
+        new SecureRandom().nextBytes(verifierKey);
+    }
+
+
+    private SessionKeyCache() {}
+
+
+    /**
+     * Habilitar ou desabilitar o cache. Ao desabilitar, todas as chaves são
+     * removidas e zeradas.
+     * @param enabled true, para habilitar o cache.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+
+        if (SessionKeyCache.enabled == enabled) return;
+
+        SessionKeyCache.enabled = enabled;
+
+        if (enabled) {
+            startSweeper();
+        } else {
+            stopSweeper();
+            purge();
+        }
+
+    }
+
+
+    /**
+     * Verificar se o cache está habilitado.
+     * @return true, se habilitado.
+     */
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Definir o tempo sem uso após o qual uma chave é removida do cache.
+     * @param idleTimeout tempo em milissegundos.
+     */
+    public static synchronized void setIdleTimeout(long idleTimeout) {
+
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("O tempo sem uso deve ser maior que zero.");
+        }
+
+        SessionKeyCache.idleTimeout = idleTimeout;
+
+        if (enabled) {
+            stopSweeper();
+            startSweeper();
+        }
+
+    }
+
+
+    /**
+     * Obter o tempo sem uso após o qual uma chave é removida do cache.
+     * @return tempo em milissegundos.
+     */
+    public static synchronized long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+
+    /**
+     * Remover e zerar todas as chaves do cache.
+     */
+    public static synchronized void purge() {
+        for (Entry entry : entries.values()) {
+            entry.clear();
+        }
+        entries.clear();
+    }
+
+
+    /**
+     * Obter a chave derivada de um arquivo.
+     * @param file arquivo.
+     * @param salt salt da derivação.
+     * @param params parâmetros do Argon2.
+     * @param password senha informada.
+     * @return cópia da chave, ou null se o cache estiver desabilitado, a chave
+     * não estiver no cache ou a senha for diferente.
+     */
+    static synchronized byte[] get(File file, byte[] salt, Argon2Params params,
+    char[] password) {
+
+        if (!enabled) return null;
+
+        String key = getKey(file, salt, params);
+
+        if (key == null) return null;
+
+        Entry entry = entries.get(key);
+
+        if (entry == null) return null;
+
+        long now = System.currentTimeMillis();
+
+        if (now - entry.lastAccess > idleTimeout) {
+            entries.remove(key);
+            entry.clear();
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(entry.verifier, getVerifier(salt, password))) {
+            return null;
+        }
+
+        entry.lastAccess = now;
+
+        return entry.getKey();
+
+    }
+
+
+    /**
+     * Guardar a chave derivada de um arquivo. A chave só deve ser guardada
+     * após a verificação da senha.
+     * @param file arquivo.
+     * @param salt salt da derivação.
+     * @param params parâmetros do Argon2.
+     * @param password senha informada.
+     * @param derivedKey chave derivada da senha.
+     */
+    static synchronized void put(File file, byte[] salt, Argon2Params params,
+    char[] password, byte[] derivedKey) {
+
+        if (!enabled) return;
+
+        String key = getKey(file, salt, params);
+
+        if (key == null) return;
+
+        Entry previous = entries.put(key, new Entry(derivedKey, getVerifier(salt, password)));
+
+        if (previous != null) {
+            previous.clear();
+        }
+
+    }
+
+
+    /**
+     * Remover e zerar a chave derivada de um arquivo, por exemplo, após a
+     * revogação da senha.
+     * @param file arquivo.
+     * @param salt salt da derivação.
+     * @param params parâmetros do Argon2.
+     */
+    static synchronized void remove(File file, byte[] salt, Argon2Params params) {
+
+        String key = getKey(file, salt, params);
+
+        if (key == null) return;
+
+        Entry entry = entries.remove(key);
+
+        if (entry != null) {
+            entry.clear();
+        }
+
+    }
+
+
+    /**
+     * Obter a chave do cache. Caso o caminho canônico não possa ser obtido, o
+     * arquivo não é guardado no cache.
+     */
+    private static String getKey(File file, byte[] salt, Argon2Params params) {
+        try {
+            return file.getCanonicalPath() + File.pathSeparator +
+            Base64.getEncoder().encodeToString(salt) + File.pathSeparator +
+            params.getIterations() + File.pathSeparator +
+            params.getMemory() + File.pathSeparator +
+            params.getParallelism();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Calcular o verificador da senha: HMAC-SHA256 do salt e dos caracteres
+     * da senha, com a chave do processo.
+     */
+    private static byte[] getVerifier(byte[] salt, char[] password) {
+
+        HMac hmac = new HMac(new SHA256Digest());
+        hmac.init(new KeyParameter(verifierKey));
+        hmac.update(salt, 0, salt.length);
+
+        for (char c : password) {
+            hmac.update((byte) (c >>> 8));
+            hmac.update((byte) c);
+        }
+
+        byte[] verifier = new byte[hmac.getMacSize()];
+        hmac.doFinal(verifier, 0);
+
+        return verifier;
+
+    }
+
+
+    private static void startSweeper() {
+
+        long interval = Math.max(MIN_SWEEP_INTERVAL, Math.min(MAX_SWEEP_INTERVAL, idleTimeout / 4));
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bravo-key-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        sweeper.scheduleWithFixedDelay(SessionKeyCache::removeExpired, interval, interval,
+        TimeUnit.MILLISECONDS);
+
+    }
+
+
+    private static void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+
+    /**
+     * Remover e zerar as chaves sem uso há mais tempo que o limite.
+     */
+    private static synchronized void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.lastAccess > idleTimeout) {
+                iterator.remove();
+                entry.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Chave guardada no cache.
+     */
+    private static final class Entry {
+
+
+        /**Chave derivada, fora do heap.*/
+        private final ByteBuffer key;
+
+        /**Verificador da senha.*/
+        private final byte[] verifier;
+
+        /**Momento do último uso, em milissegundos.*/
+        private long lastAccess;
+
+
+        Entry(byte[] derivedKey, byte[] verifier) {
+            this.key = ByteBuffer.allocateDirect(derivedKey.length);
+            this.key.put(0, derivedKey);
+            this.verifier = verifier;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+
+        byte[] getKey() {
+            byte[] bytes = new byte[key.capacity()];
+            key.get(0, bytes);
+            return bytes;
+        }
+
+
+        void clear() {
+            for (int i = 0; i < key.capacity(); i++) {
+                key.put(i, (byte) 0);
+            }
+        }
+
+
+    }
+
+
+}
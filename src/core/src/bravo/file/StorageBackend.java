@@ -0,0 +1,162 @@
+package bravo.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Interface de armazenamento das entradas de um arquivo bravo. O
+ * {@link ZipFile} delega a um armazenamento todas as operações sobre o
+ * contêiner em disco, de modo que o formato do contêiner pode ser trocado sem
+ * alterar a encriptação e a tabela de arquivos.
+ *
+ * <br><br>
+ *
+ * Implementações:
+ *
+ * <ul>
+ *
+ * <li>{@link ZipStorage}: arquivo ZIP gravado pelo Zip4j (padrão).</li>
+ *
+ * <li>{@link SegmentStorage}: arquivo de segmentos somente de acréscimo.</li>
+ *
+ * </ul>
+ *
+ * As leituras ({@link #openRange(StorageEntry, long, long)}) podem ser feitas
+ * por várias threads ao mesmo tempo; as gravações são feitas por uma única
+ * thread.
+ *
+ * @since 2.0
+ */
+interface StorageBackend extends AutoCloseable {
+    
+    
+    /**
+     * Iniciar uma gravação em lote. Até a chamada de {@link #commitBatch()}, as
+     * alterações são acumuladas, e o índice das entradas é gravado uma única
+     * vez, no encerramento do lote.
+     * @throws IOException se já houver um lote em andamento.
+     */
+    public void beginBatch() throws IOException;
+    
+    
+    /**
+     * Verificar se há uma gravação em lote em andamento.
+     * @return true, se há um lote em andamento.
+     */
+    public boolean isBatchActive();
+    
+    
+    /**
+     * Encerrar a gravação em lote, gravando o índice das entradas.
+     * @throws IOException
+     */
+    public void commitBatch() throws IOException;
+    
+    
+    /**
+     * Gravar o stream como uma nova entrada. Caso já exista uma entrada com o
+     * mesmo nome, ela é substituída.
+     * @param inputStream stream do conteúdo.
+     * @param name nome da entrada.
+     * @throws IOException
+     */
+    public void putStream(InputStream inputStream, String name) throws IOException;
+    
+    
+    /**
+     * Abrir o stream de leitura de um trecho do conteúdo de uma entrada. Na
+     * leitura do conteúdo inteiro, a integridade da entrada é verificada ao
+     * final da leitura.
+     * @param entry entrada.
+     * @param offset posição inicial do trecho.
+     * @param length número de bytes do trecho.
+     * @return stream de leitura do trecho.
+     * @throws IOException
+     */
+    public InputStream openRange(StorageEntry entry, long offset, long length) throws IOException;
+    
+    
+    /**
+     * Remover a entrada.
+     * @param entry entrada.
+     * @throws IOException
+     */
+    public void delete(StorageEntry entry) throws IOException;
+    
+    
+    /**
+     * Listar as entradas.
+     * @return lista das entradas.
+     * @throws IOException
+     */
+    public List<StorageEntry> list() throws IOException;
+    
+    
+    /**
+     * Obter as entradas indexadas pelo nome.
+     * @return mapa somente leitura das entradas.
+     * @throws IOException
+     */
+    public Map<String, StorageEntry> getEntryMap() throws IOException;
+    
+    
+    /**
+     * Gravar os metadados do contêiner (no ZIP, o comentário do arquivo).
+     * @param metadata metadados.
+     * @throws IOException
+     */
+    public void putMetadata(String metadata) throws IOException;
+    
+    
+    /**
+     * Obter os metadados do contêiner.
+     * @return metadados, ou null se não definidos.
+     * @throws IOException
+     */
+    public String getMetadata() throws IOException;
+    
+    
+    /**
+     * Estimar o número de bytes no arquivo que não pertencem a nenhuma das
+     * entradas mantidas.
+     * @param keep filtro das entradas mantidas.
+     * @return número estimado de bytes sem referência.
+     * @throws IOException
+     */
+    public long getUnreferencedBytes(Predicate<StorageEntry> keep) throws IOException;
+    
+    
+    /**
+     * Compactar o arquivo, copiando as entradas mantidas para um novo arquivo
+     * que então substitui o original. Caso o processo seja abortado ou falhe,
+     * o arquivo original permanece inalterado.
+     * @param keep filtro das entradas mantidas.
+     * @param listeners ouvintes notificados a cada bloco copiado, e que podem
+     * abortar o processo.
+     * @return número de bytes recuperados.
+     * @throws Exception
+     */
+    public long vacuum(Predicate<StorageEntry> keep, CipherListener... listeners) throws Exception;
+    
+    
+    /**
+     * Obter o arquivo do contêiner em disco.
+     * @return arquivo.
+     */
+    public File getFile();
+    
+    
+    /**
+     * Fechar os canais de leitura abertos. Novos canais são abertos na próxima
+     * leitura.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException;
+    
+    
+}
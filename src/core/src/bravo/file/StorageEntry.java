@@ -0,0 +1,27 @@
+package bravo.file;
+
+/**
+ * Entrada gravada em um {@link StorageBackend}. As entradas são imutáveis: uma
+ * entrada substituída é representada por um novo objeto, e o objeto anterior
+ * continua descrevendo os bytes gravados até a próxima compactação.
+ *
+ * @since 2.0
+ */
+interface StorageEntry {
+    
+    
+    /**
+     * Obter o nome da entrada.
+     * @return nome da entrada.
+     */
+    public String getName();
+    
+    
+    /**
+     * Obter o tamanho em bytes do conteúdo da entrada.
+     * @return número de bytes.
+     */
+    public long getSize();
+    
+    
+}
@@ -0,0 +1,18 @@
+package bravo.file;
+
+/**
+ * Formato do contêiner em disco de um arquivo bravo.
+ *
+ * @since 2.0
+ */
+public enum StorageFormat {
+    
+    
+    /**Arquivo ZIP, gravado pela biblioteca Zip4j (formato padrão).*/
+    ZIP,
+    
+    /**Arquivo de segmentos somente de acréscimo, com índice de tamanho fixo.*/
+    SEGMENTS
+    
+    
+}
@@ -0,0 +1,424 @@
+package bravo.file;
+
+import bravo.utils.FileUtils;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.lingala.zip4j.headers.HeaderUtil;
+import net.lingala.zip4j.headers.HeaderWriter;
+import net.lingala.zip4j.io.outputstream.SplitOutputStream;
+import net.lingala.zip4j.io.outputstream.ZipOutputStream;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.Zip4jConfig;
+import net.lingala.zip4j.model.ZipModel;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+/**
+ * Sessão de gravação em lote no arquivo ZIP. Os cabeçalhos do ZIP são lidos
+ * uma única vez na abertura da sessão, as entradas são gravadas em sequência a
+ * partir do início do diretório central, e o diretório central é gravado uma
+ * única vez no encerramento da sessão.
+ *
+ * <br><br>
+ *
+ * Quando uma entrada já existente é substituída ou removida, apenas o seu
+ * cabeçalho é retirado do diretório central; os bytes da entrada anterior
+ * permanecem no arquivo, sem referência, até que o ZIP seja compactado.
+ *
+ * <br><br>
+ *
+ * As entradas da sessão sobrescrevem o diretório central anterior. Para que
+ * uma queda do sistema no meio da sessão não torne o ZIP ilegível, antes da
+ * primeira gravação o diretório central anterior (todos os bytes a partir do
+ * seu início) é copiado para um arquivo de desfazimento
+ * (<code>&lt;arquivo&gt;{@value #UNDO_EXTENSION}</code>), gravado no disco, e
+ * só é excluído depois que as entradas e o novo diretório central foram
+ * gravados no disco. Enquanto o arquivo de desfazimento existir, a sessão não
+ * foi concluída, e {@link #recover(File)} restaura o ZIP ao estado anterior.
+ *
+ * @since 2.0
+ */
+final class ZipAppendSession {
+
+
+    /**Extensão do arquivo de desfazimento da sessão.*/
+    static final String UNDO_EXTENSION = ".undo";
+
+    /**Extensão do arquivo de desfazimento ainda em gravação.*/
+    private static final String UNDO_TEMP_EXTENSION = ".undo.tmp";
+
+    /**Tamanho do buffer de cópia do diretório central.*/
+    private static final int UNDO_BUFFER_SIZE = 64 * 1024;
+
+    /**Arquivo ZIP.*/
+    private final File file;
+
+    /**Arquivo de desfazimento, ou null se o ZIP estava vazio.*/
+    private final File undoFile;
+
+    /**Modelo do ZIP, atualizado a cada entrada gravada.*/
+    private final ZipModel zipModel;
+
+    /**Stream de saída do arquivo ZIP.*/
+    private final SplitOutputStream splitOutputStream;
+
+    /**Stream de saída das entradas do ZIP.*/
+    private final ZipOutputStream zipOutputStream;
+
+    /**Gravador de cabeçalhos do Zip4j.*/
+    private final HeaderWriter headerWriter;
+
+    /**Buffer de cópia das entradas.*/
+    private final byte[] buffer;
+
+    /**Cabeçalhos das entradas indexados pelo nome.*/
+    private final Map<String, FileHeader> fileHeaders;
+
+
+    /**
+     * Abrir uma sessão de gravação em lote.
+     * @param file arquivo ZIP.
+     * @param bufferSize tamanho do buffer de cópia das entradas.
+     * @throws IOException
+     */
+    public ZipAppendSession(File file, int bufferSize) throws IOException {
+
+        Zip4jConfig config = new Zip4jConfig(null, bufferSize, true);
+
+        this.file = file;
+        this.headerWriter = new HeaderWriter();
+        this.buffer = new byte[bufferSize];
+
+        // Uma sessão anterior não concluída é desfeita antes de tudo.
+        recover(file);
+
+        zipModel = ZipStorage.readZipModel(file, bufferSize);
+
+        fileHeaders = new HashMap<>();
+        for (FileHeader fileHeader : zipModel.getCentralDirectory().getFileHeaders()) {
+            fileHeaders.put(fileHeader.getFileName(), fileHeader);
+        }
+
+        long offset = -1;
+
+        if (file.length() > 0) {
+            offset = HeaderUtil.getOffsetStartOfCentralDirectory(zipModel);
+            undoFile = saveUndo(file, offset);
+        } else {
+            undoFile = null;
+        }
+
+        try {
+            splitOutputStream = new TruncatingOutputStream(file);
+        } catch (IOException ex) {
+            deleteUndo();
+            throw ex;
+        }
+
+        try {
+            if (offset >= 0) {
+                splitOutputStream.seek(offset);
+            }
+            zipOutputStream = new ZipOutputStream(splitOutputStream, null, config, zipModel);
+        } catch (IOException ex) {
+            splitOutputStream.close();
+            deleteUndo();
+            throw ex;
+        }
+
+    }
+
+
+    /**
+     * Gravar o stream como uma nova entrada, sem compressão. Caso já exista uma
+     * entrada com o mesmo nome, ela é substituída.
+     * @param inputStream stream do arquivo.
+     * @param fileNameInZip nome interno do arquivo no ZIP.
+     * @return cabeçalho da entrada gravada.
+     * @throws IOException
+     */
+    public FileHeader addStream(InputStream inputStream, String fileNameInZip) throws IOException {
+
+        removeFile(fileNameInZip);
+
+        ZipParameters zipParameters = new ZipParameters();
+        zipParameters.setEncryptionMethod(EncryptionMethod.NONE);
+        zipParameters.setCompressionMethod(CompressionMethod.STORE);
+        zipParameters.setRootFolderNameInZip("");
+        zipParameters.setFileNameInZip(fileNameInZip);
+        // Mesmo procedimento do Zip4j para streams: os tamanhos são gravados
+        // no descritor de dados, e atualizados no cabeçalho local ao final.
+        zipParameters.setWriteExtendedLocalFileHeader(true);
+        zipParameters.setEntrySize(0);
+
+        zipOutputStream.putNextEntry(zipParameters);
+
+        FileHeader fileHeader;
+
+        try {
+
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                zipOutputStream.write(buffer, 0, length);
+            }
+
+        } catch (IOException ex) {
+
+            // A entrada incompleta é fechada e descartada do diretório central.
+            fileHeader = zipOutputStream.closeEntry();
+            zipModel.getCentralDirectory().getFileHeaders().remove(fileHeader);
+            zipModel.getLocalFileHeaders().clear();
+            throw ex;
+
+        }
+
+        fileHeader = zipOutputStream.closeEntry();
+        zipModel.getLocalFileHeaders().clear();
+        fileHeaders.put(fileNameInZip, fileHeader);
+
+        headerWriter.updateLocalFileHeader(fileHeader, zipModel, splitOutputStream);
+
+        return fileHeader;
+
+    }
+
+
+    /**
+     * Remover a entrada do diretório central.
+     * @param fileName nome da entrada.
+     * @return true, se a entrada existia.
+     */
+    public boolean removeFile(String fileName) {
+        FileHeader fileHeader = fileHeaders.remove(fileName);
+        if (fileHeader != null) {
+            zipModel.getCentralDirectory().getFileHeaders().remove(fileHeader);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Obter o cabeçalho da entrada.
+     * @param fileName nome da entrada.
+     * @return cabeçalho da entrada, ou null se não existir.
+     */
+    public FileHeader getFileHeader(String fileName) {
+        return fileHeaders.get(fileName);
+    }
+
+
+    /**
+     * Obter os cabeçalhos de todas as entradas.
+     * @return lista com os cabeçalhos.
+     */
+    public List<FileHeader> getFileHeaders() {
+        return zipModel.getCentralDirectory().getFileHeaders();
+    }
+
+
+    /**
+     * Definir o comentário do ZIP, gravado no encerramento da sessão.
+     * @param comment comentário.
+     */
+    public void setComment(String comment) {
+        zipModel.getEndOfCentralDirectoryRecord().setComment(comment);
+    }
+
+
+    /**
+     * Obter o comentário do ZIP.
+     * @return comentário.
+     */
+    public String getComment() {
+        return zipModel.getEndOfCentralDirectoryRecord().getComment();
+    }
+
+
+    /**
+     * Encerrar a sessão, gravando o diretório central e ajustando o tamanho
+     * do arquivo ZIP. As entradas são forçadas para o disco antes da gravação
+     * do diretório central, e o diretório central antes da exclusão do
+     * arquivo de desfazimento. Em caso de erro, o arquivo de desfazimento é
+     * mantido, e o ZIP é restaurado na próxima leitura.
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        try {
+            FileUtils.force(file, false);
+        } catch (IOException ex) {
+            splitOutputStream.close();
+            throw ex;
+        }
+        zipOutputStream.close();
+        FileUtils.force(file, true);
+        deleteUndo();
+    }
+
+
+    /**
+     * Encerrar a sessão sem gravar o diretório central. O ZIP é restaurado ao
+     * estado anterior à sessão; se estava vazio, fica em estado inválido, e
+     * deve ser descartado.
+     * @throws IOException
+     */
+    public void discard() throws IOException {
+        splitOutputStream.close();
+        recover(file);
+    }
+
+
+    /**
+     * Excluir o arquivo de desfazimento, concluindo a sessão.
+     * @throws IOException
+     */
+    private void deleteUndo() throws IOException {
+        if (undoFile != null) {
+            Files.deleteIfExists(undoFile.toPath());
+            FileUtils.syncDirectory(undoFile);
+        }
+    }
+
+
+    /**
+     * Copiar o diretório central anterior para o arquivo de desfazimento. O
+     * arquivo contém a posição do diretório central, seguida dos bytes do ZIP
+     * a partir desta posição, e é gravado com outro nome e renomeado apenas
+     * depois de forçado para o disco, de modo que um arquivo de desfazimento
+     * existente esteja sempre completo.
+     * @param file arquivo ZIP.
+     * @param offset posição do diretório central.
+     * @return arquivo de desfazimento.
+     * @throws IOException
+     */
+    private static File saveUndo(File file, long offset) throws IOException {
+
+        File undoFile = new File(file.getAbsolutePath() + UNDO_EXTENSION);
+        File tempFile = new File(file.getAbsolutePath() + UNDO_TEMP_EXTENSION);
+
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        FileChannel target = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(0, offset);
+            while (header.hasRemaining()) {
+                target.write(header);
+            }
+
+            long length = source.size() - offset;
+            long position = 0;
+            while (position < length) {
+                position += source.transferTo(offset + position, length - position, target);
+            }
+
+            target.force(true);
+
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), undoFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile.toPath(), undoFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        FileUtils.syncDirectory(undoFile);
+
+        return undoFile;
+
+    }
+
+
+    /**
+     * Restaurar o ZIP ao estado anterior a uma sessão não concluída, caso
+     * exista o seu arquivo de desfazimento: os bytes gravados pela sessão são
+     * descartados, e o diretório central anterior é gravado de volta na sua
+     * posição original.
+     * @param file arquivo ZIP.
+     * @return true, se o ZIP foi restaurado.
+     * @throws IOException
+     */
+    public static boolean recover(File file) throws IOException {
+
+        Files.deleteIfExists(new File(file.getAbsolutePath() + UNDO_TEMP_EXTENSION).toPath());
+
+        File undoFile = new File(file.getAbsolutePath() + UNDO_EXTENSION);
+
+        if (!undoFile.exists()) {
+            return false;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(Files.newInputStream(undoFile.toPath()));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+
+            long offset = inputStream.readLong();
+
+            randomAccessFile.setLength(offset);
+            randomAccessFile.seek(offset);
+
+            byte[] buffer = new byte[UNDO_BUFFER_SIZE];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                randomAccessFile.write(buffer, 0, length);
+            }
+
+            randomAccessFile.getChannel().force(true);
+
+        }
+
+        Files.delete(undoFile.toPath());
+        FileUtils.syncDirectory(undoFile);
+
+        return true;
+
+    }
+
+
+    /**
+     * Stream de saída do arquivo ZIP que descarta, no fechamento, os bytes
+     * remanescentes após o diretório central.
+     */
+    private static final class TruncatingOutputStream extends SplitOutputStream {
+
+
+        private final File file;
+
+
+        public TruncatingOutputStream(File file) throws IOException {
+            super(file);
+            this.file = file;
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            long length = getFilePointer();
+            super.close();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                if (randomAccessFile.length() > length) {
+                    randomAccessFile.setLength(length);
+                }
+            }
+        }
+
+
+    }
+
+
+}
@@ -4,26 +4,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.io.inputstream.ZipInputStream;
-import net.lingala.zip4j.model.FileHeader;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.model.enums.CompressionMethod;
-import net.lingala.zip4j.model.enums.EncryptionMethod;
 import static net.lingala.zip4j.util.InternalZipConstants.ZIP_FILE_SEPARATOR;
 
 /**
- * Classe para ler e gravar dados em um arquivo no formaro ZIP. A classe se utiliza
- * da biblioteca Zip4j de autoria de Srikanth Reddy Lingala, disponível em
- * <a href="https://github.com/srikanth-lingala/zip4j">https://github.com/srikanth-lingala/zip4j</a>
- * para ralizar estas operações.
+ * Classe para ler e gravar as entradas do contêiner em disco de um arquivo
+ * bravo. As operações são delegadas a um {@link StorageBackend}: por padrão,
+ * um arquivo ZIP gravado pela biblioteca Zip4j ({@link ZipStorage}), ou um
+ * arquivo de segmentos somente de acréscimo ({@link SegmentStorage}).
  * 
  * <br><br>
  * 
- * A opção pela biblioteca foi pela praticidade oferecida para gerenciamento do
- * arquivo ZIP oferecida pela mesma, porém, em momento algum se utiliza a função
- * de criptografia interna à esta biblioteca, optando para isso pela biblioteca
- * BouncyCastle disponível em  <a href="https://www.bouncycastle.org/">https://www.bouncycastle.org/</a>.
+ * Na abertura de um arquivo existente, o formato é identificado pelos
+ * primeiros bytes do arquivo.
  * 
  * @since 2.0
  */
@@ -33,108 +28,216 @@ class ZipFile {
     /**Separador interno de arquivos e pastas. Segue a convenção do pacote Zip4j.*/
     public static final String FILE_SEPARATOR = ZIP_FILE_SEPARATOR;
     
-    /**Classe para manutenção de arquivos em formato ZIP.*/
-    private final net.lingala.zip4j.ZipFile zipFile;
+    /**Armazenamento das entradas.*/
+    private final StorageBackend storage;
     
-    /**Arquivo ZIP em disco.*/
+    /**Formato do armazenamento.*/
+    private final StorageFormat storageFormat;
+    
+    /**Arquivo em disco.*/
     protected File file;
 
     
     /**
-     * Constructor padrão.
-     * @param file arquivo ZIP.
+     * Constructor padrão. O formato de um arquivo existente é identificado
+     * pelos seus primeiros bytes; um arquivo novo é criado no formato ZIP.
+     * @param file arquivo em disco.
+     * @throws IOException 
+     */
+    public ZipFile(File file) throws IOException {
+        this(file, SegmentStorage.isSegmentFile(file) ? StorageFormat.SEGMENTS : StorageFormat.ZIP);
+    }
+    
+    
+    /**
+     * Constructor da classe.
+     * @param file arquivo em disco.
+     * @param storageFormat formato do armazenamento.
+     * @throws IOException 
      */
-    public ZipFile(File file) {
+    public ZipFile(File file, StorageFormat storageFormat) throws IOException {
         this.file = file;
-        zipFile = new net.lingala.zip4j.ZipFile(file);
-        zipFile.setBufferSize(4096);
+        this.storageFormat = storageFormat;
+        this.storage = switch (storageFormat) {
+            case ZIP -> new ZipStorage(file);
+            case SEGMENTS -> new SegmentStorage(file);
+        };
     }
     
     
     /**
-     * Gravar o stream do arquivo no ZIP. No caso, não haverá compressão dos 
-     * arquivos inseridos, pois esta stream contém bytes criptografados, portanto,
-     * sem nenhum padrão repetitivo que permita a compactação.
+     * Iniciar uma sessão de gravação em lote. Até a chamada de {@link #commitBatch()},
+     * as entradas gravadas com {@link #addStream(InputStream, String)} são
+     * anexadas em sequência, e o índice das entradas é gravado uma única vez,
+     * no encerramento da sessão. Entradas substituídas ou removidas durante a
+     * sessão deixam de ser referenciadas, sem a cópia do restante do arquivo.
+     * @throws IOException 
+     */
+    protected void beginBatch() throws IOException {
+        storage.beginBatch();
+    }
+    
+    
+    /**
+     * Verificar se há uma sessão de gravação em lote em andamento.
+     * @return true, se há uma sessão em andamento.
+     */
+    protected boolean isBatchActive() {
+        return storage.isBatchActive();
+    }
+    
+    
+    /**
+     * Encerrar a sessão de gravação em lote, gravando o índice das entradas.
+     * @throws IOException 
+     */
+    protected void commitBatch() throws IOException {
+        storage.commitBatch();
+    }
+    
+    
+    /**
+     * Gravar o stream do arquivo no contêiner. No caso, não haverá compressão
+     * dos arquivos inseridos, pois esta stream contém bytes criptografados,
+     * portanto, sem nenhum padrão repetitivo que permita a compactação.
      * @param inputStream stream do arquivo.
-     * @param fileNameInZip nome interno do arquivo no ZIP.
-     * @throws ZipException 
+     * @param fileNameInZip nome interno do arquivo.
+     * @throws IOException 
      */
-    protected void addStream(InputStream inputStream, String fileNameInZip) throws ZipException {
-        ZipParameters zipParameters = new ZipParameters();
-        zipParameters.setEncryptionMethod(EncryptionMethod.NONE);     
-        zipParameters.setCompressionMethod(CompressionMethod.STORE);
-        zipParameters.setRootFolderNameInZip("");
-        zipParameters.setOverrideExistingFilesInZip(true);
-        zipParameters.setFileNameInZip(fileNameInZip);
-        zipFile.addStream(inputStream, zipParameters);
+    protected void addStream(InputStream inputStream, String fileNameInZip) throws IOException {
+        storage.putStream(inputStream, fileNameInZip);
     }
     
     
     /**
-     * Obter o stream de entrada do arquivo no ZIP.
-     * @param fileHeader cabeçalho do arquivo.
-     * @return stream de entrada do arquivo no ZIP.
+     * Obter o stream de entrada do arquivo no contêiner. A integridade da
+     * entrada é verificada ao final da leitura. Os streams podem ser abertos e
+     * lidos por várias threads ao mesmo tempo.
+     * @param fileHeader entrada do arquivo.
+     * @return stream de entrada do arquivo.
      * @throws IOException 
      */
-    protected ZipInputStream getInputStream(FileHeader fileHeader) throws IOException {
-        return zipFile.getInputStream(fileHeader);
+    protected InputStream getInputStream(StorageEntry fileHeader) throws IOException {
+        if (fileHeader == null) {
+            throw new ZipException("Cabeçalho do arquivo inexistente.");
+        }
+        return storage.openRange(fileHeader, 0, fileHeader.getSize());
     }
     
     
     /**
-     * Remover o arquivo do ZIP.
-     * @param fileHeader cabeçalho do arquivo.
-     * @throws ZipException 
+     * Fechar os canais de leitura das entradas, caso estejam abertos. Novos
+     * canais são abertos na próxima leitura.
+     * @throws IOException 
      */
-    protected void deleteFile(FileHeader fileHeader) throws ZipException {
-        zipFile.removeFile(fileHeader);
+    protected void closeDataChannel() throws IOException {
+        storage.close();
     }
     
     
     /**
-     * Obter os cabeçalhos de todos os arquivos no ZIP.
-     * @return lista com os cabeçalhos de todos os arquivos no ZIP.
-     * @throws ZipException 
+     * Remover o arquivo do contêiner.
+     * @param fileHeader entrada do arquivo.
+     * @throws IOException 
      */
-    protected List<FileHeader> getFileHeaders() throws ZipException {
-        return zipFile.getFileHeaders();
+    protected void deleteFile(StorageEntry fileHeader) throws IOException {
+        storage.delete(fileHeader);
     }
     
     
     /**
-     * Obter o cabeçalho do arquivo no ZIP.
+     * Obter as entradas de todos os arquivos no contêiner.
+     * @return lista com as entradas de todos os arquivos.
+     * @throws IOException 
+     */
+    protected List<StorageEntry> getFileHeaders() throws IOException {
+        return storage.list();
+    }
+    
+    
+    /**
+     * Obter as entradas de todos os arquivos no contêiner indexadas pelo nome.
+     * O mapa é mantido até a próxima alteração do contêiner.
+     * @return mapa somente leitura das entradas.
+     * @throws IOException 
+     */
+    protected Map<String, StorageEntry> getFileHeaderMap() throws IOException {
+        return storage.getEntryMap();
+    }
+    
+    
+    /**
+     * Obter a entrada do arquivo no contêiner. A consulta é feita no mapa das
+     * entradas, sem percorrer o índice.
      * @param fileName nome do arquivo.
-     * @return cabeçalho do arquivo no ZIP.
-     * @throws ZipException 
+     * @return entrada do arquivo, ou null se não existir.
+     * @throws IOException 
      */
-    protected FileHeader getFileHeader(String fileName) throws ZipException {
-        return zipFile.getFileHeader(fileName);
+    protected StorageEntry getFileHeader(String fileName) throws IOException {
+        return storage.getEntryMap().get(fileName);
     }
     
     
     /**
-     * Gravar o comentário do arquivo ZIP.
+     * Gravar o comentário do contêiner.
      * @param comment
-     * @throws ZipException 
+     * @throws Exception 
      */
     protected void setComment(String comment) throws Exception {
-        zipFile.setComment(comment);
+        storage.putMetadata(comment);
     }
     
     
     /**
-     * Obter o comentário do arquivo ZIP.
-     * @return comentário do arquivo ZIP.
-     * @throws ZipException 
+     * Obter o comentário do contêiner.
+     * @return comentário.
+     * @throws Exception 
      */
     protected String getComment() throws Exception {
-        return zipFile.getComment();
+        return storage.getMetadata();
+    }
+    
+    
+    /**
+     * Estimar o número de bytes no arquivo que não pertencem a nenhuma das
+     * entradas mantidas.
+     * @param keep filtro das entradas mantidas.
+     * @return número estimado de bytes sem referência.
+     * @throws IOException 
+     */
+    protected long getUnreferencedBytes(Predicate<StorageEntry> keep) throws IOException {
+        return storage.getUnreferencedBytes(keep);
+    }
+    
+    
+    /**
+     * Compactar o arquivo. As entradas mantidas são copiadas, em uma única
+     * passagem sequencial e sem decriptação, para um novo arquivo, que então
+     * substitui o original. Caso o processo seja abortado ou falhe, o arquivo
+     * original permanece inalterado.
+     * @param keep filtro das entradas mantidas.
+     * @param listeners ouvintes notificados a cada bloco copiado, e que podem
+     * abortar o processo.
+     * @return número de bytes recuperados.
+     * @throws Exception 
+     */
+    protected long vacuum(Predicate<StorageEntry> keep, CipherListener... listeners) throws Exception {
+        return storage.vacuum(keep, listeners);
+    }
+    
+    
+    /**
+     * Obter o formato do contêiner em disco.
+     * @return formato do armazenamento.
+     */
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
     }
     
     
     /**
-     * Obter o arquivo ZIP.
-     * @return arquivo ZIP.
+     * Obter o arquivo em disco.
+     * @return arquivo em disco.
      */
     public File getFile() {
         return file;
@@ -0,0 +1,700 @@
+package bravo.file;
+
+import bravo.utils.FileUtils;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.headers.HeaderReader;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.Zip4jConfig;
+import net.lingala.zip4j.model.ZipModel;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+import net.lingala.zip4j.util.UnzipUtil;
+
+/**
+ * Armazenamento das entradas em um arquivo no formato ZIP (formato padrão). A
+ * classe se utiliza da biblioteca Zip4j de autoria de Srikanth Reddy Lingala,
+ * disponível em
+ * <a href="https://github.com/srikanth-lingala/zip4j">https://github.com/srikanth-lingala/zip4j</a>
+ * para ralizar estas operações.
+ * 
+ * <br><br>
+ * 
+ * A opção pela biblioteca foi pela praticidade oferecida para gerenciamento do
+ * arquivo ZIP oferecida pela mesma, porém, em momento algum se utiliza a função
+ * de criptografia interna à esta biblioteca, optando para isso pela biblioteca
+ * BouncyCastle disponível em  <a href="https://www.bouncycastle.org/">https://www.bouncycastle.org/</a>.
+ * 
+ * @since 2.0
+ */
+final class ZipStorage implements StorageBackend {
+    
+    
+    /**Tamanho do buffer de leitura/gravação.*/
+    private static final int BUFFER_SIZE = 4096;
+    
+    /**Tamanho do buffer de leitura dos cabeçalhos do ZIP.*/
+    private static final int HEADER_BUFFER_SIZE = 64 * 1024;
+    
+    /**Tamanho do buffer de leitura das entradas lidas diretamente do arquivo.*/
+    private static final int DATA_BUFFER_SIZE = 64 * 1024;
+    
+    /**Tamanho fixo do cabeçalho local de uma entrada.*/
+    private static final int LOCAL_FILE_HEADER_LENGTH = 30;
+    
+    /**Tamanho do descritor de dados de uma entrada.*/
+    private static final int DATA_DESCRIPTOR_LENGTH = 16;
+    
+    /**Tamanho do descritor de dados de uma entrada no formato ZIP64.*/
+    private static final int ZIP64_DATA_DESCRIPTOR_LENGTH = 24;
+    
+    /**Arquivo ZIP em disco.*/
+    private final File file;
+    
+    /**Classe para manutenção de arquivos em formato ZIP.*/
+    private net.lingala.zip4j.ZipFile zipFile;
+    
+    /**Sessão de gravação em lote ativa, ou null.*/
+    private ZipAppendSession appendSession;
+    
+    /**Cabeçalhos do ZIP usados nas leituras, ou null se ainda não lidos.*/
+    private ZipModel zipModel;
+    
+    /**Entradas indexadas pelo nome, ou null se ainda não lidas.*/
+    private Map<String, StorageEntry> entryMap;
+    
+    /**Leitor das entradas, ou null se ainda não aberto.*/
+    private PositionalReader reader;
+
+    
+    /**
+     * Constructor padrão.
+     * @param file arquivo ZIP.
+     */
+    public ZipStorage(File file) {
+        this.file = file;
+        zipFile = new net.lingala.zip4j.ZipFile(file);
+        zipFile.setBufferSize(BUFFER_SIZE);
+    }
+    
+    
+    /**
+     * Iniciar uma sessão de gravação em lote. Até a chamada de {@link #commitBatch()},
+     * as entradas gravadas com {@link #putStream(InputStream, String)} são
+     * anexadas em sequência, e o diretório central do ZIP é gravado uma única
+     * vez, no encerramento da sessão. Entradas substituídas ou removidas
+     * durante a sessão deixam de ser referenciadas, sem a cópia do restante do
+     * arquivo.
+     * @throws IOException 
+     */
+    @Override
+    public void beginBatch() throws IOException {
+        if (appendSession != null) {
+            throw new ZipException("Já existe uma gravação em lote em andamento.");
+        }
+        // Os cabeçalhos são carregados antes que o diretório central seja
+        // sobrescrito, permitindo a leitura das entradas durante a sessão. O
+        // mapa das entradas passa a ser atualizado pela própria sessão.
+        getEntryMap();
+        entryMap = new HashMap<>(entryMap);
+        appendSession = new ZipAppendSession(file, BUFFER_SIZE);
+    }
+    
+    
+    @Override
+    public boolean isBatchActive() {
+        return appendSession != null;
+    }
+    
+    
+    /**
+     * Encerrar a sessão de gravação em lote, gravando o diretório central.
+     * @throws IOException 
+     */
+    @Override
+    public void commitBatch() throws IOException {
+        if (appendSession != null) {
+            try {
+                appendSession.commit();
+            } finally {
+                appendSession = null;
+                // Os cabeçalhos em cache no Zip4j não refletem mais o arquivo.
+                resetZipFile();
+            }
+        }
+    }
+    
+    
+    /**
+     * Gravar o stream do arquivo no ZIP. No caso, não haverá compressão dos 
+     * arquivos inseridos, pois esta stream contém bytes criptografados, portanto,
+     * sem nenhum padrão repetitivo que permita a compactação.
+     * @param inputStream stream do arquivo.
+     * @param name nome interno do arquivo no ZIP.
+     * @throws IOException 
+     */
+    @Override
+    public void putStream(InputStream inputStream, String name) throws IOException {
+        if (appendSession != null) {
+            entryMap.put(name, new Entry(appendSession.addStream(inputStream, name)));
+            return;
+        }
+        recover();
+        ZipParameters zipParameters = new ZipParameters();
+        zipParameters.setEncryptionMethod(EncryptionMethod.NONE);     
+        zipParameters.setCompressionMethod(CompressionMethod.STORE);
+        zipParameters.setRootFolderNameInZip("");
+        zipParameters.setOverrideExistingFilesInZip(true);
+        zipParameters.setFileNameInZip(name);
+        try {
+            zipFile.addStream(inputStream, zipParameters);
+        } finally {
+            resetZipModel();
+        }
+    }
+    
+    
+    /**
+     * Obter o stream de entrada de um trecho do arquivo no ZIP.
+     * 
+     * <br><br>
+     * 
+     * As entradas gravadas por esta classe não são comprimidas (STORE), de
+     * modo que os seus bytes ocupam um único trecho contínuo do arquivo. Para
+     * estas entradas, a posição dos dados é obtida uma única vez do cabeçalho
+     * local, e os bytes são lidos diretamente do arquivo por um
+     * {@link PositionalReader}, sem passar pelos streams do Zip4j. Na leitura
+     * da entrada inteira, o CRC é verificado ao final, como no Zip4j. As
+     * demais entradas são lidas pelo Zip4j, e apenas por inteiro.
+     * @param entry entrada do ZIP.
+     * @param offset posição inicial do trecho.
+     * @param length número de bytes do trecho.
+     * @return stream de entrada do trecho.
+     * @throws IOException 
+     */
+    @Override
+    public InputStream openRange(StorageEntry entry, long offset, long length) throws IOException {
+        
+        Entry zipEntry = getEntry(entry);
+        FileHeader fileHeader = zipEntry.fileHeader;
+        
+        if (offset < 0 || length < 0 || offset + length > entry.getSize()) {
+            throw new ZipException("Trecho inválido da entrada: " + entry.getName());
+        }
+        
+        boolean whole = (offset == 0 && length == entry.getSize());
+        
+        if (fileHeader.getCompressionMethod() == CompressionMethod.STORE && 
+        !fileHeader.isEncrypted()) {
+            return new BufferedInputStream(
+                getReader().open(
+                    getDataOffset(zipEntry) + offset,
+                    length,
+                    (whole ? fileHeader.getCrc() : -1)
+                ),
+                DATA_BUFFER_SIZE
+            );
+        }
+        
+        if (!whole) {
+            throw new ZipException("Leitura parcial não suportada para entradas comprimidas.");
+        }
+        
+        return UnzipUtil.createZipInputStream(getZipModel(), fileHeader, null);
+        
+    }
+    
+    
+    /**
+     * Obter a posição no arquivo dos dados de uma entrada armazenada, lida do
+     * cabeçalho local na primeira leitura. O tamanho do campo extra do
+     * cabeçalho local pode diferir do informado no diretório central.
+     * @param entry entrada do ZIP.
+     * @return posição dos dados.
+     * @throws IOException 
+     */
+    private long getDataOffset(Entry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if (dataOffset < 0) {
+            long offset = entry.fileHeader.getOffsetLocalHeader();
+            ByteBuffer lengths = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            getReader().readFully(lengths, offset + LOCAL_FILE_HEADER_LENGTH - 4);
+            int fileNameLength = Short.toUnsignedInt(lengths.getShort(0));
+            int extraFieldLength = Short.toUnsignedInt(lengths.getShort(2));
+            dataOffset = offset + LOCAL_FILE_HEADER_LENGTH + fileNameLength + extraFieldLength;
+            entry.dataOffset = dataOffset;
+        }
+        return dataOffset;
+    }
+    
+    
+    /**
+     * Obter o leitor das entradas, criando-o caso ainda não exista. O leitor
+     * é seguro para o uso por várias threads ao mesmo tempo, de modo que
+     * várias entradas podem ser lidas concorrentemente.
+     * @return leitor das entradas do ZIP.
+     */
+    private synchronized PositionalReader getReader() {
+        if (reader == null) {
+            reader = new PositionalReader(file);
+        }
+        return reader;
+    }
+    
+    
+    /**
+     * Fechar o leitor das entradas, caso esteja aberto. Um novo leitor é
+     * criado na próxima leitura.
+     * @throws IOException 
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null) {
+            try {
+                reader.close();
+            } finally {
+                reader = null;
+            }
+        }
+    }
+    
+    
+    /**
+     * Remover o arquivo do ZIP.
+     * @param entry entrada do ZIP.
+     * @throws IOException 
+     */
+    @Override
+    public void delete(StorageEntry entry) throws IOException {
+        if (appendSession != null) {
+            appendSession.removeFile(entry.getName());
+            entryMap.remove(entry.getName());
+            return;
+        }
+        recover();
+        try {
+            zipFile.removeFile(getEntry(entry).fileHeader);
+        } finally {
+            resetZipModel();
+        }
+    }
+    
+    
+    @Override
+    public List<StorageEntry> list() throws IOException {
+        return new ArrayList<>(getEntryMap().values());
+    }
+    
+    
+    /**
+     * Obter as entradas do ZIP indexadas pelo nome. O mapa é montado em uma
+     * única passagem pelo diretório central, e mantido até a próxima
+     * alteração do ZIP.
+     * @return mapa somente leitura das entradas.
+     * @throws IOException 
+     */
+    @Override
+    public Map<String, StorageEntry> getEntryMap() throws IOException {
+        if (entryMap == null) {
+            List<FileHeader> fileHeaders = getZipModel().getCentralDirectory().getFileHeaders();
+            Map<String, StorageEntry> map = new HashMap<>(fileHeaders.size() * 4 / 3 + 1);
+            for (FileHeader fileHeader : fileHeaders) {
+                map.put(fileHeader.getFileName(), new Entry(fileHeader));
+            }
+            entryMap = map;
+        }
+        return Collections.unmodifiableMap(entryMap);
+    }
+    
+    
+    /**
+     * Gravar o comentário do arquivo ZIP.
+     * @param metadata comentário.
+     * @throws IOException 
+     */
+    @Override
+    public void putMetadata(String metadata) throws IOException {
+        if (appendSession != null) {
+            appendSession.setComment(metadata);
+            return;
+        }
+        recover();
+        try {
+            zipFile.setComment(metadata);
+        } finally {
+            resetZipModel();
+        }
+    }
+    
+    
+    /**
+     * Obter o comentário do arquivo ZIP.
+     * @return comentário do arquivo ZIP.
+     * @throws IOException 
+     */
+    @Override
+    public String getMetadata() throws IOException {
+        if (appendSession != null) {
+            return appendSession.getComment();
+        }
+        return getZipModel().getEndOfCentralDirectoryRecord().getComment();
+    }
+    
+    
+    /**
+     * Obter o número de bytes ocupados no arquivo por uma entrada, incluindo
+     * o cabeçalho local e o descritor de dados.
+     * @param fileHeader cabeçalho da entrada.
+     * @return número de bytes ocupados pela entrada.
+     */
+    private static long getEntryLength(FileHeader fileHeader) {
+        long length = LOCAL_FILE_HEADER_LENGTH + fileHeader.getFileNameLength() +
+        fileHeader.getExtraFieldLength() + fileHeader.getCompressedSize();
+        if (fileHeader.isDataDescriptorExists()) {
+            length += (fileHeader.getZip64ExtendedInfo() != null ? ZIP64_DATA_DESCRIPTOR_LENGTH :
+            DATA_DESCRIPTOR_LENGTH);
+        }
+        return length;
+    }
+    
+    
+    /**
+     * Estimar o número de bytes no arquivo que não pertencem a nenhuma das
+     * entradas mantidas: entradas descartadas pelo filtro, e bytes de entradas
+     * substituídas ou removidas em gravações em lote.
+     * @param keep filtro das entradas mantidas.
+     * @return número estimado de bytes sem referência.
+     * @throws IOException 
+     */
+    @Override
+    public long getUnreferencedBytes(Predicate<StorageEntry> keep) throws IOException {
+        long end = 0;
+        long referenced = 0;
+        for (StorageEntry entry : getEntryMap().values()) {
+            FileHeader fileHeader = getEntry(entry).fileHeader;
+            long length = getEntryLength(fileHeader);
+            end = Math.max(end, fileHeader.getOffsetLocalHeader() + length);
+            if (keep.test(entry)) {
+                referenced += length;
+            }
+        }
+        return end - referenced;
+    }
+    
+    
+    /**
+     * Compactar o arquivo ZIP. As entradas mantidas são copiadas, em uma
+     * única passagem sequencial e sem decriptação, para um novo arquivo, que
+     * então substitui o original. Entradas descartadas pelo filtro e bytes sem
+     * referência não são copiados. Caso o processo seja abortado ou falhe, o
+     * arquivo original permanece inalterado. O novo arquivo é forçado para o
+     * disco antes de substituir o original, e a pasta logo após.
+     * @param keep filtro das entradas mantidas.
+     * @param listeners ouvintes notificados a cada bloco copiado, e que podem
+     * abortar o processo.
+     * @return número de bytes recuperados.
+     * @throws Exception 
+     */
+    @Override
+    public long vacuum(Predicate<StorageEntry> keep, CipherListener... listeners) throws Exception {
+        
+        if (appendSession != null) {
+            throw new ZipException("Há uma gravação em lote em andamento.");
+        }
+        
+        List<Entry> entries = new ArrayList<>();
+        for (StorageEntry entry : getEntryMap().values()) {
+            if (keep.test(entry)) {
+                entries.add(getEntry(entry));
+            }
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry.fileHeader.getOffsetLocalHeader()));
+        
+        String comment = getZipModel().getEndOfCentralDirectoryRecord().getComment();
+        
+        File tempFile = new File(file.getAbsolutePath() + ".vacuum");
+        Files.deleteIfExists(tempFile.toPath());
+        
+        ZipAppendSession session = new ZipAppendSession(tempFile, BUFFER_SIZE);
+        
+        try {
+            
+            for (Entry entry : entries) {
+                session.addStream(
+                    getReader().open(getDataOffset(entry), entry.getSize(), -1, listeners),
+                    entry.getName()
+                );
+            }
+            
+            session.setComment(comment);
+            session.commit();
+            
+        } catch (Exception ex) {
+            
+            session.discard();
+            Files.deleteIfExists(tempFile.toPath());
+            throw ex;
+            
+        }
+        
+        long reclaimed = file.length() - tempFile.length();
+        
+        // O arquivo não pode ser substituído com um canal aberto no Windows.
+        close();
+        
+        FileUtils.replace(tempFile, file);
+        
+        resetZipFile();
+        
+        return reclaimed;
+        
+    }
+    
+    
+    /**
+     * Obter os cabeçalhos do ZIP usados nas leituras, lendo-os do arquivo caso
+     * ainda não tenham sido lidos.
+     * @return modelo do ZIP.
+     * @throws ZipException 
+     */
+    private ZipModel getZipModel() throws ZipException {
+        if (zipModel == null) {
+            try {
+                recover();
+                zipModel = readZipModel(file, BUFFER_SIZE);
+            } catch (ZipException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                throw new ZipException(ex);
+            }
+        }
+        return zipModel;
+    }
+    
+    
+    /**
+     * Restaurar o ZIP caso uma gravação em lote anterior não tenha sido
+     * concluída, por exemplo, por uma queda do sistema. Durante a sessão
+     * ativa desta instância, nada é feito.
+     * @throws IOException 
+     */
+    private void recover() throws IOException {
+        if (appendSession == null && ZipAppendSession.recover(file)) {
+            resetZipFile();
+        }
+    }
+    
+    
+    /**
+     * Ler os cabeçalhos de um arquivo ZIP em uma única passagem. O Zip4j lê
+     * cada campo do diretório central diretamente do arquivo; aqui a leitura
+     * passa por um buffer, de modo que o número de acessos ao disco é
+     * proporcional ao tamanho do diretório central, e não ao número de campos.
+     * @param file arquivo ZIP.
+     * @param bufferSize tamanho do buffer de leitura/gravação do Zip4j.
+     * @return modelo do ZIP, vazio se o arquivo não existir.
+     * @throws IOException 
+     */
+    static ZipModel readZipModel(File file, int bufferSize) throws IOException {
+        ZipModel model;
+        if (file.exists() && file.length() > 0) {
+            try (RandomAccessFile randomAccessFile = new BufferedRandomAccessFile(file,
+            HEADER_BUFFER_SIZE)) {
+                model = new HeaderReader().readAllHeaders(
+                    randomAccessFile,
+                    new Zip4jConfig(null, bufferSize, true)
+                );
+            }
+        } else {
+            model = new ZipModel();
+        }
+        model.setZipFile(file);
+        return model;
+    }
+    
+    
+    /**
+     * Descartar os cabeçalhos em cache, após uma alteração do ZIP.
+     */
+    private void resetZipModel() {
+        zipModel = null;
+        entryMap = null;
+    }
+    
+    
+    /**
+     * Descartar os cabeçalhos em cache, após a regravação do ZIP fora do Zip4j.
+     */
+    private void resetZipFile() {
+        zipFile = new net.lingala.zip4j.ZipFile(file);
+        zipFile.setBufferSize(BUFFER_SIZE);
+        resetZipModel();
+    }
+    
+    
+    /**
+     * Obter a entrada do ZIP correspondente a uma entrada do armazenamento.
+     * @param entry entrada do armazenamento.
+     * @return entrada do ZIP.
+     */
+    private static Entry getEntry(StorageEntry entry) {
+        if (entry instanceof Entry zipEntry) {
+            return zipEntry;
+        }
+        throw new IllegalArgumentException("Entrada de outro armazenamento: " + entry.getName());
+    }
+    
+    
+    @Override
+    public File getFile() {
+        return file;
+    }
+    
+    
+    /**
+     * Entrada do ZIP, associada ao seu cabeçalho no diretório central.
+     */
+    private static final class Entry implements StorageEntry {
+        
+        
+        private final FileHeader fileHeader;
+        
+        /**Posição dos dados no arquivo, ou -1 se ainda não lida.*/
+        private volatile long dataOffset = -1;
+        
+        
+        Entry(FileHeader fileHeader) {
+            this.fileHeader = fileHeader;
+        }
+        
+        
+        @Override
+        public String getName() {
+            return fileHeader.getFileName();
+        }
+        
+        
+        @Override
+        public long getSize() {
+            return fileHeader.getCompressedSize();
+        }
+        
+        
+    }
+    
+    
+    /**
+     * Arquivo de acesso aleatório somente leitura com buffer, usado na leitura
+     * dos cabeçalhos do ZIP pelo Zip4j, que lê os campos um a um.
+     */
+    private static final class BufferedRandomAccessFile extends RandomAccessFile {
+        
+        
+        private final byte[] buffer;
+        
+        /**Posição no arquivo do início do buffer.*/
+        private long bufferPosition;
+        
+        /**Número de bytes válidos no buffer.*/
+        private int bufferLength;
+        
+        /**Posição de leitura no arquivo.*/
+        private long position;
+        
+        
+        public BufferedRandomAccessFile(File file, int bufferSize) throws FileNotFoundException {
+            super(file, "r");
+            buffer = new byte[bufferSize];
+        }
+        
+        
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return buffer[(int) (position++ - bufferPosition)] & 0xFF;
+        }
+        
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int offset = (int) (position - bufferPosition);
+            int length = Math.min(len, bufferLength - offset);
+            System.arraycopy(buffer, offset, b, off, length);
+            position += length;
+            return length;
+        }
+        
+        
+        @Override
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+        
+        
+        @Override
+        public void seek(long pos) throws IOException {
+            if (pos < 0) {
+                throw new IOException("Posição inválida: " + pos);
+            }
+            position = pos;
+        }
+        
+        
+        @Override
+        public long getFilePointer() {
+            return position;
+        }
+        
+        
+        /**
+         * Carregar no buffer o trecho do arquivo que contém a posição de
+         * leitura, caso ainda não esteja carregado.
+         * @return false, se a posição está no final do arquivo.
+         */
+        private boolean fill() throws IOException {
+            
+            if (position >= bufferPosition && position < bufferPosition + bufferLength) {
+                return true;
+            }
+            
+            // Na busca do registro final do diretório central, o Zip4j
+            // percorre o arquivo de trás para frente; nesse caso, o buffer
+            // termina na posição de leitura.
+            long start = position;
+            if (position < bufferPosition && bufferPosition - position <= buffer.length) {
+                start = Math.max(0, position - buffer.length + 1);
+            }
+            
+            super.seek(start);
+            int length = super.read(buffer, 0, buffer.length);
+            
+            bufferPosition = start;
+            bufferLength = Math.max(length, 0);
+            
+            return position < bufferPosition + bufferLength;
+            
+        }
+        
+        
+    }
+    
+    
+}
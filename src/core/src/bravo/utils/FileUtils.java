@@ -0,0 +1,74 @@
+package bravo.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Classe para a gravação durável de arquivos em disco.
+ *
+ * @since 2.0
+ */
+public class FileUtils {
+
+
+    /**
+     * Forçar a gravação no dispositivo dos bytes do arquivo que ainda estão no
+     * cache do sistema operacional.
+     * @param file arquivo.
+     * @param metaData se true, também são forçados os metadados do arquivo,
+     * como o seu tamanho.
+     * @throws IOException
+     */
+    public static void force(File file, boolean metaData) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(metaData);
+        }
+    }
+
+
+    /**
+     * Forçar a gravação no dispositivo da pasta que contém o arquivo, de modo
+     * que a criação, a exclusão ou a renomeação do arquivo sobreviva a uma
+     * queda do sistema. Nem todos os sistemas permitem abrir uma pasta (o
+     * Windows, por exemplo, não permite); nesse caso, nada é feito.
+     * @param file arquivo.
+     */
+    public static void syncDirectory(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory == null) return;
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Não suportado neste sistema.
+        }
+    }
+
+
+    /**
+     * Substituir um arquivo por outro, já completo, de forma durável: o novo
+     * arquivo é forçado para o disco, renomeado sobre o arquivo de destino
+     * (atomicamente, se o sistema permitir), e a pasta é forçada em seguida.
+     * Sem a primeira etapa, uma queda do sistema logo após a renomeação
+     * poderia deixar o destino com o novo nome, mas sem o seu conteúdo.
+     * @param source arquivo novo.
+     * @param target arquivo a ser substituído.
+     * @throws IOException
+     */
+    public static void replace(File source, File target) throws IOException {
+        force(source, true);
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target);
+    }
+
+
+}